@@ -4289,6 +4289,7 @@ ListObjectsParams is a reference to a hash where the following keys are defined:
 	includeMetadata has a value which is a Workspace.boolean
 	excludeGlobal has a value which is a Workspace.boolean
 	limit has a value which is an int
+	startafter has a value which is a Workspace.obj_ref
 ws_name is a string
 ws_id is an int
 type_string is a string
@@ -4341,6 +4342,7 @@ ListObjectsParams is a reference to a hash where the following keys are defined:
 	includeMetadata has a value which is a Workspace.boolean
 	excludeGlobal has a value which is a Workspace.boolean
 	limit has a value which is an int
+	startafter has a value which is a Workspace.obj_ref
 ws_name is a string
 ws_id is an int
 type_string is a string
@@ -10968,6 +10970,12 @@ Parameters for the 'list_objects' function.
                         parameter only has an effect when filtering by types alone.
                 int limit - limit the output to X objects. Default and maximum value
                         is 10000. Limit values < 1 are treated as 10000, the default.
+                obj_ref startafter - the reference, in the form X/Y/Z, of the last object
+                        in the previous page of results. The listing resumes directly after
+                        this object, so paging through the objects with limit and startafter
+                        reads each object once. Results are ordered by workspace ID, object ID,
+                        and then descending version. Cannot be used with the type, savedby,
+                        meta, after, or before filters.
 
 
 =item Definition
@@ -10995,6 +11003,7 @@ showAllVersions has a value which is a Workspace.boolean
 includeMetadata has a value which is a Workspace.boolean
 excludeGlobal has a value which is a Workspace.boolean
 limit has a value which is an int
+startafter has a value which is a Workspace.obj_ref
 
 </pre>
 
@@ -11022,6 +11031,7 @@ showAllVersions has a value which is a Workspace.boolean
 includeMetadata has a value which is a Workspace.boolean
 excludeGlobal has a value which is a Workspace.boolean
 limit has a value which is an int
+startafter has a value which is a Workspace.obj_ref
 
 
 =end text
@@ -3073,7 +3073,13 @@ class Workspace(object):
            excludeGlobal - exclude objects in global workspaces. This
            parameter only has an effect when filtering by types alone. int
            limit - limit the output to X objects. Default and maximum value
-           is 10000. Limit values < 1 are treated as 10000, the default.) ->
+           is 10000. Limit values < 1 are treated as 10000, the default.
+           obj_ref startafter - the reference, in the form X/Y/Z, of the last
+           object in the previous page of results. The listing resumes
+           directly after this object, so paging through the objects with
+           limit and startafter reads each object once. Results are ordered
+           by workspace ID, object ID, and then descending version. Cannot be
+           used with the type, savedby, meta, after, or before filters.) ->
            structure: parameter "workspaces" of list of type "ws_name" (A
            string used as a name for a workspace. Any string consisting of
            alphanumeric characters and "_", ".", or "-" that is not an
@@ -3124,7 +3130,17 @@ class Workspace(object):
            "boolean" (A boolean. 0 = false, other = true.), parameter
            "includeMetadata" of type "boolean" (A boolean. 0 = false, other =
            true.), parameter "excludeGlobal" of type "boolean" (A boolean. 0
-           = false, other = true.), parameter "limit" of Long
+           = false, other = true.), parameter "limit" of Long, parameter
+           "startafter" of type "obj_ref" (A string that uniquely identifies
+           an object in the workspace service. The format is [ws_name or
+           id]/[obj_name or id]/[obj_ver]. For example,
+           MyFirstWorkspace/MyFirstObject/3 would identify the third version
+           of an object called MyFirstObject in the workspace called
+           MyFirstWorkspace. 42/Panic/1 would identify the first version of
+           the object name Panic in workspace with id 42. Towel/1/6 would
+           identify the 6th version of the object with id 1 in the Towel
+           workspace.If the version number is omitted, the latest version of
+           the object is assumed.)
         :returns: instance of list of type "object_info" (Information about
            an object, including user provided metadata. obj_id objid - the
            numerical id of the object. obj_name name - the name of the
@@ -0,0 +1,119 @@
+package us.kbase.workspace.performance.typedb;
+
+import static us.kbase.workspace.performance.utils.Utils.printElapse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.FileUtils;
+
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.db.FileTypeStorage;
+import us.kbase.typedobj.db.TypeDefinitionDB;
+
+/** Measures the read throughput of the TypeDefinitionDB module locks with a single thread and
+ * with many threads reading the same module.
+ * 
+ * Run with ant benchmark -Dbenchmark=typedb.ModuleLockTiming
+ */
+public class ModuleLockTiming {
+	
+	public static final int[] THREADS = {1, 32};
+	public static final int OPS_PER_THREAD = 200000;
+	public static final int ITERS = 5;
+	
+	private static final String MODULE = "LockBench";
+	private static final String USER = "user";
+	private static final String SPEC =
+			"module " + MODULE + " {\n" +
+			"    typedef structure {\n" +
+			"        string foo;\n" +
+			"        int bar;\n" +
+			"    } Thing;\n" +
+			"};\n";
+	
+	private static final TypeDefName TYPE = new TypeDefName(MODULE, "Thing");
+	private static final TypeDefId ABS_TYPE = new AbsoluteTypeDefId(TYPE, 1, 0);
+	
+	private interface Read {
+		void read(TypeDefinitionDB db) throws Exception;
+	}
+	
+	public static void main(final String[] args) throws Exception {
+		final Path tempDir = Files.createTempDirectory("ModuleLockTiming");
+		try {
+			final TypeDefinitionDB db = new TypeDefinitionDB(
+					new FileTypeStorage(tempDir.toString()));
+			db.requestModuleRegistration(MODULE, USER);
+			db.approveModuleRegistrationRequest(USER, MODULE, true);
+			db.registerModule(SPEC, Arrays.asList("Thing"), USER);
+			db.releaseModule(MODULE, USER, false);
+			for (final int threads: THREADS) {
+				// the validation hot path - an absolute type with a cached schema
+				time("cached schema, threads " + threads, db, threads,
+						d -> d.getJsonSchemaDocument(ABS_TYPE));
+				// a read that always takes the module read lock
+				time("latest type version, threads " + threads, db, threads,
+						d -> d.getLatestTypeVersion(TYPE));
+			}
+		} finally {
+			FileUtils.deleteDirectory(tempDir.toFile());
+		}
+	}
+	
+	private static void time(
+			final String name,
+			final TypeDefinitionDB db,
+			final int threads,
+			final Read read)
+			throws Exception {
+		runThreads(db, threads, read); // warm up
+		double total = 0;
+		for (int i = 0; i < ITERS; i++) {
+			final long start = runThreads(db, threads, read);
+			total += printElapse(name, start);
+		}
+		final double mean = total / ITERS;
+		System.out.println(String.format("%s mean time: %s, ops/ms: %s",
+				name, mean, (long) (threads * OPS_PER_THREAD / (mean * 1000))));
+	}
+	
+	// returns the time at which the threads were released
+	private static long runThreads(
+			final TypeDefinitionDB db,
+			final int threads,
+			final Read read)
+			throws InterruptedException {
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch go = new CountDownLatch(1);
+		final List<Thread> running = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			final Thread t = new Thread(() -> {
+				ready.countDown();
+				try {
+					go.await();
+					for (int j = 0; j < OPS_PER_THREAD; j++) {
+						read.read(db);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			t.start();
+			running.add(t);
+		}
+		ready.await();
+		final long start = System.nanoTime();
+		go.countDown();
+		for (final Thread t: running) {
+			t.join();
+		}
+		return start;
+	}
+}
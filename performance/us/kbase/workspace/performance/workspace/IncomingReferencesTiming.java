@@ -0,0 +1,168 @@
+package us.kbase.workspace.performance.workspace;
+
+import static us.kbase.workspace.performance.utils.Utils.printElapse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+
+import us.kbase.common.service.UObject;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+import us.kbase.workspace.database.ObjectIDNoWSNoVer;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.ResolvedSaveObject;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.WorkspaceInformation;
+import us.kbase.workspace.database.WorkspaceSaveObject;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.WorkspaceUserMetadata;
+import us.kbase.workspace.database.mongo.GridFSBlobStore;
+import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
+
+/** Compares looking up the references to a set of objects, as is done for each level of a
+ * reference path search, from the object version documents and from the incoming reference
+ * index, and reports the sizes of the indexes used by each.
+ *
+ * Each referencing object references REFS_PER_OBJECT objects chosen at random from the
+ * REFERENCED objects, so most of the references in the version documents are not to the
+ * objects being looked up.
+ *
+ * Requires a MongoDB instance on localhost. The WS_DB database is dropped at the start of the
+ * run.
+ */
+public class IncomingReferencesTiming {
+
+	public static final int REFERENCED = 10000;
+	public static final int REFERENCING = 50000;
+	public static final int REFS_PER_OBJECT = 10;
+	public static final int LOOKUP = 100;
+	public static final int ITERS = 20;
+	public static final int SAVE_BATCH = 1000;
+
+	private static final String WS_DB = "ws_incomingrefs_timing";
+	private static final String WORKSPACE = "incomingrefs";
+	private static final WorkspaceUser USER = new WorkspaceUser("user");
+	private static final TypeDefId TYPE = new TypeDefId("Mod.Type");
+	private static final AbsoluteTypeDefId ABS_TYPE = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 1, 0);
+	private static final String SCHEMA =
+			"{\"id\": \"Type\", \"type\": \"object\", \"original-type\": \"kidl-structure\", " +
+			"\"properties\": {}, \"additionalProperties\": true}";
+
+	private static final TypedObjectValidator VALIDATOR = new TypedObjectValidator(
+			new TypeProvider() {
+
+				@Override
+				public AbsoluteTypeDefId resolveTypeDef(final TypeDefId typeDefId) {
+					return ABS_TYPE;
+				}
+
+				@Override
+				public String getTypeJsonSchema(final AbsoluteTypeDefId typeDefId) {
+					return SCHEMA;
+				}
+			});
+
+	public static void main(final String[] args) throws Exception {
+		final MongoClient mc = new MongoClient();
+		final DB db = mc.getDB(WS_DB);
+		db.dropDatabase();
+
+		final TempFilesManager tfm = new TempFilesManager(new File("temp_incomingrefstiming"));
+		final GridFSBlobStore bs = new GridFSBlobStore(db);
+		final MongoWorkspaceDB vers = MongoWorkspaceDB.getBuilder(db, bs, tfm)
+				.withBatchSaves(true).build();
+		final MongoWorkspaceDB index = MongoWorkspaceDB.getBuilder(db, bs, tfm)
+				.withBatchSaves(true).withIncomingReferenceIndex(true).build();
+
+		final WorkspaceInformation wi = vers.createWorkspace(
+				USER, WORKSPACE, false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID rwsi = new ResolvedWorkspaceID(
+				wi.getId(), wi.getName(), false, false);
+		final List<ResolvedSaveObject> objs = new ArrayList<>();
+		for (int i = 0; i < REFERENCED; i++) {
+			objs.add(makeObject("target" + i, Collections.emptySet()));
+			if (objs.size() >= SAVE_BATCH) {
+				vers.saveObjects(USER, rwsi, objs);
+				objs.clear();
+			}
+		}
+		final Random rand = new Random(42);
+		for (int i = 0; i < REFERENCING; i++) {
+			final Set<Reference> refs = new HashSet<>();
+			while (refs.size() < REFS_PER_OBJECT) {
+				refs.add(new Reference(wi.getId(), rand.nextInt(REFERENCED) + 1, 1));
+			}
+			objs.add(makeObject("ref" + i, refs));
+			if (objs.size() >= SAVE_BATCH) {
+				vers.saveObjects(USER, rwsi, objs);
+				objs.clear();
+			}
+		}
+		if (!objs.isEmpty()) {
+			vers.saveObjects(USER, rwsi, objs);
+		}
+		final Set<Reference> lookup = new HashSet<>();
+		for (int i = 1; i <= LOOKUP; i++) {
+			lookup.add(new Reference(wi.getId(), i, 1));
+		}
+		System.out.println(String.format(
+				"Looking up references to %s of %s objects from %s objects with %s refs each",
+				LOOKUP, REFERENCED, REFERENCING, REFS_PER_OBJECT));
+		System.out.println("Version index sizes: " + db.getCollection(
+				MongoWorkspaceDB.COL_WORKSPACE_VERS).getStats().get("indexSizes"));
+		System.out.println("Incoming reference index sizes: " + db.getCollection(
+				MongoWorkspaceDB.COL_INCOMING_REFS).getStats().get("indexSizes"));
+
+		time("versions", vers, lookup);
+		time("index", index, lookup);
+		mc.close();
+	}
+
+	private static void time(
+			final String name,
+			final MongoWorkspaceDB db,
+			final Set<Reference> lookup)
+			throws Exception {
+		double total = 0;
+		for (int i = 0; i < ITERS; i++) {
+			final long start = System.nanoTime();
+			db.getObjectIncomingReferences(lookup);
+			total += printElapse(name, start);
+		}
+		System.out.println(String.format("%s mean lookup time: %s", name, total / ITERS));
+	}
+
+	private static ResolvedSaveObject makeObject(final String name, final Set<Reference> refs)
+			throws Exception {
+		final String data = "{\"name\": \"" + name + "\"}";
+		final IdReferenceHandlerSet<String> handlers = IdReferenceHandlerSetFactoryBuilder
+				.getBuilder(100).build().getFactory(null).createHandlers(String.class);
+		final ValidatedTypedObject vto = VALIDATOR.validate(data, TYPE, handlers);
+		handlers.processIDs();
+		vto.sort(new UTF8JsonSorterFactory(100000));
+		final Provenance p = new Provenance(USER, new Date());
+		return new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer(name), new UObject(Collections.singletonMap("name", name)),
+				TYPE, null, p, false)
+				.resolve(vto, refs, Collections.emptyList(), Collections.emptyMap());
+	}
+}
@@ -0,0 +1,147 @@
+package us.kbase.workspace.performance.workspace;
+
+import static us.kbase.workspace.performance.utils.Utils.printElapse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+
+import us.kbase.common.service.UObject;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+import us.kbase.workspace.database.ListObjectsParameters;
+import us.kbase.workspace.database.ObjectIDNoWSNoVer;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.ResolvedSaveObject;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.Workspace;
+import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.WorkspaceInformation;
+import us.kbase.workspace.database.WorkspaceSaveObject;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.WorkspaceUserMetadata;
+import us.kbase.workspace.database.mongo.GridFSBlobStore;
+import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
+
+/** Compares listing objects with the in memory filter and the aggregation pipeline filter.
+ * The workspace contains many hidden objects followed by objects with many versions, so
+ * listing the latest visible objects requires skipping most of the versions in the workspace.
+ *
+ * Requires a MongoDB 3.6+ instance on localhost. The WS_DB database is dropped at the start of
+ * the run.
+ */
+public class ListObjectsTiming {
+
+	public static final int HIDDEN_OBJECTS = 5000;
+	public static final int OBJECTS = 100;
+	public static final int VERSIONS = 100;
+	public static final int ITERS = 20;
+
+	private static final String WS_DB = "ws_listobj_timing";
+	private static final String WORKSPACE = "listobjs";
+	private static final WorkspaceUser USER = new WorkspaceUser("user");
+	private static final TypeDefId TYPE = new TypeDefId("Mod.Type");
+	private static final AbsoluteTypeDefId ABS_TYPE = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 1, 0);
+	private static final String SCHEMA =
+			"{\"id\": \"Type\", \"type\": \"object\", \"original-type\": \"kidl-structure\", " +
+			"\"properties\": {}, \"additionalProperties\": true}";
+
+	private static final TypedObjectValidator VALIDATOR = new TypedObjectValidator(
+			new TypeProvider() {
+
+				@Override
+				public AbsoluteTypeDefId resolveTypeDef(final TypeDefId typeDefId) {
+					return ABS_TYPE;
+				}
+
+				@Override
+				public String getTypeJsonSchema(final AbsoluteTypeDefId typeDefId) {
+					return SCHEMA;
+				}
+			});
+
+	public static void main(final String[] args) throws Exception {
+		final MongoClient mc = new MongoClient();
+		final DB db = mc.getDB(WS_DB);
+		db.dropDatabase();
+
+		final TempFilesManager tfm = new TempFilesManager(new File("temp_listobjtiming"));
+		final GridFSBlobStore bs = new GridFSBlobStore(db);
+		final MongoWorkspaceDB find = MongoWorkspaceDB.getBuilder(db, bs, tfm)
+				.withBatchSaves(true).build();
+		final MongoWorkspaceDB agg = MongoWorkspaceDB.getBuilder(db, bs, tfm)
+				.withBatchSaves(true).withListObjectsAggregation(true).build();
+
+		final WorkspaceInformation wi = find.createWorkspace(
+				USER, WORKSPACE, false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID rwsi = new ResolvedWorkspaceID(
+				wi.getId(), wi.getName(), false, false);
+		final List<ResolvedSaveObject> hidden = new ArrayList<>();
+		for (int i = 0; i < HIDDEN_OBJECTS; i++) {
+			hidden.add(makeObject("hidden" + i, true));
+		}
+		find.saveObjects(USER, rwsi, hidden);
+		for (int v = 0; v < VERSIONS; v++) {
+			final List<ResolvedSaveObject> objs = new ArrayList<>();
+			for (int i = 0; i < OBJECTS; i++) {
+				objs.add(makeObject("obj" + i, false));
+			}
+			find.saveObjects(USER, rwsi, objs);
+		}
+		System.out.println(String.format(
+				"Listing %s objects with %s versions each after %s hidden objects",
+				OBJECTS, VERSIONS, HIDDEN_OBJECTS));
+
+		final ResourceUsageConfigurationBuilder rcb = new ResourceUsageConfigurationBuilder();
+		time("find", new Workspace(find, rcb.build(), VALIDATOR));
+		time("aggregation", new Workspace(agg, rcb.build(), VALIDATOR));
+		mc.close();
+	}
+
+	private static void time(final String name, final Workspace ws) throws Exception {
+		for (final int limit: Arrays.asList(1, OBJECTS)) {
+			double total = 0;
+			for (int i = 0; i < ITERS; i++) {
+				final long start = System.nanoTime();
+				ws.listObjects(new ListObjectsParameters(
+						USER, Arrays.asList(new WorkspaceIdentifier(WORKSPACE)))
+						.withLimit(limit));
+				total += printElapse(name + " limit " + limit, start);
+			}
+			System.out.println(String.format("%s limit %s mean list time: %s",
+					name, limit, total / ITERS));
+		}
+	}
+
+	private static ResolvedSaveObject makeObject(final String name, final boolean hidden)
+			throws Exception {
+		final String data = "{\"name\": \"" + name + "\"}";
+		final IdReferenceHandlerSet<String> handlers = IdReferenceHandlerSetFactoryBuilder
+				.getBuilder(100).build().getFactory(null).createHandlers(String.class);
+		final ValidatedTypedObject vto = VALIDATOR.validate(data, TYPE, handlers);
+		handlers.processIDs();
+		vto.sort(new UTF8JsonSorterFactory(100000));
+		final Provenance p = new Provenance(USER, new Date());
+		return new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer(name), new UObject(Collections.singletonMap("name", name)),
+				TYPE, null, p, hidden)
+				.resolve(vto, Collections.emptySet(), Collections.emptyList(),
+						Collections.emptyMap());
+	}
+}
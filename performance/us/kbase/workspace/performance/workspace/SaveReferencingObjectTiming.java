@@ -0,0 +1,136 @@
+package us.kbase.workspace.performance.workspace;
+
+import static us.kbase.workspace.performance.utils.Utils.printElapse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+
+import us.kbase.common.service.UObject;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+import us.kbase.workspace.database.ObjectIDNoWSNoVer;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.ResolvedSaveObject;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.WorkspaceInformation;
+import us.kbase.workspace.database.WorkspaceSaveObject;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.WorkspaceUserMetadata;
+import us.kbase.workspace.database.mongo.GridFSBlobStore;
+import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
+
+/** Times saves of objects that reference many objects across many workspaces, e.g. a narrative
+ * that references its inputs. Most of the time is spent updating the reference counts of the
+ * referenced objects.
+ *
+ * Requires a MongoDB instance on localhost. The WS_DB database is dropped at the start of the
+ * run.
+ */
+public class SaveReferencingObjectTiming {
+
+	public static final int WORKSPACES = 10;
+	public static final int OBJECTS_PER_WORKSPACE = 1000;
+	public static final int ITERS = 20;
+
+	private static final String WS_DB = "ws_refcount_timing";
+	private static final WorkspaceUser USER = new WorkspaceUser("user");
+	private static final TypeDefId TYPE = new TypeDefId("Mod.Type");
+	private static final AbsoluteTypeDefId ABS_TYPE = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 1, 0);
+	private static final String SCHEMA =
+			"{\"id\": \"Type\", \"type\": \"object\", \"original-type\": \"kidl-structure\", " +
+			"\"properties\": {}, \"additionalProperties\": true}";
+
+	private static final TypedObjectValidator VALIDATOR = new TypedObjectValidator(
+			new TypeProvider() {
+
+				@Override
+				public AbsoluteTypeDefId resolveTypeDef(final TypeDefId typeDefId) {
+					return ABS_TYPE;
+				}
+
+				@Override
+				public String getTypeJsonSchema(final AbsoluteTypeDefId typeDefId) {
+					return SCHEMA;
+				}
+			});
+
+	public static void main(final String[] args) throws Exception {
+		final MongoClient mc = new MongoClient();
+		final DB db = mc.getDB(WS_DB);
+		db.dropDatabase();
+
+		final TempFilesManager tfm = new TempFilesManager(new File("temp_saverefobjtiming"));
+		final MongoWorkspaceDB mws = new MongoWorkspaceDB(db, new GridFSBlobStore(db), tfm);
+
+		final Set<Reference> refs = new HashSet<>();
+		for (int i = 0; i < WORKSPACES; i++) {
+			final ResolvedWorkspaceID rwsi = createWorkspace(mws, "refs" + i);
+			final List<ResolvedSaveObject> objs = new ArrayList<>();
+			for (int j = 1; j <= OBJECTS_PER_WORKSPACE; j++) {
+				objs.add(makeObject(rwsi, "obj" + j, Collections.emptySet()));
+				refs.add(new Reference(rwsi.getID(), j, 1));
+			}
+			mws.saveObjects(USER, rwsi, objs);
+		}
+		System.out.println(String.format("Saving an object with %s references in %s workspaces",
+				refs.size(), WORKSPACES));
+
+		final ResolvedWorkspaceID narrative = createWorkspace(mws, "narrative");
+		double total = 0;
+		for (int i = 0; i < ITERS; i++) {
+			final ResolvedSaveObject o = makeObject(narrative, "narr", refs);
+			final long start = System.nanoTime();
+			mws.saveObjects(USER, narrative, Arrays.asList(o));
+			total += printElapse("save", start);
+		}
+		System.out.println("mean save time: " + total / ITERS);
+		mc.close();
+	}
+
+	private static ResolvedWorkspaceID createWorkspace(
+			final MongoWorkspaceDB mws,
+			final String name)
+			throws Exception {
+		final WorkspaceInformation wi = mws.createWorkspace(
+				USER, name, false, null, new WorkspaceUserMetadata());
+		return new ResolvedWorkspaceID(wi.getId(), wi.getName(), false, false);
+	}
+
+	private static ResolvedSaveObject makeObject(
+			final ResolvedWorkspaceID rwsi,
+			final String name,
+			final Set<Reference> refs)
+			throws Exception {
+		final String data = "{\"name\": \"" + name + "\"}";
+		final IdReferenceHandlerSet<String> handlers = IdReferenceHandlerSetFactoryBuilder
+				.getBuilder(100).build().getFactory(null).createHandlers(String.class);
+		final ValidatedTypedObject vto = VALIDATOR.validate(data, TYPE, handlers);
+		handlers.processIDs();
+		vto.sort(new UTF8JsonSorterFactory(100000));
+		final Provenance p = new Provenance(USER, new Date());
+		p.setWorkspaceID(rwsi.getID());
+		return new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer(name), new UObject(Collections.singletonMap("name", name)),
+				TYPE, null, p, false)
+				.resolve(vto, refs, Collections.emptyList(), Collections.emptyMap());
+	}
+}
@@ -3,6 +3,7 @@ package us.kbase.typedobj.core;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import com.fasterxml.jackson.core.JsonParseException;
@@ -43,6 +44,10 @@ public class IdRefTokenSequenceProvider implements TokenSequenceProvider {
 	private String prevFieldName = null;
 	// sorted flag is switched into false after first occurrence of unsorted keys
 	private boolean sorted = true;
+	// the index of the current entry in the root map, -1 if not in a root map entry
+	private int rootEntry = -1;
+	// the indexes of the root map entries that contain unsorted maps in their values
+	private final BitSet unsortedRootEntries = new BitSet();
 	// reference to find
 	private IdReference<?> ref = null;
 	// path to found reference
@@ -66,6 +71,16 @@ public class IdRefTokenSequenceProvider implements TokenSequenceProvider {
 		return sorted;
 	}
 	
+	/** Get the indexes, in document order, of the entries in the root map whose values
+	 * contain unsorted maps. Whether the keys of the root map itself are sorted is not
+	 * reflected in the result. If the root of the document is not a map, the result is empty.
+	 * Only valid after the entire token stream has been read.
+	 * @return the indexes of the root map entries with unsorted values.
+	 */
+	public BitSet getUnsortedRootEntries() {
+		return (BitSet) unsortedRootEntries.clone();
+	}
+	
 	public void setFindMode(final IdReference<?> ref) {
 		if (ref == null) {
 			throw new NullPointerException("ref cannot be null");
@@ -114,11 +129,17 @@ public class IdRefTokenSequenceProvider implements TokenSequenceProvider {
 			path.replaceLast(jts.getText());
 			updateSchemaLocation();
 			wasField = true;
+			if (path.getDepth() == 1) {
+				rootEntry++;
+			}
 			// get real name of key after relabeling
 			String curFieldName = getText();
 			// check for sorting order
 			if (prevFieldName != null && prevFieldName.compareTo(curFieldName) >= 0) {
 				sorted = false;
+				if (path.getDepth() > 1 && rootEntry > -1) {
+					unsortedRootEntries.set(rootEntry);
+				}
 			}
 			prevFieldName = curFieldName;
 		} else {
@@ -0,0 +1,553 @@
+package us.kbase.typedobj.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import us.kbase.common.utils.sortjson.KeyDuplicationException;
+import us.kbase.common.utils.sortjson.TooManyKeysException;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+
+/** Sorts large JSON documents stored in files by sorting the values of the root map
+ * concurrently and merging the sorted values in key order.
+ *
+ * The input must be compact JSON, e.g. as written by a Jackson generator without a pretty
+ * printer, and the output is byte for byte identical to the output of the
+ * {@link UTF8JsonSorterFactory} sorters. Values of the root map that are known to be sorted,
+ * as reported by {@link IdRefTokenSequenceProvider#getUnsortedRootEntries()}, are copied
+ * without sorting.
+ *
+ * The memory limit is split evenly between the sorting threads. If a value cannot be sorted
+ * within the memory available to a single thread, or the document cannot be sorted for any
+ * other reason (e.g. the root of the document is not a map or there are duplicate keys), the
+ * sort returns false and the caller should fall back to a standard sorter, which will produce
+ * the appropriate error if the document truly cannot be sorted. Values small enough to be sorted
+ * in memory are held in memory until they are written to the output, and no more values are
+ * sorted ahead of the output once the memory held by those values and the root map keys reaches
+ * the memory limit. Larger values are sorted via temporary files.
+ *
+ * The sorting threads are shared by all the sorts performed by an instance, so an instance
+ * should be reused rather than created per sort. Idle threads exit after a minute.
+ */
+public class ParallelJsonSorter {
+
+	// approximate memory used per root map entry in addition to the key
+	private static final int ENTRY_OVERHEAD = 64;
+	// the number of values to sort ahead of the merge, per thread
+	private static final int SORT_AHEAD_PER_THREAD = 4;
+	private static final int THREAD_KEEP_ALIVE_SEC = 60;
+
+	private final int threads;
+	private final int maxMemoryUsage;
+	private final UTF8JsonSorterFactory valueSorterFactory;
+	private final ThreadPoolExecutor executor;
+
+	/** Create the sorter.
+	 * @param threads the number of threads to use to sort values of the root map.
+	 * @param maxMemoryUsage the approximate maximum memory to use when sorting. The memory
+	 * is split evenly between the threads.
+	 */
+	public ParallelJsonSorter(final int threads, final int maxMemoryUsage) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be > 0");
+		}
+		if (maxMemoryUsage < threads) {
+			throw new IllegalArgumentException("maxMemoryUsage must be >= threads");
+		}
+		this.threads = threads;
+		this.maxMemoryUsage = maxMemoryUsage;
+		this.valueSorterFactory = new UTF8JsonSorterFactory(maxMemoryUsage / threads);
+		executor = new ThreadPoolExecutor(threads, threads, THREAD_KEEP_ALIVE_SEC,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), DAEMON_FACTORY);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/** Get the number of threads used to sort values of the root map.
+	 * @return the number of threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/** Get the approximate maximum memory used when sorting.
+	 * @return the maximum memory usage.
+	 */
+	public int getMaxMemoryUsage() {
+		return maxMemoryUsage;
+	}
+
+	private static class Entry {
+
+		private final String key;
+		private final long keyStart;
+		private final long valueStart;
+		private final long valueEnd;
+		private final boolean sortValue;
+
+		private Entry(
+				final String key,
+				final long keyStart,
+				final long valueStart,
+				final long valueEnd,
+				final boolean sortValue) {
+			this.key = key;
+			this.keyStart = keyStart;
+			this.valueStart = valueStart;
+			this.valueEnd = valueEnd;
+			this.sortValue = sortValue;
+		}
+	}
+
+	// only one of the fields is non-null
+	private static class SortedValue {
+
+		private final byte[] data;
+		private final File file;
+
+		private SortedValue(final byte[] data, final File file) {
+			this.data = data;
+			this.file = file;
+		}
+	}
+
+	/** Sort a JSON document.
+	 * @param input the file containing the compact JSON document to sort.
+	 * @param unsortedRootEntries the indexes, in document order, of the entries in the root
+	 * map whose values contain unsorted maps. Values for all other entries are copied as is.
+	 * Pass null to sort all values.
+	 * @param tfm the temporary file manager to use for values that are too large to sort in
+	 * memory.
+	 * @param os the output stream to which to write the sorted document.
+	 * @return true if the document was sorted, or false if the caller should sort the document
+	 * with a standard sorter. If false, some data may have already been written to the output
+	 * stream.
+	 * @throws IOException if an IO error occurs.
+	 */
+	public boolean sort(
+			final File input,
+			final BitSet unsortedRootEntries,
+			final TempFilesManager tfm,
+			final OutputStream os)
+			throws IOException {
+		if (input == null) {
+			throw new NullPointerException("input");
+		}
+		if (tfm == null) {
+			throw new NullPointerException("tfm");
+		}
+		if (os == null) {
+			throw new NullPointerException("os");
+		}
+		final List<Entry> entries = new ArrayList<>();
+		final long entriesMem = readRootEntries(input, unsortedRootEntries, entries);
+		if (entriesMem < 0) {
+			return false;
+		}
+		// same order as the sorted check in IdRefTokenSequenceProvider
+		Collections.sort(entries, new Comparator<Entry>() {
+
+			@Override
+			public int compare(final Entry e1, final Entry e2) {
+				return e1.key.compareTo(e2.key);
+			}
+		});
+		for (int i = 1; i < entries.size(); i++) {
+			if (entries.get(i - 1).key.equals(entries.get(i).key)) {
+				return false; // let the standard sorter generate the error
+			}
+		}
+		final AtomicBoolean abandoned = new AtomicBoolean();
+		final LinkedList<Future<SortedValue>> pending = new LinkedList<>();
+		try (final RandomAccessFile raf = new RandomAccessFile(input, "r")) {
+			// memory held by values sorted, or being sorted, in memory and not yet written
+			long heldMem = 0;
+			int submitted = 0;
+			os.write('{');
+			for (int i = 0; i < entries.size(); i++) {
+				while (submitted < entries.size() &&
+						pending.size() < threads * SORT_AHEAD_PER_THREAD) {
+					final Entry e = entries.get(submitted);
+					final long mem = getHeldMemory(e);
+					// always allow one value to be sorted so the output progresses
+					if (!pending.isEmpty() && entriesMem + heldMem + mem > maxMemoryUsage) {
+						break;
+					}
+					heldMem += mem;
+					submitted++;
+					// LinkedList allows nulls, which mark values that are copied as is
+					pending.add(e.sortValue ?
+							executor.submit(new SortTask(input, e, tfm, abandoned)) : null);
+				}
+				final Entry e = entries.get(i);
+				final Future<SortedValue> f = pending.removeFirst();
+				if (i > 0) {
+					os.write(',');
+				}
+				if (f == null) {
+					copy(raf, e.keyStart, e.valueEnd, os);
+				} else {
+					// the key and the colon
+					copy(raf, e.keyStart, e.valueStart, os);
+					final SortedValue sv = getSortedValue(f);
+					if (sv == null) {
+						return false;
+					}
+					write(sv, os);
+					heldMem -= getHeldMemory(e);
+				}
+			}
+			os.write('}');
+			return true;
+		} finally {
+			cleanUp(abandoned, pending);
+		}
+	}
+
+	private boolean isSortedInMemory(final Entry e) {
+		// the in memory sorter counts the data against the memory limit
+		return e.valueEnd - e.valueStart <= maxMemoryUsage / threads / 2;
+	}
+
+	/* the memory held by a value from submission until it's written. An in memory sort holds
+	 * a copy of the value and the sorted value, and the sorted value is held until written.
+	 */
+	private long getHeldMemory(final Entry e) {
+		if (!e.sortValue || !isSortedInMemory(e)) {
+			return 0;
+		}
+		return 2 * (e.valueEnd - e.valueStart);
+	}
+
+	private SortedValue getSortedValue(final Future<SortedValue> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while sorting");
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof KeyDuplicationException ||
+					cause instanceof TooManyKeysException) {
+				return null; // let the standard sorter generate the error
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException("Unexpected exception while sorting", cause);
+		}
+	}
+
+	private void write(final SortedValue sv, final OutputStream os) throws IOException {
+		if (sv.data != null) {
+			os.write(sv.data);
+		} else {
+			try (final InputStream is = new FileInputStream(sv.file)) {
+				final byte[] buf = new byte[100000];
+				int read;
+				while ((read = is.read(buf)) > -1) {
+					os.write(buf, 0, read);
+				}
+			} finally {
+				sv.file.delete();
+			}
+		}
+	}
+
+	/* Tasks that haven't started return immediately once the sort is abandoned. Waits for the
+	 * running tasks rather than cancelling them, since the executor is shared and a cancelled
+	 * task could leave a temporary file behind.
+	 */
+	private void cleanUp(
+			final AtomicBoolean abandoned,
+			final List<Future<SortedValue>> pending) {
+		abandoned.set(true);
+		boolean interrupted = false;
+		for (final Future<SortedValue> f: pending) {
+			if (f == null) {
+				continue;
+			}
+			while (true) {
+				try {
+					final SortedValue sv = f.get();
+					if (sv != null && sv.file != null) {
+						sv.file.delete();
+					}
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					break; // nothing to clean up
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* Adds the entries of the root map to the list and returns the approximate memory used by
+	 * the entries. Returns -1 if the root is not a map or there's too many keys to hold in
+	 * memory. Depends on the input being compact JSON so that there is no whitespace between
+	 * tokens.
+	 */
+	private long readRootEntries(
+			final File input,
+			final BitSet unsortedRootEntries,
+			final List<Entry> entries)
+			throws IOException {
+		long mem = 0;
+		try (final PositionedInputStream is = new PositionedInputStream(input)) {
+			if (is.read() != '{') {
+				return -1;
+			}
+			int b = is.read();
+			int index = 0;
+			while (b != '}') {
+				if (b != '"') {
+					return -1;
+				}
+				final long keyStart = is.getPosition() - 1;
+				final String key = readKey(is);
+				if (is.read() != ':') {
+					return -1;
+				}
+				final long valueStart = is.getPosition();
+				final int first = is.read();
+				final boolean container = first == '{' || first == '[';
+				b = skipValue(is, first);
+				entries.add(new Entry(key, keyStart, valueStart, is.getPosition() - 1,
+						container && (unsortedRootEntries == null ||
+								unsortedRootEntries.get(index))));
+				mem += key.length() * 2 + ENTRY_OVERHEAD;
+				if (mem > maxMemoryUsage) {
+					return -1;
+				}
+				index++;
+				if (b == ',') {
+					b = is.read();
+				}
+			}
+		}
+		return mem;
+	}
+
+	// returns the character following the value, either a comma or the closing brace of the map
+	private int skipValue(final PositionedInputStream is, final int first) throws IOException {
+		boolean inString = first == '"';
+		int depth = first == '{' || first == '[' ? 1 : 0;
+		while (true) {
+			final int b = is.read();
+			if (b < 0) {
+				throw new IOException("Unexpected end of file while sorting");
+			}
+			if (inString) {
+				if (b == '\\') {
+					is.read();
+				} else if (b == '"') {
+					inString = false;
+				}
+			} else if (b == '"') {
+				inString = true;
+			} else if (b == '{' || b == '[') {
+				depth++;
+			} else if (b == '}' || b == ']') {
+				if (depth == 0) {
+					return b;
+				}
+				depth--;
+			} else if (b == ',' && depth == 0) {
+				return b;
+			}
+		}
+	}
+
+	// expects the opening quote to have been read, reads the closing quote
+	private String readKey(final PositionedInputStream is) throws IOException {
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		boolean escaped = false;
+		while (true) {
+			final int b = is.read();
+			if (b < 0) {
+				throw new IOException("Unexpected end of file while sorting");
+			}
+			if (b == '\\') {
+				escaped = true;
+				raw.write(b);
+				raw.write(is.read());
+			} else if (b == '"') {
+				break;
+			} else {
+				raw.write(b);
+			}
+		}
+		final String key = new String(raw.toByteArray(), StandardCharsets.UTF_8);
+		return escaped ? unescape(key) : key;
+	}
+
+	private String unescape(final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			final char e = s.charAt(++i);
+			switch (e) {
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'u':
+					sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+					i += 4;
+					break;
+				default: sb.append(e); // quote, backslash, or slash
+			}
+		}
+		return sb.toString();
+	}
+
+	private static class PositionedInputStream implements AutoCloseable {
+
+		private final InputStream is;
+		private long position = 0;
+
+		private PositionedInputStream(final File file) throws IOException {
+			is = new BufferedInputStream(new FileInputStream(file));
+		}
+
+		private int read() throws IOException {
+			final int b = is.read();
+			if (b > -1) {
+				position++;
+			}
+			return b;
+		}
+
+		// the position of the next byte to be read
+		private long getPosition() {
+			return position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			is.close();
+		}
+	}
+
+	private static void copy(
+			final RandomAccessFile raf,
+			final long start,
+			final long end,
+			final OutputStream os)
+			throws IOException {
+		final byte[] buf = new byte[(int) Math.min(100000, end - start)];
+		raf.seek(start);
+		long remaining = end - start;
+		while (remaining > 0) {
+			final int read = raf.read(buf, 0, (int) Math.min(buf.length, remaining));
+			if (read < 0) {
+				throw new IOException("Unexpected end of file while sorting");
+			}
+			os.write(buf, 0, read);
+			remaining -= read;
+		}
+	}
+
+	private class SortTask implements Callable<SortedValue> {
+
+		private final File input;
+		private final Entry entry;
+		private final TempFilesManager tfm;
+		private final AtomicBoolean abandoned;
+
+		private SortTask(
+				final File input,
+				final Entry entry,
+				final TempFilesManager tfm,
+				final AtomicBoolean abandoned) {
+			this.input = input;
+			this.entry = entry;
+			this.tfm = tfm;
+			this.abandoned = abandoned;
+		}
+
+		@Override
+		public SortedValue call() throws Exception {
+			if (abandoned.get()) {
+				return null;
+			}
+			final long size = entry.valueEnd - entry.valueStart;
+			try (final RandomAccessFile raf = new RandomAccessFile(input, "r")) {
+				if (isSortedInMemory(entry)) {
+					final ByteArrayOutputStream baos = new ByteArrayOutputStream((int) size);
+					copy(raf, entry.valueStart, entry.valueEnd, baos);
+					final ByteArrayOutputStream out = new ByteArrayOutputStream((int) size);
+					valueSorterFactory.getSorter(baos.toByteArray()).writeIntoStream(out);
+					return new SortedValue(out.toByteArray(), null);
+				}
+				final File in = tfm.generateTempFile("psortinp", "json");
+				try {
+					try (final OutputStream os = new FileOutputStream(in)) {
+						copy(raf, entry.valueStart, entry.valueEnd, os);
+					}
+					final File out = tfm.generateTempFile("psortout", "json");
+					try (final OutputStream os = new FileOutputStream(out)) {
+						valueSorterFactory.getSorter(in).writeIntoStream(os);
+					} catch (IOException | KeyDuplicationException | TooManyKeysException |
+							RuntimeException | Error e) {
+						out.delete();
+						throw e;
+					}
+					return new SortedValue(null, out);
+				} finally {
+					in.delete();
+				}
+			}
+		}
+	}
+
+	private static final ThreadFactory DAEMON_FACTORY = new ThreadFactory() {
+
+		private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread t = defaultFactory.newThread(r);
+			t.setDaemon(true);
+			t.setName("json-sorter-" + t.getName());
+			return t;
+		}
+	};
+}
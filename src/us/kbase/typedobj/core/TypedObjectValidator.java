@@ -3,6 +3,7 @@ package us.kbase.typedobj.core;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -13,6 +14,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import us.kbase.common.service.JsonTokenStream;
 import us.kbase.common.service.UObject;
+import us.kbase.typedobj.core.ValidationResultCache.LocatedIdReference;
+import us.kbase.typedobj.core.ValidationResultCache.ValidationResult;
 import us.kbase.typedobj.exceptions.*;
 import us.kbase.typedobj.idref.IdReference;
 import us.kbase.typedobj.idref.IdReferenceHandlerSet;
@@ -76,6 +79,12 @@ public class TypedObjectValidator {
 	 */
 	protected TypeProvider typeProvider;
 	
+	/**
+	 * Caches the results of schema validation for previously seen data. Null if no cache
+	 * is in use.
+	 */
+	private final ValidationResultCache cache;
+	
 	
 	/**
 	 * Get the type provider the validator validates typed object instances against.
@@ -90,7 +99,29 @@ public class TypedObjectValidator {
 	 * Construct a TypedObjectValidator set to the specified Typed Provider
 	 */
 	public TypedObjectValidator(TypeProvider typeProvider) {
+		this(typeProvider, null);
+	}
+	
+	/**
+	 * Construct a TypedObjectValidator set to the specified Typed Provider, caching the
+	 * results of schema validation.
+	 * @param typeProvider the type provider.
+	 * @param cache the cache in which to store schema validation results, or null to
+	 * validate every object from scratch.
+	 */
+	public TypedObjectValidator(
+			final TypeProvider typeProvider,
+			final ValidationResultCache cache) {
 		this.typeProvider = typeProvider;
+		this.cache = cache;
+	}
+	
+	/**
+	 * Get the validation result cache used by this validator.
+	 * @return the cache, or null if no cache is in use.
+	 */
+	public ValidationResultCache getValidationResultCache() {
+		return cache;
 	}
 	
 	
@@ -174,80 +205,54 @@ public class TypedObjectValidator {
 			TooManyIdsException, JsonParseException, IOException {
 		AbsoluteTypeDefId absoluteTypeDefId = typeProvider.resolveTypeDef(
 				typeDefId);
+		final ValidationResultCache.Key cacheKey = cache == null ? null :
+				cache.getKey(absoluteTypeDefId, obj);
+		final ValidationResult cached = cacheKey == null ? null : cache.get(cacheKey);
 		
 		// Actually perform the validation and return the report
 		final List<String> errors = new ArrayList<String>();
-		String schemaText = typeProvider.getTypeJsonSchema(absoluteTypeDefId);
-		final JsonTokenValidationSchema schema =
-				JsonTokenValidationSchema.parseJsonSchema(schemaText);
+		final ValidationListener listener = new ValidationListener(
+				errors, handlers, cacheKey != null && cached == null);
+		if (cached != null) {
+			// the schema walk succeeded for this exact data, so only the IDs need processing
+			listener.addMetadataWsMessage(cached.getMetadataSelection());
+			try {
+				for (final LocatedIdReference ref: cached.getIdReferences()) {
+					listener.addStringIdRefMessage(ref.getReference(), ref.getLocation());
+				}
+			} catch (JsonTokenValidationException ex) {
+				if (VERBOSE_EXCEPTIONS) {
+					ex.printStackTrace();
+				}
+				mapErrors(errors, ex.getMessage());
+			}
+			return new ValidatedTypedObject(
+					obj,
+					absoluteTypeDefId,
+					errors,
+					listener.metadataSelection,
+					cached.getSchema(),
+					handlers);
+		}
+		JsonTokenValidationSchema schema = cache == null ?
+				null : cache.getSchema(absoluteTypeDefId);
+		if (schema == null) {
+			schema = JsonTokenValidationSchema.parseJsonSchema(
+					typeProvider.getTypeJsonSchema(absoluteTypeDefId));
+			if (cache != null) {
+				cache.putSchema(absoluteTypeDefId, schema);
+			}
+		}
 		
-		// these must be arrays to get the inner class def override to work
-		final JsonNode [] metadataSelection = new JsonNode[] {null};
+		boolean completed = false;
 		try {
 			if (!schema.getOriginalType().equals("kidl-structure"))
 				throw new JsonTokenValidationException(
 						"Data of type other than structure couldn't be stored in workspace");
 			JsonTokenStream jts = obj.getPlacedStream();
 			try {
-				schema.checkJsonData(jts, new JsonTokenValidationListener() {
-					int errorCount = 0;
-					@Override
-					public void addError(String message) throws JsonTokenValidationException {
-						errorCount++;
-						if (errorCount < maxErrorCount) {
-							mapErrors(errors, message);
-						} else {
-							throw new JsonTokenValidationException(message);
-						}
-					}
-
-					@Override
-					public void addStringIdRefMessage(
-							final IdReference<String> ref,
-							final JsonDocumentLocation loc)
-							throws TooManyIdsException,
-							JsonTokenValidationException {
-						if (handlers.hasHandler(ref.getType())) {
-							try {
-								handlers.addStringId(ref);
-							} catch (IdParseException e) {
-								addError(String.format(
-										"Unparseable id %s of type %s: %s at %s",
-										e.getId(),
-										e.getIdType().getType(),
-										e.getMessage(),
-										loc.getFullLocationAsString()));
-							} catch (IdReferenceException e) {
-								addError(String.format(
-										"Invalid id %s of type %s: %s at %s",
-										e.getId(),
-										e.getIdType().getType(),
-										e.getMessage(),
-										loc.getFullLocationAsString()));
-							} catch (IdReferenceHandlerException e) {
-								addError(String.format(
-										"Id handling error for id type %s: %s at %s",
-										e.getIdType().getType(),
-										e.getMessage(),
-										loc.getFullLocationAsString()));
-							}
-						}
-					}
-
-//					@Override
-//					public void addLongIdRefMessage(IdReference<Long> ref)
-//							throws TooManyIdsException,
-//							IdReferenceHandlerException {
-//						if (handlers.hasHandler(ref.getType())) {
-//							handlers.addLongId(ref);
-//						}
-//					}
-
-					@Override
-					public void addMetadataWsMessage(JsonNode selection) {
-						metadataSelection[0] = selection;
-					}
-				});
+				schema.checkJsonData(jts, listener);
+				completed = true;
 			} finally {
 				try { jts.close(); } catch (Exception ignore) {}
 			}
@@ -267,16 +272,106 @@ public class TypedObjectValidator {
 				throw iae;
 			}
 		}
+		if (completed && cacheKey != null && !listener.schemaErrors) {
+			cache.put(cacheKey, new ValidationResult(
+					schema, listener.metadataSelection, listener.idReferences));
+		}
 
 		return new ValidatedTypedObject(
 									obj,
 									absoluteTypeDefId,
 									errors, 
-									metadataSelection[0],
+									listener.metadataSelection,
 									schema,
 									handlers);
 	}
 	
+	private class ValidationListener implements JsonTokenValidationListener {
+		
+		private final List<String> errors;
+		private final IdReferenceHandlerSet<?> handlers;
+		// null if the ID references are not being recorded for the cache
+		private final List<LocatedIdReference> idReferences;
+		private int errorCount = 0;
+		private boolean schemaErrors = false;
+		private JsonNode metadataSelection = null;
+		
+		private ValidationListener(
+				final List<String> errors,
+				final IdReferenceHandlerSet<?> handlers,
+				final boolean recordIds) {
+			this.errors = errors;
+			this.handlers = handlers;
+			this.idReferences = recordIds ? new LinkedList<LocatedIdReference>() : null;
+		}
+		
+		@Override
+		public void addError(String message) throws JsonTokenValidationException {
+			schemaErrors = true;
+			addIdOrSchemaError(message);
+		}
+		
+		private void addIdOrSchemaError(final String message)
+				throws JsonTokenValidationException {
+			errorCount++;
+			if (errorCount < maxErrorCount) {
+				mapErrors(errors, message);
+			} else {
+				throw new JsonTokenValidationException(message);
+			}
+		}
+
+		@Override
+		public void addStringIdRefMessage(
+				final IdReference<String> ref,
+				final JsonDocumentLocation loc)
+				throws TooManyIdsException,
+				JsonTokenValidationException {
+			if (idReferences != null) {
+				idReferences.add(new LocatedIdReference(ref, loc));
+			}
+			if (handlers.hasHandler(ref.getType())) {
+				try {
+					handlers.addStringId(ref);
+				} catch (IdParseException e) {
+					addIdOrSchemaError(String.format(
+							"Unparseable id %s of type %s: %s at %s",
+							e.getId(),
+							e.getIdType().getType(),
+							e.getMessage(),
+							loc.getFullLocationAsString()));
+				} catch (IdReferenceException e) {
+					addIdOrSchemaError(String.format(
+							"Invalid id %s of type %s: %s at %s",
+							e.getId(),
+							e.getIdType().getType(),
+							e.getMessage(),
+							loc.getFullLocationAsString()));
+				} catch (IdReferenceHandlerException e) {
+					addIdOrSchemaError(String.format(
+							"Id handling error for id type %s: %s at %s",
+							e.getIdType().getType(),
+							e.getMessage(),
+							loc.getFullLocationAsString()));
+				}
+			}
+		}
+
+//		@Override
+//		public void addLongIdRefMessage(IdReference<Long> ref)
+//				throws TooManyIdsException,
+//				IdReferenceHandlerException {
+//			if (handlers.hasHandler(ref.getType())) {
+//				handlers.addLongId(ref);
+//			}
+//		}
+
+		@Override
+		public void addMetadataWsMessage(JsonNode selection) {
+			metadataSelection = selection;
+		}
+	}
+	
 	private void mapErrors(final List<String> errors, final String err) {
 		if (ERROR_MAP.containsKey(err)) {
 			errors.add(ERROR_MAP.get(err));
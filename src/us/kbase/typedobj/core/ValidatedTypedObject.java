@@ -13,6 +13,7 @@ import java.io.OutputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,9 +40,10 @@ import com.fasterxml.jackson.databind.JsonNode;
  * be extracted from this object.
  * 
  * Note that before the VTO can be treated as a {@link Restreamable}, the
- * {@link ValidatedTypedObject#sort(UTF8JsonSorterFactory)} or
- * {@link ValidatedTypedObject#sort(UTF8JsonSorterFactory, TempFilesManager)} method must be
- * called.
+ * {@link ValidatedTypedObject#sort(UTF8JsonSorterFactory)},
+ * {@link ValidatedTypedObject#sort(UTF8JsonSorterFactory, TempFilesManager)}, or
+ * {@link ValidatedTypedObject#sort(UTF8JsonSorterFactory, TempFilesManager,
+ * ParallelJsonSorter)} method must be called.
  *
  * @author msneddon
  * @author rsutormin
@@ -84,6 +86,9 @@ public class ValidatedTypedObject implements Restreamable {
 	// whether the object is naturally sorted after relabeling.
 	// Only set to true after relabeling.
 	private boolean naturallySorted = false;
+	// the indexes of the root map entries whose values are not naturally sorted.
+	// Only set after relabeling.
+	private BitSet unsortedRootEntries = null;
 	
 	private byte[] byteCache = null;
 	
@@ -275,6 +280,28 @@ public class ValidatedTypedObject implements Restreamable {
 	 */
 	public void sort(final UTF8JsonSorterFactory fac, final TempFilesManager tfm)
 			throws IOException, KeyDuplicationException, TooManyKeysException {
+		sort(fac, tfm, null);
+	}
+	
+	/** Relabel ids, sort the object if necessary and keep a copy.
+	 * You must call this method prior to calling getInputStream().
+	 * @param fac the sorter factory to use when generating a sorter.
+	 * @param tfm the temporary file manager to use for managing temporary
+	 * files. All data is kept in memory if tfm is null.
+	 * @param parallelSorter a sorter that sorts the values of the root map of the object
+	 * concurrently, skipping values that are already sorted. Only used when tfm is not null.
+	 * If null or the parallel sorter cannot sort the object, the sorter from fac is used.
+	 * @throws IOException if an IO exception occurs.
+	 * @throws TooManyKeysException if the memory required to sort the map is
+	 * too high.
+	 * @throws KeyDuplicationException if there are duplicate keys present
+	 * in a map after relabeling.
+	 */
+	public void sort(
+			final UTF8JsonSorterFactory fac,
+			final TempFilesManager tfm,
+			final ParallelJsonSorter parallelSorter)
+			throws IOException, KeyDuplicationException, TooManyKeysException {
 		if (fac == null) {
 			throw new NullPointerException("Sorter factory cannot be null");
 		}
@@ -319,10 +346,24 @@ public class ValidatedTypedObject implements Restreamable {
 						relabelWsIdReferencesIntoWriter(os);
 					}
 					fileCache = tfm.generateTempFile("sortout", "json");
-					try (final OutputStream os =
-							new FileOutputStream(fileCache)) {
-						fac.getSorter(f1).writeIntoStream(
-								new DigestOutputStream(os, digest));
+					try {
+						boolean sorted = false;
+						if (parallelSorter != null) {
+							try (final OutputStream os =
+									new FileOutputStream(fileCache)) {
+								sorted = parallelSorter.sort(f1, unsortedRootEntries, tfm,
+										new DigestOutputStream(os, digest));
+							}
+						}
+						if (!sorted) {
+							// discard anything written by the parallel sorter
+							digest.reset();
+							try (final OutputStream os =
+									new FileOutputStream(fileCache)) {
+								fac.getSorter(f1).writeIntoStream(
+										new DigestOutputStream(os, digest));
+							}
+						}
 					} catch (IOException | KeyDuplicationException |
 							TooManyKeysException | RuntimeException |
 							Error e) {
@@ -385,6 +426,7 @@ public class ValidatedTypedObject implements Restreamable {
 			tsp = idSubst;
 			new JsonTokenStreamWriter().writeTokens(idSubst, jgen);
 			idSubst.close();
+			unsortedRootEntries = idSubst.getUnsortedRootEntries();
 			return idSubst.isSorted();
 		} finally {
 			if (tsp != null)
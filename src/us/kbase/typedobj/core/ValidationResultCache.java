@@ -0,0 +1,345 @@
+package us.kbase.typedobj.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import us.kbase.common.service.JsonTokenStream;
+import us.kbase.common.service.UObject;
+import us.kbase.typedobj.idref.IdReference;
+
+/** A cache of schema validation results for typed objects. Results are keyed by the absolute
+ * type of the object and a SHA-256 hash of the JSON tokens of the object, so an object that is
+ * identical to a previously validated object of the same type can skip the schema walk.
+ *
+ * Only the results of schema walks that completed without errors are cached. The ID references
+ * found during the walk are stored with their locations so that they can be replayed through an
+ * {@link us.kbase.typedobj.idref.IdReferenceHandlerSet} on a cache hit - ID processing is
+ * never cached, as the result depends on the user and the state of the referenced data.
+ *
+ * The cache is bounded by the size of the strings retained by the cached results, in bytes:
+ * the object hashes, the metadata selections, and the ID references with their locations.
+ * Parsed schemas are shared between all the results for a type, and are retained only while
+ * a result or validated object uses them, so they are not counted.
+ */
+public class ValidationResultCache {
+
+	private static final String HASH_ALGORITHM = "SHA-256";
+	
+	// Java strings use 2 bytes per character
+	private static final int BYTES_PER_CHAR = 2;
+
+	private final long maxSize;
+	private final Cache<Key, ValidationResult> cache;
+	private final Cache<AbsoluteTypeDefId, JsonTokenValidationSchema> schemas =
+			CacheBuilder.newBuilder().weakValues().build();
+
+	/** Create the cache.
+	 * @param maxSize the approximate maximum memory, in bytes, retained by the cached results.
+	 */
+	public ValidationResultCache(final long maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be > 0");
+		}
+		this.maxSize = maxSize;
+		cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxSize)
+				.weigher(new Weigher<Key, ValidationResult>() {
+
+					@Override
+					public int weigh(final Key key, final ValidationResult value) {
+						return getWeight(key, value);
+					}
+				})
+				.recordStats()
+				.build();
+	}
+
+	/** The key for a validation result.
+	 *
+	 */
+	static class Key {
+
+		private final AbsoluteTypeDefId type;
+		private final String hash;
+		private final long size;
+
+		private Key(final AbsoluteTypeDefId type, final String hash, final long size) {
+			this.type = type;
+			this.hash = hash;
+			this.size = size;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((hash == null) ? 0 : hash.hashCode());
+			result = prime * result + (int) (size ^ (size >>> 32));
+			result = prime * result + ((type == null) ? 0 : type.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			if (hash == null) {
+				if (other.hash != null) {
+					return false;
+				}
+			} else if (!hash.equals(other.hash)) {
+				return false;
+			}
+			if (size != other.size) {
+				return false;
+			}
+			if (type == null) {
+				if (other.type != null) {
+					return false;
+				}
+			} else if (!type.equals(other.type)) {
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/** An ID reference and its location in a typed object. */
+	static class LocatedIdReference {
+
+		private final IdReference<String> ref;
+		private final JsonDocumentLocation location;
+
+		/** Create the located reference.
+		 * @param ref the ID reference.
+		 * @param location the location of the reference. The location is copied.
+		 */
+		LocatedIdReference(final IdReference<String> ref, final JsonDocumentLocation location) {
+			this.ref = ref;
+			this.location = new JsonDocumentLocation(location);
+		}
+
+		IdReference<String> getReference() {
+			return ref;
+		}
+
+		JsonDocumentLocation getLocation() {
+			return location;
+		}
+	}
+
+	/** The result of a successful schema walk over a typed object. */
+	static class ValidationResult {
+
+		private final JsonTokenValidationSchema schema;
+		private final JsonNode metadataSelection;
+		private final List<LocatedIdReference> idReferences;
+		private final long weight;
+
+		/** Create the result.
+		 * @param schema the schema used to validate the object. The schema should be shared
+		 * between results for the same type via
+		 * {@link ValidationResultCache#getSchema(AbsoluteTypeDefId)}.
+		 * @param metadataSelection the metadata selection, if any.
+		 * @param idReferences the ID references found in the object.
+		 */
+		ValidationResult(
+				final JsonTokenValidationSchema schema,
+				final JsonNode metadataSelection,
+				final List<LocatedIdReference> idReferences) {
+			this.schema = schema;
+			this.metadataSelection = metadataSelection;
+			this.idReferences = Collections.unmodifiableList(new ArrayList<>(idReferences));
+			long chars = 0;
+			if (metadataSelection != null) {
+				chars += metadataSelection.toString().length();
+			}
+			for (final LocatedIdReference r: this.idReferences) {
+				chars += r.getReference().getId().length() +
+						r.getLocation().getFullLocationAsString().length();
+				for (final String a: r.getReference().getAttributes()) {
+					chars += a.length();
+				}
+			}
+			weight = BYTES_PER_CHAR * chars;
+		}
+
+		JsonTokenValidationSchema getSchema() {
+			return schema;
+		}
+
+		JsonNode getMetadataSelection() {
+			return metadataSelection;
+		}
+
+		List<LocatedIdReference> getIdReferences() {
+			return idReferences;
+		}
+
+		/** Get the size of the strings retained by this result.
+		 * @return the weight of the result in bytes.
+		 */
+		long getWeight() {
+			return weight;
+		}
+	}
+
+	private static int getWeight(final Key key, final ValidationResult result) {
+		return (int) Math.min(BYTES_PER_CHAR * key.hash.length() + result.getWeight(),
+				Integer.MAX_VALUE);
+	}
+
+	/** Generate a cache key for a typed object. The tokens read from the object are hashed
+	 * directly, rather than serializing the object to JSON and hashing the output.
+	 * @param type the absolute type of the object.
+	 * @param obj the object data.
+	 * @return the cache key.
+	 * @throws IOException if an IO error occurs reading the object.
+	 */
+	Key getKey(final AbsoluteTypeDefId type, final UObject obj) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(
+					"There definitely should be a " + HASH_ALGORITHM + " digest", e);
+		}
+		long size = 0;
+		final JsonTokenStream jts = obj.getPlacedStream();
+		try {
+			for (JsonToken t = jts.nextToken(); t != null; t = jts.nextToken()) {
+				digest.update((byte) t.ordinal());
+				size++;
+				if (t == JsonToken.FIELD_NAME || t.isScalarValue()) {
+					// length prefix the text so token boundaries are unambiguous
+					final byte[] text = jts.getText().getBytes(StandardCharsets.UTF_8);
+					digest.update(new byte[] {(byte) (text.length >>> 24),
+							(byte) (text.length >>> 16), (byte) (text.length >>> 8),
+							(byte) text.length});
+					digest.update(text);
+					size += 4 + text.length;
+				}
+			}
+		} finally {
+			jts.close();
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return new Key(type, sb.toString(), size);
+	}
+
+	/** Get the parsed schema for a type, if a cached result or validated object for the type
+	 * still uses it.
+	 * @param type the absolute type.
+	 * @return the schema or null if no schema is available for the type.
+	 */
+	JsonTokenValidationSchema getSchema(final AbsoluteTypeDefId type) {
+		return schemas.getIfPresent(type);
+	}
+
+	/** Store a parsed schema for sharing between the results for a type.
+	 * @param type the absolute type.
+	 * @param schema the schema for the type.
+	 */
+	void putSchema(final AbsoluteTypeDefId type, final JsonTokenValidationSchema schema) {
+		schemas.put(type, schema);
+	}
+
+	/** Get a cached validation result.
+	 * @param key the key for the result.
+	 * @return the result or null if no result is cached for the key.
+	 */
+	ValidationResult get(final Key key) {
+		return cache.getIfPresent(key);
+	}
+
+	/** Cache a validation result.
+	 * @param key the key for the result.
+	 * @param result the result.
+	 */
+	void put(final Key key, final ValidationResult result) {
+		cache.put(key, result);
+	}
+
+	/** Get the approximate maximum memory retained by the cache.
+	 * @return the maximum weight in bytes.
+	 */
+	public long getMaximumSize() {
+		return maxSize;
+	}
+
+	/** Get the approximate number of objects in the cache.
+	 * @return the number of cached objects.
+	 */
+	public long getSize() {
+		return cache.size();
+	}
+
+	/** Get the size of the strings retained by the cached results.
+	 * @return the total weight of the cached results in bytes.
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (final Entry<Key, ValidationResult> e: cache.asMap().entrySet()) {
+			weight += getWeight(e.getKey(), e.getValue());
+		}
+		return weight;
+	}
+
+	/** Get the hit, miss, and eviction statistics for the cache.
+	 * @return the statistics.
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/** Get the number of cache hits since the cache was created.
+	 * @return the number of hits.
+	 */
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	/** Get the number of cache misses since the cache was created.
+	 * @return the number of misses.
+	 */
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	/** Get the number of objects evicted from the cache since the cache was created.
+	 * @return the number of evictions.
+	 */
+	public long getEvictionCount() {
+		return cache.stats().evictionCount();
+	}
+
+	/** Remove all entries from the cache. */
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+}
@@ -39,6 +39,7 @@ public class FileTypeStorage implements TypeStorage {
 	private static final String FUNCREFS_ROOT_FILE = "funcrefs.json";
 	private static final String REQUESTS_ROOT_FILE = "requests.json";
 	private static final String OWNERS_ROOT_FILE = "owners.json";
+	private static final String STAMP_ROOT_FILE = "stamp.txt";
 	private static final Set<String> rootFileNames = Collections.unmodifiableSet(
 			new HashSet<String>(Arrays.asList(TYPEREFS_ROOT_FILE, FUNCREFS_ROOT_FILE,
 					REQUESTS_ROOT_FILE, OWNERS_ROOT_FILE)));
@@ -73,6 +74,10 @@ public class FileTypeStorage implements TypeStorage {
 		return new File(dbFolder, OWNERS_ROOT_FILE);
 	}
 
+	private File getStampFile() {
+		return new File(dbFolder, STAMP_ROOT_FILE);
+	}
+
 	private List<OwnerInfo> loadOwnerInfos(File f) throws TypeStorageException {
 		try {
 			if (!f.exists())
@@ -650,6 +655,23 @@ public class FileTypeStorage implements TypeStorage {
 		writeFile(getModuleReleaseVersionFile(moduleName), "" + version + "\t" + supported);
 	}
 
+	@Override
+	public synchronized long getTypeDBStamp() throws TypeStorageException {
+		File f = getStampFile();
+		if (!f.exists())
+			return 0;
+		try {
+			return Long.parseLong(readFile(f).trim());
+		} catch (NumberFormatException ex) {
+			throw new TypeStorageException(ex);
+		}
+	}
+	
+	@Override
+	public synchronized void incrementTypeDBStamp() throws TypeStorageException {
+		writeFile(getStampFile(), "" + (getTypeDBStamp() + 1));
+	}
+	
 	@Override
 	public boolean getModuleSupportedState(String moduleName)
 			throws TypeStorageException {
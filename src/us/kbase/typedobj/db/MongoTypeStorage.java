@@ -38,6 +38,10 @@ public class MongoTypeStorage implements TypeStorage {
 	public static final String TABLE_MODULE_FUNC_PARSE = "module_func_parse";
 	public static final String TABLE_FUNC_REFS = "func_refs";
 	public static final String TABLE_TYPE_REFS = "type_refs";
+	public static final String TABLE_TYPE_DB_STAMP = "type_db_stamp";
+	
+	private static final DBObject STAMP_QUERY = new BasicDBObject("_id", "stamp");
+	private static final String STAMP_FIELD = "stamp";
 
 	public static final int MAX_REQUESTS_BY_USER = 30;
 	private static final ObjectMapper MAPPER = new ObjectMapper();
@@ -238,6 +242,26 @@ public class MongoTypeStorage implements TypeStorage {
 		}
 	}
 	
+	@Override
+	public long getTypeDBStamp() throws TypeStorageException {
+		try {
+			final DBObject stamp = db.getCollection(TABLE_TYPE_DB_STAMP).findOne(STAMP_QUERY);
+			return stamp == null ? 0 : ((Number) stamp.get(STAMP_FIELD)).longValue();
+		} catch (Exception e) {
+			throw new TypeStorageException(e);
+		}
+	}
+	
+	@Override
+	public void incrementTypeDBStamp() throws TypeStorageException {
+		try {
+			db.getCollection(TABLE_TYPE_DB_STAMP).update(STAMP_QUERY,
+					new BasicDBObject("$inc", new BasicDBObject(STAMP_FIELD, 1L)), true, false);
+		} catch (Exception e) {
+			throw new TypeStorageException(e);
+		}
+	}
+	
 	@Override
 	public boolean getModuleSupportedState(String moduleName)
 			throws TypeStorageException {
@@ -11,6 +11,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -18,12 +19,20 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -77,15 +86,23 @@ public class TypeDefinitionDB {
 	protected ObjectMapper mapper;
 		
 	private final TypeStorage storage;
-	private final Object moduleStateLock = new Object(); 
-	private final Map<String, ModuleState> moduleStates = new HashMap<String, ModuleState>();
-	private final ThreadLocal<Map<String,Integer>> localReadLocks = new ThreadLocal<Map<String,Integer>>(); 
+	private final ConcurrentMap<String, ModuleState> moduleStates =
+			new ConcurrentHashMap<String, ModuleState>();
 	private final LoadingCache<String, ModuleInfo> moduleInfoCache;
 	private final LoadingCache<AbsoluteTypeDefId, String> typeJsonSchemaCache;
+	private final Cache<TypeDefId, AbsoluteTypeDefId> resolvedTypeCache;
+	// incremented whenever resolvedTypeCache is invalidated so that resolutions that were
+	// started before the invalidation are not cached
+	private final AtomicLong resolvedTypeCacheGeneration = new AtomicLong();
+	private final Object typeDBStampLock = new Object();
+	private final long typeDBStampCheckIntervalMS;
+	private volatile long typeDBStamp;
+	private volatile long typeDBStampCheckTime;
 	
 	private static final SemanticVersion defaultVersion = new SemanticVersion(0, 1);
 	private static final SemanticVersion releaseVersion = new SemanticVersion(1, 0);
 	private static final long maxDeadLockWaitTime = 120000;
+	private static final long defaultTypeDBStampCheckIntervalMS = 1000;
 	
 
 	/**
@@ -100,8 +117,34 @@ public class TypeDefinitionDB {
 
 	public TypeDefinitionDB(TypeStorage storage, int cacheSize)
 			throws TypeStorageException {
+		this(storage, cacheSize, defaultTypeDBStampCheckIntervalMS);
+	}
+
+	/**
+	 * Set up a new DB pointing to the specified storage object
+	 * @param storage the type storage.
+	 * @param cacheSize the maximum size of each of the module info, type schema, and type
+	 * resolution caches.
+	 * @param typeDBStampCheckIntervalMS the minimum interval between checks of the type
+	 * storage version stamp. Checking the stamp detects module state changes made by other
+	 * TypeDefinitionDB instances sharing the same storage, and invalidates the module info
+	 * and type resolution caches if required. 0 means check the stamp on every type
+	 * resolution.
+	 * @throws TypeStorageException 
+	 */
+	public TypeDefinitionDB(
+			TypeStorage storage,
+			int cacheSize,
+			long typeDBStampCheckIntervalMS)
+			throws TypeStorageException {
+		if (typeDBStampCheckIntervalMS < 0)
+			throw new IllegalArgumentException("typeDBStampCheckIntervalMS must be >= 0");
 		this.mapper = new ObjectMapper();
 		this.storage = storage;
+		this.typeDBStampCheckIntervalMS = typeDBStampCheckIntervalMS;
+		this.typeDBStamp = storage.getTypeDBStamp();
+		this.typeDBStampCheckTime = System.currentTimeMillis();
+		resolvedTypeCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
 		moduleInfoCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build(
 				new CacheLoader<String, ModuleInfo>() {
 					@Override
@@ -150,37 +193,16 @@ public class TypeDefinitionDB {
 	}
 	
 	private ModuleState getModuleState(String moduleName) {
-		synchronized (moduleStateLock) {
-			ModuleState ret = moduleStates.get(moduleName);
-			if (ret == null) {
-				ret = new ModuleState();
-				moduleStates.put(moduleName, ret);
-			}
-			return ret;
-		}
-	}
-	
-	private int getLocalReadLocks(String moduleName) {
-		Map<String, Integer> map = localReadLocks.get();
-		if (map == null) {
-			map = new HashMap<String, Integer>();
-			localReadLocks.set(map);
+		ModuleState ret = moduleStates.get(moduleName);
+		if (ret == null) {
+			final ModuleState newState = new ModuleState();
+			ret = moduleStates.putIfAbsent(moduleName, newState);
+			if (ret == null)
+				ret = newState;
 		}
-		Integer ret = map.get(moduleName);
-		if (ret == null)
-			return 0;
 		return ret;
 	}
-
-	private void setLocalReadLocks(String moduleName, int locks) {
-		Map<String, Integer> map = localReadLocks.get();
-		if (map == null) {
-			map = new HashMap<String, Integer>();
-			localReadLocks.set(map);
-		}
-		map.put(moduleName, locks);
-	}
-
+	
 	private void requestReadLock(String moduleName) throws NoSuchModuleException, TypeStorageException {
 		if (moduleInfoCache.getIfPresent(moduleName) == null) {
 			if (!storage.checkModuleExist(moduleName))
@@ -190,70 +212,59 @@ public class TypeDefinitionDB {
 	}
 		
 	private void requestReadLockNM(String moduleName) throws TypeStorageException {
-		int lrl = getLocalReadLocks(moduleName);
-		if (lrl == 0) {
-			final ModuleState ms = getModuleState(moduleName);
-			synchronized (ms) {
-				long startTime = System.currentTimeMillis();
-				while (ms.writerCount > 0) {
-					try {
-						ms.wait(10000);
-					} catch (InterruptedException ignore) {}
-					if (System.currentTimeMillis() - startTime > maxDeadLockWaitTime)
-						throw new IllegalStateException("Looks like deadlock");
-				}
-				ms.readerCount++;
-				//new Exception("moduleName=" + moduleName + ", readerCount=" + ms.readerCount).printStackTrace(System.out);
-			}
-		}
-		setLocalReadLocks(moduleName, lrl + 1);
+		// read locks are reentrant, and readers are blocked by waiting writers
+		acquire(getModuleState(moduleName).lock.readLock());
 	}
 	
 	private void releaseReadLock(String moduleName) {
 		final ModuleState ms = getModuleState(moduleName);
-		int lrl = getLocalReadLocks(moduleName);
-		lrl--;
-		setLocalReadLocks(moduleName, lrl);
-		if (lrl == 0) {
-			synchronized (ms) {
-				if (ms.readerCount == 0)
-					throw new IllegalStateException("Can not release empty read lock");
-				ms.readerCount--;
-				//new Exception("moduleName=" + moduleName + ", readerCount=" + ms.readerCount).printStackTrace(System.out);
-				ms.notifyAll();
-			}		
-		}
+		if (ms.lock.getReadHoldCount() == 0)
+			throw new IllegalStateException("Can not release empty read lock");
+		ms.lock.readLock().unlock();
 	}
 	
 	private void requestWriteLock(String moduleName) {
 		final ModuleState ms = getModuleState(moduleName);
-		synchronized (ms) {
-			if (ms.writerCount > 0)
-				throw new IllegalStateException("Concurent changes of module " + moduleName);
-			ms.writerCount++;
-			//new Exception("moduleName=" + moduleName + ", writerCount=" + ms.writerCount).printStackTrace(System.out);
-			long startTime = System.currentTimeMillis();
-			while (ms.readerCount > 0) {
-				try {
-					ms.wait(10000);
-				} catch (InterruptedException ignore) {}
-				if (System.currentTimeMillis() - startTime > maxDeadLockWaitTime) {
-					ms.writerCount--;
-					throw new IllegalStateException("Looks like deadlock");
-				}
-			}
+		if (!ms.writerPending.compareAndSet(false, true))
+			throw new IllegalStateException("Concurent changes of module " + moduleName);
+		try {
+			acquire(ms.lock.writeLock());
+		} catch (RuntimeException e) {
+			ms.writerPending.set(false);
+			throw e;
 		}
 	}
 	
 	private void releaseWriteLock(String moduleName) {
 		final ModuleState ms = getModuleState(moduleName);
-		synchronized (ms) {
-			if (ms.writerCount == 0)
-				throw new IllegalStateException("Can not release empty write lock");
-			ms.writerCount--;
-			//new Exception("moduleName=" + moduleName + ", writerCount=" + ms.writerCount).printStackTrace(System.out);
-			ms.notifyAll();
-		}		
+		if (!ms.lock.isWriteLockedByCurrentThread())
+			throw new IllegalStateException("Can not release empty write lock");
+		ms.lock.writeLock().unlock();
+		ms.writerPending.set(false);
+	}
+	
+	private void acquire(final Lock lock) {
+		final boolean acquired;
+		try {
+			acquired = lock.tryLock(maxDeadLockWaitTime, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for module lock", e);
+		}
+		if (!acquired)
+			throw new IllegalStateException("Looks like deadlock");
+	}
+	
+	/* Get a type's json schema from the cache without locking the module, if the type ID is
+	 * absolute and the schema is cached. The schema of an absolute type version never changes
+	 * once saved and cache entries are never invalidated, so module writers can't affect the
+	 * result. Returns null otherwise, in which case the caller must fall back to a locked read.
+	 */
+	private String getCachedJsonSchema(final TypeDefId typeDefId) {
+		if (!typeDefId.isAbsolute() || typeDefId.getMd5() != null)
+			return null;
+		return typeJsonSchemaCache.getIfPresent(new AbsoluteTypeDefId(
+				typeDefId.getType(), typeDefId.getMajorVersion(), typeDefId.getMinorVersion()));
 	}
 	
 	/**
@@ -269,6 +280,9 @@ public class TypeDefinitionDB {
 	 */
 	public String getJsonSchemaDocument(final TypeDefId typeDefId)
 			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException {
+		final String cached = getCachedJsonSchema(typeDefId);
+		if (cached != null)
+			return cached;
 		String moduleName = typeDefId.getType().getModule();
 		requestReadLock(moduleName);
 		try {
@@ -403,13 +417,60 @@ public class TypeDefinitionDB {
 	 */
 	public AbsoluteTypeDefId resolveTypeDefId(final TypeDefId typeDefId) 
 			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException {
+		if (getCachedJsonSchema(typeDefId) != null)
+			return new AbsoluteTypeDefId(typeDefId.getType(), typeDefId.getMajorVersion(),
+					typeDefId.getMinorVersion());
+		// md5 based IDs may resolve to multiple versions, so don't cache them
+		final boolean cacheable = typeDefId.getMd5() == null;
+		long generation = 0;
+		if (cacheable) {
+			checkTypeDBStamp();
+			generation = resolvedTypeCacheGeneration.get();
+			final AbsoluteTypeDefId cached = resolvedTypeCache.getIfPresent(typeDefId);
+			if (cached != null)
+				return cached;
+		}
 		String moduleName = typeDefId.getType().getModule();
+		final AbsoluteTypeDefId ret;
 		requestReadLock(moduleName);
 		try {
-			return resolveTypeDefIdNL(typeDefId, false);
+			ret = resolveTypeDefIdNL(typeDefId, false);
 		} finally {
 			releaseReadLock(moduleName);
 		}
+		if (cacheable) {
+			resolvedTypeCache.put(typeDefId, ret);
+			// the cache may have been invalidated while the type was being resolved
+			if (generation != resolvedTypeCacheGeneration.get())
+				resolvedTypeCache.invalidate(typeDefId);
+		}
+		return ret;
+	}
+	
+	/* Check whether the type storage version stamp has changed, at most once per check
+	 * interval. If so, another instance has changed the state of one or more modules, and
+	 * the module info and type resolution caches are invalidated.
+	 */
+	private void checkTypeDBStamp() throws TypeStorageException {
+		if (System.currentTimeMillis() - typeDBStampCheckTime < typeDBStampCheckIntervalMS)
+			return;
+		synchronized (typeDBStampLock) {
+			final long now = System.currentTimeMillis();
+			if (now - typeDBStampCheckTime < typeDBStampCheckIntervalMS)
+				return;
+			final long stamp = storage.getTypeDBStamp();
+			typeDBStampCheckTime = now;
+			if (stamp != typeDBStamp) {
+				typeDBStamp = stamp;
+				invalidateResolvedTypeCache();
+				moduleInfoCache.invalidateAll();
+			}
+		}
+	}
+	
+	private void invalidateResolvedTypeCache() {
+		resolvedTypeCacheGeneration.incrementAndGet();
+		resolvedTypeCache.invalidateAll();
 	}
 
 	private AbsoluteTypeDefId resolveTypeDefIdNL(final TypeDefId typeDefId, boolean withUnreleased) 
@@ -1037,6 +1098,7 @@ public class TypeDefinitionDB {
 				allVers.remove(allVers.last());
 			}
 			storage.removeModuleVersionAndSwitchIfNotCurrent(moduleName, versionTime, allVers.last());
+			removeModuleInfoFromCache(moduleName);
 		} catch (Throwable ignore) {
 			ignore.printStackTrace();
 		}
@@ -1096,6 +1158,7 @@ public class TypeDefinitionDB {
 	public void cleanupCaches() {
 		moduleInfoCache.cleanUp();
 		typeJsonSchemaCache.cleanUp();
+		invalidateResolvedTypeCache();
 	}
 	
 	private ModuleInfo copyOf(ModuleInfo input) throws TypeStorageException {
@@ -2498,13 +2561,23 @@ public class TypeDefinitionDB {
 		requestWriteLock(moduleName);
 		try {
 			storage.changeModuleSupportedState(moduleName, true);
+			removeModuleInfoFromCache(moduleName);
 		} finally {
 			releaseWriteLock(moduleName);
 		}
 	}
 	
-	private void removeModuleInfoFromCache(String moduleName) {
-		moduleInfoCache.invalidate(moduleName);		
+	/* Called whenever the state of a module changes. Other instances sharing the storage are
+	 * notified via the type storage stamp.
+	 */
+	private void removeModuleInfoFromCache(String moduleName) throws TypeStorageException {
+		moduleInfoCache.invalidate(moduleName);
+		resolvedTypeCacheGeneration.incrementAndGet();
+		final Iterator<TypeDefId> types = resolvedTypeCache.asMap().keySet().iterator();
+		while (types.hasNext())
+			if (types.next().getType().getModule().equals(moduleName))
+				types.remove();
+		storage.incrementTypeDBStamp();
 	}
 	
 	public TypeDetailedInfo getTypeDetailedInfo(TypeDefId typeDef, boolean markLinksInSpec, String userId) 
@@ -2784,7 +2857,9 @@ public class TypeDefinitionDB {
 	}
 	
 	private static class ModuleState {
-		int readerCount = 0;
-		int writerCount = 0;
+		// nested read locks are common, so a reentrant lock is used
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		// only one writer at a time is allowed, other writers fail rather than wait
+		final AtomicBoolean writerPending = new AtomicBoolean(false);
 	}
 }
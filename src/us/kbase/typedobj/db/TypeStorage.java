@@ -67,6 +67,14 @@ public interface TypeStorage {
 
 	public boolean getModuleSupportedState(String moduleName) throws TypeStorageException;
 
+	/** Get the current version stamp of the type database. The stamp changes whenever the
+	 * state of a module changes, and allows type database instances sharing the same storage
+	 * to detect when their caches are stale.
+	 * @return the stamp, or 0 if the stamp has never been incremented.
+	 * @throws TypeStorageException if the stamp could not be read.
+	 */
+	public long getTypeDBStamp() throws TypeStorageException;
+
 	///////////////////////////////////// CHANGES //////////////////////////////////////////
 	
 	public void writeTypeSchemaRecord(String moduleName, String typeName, String version, long moduleVersion, String document, String md5) throws TypeStorageException;
@@ -96,6 +104,11 @@ public interface TypeStorage {
 	
 	public void changeModuleSupportedState(String moduleName, boolean supported) throws TypeStorageException;
 	
+	/** Increment the version stamp of the type database.
+	 * @throws TypeStorageException if the stamp could not be updated.
+	 */
+	public void incrementTypeDBStamp() throws TypeStorageException;
+	
 	////////////////////////////////////// TESTING ///////////////////////////////////////////
 	
 	public void removeAllData() throws TypeStorageException;
@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -93,6 +94,7 @@ public class TypeRegisteringTest {
 					"testDeps",
 					"testOwnership",
 					"testEmpty",
+					"testResolvedTypeCache",
 			};
 			for (String method : methods) {
 				System.out.println("o-------------------------------------------------------");
@@ -924,6 +926,59 @@ public class TypeRegisteringTest {
 				.getSpecDef(), is("funcdef foo() returns () authentication none;"));
 	}
 	
+	@Test
+	public void testResolvedTypeCache() throws Exception {
+		String user = "Owner";
+		Map<String, List<String>> modules = new LinkedHashMap<String, List<String>>();
+		modules.put("Taxonomy", Arrays.asList("taxon"));
+		modules.put("Sequence", Arrays.asList("sequence_id", "sequence_pos"));
+		modules.put("Annotation", Arrays.asList("genome", "gene"));
+		modules.put("Regulation", Arrays.asList("regulator", "binding_site"));
+		for (String module : modules.keySet()) {
+			initModule(module, user);
+			db.registerModule(loadSpec("simple", module), modules.get(module), user);
+			releaseModule(module, user);
+		}
+		TypeDefinitionDB db2 = new TypeDefinitionDB(storage, 100, 0);
+		TypeDefinitionDB db3 = new TypeDefinitionDB(storage, 100, 1000000);
+		TypeDefId type = new TypeDefId("Regulation.binding_site");
+		AbsoluteTypeDefId v1 = new AbsoluteTypeDefId(new TypeDefName("Regulation.binding_site"), 1, 0);
+		AbsoluteTypeDefId v2 = new AbsoluteTypeDefId(new TypeDefName("Regulation.binding_site"), 2, 0);
+		for (TypeDefinitionDB d : Arrays.asList(db, db2, db3))
+			assertThat(d.resolveTypeDefId(type), is(v1));
+		
+		final List<String> calls = new ArrayList<String>();
+		storage.addTypeStorageListener(new TypeStorageListener() {
+			@Override
+			public void onMethodStart(String method, Object[] params) {
+				calls.add(method);
+			}
+			@Override
+			public void onMethodEnd(String method, Object[] params, Object ret) {}
+		});
+		assertThat(db2.resolveTypeDefId(type), is(v1));
+		assertThat(calls, is(Arrays.asList("getTypeDBStamp")));
+		calls.clear();
+		assertThat(db3.resolveTypeDefId(type), is(v1));
+		assertThat(calls, is(Collections.<String>emptyList()));
+		storage.removeAllTypeStorageListeners();
+		
+		db.registerModule(loadSpec("simple", "Regulation", "2"), Arrays.asList("new_regulator"),
+				Collections.<String>emptyList(), user);
+		releaseModule("Regulation", user);
+		assertThat(db.resolveTypeDefId(type), is(v2));
+		assertThat(db2.resolveTypeDefId(type), is(v2));
+		// stamp check interval hasn't elapsed
+		assertThat(db3.resolveTypeDefId(type), is(v1));
+		
+		try {
+			new TypeDefinitionDB(storage, 100, -1);
+			fail("expected exception");
+		} catch (IllegalArgumentException ex) {
+			assertThat(ex.getMessage(), is("typeDBStampCheckIntervalMS must be >= 0"));
+		}
+	}
+	
 	private Map<String, Long> restrict(Object... params) {
 		Map<String, Long> restrictions = new HashMap<String, Long>();
 		for (int i = 0; i < params.length / 2; i++) {
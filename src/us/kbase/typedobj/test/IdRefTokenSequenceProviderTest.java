@@ -5,6 +5,7 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -138,7 +139,48 @@ public class IdRefTokenSequenceProviderTest {
 		checkSort(data, true);
 	}
 
+	@Test
+	public void unsortedRootEntries() throws Exception {
+		final Map<String, String> unsorted = new LinkedHashMap<>();
+		unsorted.put("first", "a");
+		unsorted.put("third", "a");
+		unsorted.put("second", "a");
+		
+		final Map<String, String> sorted = new LinkedHashMap<>();
+		sorted.put("first", "a");
+		sorted.put("second", "a");
+		
+		final Map<String, Object> data = new LinkedHashMap<>();
+		data.put("zee", unsorted);
+		data.put("first", sorted);
+		data.put("second", Arrays.asList("foo", unsorted));
+		data.put("third", "a");
+		data.put("zzz", Arrays.asList(sorted, sorted));
+		
+		final BitSet expected = new BitSet();
+		expected.set(0);
+		expected.set(2);
+		checkSort(data, false, expected);
+	}
+	
+	@Test
+	public void unsortedRootKeysOnly() throws Exception {
+		final Map<String, Object> data = new LinkedHashMap<>();
+		data.put("second", "a");
+		data.put("first", "a");
+		
+		checkSort(data, false, new BitSet());
+	}
+
 	private void checkSort(final Map<String, Object> data, final boolean sorted) throws Exception {
+		checkSort(data, sorted, null);
+	}
+	
+	private void checkSort(
+			final Map<String, Object> data,
+			final boolean sorted,
+			final BitSet unsortedRootEntries)
+			throws Exception {
 		final IdRefTokenSequenceProvider p = new IdRefTokenSequenceProvider(
 				new JsonTokenStream(new ObjectMapper().writeValueAsString(data)),
 				JsonTokenValidationSchema.parseJsonSchema(JsonSchemas.EMPTY_STRUCT),
@@ -147,6 +189,13 @@ public class IdRefTokenSequenceProviderTest {
 		new JsonTokenStreamWriter().writeTokens(p, mock(JsonGenerator.class));
 		
 		assertThat("incorrect sorted", p.isSorted(), is(sorted));
+		if (sorted) {
+			assertThat("incorrect unsorted entries", p.getUnsortedRootEntries(), is(new BitSet()));
+		}
+		if (unsortedRootEntries != null) {
+			assertThat("incorrect unsorted entries", p.getUnsortedRootEntries(),
+					is(unsortedRootEntries));
+		}
 	}
 
 }
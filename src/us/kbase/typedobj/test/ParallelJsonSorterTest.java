@@ -0,0 +1,272 @@
+package us.kbase.typedobj.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.ParallelJsonSorter;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+
+public class ParallelJsonSorterTest {
+
+	private static final TypeDefId TYPE = new TypeDefId("Mod.Type");
+	private static final AbsoluteTypeDefId ABS_TYPE = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 1, 0);
+	private static final UTF8JsonSorterFactory SORT_FAC = new UTF8JsonSorterFactory(10000000);
+
+	private static Path tempdir;
+	private static TempFilesManager tfm;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		final Path temppath = Paths.get(TestCommon.getTempDir());
+		Files.createDirectories(temppath);
+		tempdir = Files.createTempDirectory(temppath, "ParallelJsonSorterTest");
+		tfm = new TempFilesManager(tempdir.toFile());
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception {
+		FileUtils.deleteDirectory(tempdir.toFile());
+	}
+
+	private ValidatedTypedObject validate(final Object data) throws Exception {
+		final TypeProvider tp = mock(TypeProvider.class);
+		when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+		when(tp.getTypeJsonSchema(ABS_TYPE)).thenReturn(JsonSchemas.EMPTY_STRUCT);
+		final IdReferenceHandlerSet<String> handlers = IdReferenceHandlerSetFactoryBuilder
+				.getBuilder(100).build().getFactory(null).createHandlers(String.class);
+		final ValidatedTypedObject vto = new TypedObjectValidator(tp).validate(
+				new ObjectMapper().writeValueAsString(data), TYPE, handlers);
+		assertThat("incorrect valid", vto.isInstanceValid(), is(true));
+		handlers.processIDs();
+		return vto;
+	}
+
+	private static class Sorted {
+		private final String data;
+		private final MD5 md5;
+
+		private Sorted(final ValidatedTypedObject vto) throws Exception {
+			try (final InputStream is = vto.getInputStream()) {
+				data = IOUtils.toString(is, "UTF-8");
+			}
+			md5 = vto.getMD5();
+			vto.destroyCachedResources();
+		}
+	}
+
+	private Object randomValue(final Random r, final int depth) {
+		final int type = depth > 3 ? 2 + r.nextInt(2) : r.nextInt(4);
+		if (type == 0) {
+			final Map<String, Object> m = new LinkedHashMap<>();
+			final int size = r.nextInt(10);
+			for (int i = 0; i < size; i++) {
+				m.put("k" + r.nextInt(1000) + "\u00e9\"\\", randomValue(r, depth + 1));
+			}
+			return m;
+		} else if (type == 1) {
+			final List<Object> l = new ArrayList<>();
+			final int size = r.nextInt(5);
+			for (int i = 0; i < size; i++) {
+				l.add(randomValue(r, depth + 1));
+			}
+			return l;
+		} else if (type == 2) {
+			return "s}]\"{[," + r.nextInt(100);
+		} else {
+			return r.nextInt();
+		}
+	}
+
+	@Test
+	public void sortMatchesStandardSort() throws Exception {
+		final Random r = new Random(42);
+		final Map<String, Object> data = new LinkedHashMap<>();
+		for (int i = 0; i < 500; i++) {
+			data.put("key" + r.nextInt(100000), randomValue(r, 0));
+		}
+		data.put("empty", new LinkedHashMap<String, Object>());
+		data.put("emptylist", new ArrayList<Object>());
+		data.put("null", null);
+
+		final ValidatedTypedObject vto = validate(data);
+		vto.sort(SORT_FAC, tfm);
+		final Sorted expected = new Sorted(vto);
+
+		for (final int threads: new int[] {1, 3, 8}) {
+			vto.sort(SORT_FAC, tfm, new ParallelJsonSorter(threads, threads * 100000));
+			final Sorted got = new Sorted(vto);
+			assertThat("incorrect data", got.data, is(expected.data));
+			assertThat("incorrect md5", got.md5, is(expected.md5));
+		}
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+	}
+
+	@Test
+	public void sortConcurrentlyWithSharedSorter() throws Exception {
+		/* the values are sorted in memory, and the memory limit allows fewer values to be
+		 * held than the sort ahead limit.
+		 */
+		final Map<String, Object> data = new LinkedHashMap<>();
+		for (int i = 50; i > 0; i--) {
+			final Map<String, Object> value = new LinkedHashMap<>();
+			for (int j = 300; j > 0; j--) {
+				value.put("k" + j, j);
+			}
+			data.put("key" + i, value);
+		}
+		final ValidatedTypedObject vto = validate(data);
+		vto.sort(SORT_FAC, tfm);
+		final String expected = new Sorted(vto).data;
+		final String json = new ObjectMapper().writeValueAsString(data);
+
+		final ParallelJsonSorter ps = new ParallelJsonSorter(4, 100000);
+		final ExecutorService exe = Executors.newFixedThreadPool(3);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				results.add(exe.submit(new Callable<String>() {
+
+					@Override
+					public String call() throws Exception {
+						return sort(ps, json, null, true);
+					}
+				}));
+			}
+			for (final Future<String> f: results) {
+				assertThat("incorrect sort", f.get(), is(expected));
+			}
+		} finally {
+			exe.shutdown();
+		}
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+	}
+
+	@Test
+	public void sortFallback() throws Exception {
+		// a single large value can't be sorted with 1/8 of the memory
+		final Map<String, Object> big = new LinkedHashMap<>();
+		for (int i = 1000; i > 0; i--) {
+			big.put("key" + i, i);
+		}
+		final Map<String, Object> data = new LinkedHashMap<>();
+		data.put("b", big);
+		data.put("a", 1);
+
+		final ValidatedTypedObject vto = validate(data);
+		vto.sort(SORT_FAC, tfm);
+		final Sorted expected = new Sorted(vto);
+
+		vto.sort(SORT_FAC, tfm, new ParallelJsonSorter(8, 100000));
+		final Sorted got = new Sorted(vto);
+		assertThat("incorrect data", got.data, is(expected.data));
+		assertThat("incorrect md5", got.md5, is(expected.md5));
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+	}
+
+	private String sort(
+			final ParallelJsonSorter ps,
+			final String json,
+			final BitSet unsorted,
+			final boolean expectedSorted)
+			throws Exception {
+		final File f = tfm.generateTempFile("pstest", "json");
+		try {
+			FileUtils.writeStringToFile(f, json, StandardCharsets.UTF_8);
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			assertThat("incorrect sorted", ps.sort(f, unsorted, tfm, baos), is(expectedSorted));
+			return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void sortSkipsSortedValues() throws Exception {
+		final ParallelJsonSorter ps = new ParallelJsonSorter(2, 100000);
+		final String json = "{\"z\":{\"b\":1,\"a\":2},\"y\":[{\"d\":1,\"c\":2}],\"x\":\"s\"}";
+
+		// entry 1 is not marked as unsorted, and so is copied as is
+		final BitSet unsorted = new BitSet();
+		unsorted.set(0);
+		assertThat("incorrect sort", sort(ps, json, unsorted, true),
+				is("{\"x\":\"s\",\"y\":[{\"d\":1,\"c\":2}],\"z\":{\"a\":2,\"b\":1}}"));
+
+		assertThat("incorrect sort", sort(ps, json, null, true),
+				is("{\"x\":\"s\",\"y\":[{\"c\":2,\"d\":1}],\"z\":{\"a\":2,\"b\":1}}"));
+
+		assertThat("incorrect sort", sort(ps, "{}", null, true), is("{}"));
+	}
+
+	@Test
+	public void sortFail() throws Exception {
+		final ParallelJsonSorter ps = new ParallelJsonSorter(2, 100000);
+		sort(ps, "[{\"b\":1,\"a\":2}]", null, false);
+		sort(ps, "{\"b\":1,\"a\":2,\"b\":3}", null, false);
+		sort(ps, "{\"b\":{\"d\":1,\"d\":2},\"a\":2}", null, false);
+		sort(new ParallelJsonSorter(1, 100), "{\"b\":1,\"a\":2}", null, false);
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0, 1, new IllegalArgumentException("threads must be > 0"));
+		failConstruct(2, 1, new IllegalArgumentException("maxMemoryUsage must be >= threads"));
+	}
+
+	private void failConstruct(final int threads, final int maxMem, final Exception expected) {
+		try {
+			new ParallelJsonSorter(threads, maxMem);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void getters() throws Exception {
+		final ParallelJsonSorter ps = new ParallelJsonSorter(4, 1000);
+		assertThat("incorrect threads", ps.getThreads(), is(4));
+		assertThat("incorrect memory", ps.getMaxMemoryUsage(), is(1000));
+	}
+}
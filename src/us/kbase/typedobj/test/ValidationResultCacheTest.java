@@ -0,0 +1,256 @@
+package us.kbase.typedobj.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
+import us.kbase.common.test.MapBuilder;
+import us.kbase.common.test.TestCommon;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.core.ValidationResultCache;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+import us.kbase.typedobj.idref.IdReferenceType;
+
+public class ValidationResultCacheTest {
+
+	private static final TypeDefId TYPE = new TypeDefId("Mod.Type");
+	private static final AbsoluteTypeDefId ABS_TYPE = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 1, 0);
+	private static final IdReferenceType WS_TYPE = new IdReferenceType("ws");
+	private static final long CACHE_SIZE = 1000000;
+
+	private static final String ID_SCHEMA;
+	static {
+		try {
+			ID_SCHEMA = new ObjectMapper().writeValueAsString(
+					MapBuilder.<String, Object>newHashMap()
+							.with("id", "Type")
+							.with("type", "object")
+							.with("original-type", "kidl-structure")
+							.with("properties", ImmutableMap.of("ref", ImmutableMap.of(
+									"type", "string",
+									"original-type", "kidl-string",
+									"id-reference", ImmutableMap.of("id-type", "ws"))))
+							.with("required", Arrays.asList("ref"))
+							.with("additionalProperties", true)
+							.build());
+		} catch (Exception e) {
+			throw new RuntimeException("whoops: " + e.getMessage(), e);
+		}
+	}
+
+	private class TestMocks {
+		private final TypeProvider tp;
+		private final TypedObjectValidator validator;
+		private final ValidationResultCache cache;
+		private final Map<String, Integer> foundIDs = new HashMap<>();
+		private final IdReferenceHandlerSetFactoryBuilder fac;
+
+		private TestMocks(final String schema, final long cacheSize) throws Exception {
+			tp = mock(TypeProvider.class);
+			when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+			when(tp.getTypeJsonSchema(ABS_TYPE)).thenReturn(schema);
+			cache = new ValidationResultCache(cacheSize);
+			validator = new TypedObjectValidator(tp, cache);
+			fac = IdReferenceHandlerSetFactoryBuilder.getBuilder(100)
+					.withFactory(new DummyIdHandlerFactory(
+							WS_TYPE, ImmutableMap.of("foo/bar", "1/2/3"), foundIDs))
+					.build();
+		}
+
+		private IdReferenceHandlerSet<String> getHandlers() {
+			return fac.getFactory(null).createHandlers(String.class).associateObject("obj");
+		}
+	}
+
+	private void assertCacheStats(
+			final ValidationResultCache cache,
+			final long size,
+			final long hits,
+			final long misses) {
+		assertThat("incorrect size", cache.getSize(), is(size));
+		assertThat("incorrect hits", cache.getHitCount(), is(hits));
+		assertThat("incorrect misses", cache.getMissCount(), is(misses));
+		assertThat("incorrect hits", cache.getStats().hitCount(), is(hits));
+		assertThat("incorrect misses", cache.getStats().missCount(), is(misses));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		for (final long size: Arrays.asList(0L, -1L)) {
+			try {
+				new ValidationResultCache(size);
+				fail("expected exception");
+			} catch (Exception got) {
+				TestCommon.assertExceptionCorrect(got,
+						new IllegalArgumentException("maxSize must be > 0"));
+			}
+		}
+	}
+
+	@Test
+	public void noCache() throws Exception {
+		final TypeProvider tp = mock(TypeProvider.class);
+		when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+		when(tp.getTypeJsonSchema(ABS_TYPE)).thenReturn(JsonSchemas.EMPTY_STRUCT);
+		final TypedObjectValidator validator = new TypedObjectValidator(tp);
+
+		assertThat("incorrect cache", validator.getValidationResultCache() == null, is(true));
+
+		final IdReferenceHandlerSet<String> handlers = IdReferenceHandlerSetFactoryBuilder
+				.getBuilder(100).build().getFactory(null).createHandlers(String.class);
+		validator.validate("{\"a\": 1}", TYPE, handlers);
+		validator.validate("{\"a\": 1}", TYPE, handlers);
+
+		verify(tp, times(2)).getTypeJsonSchema(ABS_TYPE);
+	}
+
+	@Test
+	public void cacheHit() throws Exception {
+		final TestMocks m = new TestMocks(JsonSchemas.EMPTY_STRUCT, CACHE_SIZE);
+
+		assertThat("incorrect cache", m.validator.getValidationResultCache(), is(m.cache));
+		assertThat("incorrect max size", m.cache.getMaximumSize(), is(CACHE_SIZE));
+
+		final ValidatedTypedObject vto1 = m.validator.validate(
+				"{\"a\": 1}", TYPE, m.getHandlers());
+		assertThat("incorrect valid", vto1.isInstanceValid(), is(true));
+		assertCacheStats(m.cache, 1, 0, 1);
+
+		final ValidatedTypedObject vto2 = m.validator.validate(
+				"{\"a\": 1}", TYPE, m.getHandlers());
+		assertThat("incorrect valid", vto2.isInstanceValid(), is(true));
+		assertThat("incorrect type", vto2.getValidationTypeDefId(), is(ABS_TYPE));
+		assertCacheStats(m.cache, 1, 1, 1);
+
+		m.validator.validate("{\"a\": 2}", TYPE, m.getHandlers());
+		assertCacheStats(m.cache, 2, 1, 2);
+
+		// the parsed schema is shared with the cached result, so isn't fetched again
+		verify(m.tp, times(1)).getTypeJsonSchema(ABS_TYPE);
+
+		m.cache.clear();
+		assertCacheStats(m.cache, 0, 1, 2);
+	}
+
+	@Test
+	public void invalidObjectNotCached() throws Exception {
+		final TestMocks m = new TestMocks(JsonSchemas.EMPTY_STRUCT, CACHE_SIZE);
+		final String data = "{\"dontusethiskeyunlessyoureallywant\": \"foo\"}";
+
+		final ValidatedTypedObject vto1 = m.validator.validate(data, TYPE, m.getHandlers());
+		assertThat("incorrect valid", vto1.isInstanceValid(), is(false));
+
+		final ValidatedTypedObject vto2 = m.validator.validate(data, TYPE, m.getHandlers());
+		assertThat("incorrect valid", vto2.isInstanceValid(), is(false));
+		assertThat("incorrect errors", vto2.getErrorMessages(), is(vto1.getErrorMessages()));
+
+		assertCacheStats(m.cache, 0, 0, 2);
+		// the first validated object still uses the schema, so it's shared
+		verify(m.tp, times(1)).getTypeJsonSchema(ABS_TYPE);
+	}
+
+	@Test
+	public void cacheHitProcessesIDs() throws Exception {
+		final TestMocks m = new TestMocks(ID_SCHEMA, CACHE_SIZE);
+		final String data = "{\"ref\": \"foo/bar\", \"z\": 1, \"b\": 2}";
+
+		m.validator.validate(data, TYPE, m.getHandlers());
+		final IdReferenceHandlerSet<String> handlers = m.getHandlers();
+		final ValidatedTypedObject vto = m.validator.validate(data, TYPE, handlers);
+		assertCacheStats(m.cache, 1, 1, 1);
+		verify(m.tp, times(1)).getTypeJsonSchema(ABS_TYPE);
+
+		assertThat("incorrect valid", vto.isInstanceValid(), is(true));
+		assertThat("incorrect id count", handlers.size(), is(1));
+		handlers.processIDs();
+		assertThat("incorrect found ids", m.foundIDs, is(ImmutableMap.of("foo/bar", 1)));
+
+		vto.sort(new UTF8JsonSorterFactory(100000));
+		try (final InputStream is = vto.getInputStream()) {
+			assertThat("incorrect data", IOUtils.toString(is, "UTF-8"),
+					is("{\"b\":2,\"ref\":\"1/2/3\",\"z\":1}"));
+		}
+	}
+
+	@Test
+	public void cacheHitInvalidID() throws Exception {
+		final TestMocks m = new TestMocks(ID_SCHEMA, CACHE_SIZE);
+
+		m.validator.validate("{\"ref\": \"   \"}", TYPE, m.getHandlers());
+		final ValidatedTypedObject vto = m.validator.validate(
+				"{\"ref\": \"   \"}", TYPE, m.getHandlers());
+		assertCacheStats(m.cache, 1, 1, 1);
+
+		assertThat("incorrect valid", vto.isInstanceValid(), is(false));
+		assertThat("incorrect errors", vto.getErrorMessages(), is(Arrays.asList(
+				"Unparseable id     of type ws: IDs may not be null or the empty " +
+				"string at /ref")));
+	}
+
+	@Test
+	public void weight() throws Exception {
+		final TestMocks m = new TestMocks(JsonSchemas.EMPTY_STRUCT, CACHE_SIZE);
+		m.validator.validate("{\"a\": 1}", TYPE, m.getHandlers());
+		final long noIDs = m.cache.getWeight();
+
+		final TestMocks mid = new TestMocks(ID_SCHEMA, CACHE_SIZE);
+		mid.validator.validate("{\"ref\": \"foo/bar\"}", TYPE, mid.getHandlers());
+		final long withID = mid.cache.getWeight();
+
+		// the shared schema doesn't count towards the weight, just the 64 character hash
+		assertThat("incorrect weight", noIDs, is(2L * 64));
+		// and the ID and its location
+		assertThat("incorrect weight", withID, is(2L * (64 + "foo/bar".length() +
+				"/ref".length())));
+
+		mid.validator.validate("{\"ref\": \"foo/baz\"}", TYPE, mid.getHandlers());
+		assertThat("incorrect weight", mid.cache.getWeight(), is(2 * withID));
+		mid.cache.clear();
+		assertThat("incorrect weight", mid.cache.getWeight(), is(0L));
+	}
+
+	@Test
+	public void sizeBound() throws Exception {
+		final TestMocks w = new TestMocks(ID_SCHEMA, CACHE_SIZE);
+		w.validator.validate("{\"ref\": \"foo/bar\"}", TYPE, w.getHandlers());
+		final long weight = w.cache.getWeight();
+
+		// the cache splits the maximum weight between its internal segments, so only check
+		// that the bound holds rather than exactly which entries are evicted
+		final TestMocks m = new TestMocks(ID_SCHEMA, weight * 10);
+		for (int i = 0; i < 50; i++) {
+			m.validator.validate("{\"ref\": \"foo/ba" + (char) ('a' + i % 26) + "\", \"i\": " +
+					i + "}", TYPE, m.getHandlers());
+		}
+
+		assertThat("incorrect weight", m.cache.getWeight() <= weight * 10, is(true));
+		assertThat("incorrect size", m.cache.getSize() <= 10, is(true));
+		assertThat("incorrect evictions", m.cache.getEvictionCount() >= 40, is(true));
+		assertThat("incorrect evictions", m.cache.getStats().evictionCount(),
+				is(m.cache.getEvictionCount()));
+	}
+
+}
@@ -63,6 +63,12 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  *                         parameter only has an effect when filtering by types alone.
  *                 int limit - limit the output to X objects. Default and maximum value
  *                         is 10000. Limit values < 1 are treated as 10000, the default.
+ *                 obj_ref startafter - the reference, in the form X/Y/Z, of the last object
+ *                         in the previous page of results. The listing resumes directly after
+ *                         this object, so paging through the objects with limit and startafter
+ *                         reads each object once. Results are ordered by workspace ID, object ID,
+ *                         and then descending version. Cannot be used with the type, savedby,
+ *                         meta, after, or before filters.
  * </pre>
  * 
  */
@@ -87,7 +93,8 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
     "showAllVersions",
     "includeMetadata",
     "excludeGlobal",
-    "limit"
+    "limit",
+    "startafter"
 })
 public class ListObjectsParams {
 
@@ -129,6 +136,8 @@ public class ListObjectsParams {
     private java.lang.Long excludeGlobal;
     @JsonProperty("limit")
     private java.lang.Long limit;
+    @JsonProperty("startafter")
+    private java.lang.String startafter;
     private Map<java.lang.String, Object> additionalProperties = new HashMap<java.lang.String, Object>();
 
     @JsonProperty("workspaces")
@@ -416,6 +425,21 @@ public class ListObjectsParams {
         return this;
     }
 
+    @JsonProperty("startafter")
+    public java.lang.String getStartafter() {
+        return startafter;
+    }
+
+    @JsonProperty("startafter")
+    public void setStartafter(java.lang.String startafter) {
+        this.startafter = startafter;
+    }
+
+    public ListObjectsParams withStartafter(java.lang.String startafter) {
+        this.startafter = startafter;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<java.lang.String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -428,7 +452,7 @@ public class ListObjectsParams {
 
     @Override
     public java.lang.String toString() {
-        return ((((((((((((((((((((((((((((((((((((((((("ListObjectsParams"+" [workspaces=")+ workspaces)+", ids=")+ ids)+", type=")+ type)+", perm=")+ perm)+", savedby=")+ savedby)+", meta=")+ meta)+", after=")+ after)+", before=")+ before)+", afterEpoch=")+ afterEpoch)+", beforeEpoch=")+ beforeEpoch)+", minObjectID=")+ minObjectID)+", maxObjectID=")+ maxObjectID)+", showDeleted=")+ showDeleted)+", showOnlyDeleted=")+ showOnlyDeleted)+", showHidden=")+ showHidden)+", showAllVersions=")+ showAllVersions)+", includeMetadata=")+ includeMetadata)+", excludeGlobal=")+ excludeGlobal)+", limit=")+ limit)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((((((((((((((((((((((((((((((("ListObjectsParams"+" [workspaces=")+ workspaces)+", ids=")+ ids)+", type=")+ type)+", perm=")+ perm)+", savedby=")+ savedby)+", meta=")+ meta)+", after=")+ after)+", before=")+ before)+", afterEpoch=")+ afterEpoch)+", beforeEpoch=")+ beforeEpoch)+", minObjectID=")+ minObjectID)+", maxObjectID=")+ maxObjectID)+", showDeleted=")+ showDeleted)+", showOnlyDeleted=")+ showOnlyDeleted)+", showHidden=")+ showHidden)+", showAllVersions=")+ showAllVersions)+", includeMetadata=")+ includeMetadata)+", excludeGlobal=")+ excludeGlobal)+", limit=")+ limit)+", startafter=")+ startafter)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
@@ -39,12 +39,15 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 
+import com.google.common.cache.CacheStats;
+
 //import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import us.kbase.abstracthandle.AbstractHandleClient;
@@ -78,6 +81,7 @@ import us.kbase.workspace.kbase.InitWorkspaceServer;
 import us.kbase.workspace.kbase.InitWorkspaceServer.WorkspaceInitResults;
 import us.kbase.workspace.kbase.admin.WorkspaceAdministration;
 import us.kbase.workspace.kbase.KBaseWorkspaceConfig;
+import us.kbase.workspace.kbase.TypeCacheWarmer;
 import us.kbase.workspace.kbase.WorkspaceServerMethods;
 //END_HEADER
 
@@ -125,6 +129,9 @@ public class WorkspaceServer extends JsonServerServlet {
 	
 	private final BasicShockClient linkedShockClient;
 	private final AbstractHandleClient linkedHandleServiceClient;
+	private final TypeCacheWarmer typeCacheWarmer;
+	private final Supplier<CacheStats> permissionCacheStats;
+	private final Supplier<CacheStats> validationCacheStats;
 	
 	private ThreadLocal<List<WorkspaceObjectData>> resourcesToDelete =
 			new ThreadLocal<List<WorkspaceObjectData>>();
@@ -200,6 +207,15 @@ public class WorkspaceServer extends JsonServerServlet {
 		}
 	}
 	
+	private static Map<String, Object> getCacheStatus(final CacheStats stats) {
+		final Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("hits", stats.hitCount());
+		status.put("misses", stats.missCount());
+		status.put("hitrate", stats.hitRate());
+		status.put("evictions", stats.evictionCount());
+		return status;
+	}
+	
 	public DependencyStatus checkHandleService() {
 		try {
 			linkedHandleServiceClient.status();
@@ -245,6 +261,9 @@ public class WorkspaceServer extends JsonServerServlet {
 		WorkspaceAdministration wsadmin = null;
 		BasicShockClient linkedShockClient = null;
 		AbstractHandleClient linkedHandleServiceClient = null;
+		TypeCacheWarmer typeCacheWarmer = null;
+		Supplier<CacheStats> permissionCacheStats = null;
+		Supplier<CacheStats> validationCacheStats = null;
 		//TODO TEST add server startup tests
 		if (cfg.hasErrors()) {
 			logErr("Workspace server configuration has errors - all calls will fail");
@@ -263,6 +282,9 @@ public class WorkspaceServer extends JsonServerServlet {
 				wsadmin = res.getWsAdmin();
 				linkedShockClient = res.getLinkedShockClient();
 				linkedHandleServiceClient = res.getLinkedAbstractHandleClient();
+				typeCacheWarmer = res.getTypeCacheWarmer();
+				permissionCacheStats = res.getPermissionCacheStats();
+				validationCacheStats = res.getValidationCacheStats();
 				setRpcDiskCacheTempDir(ws.getTempFilesManager().getTempDir());
 			}
 		}
@@ -272,6 +294,9 @@ public class WorkspaceServer extends JsonServerServlet {
 		this.wsadmin = wsadmin;
 		this.linkedShockClient = linkedShockClient;
 		this.linkedHandleServiceClient = linkedHandleServiceClient;
+		this.typeCacheWarmer = typeCacheWarmer;
+		this.permissionCacheStats = permissionCacheStats;
+		this.validationCacheStats = validationCacheStats;
         //END_CONSTRUCTOR
     }
 
@@ -1764,6 +1789,20 @@ public class WorkspaceServer extends JsonServerServlet {
 		returnVal.put("freemem", Runtime.getRuntime().freeMemory());
 		returnVal.put("totalmem", Runtime.getRuntime().totalMemory());
 		returnVal.put("maxmem", Runtime.getRuntime().maxMemory());
+		if (typeCacheWarmer != null) {
+			final Map<String, Object> warmup = new LinkedHashMap<String, Object>();
+			warmup.put("state", typeCacheWarmer.getState().name());
+			warmup.put("total", typeCacheWarmer.getTotal());
+			warmup.put("loaded", typeCacheWarmer.getLoaded());
+			warmup.put("failed", typeCacheWarmer.getFailed());
+			returnVal.put("typecachewarmup", warmup);
+		}
+		if (permissionCacheStats != null) {
+			returnVal.put("permissioncache", getCacheStatus(permissionCacheStats.get()));
+		}
+		if (validationCacheStats != null) {
+			returnVal.put("validationcache", getCacheStatus(validationCacheStats.get()));
+		}
 		@SuppressWarnings("unused")
 		final String v = version;
 		@SuppressWarnings("unused")
@@ -28,6 +28,7 @@ public class GetObjectInformationParameters {
 	final private boolean includeMetaData;
 	final private boolean asAdmin;
 	final private int limit;
+	final private Reference startAfter;
 	
 	GetObjectInformationParameters(
 			final PermissionSet pset,
@@ -44,7 +45,8 @@ public class GetObjectInformationParameters {
 			final boolean showAllVers,
 			final boolean includeMetaData,
 			final int limit,
-			final boolean asAdmin) {
+			final boolean asAdmin,
+			final Reference startAfter) {
 		super();
 		this.pset = pset;
 		this.type = type;
@@ -61,6 +63,7 @@ public class GetObjectInformationParameters {
 		this.includeMetaData = includeMetaData;
 		this.limit = limit;
 		this.asAdmin = asAdmin;
+		this.startAfter = startAfter;
 	}
 
 	/** Returns the set of workspace permissions to be used when listing
@@ -165,6 +168,14 @@ public class GetObjectInformationParameters {
 		return limit;
 	}
 	
+	/** Get the reference of the object version after which objects should be listed. The
+	 * listing order is by workspace ID, then object ID, then descending version.
+	 * @return the reference, or null if listing should start at the beginning.
+	 */
+	public Reference getStartAfter() {
+		return startAfter;
+	}
+	
 	/** Return whether this query should be executed with administrator privileges.
 	 * @return whether the user requesting the query is a global administrator.
 	 */
@@ -42,6 +42,7 @@ public class ListObjectsParameters {
 	private boolean excludeGlobal = false;
 	private boolean asAdmin = false;
 	private int limit = MAX_INFO_COUNT;
+	private Reference startAfter = null;
 	
 	/** Create a set of parameters for calling the list objects method.
 	 * @param user the user calling the method. If null, only globally
@@ -425,6 +426,28 @@ public class ListObjectsParameters {
 		return this;
 	}
 	
+	/** Get the reference of the object version after which objects should be listed.
+	 * @return the reference, or null if listing should start at the beginning.
+	 */
+	public Reference getStartAfter() {
+		return startAfter;
+	}
+	
+	/** Start listing after the given object version in the listing order, which is by
+	 * workspace ID, then object ID, then descending version. Pass the reference of the last
+	 * object in a page of results to get the next page. The listing resumes directly from the
+	 * reference, so paging through a workspace reads each object version at most once.
+	 * May not be combined with the type, savers, metadata, or date filters, since the listing
+	 * order is undefined when those filters are set.
+	 * @param startAfter the reference of the last object version in the previous page, or null
+	 * to start at the beginning.
+	 * @return this ListObjectsParameters instance.
+	 */
+	public ListObjectsParameters withStartAfter(final Reference startAfter) {
+		this.startAfter = startAfter;
+		return this;
+	}
+	
 	/** Get whether the command should be run as an admin. If this is the case the user will always
 	 * be null.
 	 * @return whether the effective user is an admin.
@@ -438,10 +461,15 @@ public class ListObjectsParameters {
 		if (perms == null) {
 			throw new NullPointerException("perms cannot be null");
 		}
-		return new GetObjectInformationParameters(
+		final GetObjectInformationParameters p = new GetObjectInformationParameters(
 				perms, type, savers, meta, after, before, minObjectID,
 				maxObjectID, showHidden, showDeleted, showOnlyDeleted,
-				showAllVers, includeMetaData, limit, asAdmin);
+				showAllVers, includeMetaData, limit, asAdmin, startAfter);
+		if (startAfter != null && !p.isObjectIDFiltersOnly()) {
+			throw new IllegalArgumentException("The startafter parameter cannot be used with " +
+					"the type, savedby, meta, after, or before filters");
+		}
+		return p;
 		
 	}
 }
@@ -19,9 +19,11 @@ import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.InaccessibleObjectException;
 import us.kbase.workspace.database.exceptions.NoSuchObjectException;
 import us.kbase.workspace.database.exceptions.NoSuchReferenceException;
+import us.kbase.workspace.database.exceptions.NoSuchWorkspaceException;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 import us.kbase.workspace.database.refsearch.ReferenceGraphSearch;
 import us.kbase.workspace.database.refsearch.ReferenceGraphTopologyProvider;
+import us.kbase.workspace.database.refsearch.ReferencePathCache;
 import us.kbase.workspace.database.refsearch.ReferenceProviderException;
 import us.kbase.workspace.database.refsearch.ReferenceSearchFailedException;
 import us.kbase.workspace.database.refsearch.ReferenceSearchMaximumSizeExceededException;
@@ -46,6 +48,7 @@ public class ObjectResolver {
 	private final boolean nullIfInaccessible;
 	private final boolean asAdmin;
 	private final int maximumObjectSearchCount;
+	private final ReferencePathCache pathCache; // null if search results aren't cached
 	
 	/* only the below are accessible via the api. The variables above are only needed during the
 	 * object resolution process. 
@@ -65,7 +68,8 @@ public class ObjectResolver {
 			final List<ObjectIdentifier> objects,
 			final boolean nullIfInaccessible,
 			final boolean asAdmin,
-			final int maxSearch)
+			final int maxSearch,
+			final ReferencePathCache pathCache)
 			throws WorkspaceCommunicationException, InaccessibleObjectException,
 				CorruptWorkspaceDBException, NoSuchReferenceException,
 				ReferenceSearchMaximumSizeExceededException {
@@ -76,6 +80,8 @@ public class ObjectResolver {
 		this.nullIfInaccessible = nullIfInaccessible;
 		this.asAdmin = asAdmin;
 		this.maximumObjectSearchCount = maxSearch;
+		// admins can read everything, so their results can't be shared with the user's
+		this.pathCache = asAdmin ? null : pathCache;
 		resolve();
 	}
 	
@@ -229,22 +235,59 @@ public class ObjectResolver {
 	}
 	
 
-	private Set<Long> getReadableWorkspaces()
-			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
-		//could make a method to just get IDs of workspace with specific permission to save mem
-		final PermissionSet pset = db.getPermissions(user, Permission.READ, false);
-		return pset.getWorkspaces().stream()
-				.filter(ws -> !ws.isDeleted())
-				.map(ws -> ws.getID())
-				.collect(Collectors.toSet());
+	/* Checks workspace readability lazily, only for the workspaces encountered during the search,
+	 * rather than fetching every workspace the user can read up front. The results are memoized
+	 * for the duration of the search.
+	 */
+	private class ReadableWorkspaces {
+		
+		private final Map<Long, Boolean> readable = new HashMap<>();
+		
+		private boolean isReadable(final Reference ref) {
+			return asAdmin || readable.get(ref.getWorkspaceID());
+		}
+		
+		private void check(final Collection<Reference> refs)
+				throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+			if (asAdmin) {
+				return;
+			}
+			final Set<WorkspaceIdentifier> wsis = new HashSet<>();
+			for (final Reference r: refs) {
+				if (r != null && !readable.containsKey(r.getWorkspaceID())) {
+					wsis.add(new WorkspaceIdentifier(r.getWorkspaceID()));
+				}
+			}
+			if (wsis.isEmpty()) {
+				return;
+			}
+			final Map<WorkspaceIdentifier, ResolvedWorkspaceID> rwsis;
+			try {
+				rwsis = db.resolveWorkspaces(wsis, true);
+			} catch (NoSuchWorkspaceException nswe) {
+				throw new RuntimeException(
+						"Threw exception when explicitly told not to", nswe);
+			}
+			final Set<ResolvedWorkspaceID> undeleted = rwsis.values().stream()
+					.filter(ws -> !ws.isDeleted()).collect(Collectors.toSet());
+			// an empty set means all workspaces
+			final PermissionSet pset = undeleted.isEmpty() ?
+					null : db.getPermissions(user, undeleted);
+			for (final WorkspaceIdentifier wsi: wsis) {
+				readable.put(wsi.getId(), false);
+			}
+			for (final ResolvedWorkspaceID ws: undeleted) {
+				readable.put(ws.getID(), pset.hasPermission(ws, Permission.READ));
+			}
+		}
 	}
 	
 	private class TopoProvider implements ReferenceGraphTopologyProvider {
 			
-		private final Set<Long> readableWorkspaceIDs;
+		private final ReadableWorkspaces readableWorkspaces;
 		
-		private TopoProvider(final Set<Long> readableWorkspaceIDs) {
-			this.readableWorkspaceIDs = readableWorkspaceIDs;
+		private TopoProvider(final ReadableWorkspaces readableWorkspaces) {
+			this.readableWorkspaces = readableWorkspaces;
 		}
 
 		@Override
@@ -254,14 +297,14 @@ public class ObjectResolver {
 			try {
 				final Map<Reference, ObjectReferenceSet> refs =
 						db.getObjectIncomingReferences(sourceRefs);
-				final Set<Reference> readable = new HashSet<>();
+				final Set<Reference> incoming = new HashSet<>();
 				for (final ObjectReferenceSet refset: refs.values()) {
-					for (final Reference r: refset.getReferenceSet()) {
-						if (asAdmin || readableWorkspaceIDs.contains(r.getWorkspaceID())) {
-							readable.add(r);
-						}
-					}
+					incoming.addAll(refset.getReferenceSet());
 				}
+				readableWorkspaces.check(incoming);
+				final Set<Reference> readable = incoming.stream()
+						.filter(r -> readableWorkspaces.isReadable(r))
+						.collect(Collectors.toSet());
 				final Map<Reference, Boolean> exists = readable.isEmpty() ?
 						Collections.emptyMap() : db.getObjectExistsRef(readable);
 				final Map<Reference, Map<Reference, Boolean>> refToRefs = new HashMap<>();
@@ -274,44 +317,49 @@ public class ObjectResolver {
 					
 				}
 				return refToRefs;
-			} catch (WorkspaceCommunicationException e) {
+			} catch (WorkspaceCommunicationException | CorruptWorkspaceDBException e) {
 				throw new ReferenceProviderException("foo", e);
 			}
 		}
 	}
 
-	//TODO REF LOOKUP positive and negative caches (?)
 	private void searchObjectDAG(final Set<ObjectIdentifier> lookup)
 			throws WorkspaceCommunicationException, ReferenceSearchMaximumSizeExceededException,
 				InaccessibleObjectException, CorruptWorkspaceDBException {
 		if (lookup.isEmpty()) {
 			return;
 		}
-		final Set<Long> readableWorkspaceIDs = asAdmin? new HashSet<>() : getReadableWorkspaces();
+		final ReadableWorkspaces readableWorkspaces = new ReadableWorkspaces();
 		final Map<ObjectIdentifier, ObjectIDResolvedWS> resobjs = permissionsFactory
 				.getObjectChecker(lookup, Permission.NONE)
 				.withIncludeDeletedWorkspaces().check();
 		final Map<ObjectIDResolvedWS, Reference> objrefs = db.getObjectReference(
 				new HashSet<>(resobjs.values()));
 		try {
-			if (!asAdmin && readableWorkspaceIDs.isEmpty()) {
-				if (nullIfInaccessible) {
-					return;
-				} else {
-					throw new ObjectDAGSearchFromObjectIDFailedException(lookup.iterator().next());
-				}
-			}
-		
 			// will throw an exception if can't find a ref for any object in lookup
 			final Set<Reference> startingRefs = searchObjectDAGGetStartingRefs(
-					readableWorkspaceIDs, lookup, resobjs, objrefs);
+					readableWorkspaces, lookup, resobjs, objrefs);
 			if (startingRefs.isEmpty()) {
 				return;
 			}
-			final ReferenceGraphSearch search = new ReferenceGraphSearch(
-					startingRefs, new TopoProvider(readableWorkspaceIDs),
-					maximumObjectSearchCount, !nullIfInaccessible);
-			searchObjectDAGBuildResolvedObjectPaths(resobjs, objrefs, search);
+			final Map<Reference, List<Reference>> paths = new HashMap<>();
+			final Set<Reference> searchRefs = searchObjectDAGApplyCachedPaths(
+					readableWorkspaces, startingRefs, paths);
+			if (!searchRefs.isEmpty()) {
+				final ReferenceGraphSearch search = searchObjectDAGSearch(
+						readableWorkspaces, searchRefs);
+				for (final Reference r: searchRefs) {
+					if (search.isPathFound(r)) {
+						paths.put(r, search.getPath(r));
+						if (pathCache != null) {
+							pathCache.putPath(user, search.getPath(r));
+						}
+					} else if (search.isSearchFailed(r) && pathCache != null) {
+						pathCache.putNoPath(user, r);
+					}
+				}
+			}
+			searchObjectDAGBuildResolvedObjectPaths(resobjs, objrefs, paths);
 		} catch (final ReferenceSearchFailedException |
 				ObjectDAGSearchFromObjectIDFailedException e) {
 //			e.printStackTrace();
@@ -322,19 +370,24 @@ public class ObjectResolver {
 			// workspaces. Returning the stack trace for errors just might have been a bad idea.
 			throw generateInaccessibleObjectException(failedOn);
 		} catch (final ReferenceProviderException e) {
+			if (e.getCause() instanceof CorruptWorkspaceDBException) {
+				throw (CorruptWorkspaceDBException) e.getCause();
+			}
 			throw (WorkspaceCommunicationException) e.getCause();
 		}
 	}
 
 	private Set<Reference> searchObjectDAGGetStartingRefs(
-			final Set<Long> readableWorkspaceIDs,
+			final ReadableWorkspaces readableWorkspaces,
 			final Set<ObjectIdentifier> lookup,
 			final Map<ObjectIdentifier, ObjectIDResolvedWS> resobjs,
 			final Map<ObjectIDResolvedWS, Reference> objrefs)
-			throws ObjectDAGSearchFromObjectIDFailedException, WorkspaceCommunicationException {
+			throws ObjectDAGSearchFromObjectIDFailedException, WorkspaceCommunicationException,
+				CorruptWorkspaceDBException {
 
 		final Map<Reference, Boolean> exists = db.getObjectExistsRef(
 				new HashSet<>(objrefs.values()));
+		readableWorkspaces.check(objrefs.values());
 		
 		final Set<Reference> startingRefs = new HashSet<>();
 		for (final ObjectIdentifier o: lookup) {
@@ -345,8 +398,7 @@ public class ObjectResolver {
 					throw new ObjectDAGSearchFromObjectIDFailedException(o);
 				}
 			} else {
-				if (exists.get(ref) &&
-						(asAdmin || readableWorkspaceIDs.contains(ref.getWorkspaceID()))) {
+				if (exists.get(ref) && readableWorkspaces.isReadable(ref)) {
 					withpath.put(o, new ObjectIDResolvedWS(
 							res.getWorkspaceIdentifier(), ref.getObjectID(), ref.getVersion()));
 					withpathRefPath.put(o, Arrays.asList(ref));
@@ -358,18 +410,81 @@ public class ObjectResolver {
 		return startingRefs;
 	}
 
+	/* Removes the starting references with cached search results from the set of references to
+	 * search. A cached path is used if the head of the path still exists and is readable - the
+	 * rest of the path can't change, since the references in an object are immutable. Failing
+	 * that the path is removed from the cache and the reference is searched.
+	 */
+	private Set<Reference> searchObjectDAGApplyCachedPaths(
+			final ReadableWorkspaces readableWorkspaces,
+			final Set<Reference> startingRefs,
+			final Map<Reference, List<Reference>> paths)
+			throws ReferenceSearchFailedException, WorkspaceCommunicationException,
+				CorruptWorkspaceDBException {
+		if (pathCache == null) {
+			return startingRefs;
+		}
+		final Set<Reference> searchRefs = new HashSet<>();
+		final Map<Reference, List<Reference>> cached = new HashMap<>();
+		for (final Reference r: startingRefs) {
+			final List<Reference> path = pathCache.getPath(user, r);
+			if (path != null) {
+				cached.put(r, path);
+			} else if (pathCache.isNoPath(user, r)) {
+				if (!nullIfInaccessible) {
+					throw new ReferenceSearchFailedException(r);
+				}
+			} else {
+				searchRefs.add(r);
+			}
+		}
+		if (cached.isEmpty()) {
+			return searchRefs;
+		}
+		final Set<Reference> heads = cached.values().stream().map(p -> p.get(0))
+				.collect(Collectors.toSet());
+		final Map<Reference, Boolean> exists = db.getObjectExistsRef(heads);
+		readableWorkspaces.check(heads);
+		for (final Entry<Reference, List<Reference>> e: cached.entrySet()) {
+			final Reference head = e.getValue().get(0);
+			if (exists.get(head) && readableWorkspaces.isReadable(head)) {
+				paths.put(e.getKey(), e.getValue());
+			} else {
+				pathCache.remove(user, e.getKey());
+				searchRefs.add(e.getKey());
+			}
+		}
+		return searchRefs;
+	}
+	
+	private ReferenceGraphSearch searchObjectDAGSearch(
+			final ReadableWorkspaces readableWorkspaces,
+			final Set<Reference> searchRefs)
+			throws ReferenceSearchFailedException, ReferenceSearchMaximumSizeExceededException,
+				ReferenceProviderException {
+		try {
+			return new ReferenceGraphSearch(searchRefs, new TopoProvider(readableWorkspaces),
+					maximumObjectSearchCount, !nullIfInaccessible);
+		} catch (final ReferenceSearchFailedException e) {
+			if (pathCache != null) {
+				pathCache.putNoPath(user, e.getFailedReference());
+			}
+			throw e;
+		}
+	}
+
 	private void searchObjectDAGBuildResolvedObjectPaths(
 			final Map<ObjectIdentifier, ObjectIDResolvedWS> resobjs,
 			final Map<ObjectIDResolvedWS, Reference> objrefs,
-			final ReferenceGraphSearch paths) {
+			final Map<Reference, List<Reference>> paths) {
 		
 		for (final Entry<ObjectIdentifier, ObjectIDResolvedWS> e: resobjs.entrySet()) {
 			final Reference r = objrefs.get(e.getValue());
-			if (paths.isPathFound(r)) { // objid was valid and path was found
+			if (paths.containsKey(r)) { // objid was valid and path was found
 				//absolutize the ObjectIDResolvedWS
 				withpath.put(e.getKey(), new ObjectIDResolvedWS(
 						e.getValue().getWorkspaceIdentifier(), r.getObjectID(), r.getVersion()));
-				withpathRefPath.put(e.getKey(), paths.getPath(r));
+				withpathRefPath.put(e.getKey(), paths.get(r));
 			}
 		}
 	}
@@ -433,14 +548,18 @@ public class ObjectResolver {
 			return;
 		}
 		//TODO CODE should probably have a limit on total path size per call, like 10000 or so
-		final List<ObjectIdentifier> allRefPathEntries = new LinkedList<>();
+		// paths often share entries, e.g. when many objects are reached via the same object
+		final Set<ObjectIdentifier> allRefPathEntries = new HashSet<>();
+		final Set<ObjectIdentifier> innerRefPathEntries = new HashSet<>();
 		for (final ObjectIDWithRefPath oc: objsWithRefpaths) {
 			if (oc != null) {
 				/* allow nulls in list to maintain object count in the case
 				 * calling method input includes objectIDs with and without
 				 * paths
 				 */
-				allRefPathEntries.addAll(oc.getRefPath());
+				final List<ObjectIdentifier> refpath = oc.getRefPath();
+				allRefPathEntries.addAll(refpath);
+				innerRefPathEntries.addAll(refpath.subList(0, refpath.size() - 1));
 			}
 		}
 		final Map<ObjectIDResolvedWS, ObjectReferenceSet> headrefs =
@@ -452,8 +571,24 @@ public class ObjectResolver {
 		final Map<ObjectIdentifier, ObjectIDResolvedWS> resolvedRefPathObjs =
 				permissionsFactory.getObjectChecker(allRefPathEntries, Permission.NONE)
 						.withIncludeDeletedWorkspaces().check();
-		final Map<ObjectIDResolvedWS, ObjectReferenceSet> outrefs =
-				getObjectOutgoingReferences(resolvedRefPathObjs, true, true);
+		/* the outgoing references are only needed for the entries inside the paths. For the
+		 * entries at the ends of the paths only the reference is needed, which avoids fetching
+		 * the references of objects that reference many other objects. Either way all the paths
+		 * are resolved with one query, regardless of the number and length of the paths.
+		 */
+		final Map<ObjectIdentifier, ObjectIDResolvedWS> innerObjs = new HashMap<>();
+		for (final Entry<ObjectIdentifier, ObjectIDResolvedWS> e:
+				resolvedRefPathObjs.entrySet()) {
+			if (innerRefPathEntries.contains(e.getKey())) {
+				innerObjs.put(e.getKey(), e.getValue());
+			}
+		}
+		final Map<ObjectIDResolvedWS, ObjectReferenceSet> outrefs = innerObjs.isEmpty() ?
+				Collections.emptyMap() : getObjectOutgoingReferences(innerObjs, true, true);
+		final Set<ObjectIDResolvedWS> endObjs = new HashSet<>(resolvedRefPathObjs.values());
+		endObjs.removeAll(innerObjs.values());
+		final Map<ObjectIDResolvedWS, Reference> endrefs = endObjs.isEmpty() ?
+				Collections.emptyMap() : db.getObjectReference(endObjs);
 		
 		int chnum = 1;
 		for (final ObjectIDWithRefPath owrp: objsWithRefpaths) {
@@ -461,7 +596,7 @@ public class ObjectResolver {
 				final ObjectReferenceSet refs = headrefs.get(heads.get(owrp));
 				if (refs != null) {
 					final List<Reference> resRefPath = getResolvedRefPath(owrp, refs,
-							resolvedRefPathObjs, outrefs, chnum);
+							resolvedRefPathObjs, outrefs, endrefs, chnum);
 					if (resRefPath != null) {
 						final Reference ref = resRefPath.get(resRefPath.size() - 1);
 						final ObjectIDResolvedWS end = resolvedRefPathObjs.get(owrp.getLast());
@@ -500,6 +635,7 @@ public class ObjectResolver {
 			final ObjectReferenceSet headrefs,
 			final Map<ObjectIdentifier, ObjectIDResolvedWS> resRefPathObjs,
 			final Map<ObjectIDResolvedWS, ObjectReferenceSet> outgoingRefs,
+			final Map<ObjectIDResolvedWS, Reference> endRefs,
 			final int objectNumber)
 			throws NoSuchReferenceException {
 		final List<Reference> resolvedRefPath = new LinkedList<>();
@@ -518,14 +654,21 @@ public class ObjectResolver {
 			final ObjectIDResolvedWS nextResolved = resRefPathObjs.get(nextPos);
 			final ObjectReferenceSet nextRefSet = nextResolved == null ?
 					null : outgoingRefs.get(nextResolved);
-			if (nextRefSet == null || !currentRefs.contains(nextRefSet.getObjectReference())) {
+			// the ref set is only missing for an existing object at the end of the path
+			final Reference nextRef;
+			if (nextRefSet != null) {
+				nextRef = nextRefSet.getObjectReference();
+			} else {
+				nextRef = nextResolved == null ? null : endRefs.get(nextResolved);
+			}
+			if (nextRef == null || !currentRefs.contains(nextRef)) {
 				if (nullIfInaccessible) {
 					return null;
 				}
 				throw new NoSuchReferenceException(
 						null, objectNumber, posnum, head, currentPos, nextPos);
 			}
-			resolvedRefPath.add(nextRefSet.getObjectReference());
+			resolvedRefPath.add(nextRef);
 			currentPos = nextPos;
 			currentRefs = nextRefSet;
 			posnum++;
@@ -566,6 +709,7 @@ public class ObjectResolver {
 		private boolean nullIfInaccessible = false;
 		private boolean asAdmin = false;
 		private int maxSearch = MAX_OBJECT_SEARCH_COUNT_DEFAULT;
+		private ReferencePathCache pathCache = null;
 		
 		private Builder(final WorkspaceDatabase db, final WorkspaceUser user) {
 			nonNull(db, "db");
@@ -590,7 +734,8 @@ public class ObjectResolver {
 			if (objects.isEmpty()) {
 				throw new IllegalArgumentException("No object identifiers provided");
 			}
-			return new ObjectResolver(db, user, objects, nullIfInaccessible, asAdmin, maxSearch);
+			return new ObjectResolver(db, user, objects, nullIfInaccessible, asAdmin, maxSearch,
+					pathCache);
 		}
 		
 		/** Build an empty ObjectResolver containing no objects. Ignores any objects added to the
@@ -601,7 +746,7 @@ public class ObjectResolver {
 
 			try {
 				return new ObjectResolver(db, user, Collections.emptyList(), nullIfInaccessible,
-						asAdmin, maxSearch);
+						asAdmin, maxSearch, pathCache);
 			} catch (WorkspaceCommunicationException | InaccessibleObjectException |
 					CorruptWorkspaceDBException | NoSuchReferenceException |
 					ReferenceSearchMaximumSizeExceededException e) {
@@ -642,6 +787,16 @@ public class ObjectResolver {
 			return this;
 		}
 		
+		/** Look up the results of reference path searches in a cache before searching, and
+		 * add the results of searches to the cache. Ignored when running as an admin.
+		 * @param pathCache the cache, or null to not cache search results, the default.
+		 * @return this builder.
+		 */
+		public Builder withReferencePathCache(final ReferencePathCache pathCache) {
+			this.pathCache = pathCache;
+			return this;
+		}
+		
 		/** Add an object to be resolved.
 		 * @param object the object.
 		 * @return this builder.
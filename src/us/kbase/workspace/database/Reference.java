@@ -37,6 +37,16 @@ public class Reference implements RemappedId {
 	 * @param ref a reference string.
 	 */
 	public Reference(final String ref) {
+		// references are parsed for every reference read from the database, so the common
+		// case is parsed without splitting the string or building identifiers.
+		final long[] ids = parseAbsoluteReference(ref);
+		if (ids != null) {
+			workspaceID = ids[0];
+			objectID = ids[1];
+			version = (int) ids[2];
+			return;
+		}
+		// the slow path produces the appropriate error
 		final ObjectIdentifier oi = ObjectIdentifier.parseObjectReference(ref);
 		if (!oi.isAbsolute()) {
 			throw new IllegalArgumentException(String.format(
@@ -47,6 +57,48 @@ public class Reference implements RemappedId {
 		version = oi.getVersion();
 	}
 
+	/* Returns null if the reference is not of the form X/Y/Z where X, Y, and Z are positive
+	 * integers without signs or leading zeros that fit in a long, long, and int respectively.
+	 */
+	private static long[] parseAbsoluteReference(final String ref) {
+		if (ref == null) {
+			return null;
+		}
+		final long[] ids = new long[3];
+		final long[] max = {Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE};
+		int part = 0;
+		int digits = 0;
+		long val = 0;
+		for (int i = 0; i < ref.length(); i++) {
+			final char c = ref.charAt(i);
+			if (c == '/') {
+				if (digits == 0 || part == 2) {
+					return null;
+				}
+				ids[part++] = val;
+				val = 0;
+				digits = 0;
+			} else if (c >= '0' && c <= '9') {
+				if (digits == 0 && c == '0') {
+					return null;
+				}
+				final int d = c - '0';
+				if (val > (max[part] - d) / 10) {
+					return null;
+				}
+				val = val * 10 + d;
+				digits++;
+			} else {
+				return null;
+			}
+		}
+		if (digits == 0 || part != 2) {
+			return null;
+		}
+		ids[2] = val;
+		return ids;
+	}
+
 	/** Returns the ID of the workspac for this object.
 	 * @return the workspace ID.
 	 */
@@ -14,12 +14,14 @@ public class ResourceUsageConfigurationBuilder {
 			200000000; // must be at least 1x max data
 	final public static int DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE = 300000000;
 	final public static long DEFAULT_MAX_RETURNED_DATA_SIZE = 1000000000L;
+	final public static int DEFAULT_PARALLEL_SORT_THREADS = 0; // disabled
 	
 	private int maxObjectSize;
 	private int maxIncomingDataMemoryUsage;
 	private int maxRelabelAndSortMemoryUsage;
 	private int maxReturnedDataMemoryUsage;
 	private long maxReturnedDataSize;
+	private int parallelSortThreads;
 	
 	public ResourceUsageConfigurationBuilder() {
 		maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
@@ -27,6 +29,7 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = DEFAULT_MAX_RELABEL_AND_SORT_MEMORY_USAGE;
 		maxReturnedDataMemoryUsage = DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE;
 		maxReturnedDataSize = DEFAULT_MAX_RETURNED_DATA_SIZE;
+		parallelSortThreads = DEFAULT_PARALLEL_SORT_THREADS;
 	}
 	
 	public ResourceUsageConfigurationBuilder(ResourceUsageConfiguration cfg) {
@@ -35,6 +38,7 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = cfg.getMaxRelabelAndSortMemoryUsage();
 		maxReturnedDataMemoryUsage = cfg.getMaxReturnedDataMemoryUsage();
 		maxReturnedDataSize = cfg.getMaxReturnedDataSize();
+		parallelSortThreads = cfg.getParallelSortThreads();
 	}
 	
 	public ResourceUsageConfigurationBuilder withMaxObjectSize(int maxObjectSize) {
@@ -66,10 +70,17 @@ public class ResourceUsageConfigurationBuilder {
 		return this;
 	}
 
+	public ResourceUsageConfigurationBuilder withParallelSortThreads(
+			int parallelSortThreads) {
+		this.parallelSortThreads = parallelSortThreads;
+		return this;
+	}
+
 	public ResourceUsageConfiguration build() {
 		return new ResourceUsageConfiguration(maxObjectSize, 
 				maxIncomingDataMemoryUsage, maxRelabelAndSortMemoryUsage,
-				maxReturnedDataMemoryUsage, maxReturnedDataSize);
+				maxReturnedDataMemoryUsage, maxReturnedDataSize,
+				parallelSortThreads);
 	}
 
 	public class ResourceUsageConfiguration {
@@ -79,12 +90,14 @@ public class ResourceUsageConfigurationBuilder {
 		final private int maxRelabelAndSortMemoryUsage;
 		final private int maxReturnedDataMemoryUsage;
 		final private long maxReturnedDataSize;
+		final private int parallelSortThreads;
 
 		private ResourceUsageConfiguration(final int maxObjectSize,
 				final int maxIncomingDataMemoryUsage,
 				final int maxRelabelAndSortMemoryUsage,
 				final int maxReturnedDataMemoryUsage,
-				final long maxReturnedDataSize) {
+				final long maxReturnedDataSize,
+				final int parallelSortThreads) {
 			checkGTZero(maxObjectSize, "Maximum object size");
 			checkGTZero(maxIncomingDataMemoryUsage, "Maximum incoming data memory usage ");
 			checkGTZero(maxRelabelAndSortMemoryUsage, "Relabel and sort memory usage");
@@ -104,6 +117,11 @@ public class ResourceUsageConfigurationBuilder {
 						"Max returned data size must be greater than the max object size");
 			}
 			this.maxReturnedDataSize = maxReturnedDataSize;
+			if (parallelSortThreads < 0) {
+				throw new IllegalArgumentException(
+						"Parallel sort threads must be at least zero");
+			}
+			this.parallelSortThreads = parallelSortThreads;
 		}
 
 		private void checkGTZero(long maxReturnedDataDiskUsage, String name) {
@@ -164,6 +182,18 @@ public class ResourceUsageConfigurationBuilder {
 		public long getMaxReturnedDataSize() {
 			return maxReturnedDataSize;
 		}
+		
+		/** The number of threads to use when sorting typed objects that are stored on disk
+		 * during a save, i.e. when the incoming data exceeds the maximum incoming data memory
+		 * usage. If greater than zero, the values of the root map of each object are sorted
+		 * concurrently and values that are already sorted are skipped. The sort memory limit
+		 * is split between the threads. If zero, objects are sorted in a single thread.
+		 * @return the number of parallel sort threads, or zero if parallel sorting is
+		 * disabled.
+		 */
+		public int getParallelSortThreads() {
+			return parallelSortThreads;
+		}
 
 		@Override
 		public int hashCode() {
@@ -175,6 +205,7 @@ public class ResourceUsageConfigurationBuilder {
 			result = prime * result + maxRelabelAndSortMemoryUsage;
 			result = prime * result + maxReturnedDataMemoryUsage;
 			result = prime * result + (int) (maxReturnedDataSize ^ (maxReturnedDataSize >>> 32));
+			result = prime * result + parallelSortThreads;
 			return result;
 		}
 
@@ -208,6 +239,9 @@ public class ResourceUsageConfigurationBuilder {
 			if (maxReturnedDataSize != other.maxReturnedDataSize) {
 				return false;
 			}
+			if (parallelSortThreads != other.parallelSortThreads) {
+				return false;
+			}
 			return true;
 		}
 
@@ -30,6 +30,7 @@ import us.kbase.common.utils.sortjson.TooManyKeysException;
 import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
 import us.kbase.typedobj.core.JsonDocumentLocation;
+import us.kbase.typedobj.core.ParallelJsonSorter;
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.TypeDefName;
@@ -56,6 +57,7 @@ import us.kbase.typedobj.idref.IdReferenceType;
 import us.kbase.typedobj.idref.RemappedId;
 import us.kbase.workspace.database.ObjectResolver.ObjectResolution;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
+import us.kbase.workspace.database.refsearch.ReferencePathCache;
 import us.kbase.workspace.database.refsearch.ReferenceSearchMaximumSizeExceededException;
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.InaccessibleObjectException;
@@ -92,9 +94,12 @@ public class Workspace {
 	
 	private final WorkspaceDatabase db;
 	private ResourceUsageConfiguration rescfg;
+	// reused across saves so the sorting threads are shared
+	private ParallelJsonSorter parallelSorter;
 	private final TypedObjectValidator validator;
 	private final List<WorkspaceEventListener> listeners;
 	private int maximumObjectSearchCount;
+	private ReferencePathCache referencePathCache = null;
 	
 	public Workspace(
 			final WorkspaceDatabase db,
@@ -123,6 +128,7 @@ public class Workspace {
 		//TODO DBCONSIST check that a few object types exist to make sure the type provider is ok.
 		this.validator = validator;
 		rescfg = cfg;
+		parallelSorter = getParallelSorter(cfg);
 		this.listeners = Collections.unmodifiableList(listeners);
 		db.setResourceUsageConfiguration(rescfg);
 		this.maximumObjectSearchCount = MAX_OBJECT_SEARCH_COUNT_DEFAULT;
@@ -140,6 +146,21 @@ public class Workspace {
 		return maximumObjectSearchCount;
 	}
 	
+	/** Set a cache for the results of reference path searches for objects. Results without a
+	 * path are removed from the cache when users gain permissions via this instance.
+	 * @param cache the cache, or null to not cache search results.
+	 */
+	public void setReferencePathCache(final ReferencePathCache cache) {
+		referencePathCache = cache;
+	}
+	
+	/** Get the cache for the results of reference path searches for objects.
+	 * @return the cache, or null if search results are not cached.
+	 */
+	public ReferencePathCache getReferencePathCache() {
+		return referencePathCache;
+	}
+	
 	public ResourceUsageConfiguration getResourceConfig() {
 		return rescfg;
 	}
@@ -149,9 +170,18 @@ public class Workspace {
 			throw new NullPointerException("rescfg cannot be null");
 		}
 		this.rescfg = rescfg;
+		parallelSorter = getParallelSorter(rescfg);
 		db.setResourceUsageConfiguration(rescfg);
 	}
 	
+	private static ParallelJsonSorter getParallelSorter(final ResourceUsageConfiguration cfg) {
+		if (cfg.getParallelSortThreads() < 1) {
+			return null;
+		}
+		return new ParallelJsonSorter(cfg.getParallelSortThreads(),
+				cfg.getMaxRelabelAndSortMemoryUsage());
+	}
+	
 	public TempFilesManager getTempFilesManager() {
 		return db.getTempFilesManager();
 	}
@@ -406,6 +436,9 @@ public class Workspace {
 			}
 		}
 		final Instant time = db.setWorkspaceOwner(rwsi, owner, newUser, newName);
+		if (referencePathCache != null) {
+			referencePathCache.invalidateNoPath(new HashSet<>(Arrays.asList(newUser)));
+		}
 		for (final WorkspaceEventListener l: listeners) {
 			l.setWorkspaceOwner(asAdmin ? null : owner, rwsi.getID(), newUser, newName, time);
 		}
@@ -461,6 +494,9 @@ public class Workspace {
 			}
 		}
 		final Instant time = db.setPermissions(wsid, users, permission);
+		if (referencePathCache != null && Permission.READ.compareTo(permission) <= 0) {
+			referencePathCache.invalidateNoPath(new HashSet<>(users));
+		}
 		for (final WorkspaceEventListener l: listeners) {
 			l.setPermissions(user, wsid.getID(), permission, users, time);
 		}
@@ -504,6 +540,9 @@ public class Workspace {
 					", is locked and may not be modified");
 		}
 		final Instant time = db.setGlobalPermission(rwsi, permission);
+		if (referencePathCache != null && Permission.READ.equals(permission)) {
+			referencePathCache.invalidateNoPath();
+		}
 		for (final WorkspaceEventListener l: listeners) {
 			l.setGlobalPermission(user, rwsi.getID(), permission, time);
 		}
@@ -779,10 +818,15 @@ public class Workspace {
 		}
 		final UTF8JsonSorterFactory fac = new UTF8JsonSorterFactory(
 				rescfg.getMaxRelabelAndSortMemoryUsage());
+		final ParallelJsonSorter psort = tempTFM == null ? null : parallelSorter;
 		for (final ResolvedSaveObject ro: saveobjs) {
 			try {
 				//modifies object in place
-				ro.getRep().sort(fac, tempTFM);
+				if (psort == null) {
+					ro.getRep().sort(fac, tempTFM);
+				} else {
+					ro.getRep().sort(fac, tempTFM, psort);
+				}
 			} catch (KeyDuplicationException kde) {
 				/* this occurs when two references in the same hash resolve
 				 * to the same reference, so one value would be lost
@@ -1066,7 +1110,8 @@ public class Workspace {
 		final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
 				.withIgnoreInaccessible(nullIfInaccessible)
 				.withAsAdmin(asAdmin)
-				.withMaximumObjectsSearched(maximumObjectSearchCount);
+				.withMaximumObjectsSearched(maximumObjectSearchCount)
+				.withReferencePathCache(referencePathCache);
 		for (final ObjectIdentifier oi: loi) {
 			orb.withObject(oi);
 		}
@@ -1379,7 +1424,8 @@ public class Workspace {
 		final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
 				.withIgnoreInaccessible(nullIfInaccessible)
 				.withAsAdmin(asAdmin)
-				.withMaximumObjectsSearched(maximumObjectSearchCount);
+				.withMaximumObjectsSearched(maximumObjectSearchCount)
+				.withReferencePathCache(referencePathCache);
 		for (final ObjectIdentifier oi: loi) {
 			orb.withObject(oi);
 		}
@@ -1669,6 +1715,20 @@ public class Workspace {
 		return db.getAllWorkspaceOwners();
 	}
 	
+	/* admin method only, should not be exposed in public API
+	 */
+	public long indexIncomingReferences(final long startWorkspaceID, final int count)
+			throws WorkspaceCommunicationException {
+		return db.indexIncomingReferences(startWorkspaceID, count);
+	}
+	
+	/* admin method only, should not be exposed in public API
+	 */
+	public long flagLatestVersions(final long startWorkspaceID, final int count)
+			throws WorkspaceCommunicationException {
+		return db.flagLatestVersions(startWorkspaceID, count);
+	}
+	
 	/* these admin functions are provided as a convenience and have nothing
 	 * to do with the rest of the DB, really. 
 	 */
@@ -1919,7 +1979,8 @@ public class Workspace {
 				final Set<ObjectIdentifier> idset)
 				throws IdReferenceHandlerException {
 			final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
-					.withMaximumObjectsSearched(maximumObjectSearchCount);
+					.withMaximumObjectsSearched(maximumObjectSearchCount)
+					.withReferencePathCache(referencePathCache);
 			if (!idset.isEmpty()) {
 				try {
 					for (final ObjectIdentifier oi: idset) {
@@ -8,6 +8,7 @@ import java.util.Set;
 
 import com.google.common.base.Optional;
 
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
@@ -411,6 +412,28 @@ public interface WorkspaceDatabase {
 	public Map<Reference, ObjectReferenceSet> getObjectIncomingReferences(
 			Set<Reference> objs) throws WorkspaceCommunicationException;
 	
+	/** Add the references from the object versions in a range of workspaces to the index used
+	 * to find incoming references, if any. This is only necessary for versions saved before the
+	 * index existed, and is safe to run more than once for the same workspaces.
+	 * @param startWorkspaceID the first workspace ID in the range.
+	 * @param count the number of workspace IDs in the range.
+	 * @return the number of references processed.
+	 * @throws WorkspaceCommunicationException if a communication error with the backend occurs.
+	 */
+	public long indexIncomingReferences(long startWorkspaceID, int count)
+			throws WorkspaceCommunicationException;
+	
+	/** Flag the latest versions of the objects in a range of workspaces, so that listings of
+	 * the latest versions don't read earlier versions. This is only necessary for versions saved
+	 * before the flag existed, and is safe to run more than once for the same workspaces.
+	 * @param startWorkspaceID the first workspace ID in the range.
+	 * @param count the number of workspace IDs in the range.
+	 * @return the number of objects processed.
+	 * @throws WorkspaceCommunicationException if a communication error with the backend occurs.
+	 */
+	public long flagLatestVersions(long startWorkspaceID, int count)
+			throws WorkspaceCommunicationException;
+	
 	public Map<ObjectIDResolvedWS, Set<ObjectInformation>>
 			getReferencingObjects(PermissionSet perms,
 					Set<ObjectIDResolvedWS> objs)
@@ -579,6 +602,16 @@ public interface WorkspaceDatabase {
 	public Set<WorkspaceUser> getAllWorkspaceOwners()
 			throws WorkspaceCommunicationException;
 	
+	/** Get the most frequently used types in the database, as measured by the number of object
+	 * versions saved with each type among the most recently saved versions.
+	 * @param limit the maximum number of types to return.
+	 * @param sampleSize the number of the most recently saved versions to examine.
+	 * @return the types, ordered from most to least used.
+	 * @throws WorkspaceCommunicationException if a communication exception occurs.
+	 */
+	public List<AbsoluteTypeDefId> getMostUsedTypes(int limit, int sampleSize)
+			throws WorkspaceCommunicationException;
+	
 	public boolean isAdmin(WorkspaceUser putativeAdmin)
 			throws WorkspaceCommunicationException;
 
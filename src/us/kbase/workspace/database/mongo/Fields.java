@@ -18,6 +18,12 @@ public class Fields {
 	public static final String WS_NAME = "name";
 	public static final String WS_DEL = "del";
 	public static final String WS_NUMOBJ = "numObj";
+	/* since 0.12.0
+	 * the maximum object ID in use in the workspace. Set when objects are saved. If present,
+	 * numObj is the maximum object ID reserved for the workspace, which may be greater than the
+	 * maximum ID in use if blocks of IDs are reserved. If absent, numObj is the maximum ID.
+	 */
+	public static final String WS_MAXOBJ = "maxObj";
 	public static final String WS_DESC = "desc";
 	public static final String WS_LOCKED = "lock";
 	public static final String WS_META = "meta";
@@ -54,6 +60,13 @@ public class Fields {
 	public static final String VER_PROV = "provenance";
 	public static final String VER_REF = "refs";
 	public static final String VER_PROVREF = "provrefs";
+	/* since 0.12.0
+	 * the provenance date and the provenance action times for the version. These are not part
+	 * of the provenance hash, so a provenance document may be shared by versions saved at
+	 * different times. If absent, the values in the provenance document are used.
+	 */
+	public static final String VER_PROV_DATE = "provdate";
+	public static final String VER_PROV_ACTION_TIMES = "provtimes";
 	public static final String VER_TYPE = "type";
 	public static final String VER_SIZE = "size";
 	public static final String VER_RVRT = "revert";
@@ -61,6 +74,23 @@ public class Fields {
 	public static final String VER_COPIED = "copied";
 	//in 0.3.0, if missing assume no external IDs
 	public static final String VER_EXT_IDS = "extids";
+	/* since 0.12.0. True for the latest version of an object, false for earlier versions. Missing
+	 * in versions saved by earlier releases. May be true for more than one version of an object
+	 * in rare race conditions, so the object version count is the final arbiter of the latest
+	 * version. The only mutable field in a version document.
+	 */
+	public static final String VER_LATEST = "latest";
+	
+	/* incoming reference fields, since 0.12.0
+	 * each document records that the source object version references the target object
+	 * version, either directly or via its provenance.
+	 */
+	public static final String INREF_TARGET_WS_ID = "tws";
+	public static final String INREF_TARGET_ID = "tid";
+	public static final String INREF_TARGET_VER = "tver";
+	public static final String INREF_SOURCE_WS_ID = "sws";
+	public static final String INREF_SOURCE_ID = "sid";
+	public static final String INREF_SOURCE_VER = "sver";
 	
 	// meta document key & value
 	public static final String META_KEY = "k";
@@ -71,6 +101,11 @@ public class Fields {
 	public static final String PROV_WS_ID = "wsid";
 	public static final String PROV_DATE = "date";
 	public static final String PROV_ACTIONS = "actions";
+	/* since 0.12.0
+	 * a hash of the provenance document, used to store identical provenance once. Absent in
+	 * documents saved by prior versions.
+	 */
+	public static final String PROV_HASH = "hash";
 	//provenance action fields
 	public static final String PROV_ACTION_TIME = "time";
 	public static final String PROV_ACTION_CALLER = "caller";
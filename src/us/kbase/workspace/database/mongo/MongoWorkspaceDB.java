@@ -13,6 +13,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -20,7 +21,10 @@ import java.util.Map.Entry;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.bson.types.ObjectId;
 import org.slf4j.LoggerFactory;
 
@@ -84,16 +88,30 @@ import us.kbase.workspace.database.exceptions.WorkspaceDBInitializationException
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
 import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+import us.kbase.workspace.database.mongo.WorkspaceChangeMonitor.ChangeListener;
+import us.kbase.workspace.database.mongo.WorkspaceChangeMonitor.ChangeType;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.CommandResult;
+import com.mongodb.Cursor;
 import com.mongodb.DB;
+import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.DuplicateKeyException;
+import com.mongodb.ErrorCategory;
 import com.mongodb.MongoException;
 import com.mongodb.WriteResult;
 
@@ -110,6 +128,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	 *   latter would split objects between shards, but all the versions for a particular object
 	 *   would remain on one shard. Again, the WSID/Object ID index must be unique.
 	 * - Provedence could be sharded on the (hashed?) Mongo Object ID.
+	 * - Incoming references could be sharded on the target WSID or WSID/Object ID, which keeps
+	 *   the references to an object on one shard.
 	 * - Admins and configs are tiny.
 	 */
 	
@@ -123,6 +143,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	public static final String COL_WORKSPACE_VERS = CollectionNames.COL_WORKSPACE_VERS;
 	public static final String COL_PROVENANCE = CollectionNames.COL_PROVENANCE;
 	public static final String COL_CONFIG = CollectionNames.COL_CONFIG;
+	public static final String COL_INCOMING_REFS = CollectionNames.COL_INCOMING_REFS;
 	public static final AllUsers ALL_USERS = Workspace.ALL_USERS;
 	
 
@@ -131,6 +152,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	private static final int SCHEMA_VERSION = 1;
 	
 	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final ObjectMapper SORTED_MAPPER = new ObjectMapper()
+			.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
 	
 	private ResourceUsageConfiguration rescfg;
 	private final DB wsmongo;
@@ -139,6 +162,76 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	private final ObjectInfoUtils objutils;
 	
 	private final TempFilesManager tfm;
+	private final boolean batchSaves;
+	private final boolean dedupeProvenanceAcrossSaves;
+	private final boolean incomingReferenceIndex;
+	private final ObjectIDAllocator idAllocator; // null if IDs are not allocated in blocks
+	// version and provenance documents are immutable, and so can be cached indefinitely.
+	// The type cache holds just the version type strings, so that type lookups for the many
+	// references embedded in saved objects don't fill the version cache.
+	// All three caches are null if caching is disabled.
+	private final Cache<Reference, Map<String, Object>> versionCache;
+	private final Cache<ObjectId, DBObject> provenanceCache;
+	private final Cache<Reference, String> typeCache;
+	// workspace identifier -> resolved workspace. Entries are removed when this instance changes
+	// the name, deletion or lock state of a workspace, and expire to pick up changes made by
+	// other instances. Null if caching is disabled.
+	private final WorkspaceIndexedCache<WorkspaceIdentifier, ResolvedWorkspaceID> workspaceCache;
+	// (user, workspace ID) -> user and global permissions. Entries are removed when this instance
+	// changes the permissions for a workspace and expire quickly to pick up changes made by other
+	// instances. Null if caching is disabled.
+	private final WorkspaceIndexedCache<PermissionKey, CachedPermissions> permissionCache;
+	private final WorkspaceChangeMonitor changeMonitor; // null if changes aren't monitored
+	
+	private static class PermissionKey {
+		
+		private final String user; // null for anonymous users
+		private final long wsid;
+		
+		private PermissionKey(final WorkspaceUser user, final long wsid) {
+			this.user = user == null ? null : user.getUser();
+			this.wsid = wsid;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((user == null) ? 0 : user.hashCode());
+			result = prime * result + (int) (wsid ^ (wsid >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final PermissionKey other = (PermissionKey) obj;
+			if (user == null) {
+				if (other.user != null) {
+					return false;
+				}
+			} else if (!user.equals(other.user)) {
+				return false;
+			}
+			return wsid == other.wsid;
+		}
+	}
+	
+	private static class CachedPermissions {
+		
+		private final Permission user;
+		private final Permission global;
+		
+		private CachedPermissions(final Permission user, final Permission global) {
+			this.user = user;
+			this.global = global;
+		}
+	}
 	
 	private static final String IDX_UNIQ = "unique";
 	private static final String IDX_SPARSE = "sparse";
@@ -202,9 +295,25 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		wsVer.add(idxSpec(Fields.VER_SAVEDATE, 1));
 		//find objects by metadata
 		wsVer.add(idxSpec(Fields.VER_META, 1, IDX_SPARSE));
+		//list the latest versions of objects, sorted by object id
+		wsVer.add(idxSpec(Fields.VER_WS_ID, 1, Fields.VER_LATEST, 1, Fields.VER_ID, 1,
+				Fields.VER_VER, -1));
 		indexes.put(COL_WORKSPACE_VERS, wsVer);
 		
-		//no indexes needed for provenance since all lookups are by _id
+		//incoming reference indexes
+		final LinkedList<IndexSpecification> inref = new LinkedList<>();
+		//find the versions that reference a version, index covers queries
+		inref.add(idxSpec(Fields.INREF_TARGET_WS_ID, 1, Fields.INREF_TARGET_ID, 1,
+				Fields.INREF_TARGET_VER, 1, Fields.INREF_SOURCE_WS_ID, 1,
+				Fields.INREF_SOURCE_ID, 1, Fields.INREF_SOURCE_VER, 1, IDX_UNIQ));
+		indexes.put(COL_INCOMING_REFS, inref);
+		
+		//provenance indexes
+		final LinkedList<IndexSpecification> prov = new LinkedList<>();
+		//find identical provenance. Sparse since older documents have no hash. Not unique since
+		//concurrent saves may store the same provenance
+		prov.add(idxSpec(Fields.PROV_HASH, 1, IDX_SPARSE));
+		indexes.put(COL_PROVENANCE, prov);
 		
 		//admin indexes
 		final LinkedList<IndexSpecification> admin = new LinkedList<>();
@@ -221,25 +330,297 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return indexes;
 	}
 	
+	/** Create a workspace database with the default options. Use
+	 * {@link #getBuilder(DB, BlobStore, TempFilesManager)} to set other options.
+	 * @param workspaceDB the MongoDB database in which to store workspace data.
+	 * @param blobStore the blob store in which to store object data.
+	 * @param tfm the temporary files manager.
+	 * @throws WorkspaceCommunicationException if the database couldn't be contacted.
+	 * @throws WorkspaceDBInitializationException if the database couldn't be initialized.
+	 * @throws CorruptWorkspaceDBException if the database configuration is corrupt.
+	 */
 	public MongoWorkspaceDB(final DB workspaceDB, final BlobStore blobStore,
 			final TempFilesManager tfm)
 			throws WorkspaceCommunicationException,
 			WorkspaceDBInitializationException, CorruptWorkspaceDBException {
-		if (workspaceDB == null || blobStore == null || tfm == null) {
-			throw new NullPointerException("No arguments can be null");
-		}
+		this(getBuilder(workspaceDB, blobStore, tfm));
+	}
+	
+	private MongoWorkspaceDB(final Builder b)
+			throws WorkspaceCommunicationException,
+			WorkspaceDBInitializationException, CorruptWorkspaceDBException {
 		rescfg = new ResourceUsageConfigurationBuilder().build();
-		this.tfm = tfm;
-		wsmongo = workspaceDB;
+		this.tfm = b.tfm;
+		this.batchSaves = b.batchSaves;
+		this.dedupeProvenanceAcrossSaves = b.dedupeProvenanceAcrossSaves;
+		this.incomingReferenceIndex = b.incomingReferenceIndex;
+		wsmongo = b.workspaceDB;
+		idAllocator = b.objectIDBlockSize < 2 ? null : new ObjectIDAllocator(
+				wsmongo.getCollection(COL_WORKSPACES), b.objectIDBlockSize);
+		if (b.documentCacheSize < 1) {
+			versionCache = null;
+			provenanceCache = null;
+			typeCache = null;
+		} else {
+			versionCache = CacheBuilder.newBuilder().maximumSize(b.documentCacheSize).build();
+			provenanceCache = CacheBuilder.newBuilder().maximumSize(b.documentCacheSize).build();
+			typeCache = CacheBuilder.newBuilder().maximumSize(b.documentCacheSize).build();
+		}
+		if (b.workspaceCacheSize < 1) {
+			workspaceCache = null;
+		} else {
+			workspaceCache = new WorkspaceIndexedCache<>(
+					b.workspaceCacheSize, b.workspaceCacheExpirySec, TimeUnit.SECONDS);
+		}
+		if (b.permissionCacheSize < 1) {
+			permissionCache = null;
+		} else {
+			permissionCache = new WorkspaceIndexedCache<>(
+					b.permissionCacheSize, b.permissionCacheExpiryMS, TimeUnit.MILLISECONDS);
+		}
+		changeMonitor = b.changeMonitor;
+		if (changeMonitor != null) {
+			changeMonitor.register(new ChangeListener() {
+				
+				@Override
+				public void changed(final ChangeType type, final long workspaceID) {
+					if (type.equals(ChangeType.WORKSPACE)) {
+						invalidateWorkspaceCache(workspaceID);
+					} else if (type.equals(ChangeType.PERMISSIONS)) {
+						invalidatePermissionCache(workspaceID);
+					}
+				}
+				
+				@Override
+				public void invalidateAll() {
+					if (workspaceCache != null) {
+						workspaceCache.invalidateAll();
+					}
+					if (permissionCache != null) {
+						permissionCache.invalidateAll();
+					}
+				}
+			});
+		}
 		query = new QueryMethods(wsmongo, (AllUsers) ALL_USERS, COL_WORKSPACES,
 				COL_WORKSPACE_OBJS, COL_WORKSPACE_VERS, COL_WS_ACLS);
-		objutils = new ObjectInfoUtils(query);
-		blob = blobStore;
+		objutils = new ObjectInfoUtils(query, b.listObjectsAggregation);
+		blob = b.blobStore;
 		//TODO DBCONSIST check a few random types and make sure they exist
 		ensureIndexes();
 		checkConfig();
 	}
 	
+	/** Get a builder for a workspace database.
+	 * @param workspaceDB the MongoDB database in which to store workspace data.
+	 * @param blobStore the blob store in which to store object data.
+	 * @param tfm the temporary files manager.
+	 * @return the builder.
+	 */
+	public static Builder getBuilder(
+			final DB workspaceDB,
+			final BlobStore blobStore,
+			final TempFilesManager tfm) {
+		return new Builder(workspaceDB, blobStore, tfm);
+	}
+	
+	/** A builder for a workspace database. */
+	public static class Builder {
+		
+		private final DB workspaceDB;
+		private final BlobStore blobStore;
+		private final TempFilesManager tfm;
+		private boolean batchSaves = false;
+		private boolean dedupeProvenanceAcrossSaves = false;
+		private int objectIDBlockSize = 0;
+		private int documentCacheSize = 0;
+		private boolean listObjectsAggregation = false;
+		private boolean incomingReferenceIndex = false;
+		private int workspaceCacheSize = 0;
+		private int workspaceCacheExpirySec = 60;
+		private int permissionCacheSize = 0;
+		private int permissionCacheExpiryMS = 1000;
+		private WorkspaceChangeMonitor changeMonitor = null;
+		
+		private Builder(
+				final DB workspaceDB,
+				final BlobStore blobStore,
+				final TempFilesManager tfm) {
+			if (workspaceDB == null || blobStore == null || tfm == null) {
+				throw new NullPointerException("No arguments can be null");
+			}
+			this.workspaceDB = workspaceDB;
+			this.blobStore = blobStore;
+			this.tfm = tfm;
+		}
+		
+		/** Save object containers and versions in batches when saving objects, which greatly
+		 * reduces the number of database round trips when saving many objects. By default
+		 * objects are saved one at a time.
+		 * @param batchSaves true to batch saves.
+		 * @return this builder.
+		 */
+		public Builder withBatchSaves(final boolean batchSaves) {
+			this.batchSaves = batchSaves;
+			return this;
+		}
+		
+		/** Store identical provenance once across all saves, rather than once per save. This
+		 * requires an extra round trip to the database per save to look up the stored
+		 * provenance.
+		 * @param dedupe true to deduplicate provenance across saves.
+		 * @return this builder.
+		 */
+		public Builder withProvenanceDeduplication(final boolean dedupe) {
+			this.dedupeProvenanceAcrossSaves = dedupe;
+			return this;
+		}
+		
+		/** Reserve blocks of object IDs from each workspace's object counter and allocate
+		 * IDs for new objects from the blocks in memory, avoiding an update of the workspace
+		 * document for most saves. Unused IDs in a block are lost when the server is stopped.
+		 * Pass 0 or 1 to allocate IDs one save at a time, the default.
+		 * @param objectIDBlockSize the number of IDs to reserve at once.
+		 * @return this builder.
+		 */
+		public Builder withObjectIDBlockSize(final int objectIDBlockSize) {
+			if (objectIDBlockSize < 0) {
+				throw new IllegalArgumentException("objectIDBlockSize must be >= 0");
+			}
+			this.objectIDBlockSize = objectIDBlockSize;
+			return this;
+		}
+		
+		/** Cache object version and provenance documents in memory, which are immutable once
+		 * saved, so that repeated retrievals of the same objects don't need to fetch and decode
+		 * the documents again. Mutable object state, such as the name and deletion state, is
+		 * always read from the database. Pass 0 to disable caching, the default.
+		 * @param documentCacheSize the maximum number of version documents, and separately
+		 * the maximum number of provenance documents, to cache.
+		 * @return this builder.
+		 */
+		public Builder withDocumentCacheSize(final int documentCacheSize) {
+			if (documentCacheSize < 0) {
+				throw new IllegalArgumentException("documentCacheSize must be >= 0");
+			}
+			this.documentCacheSize = documentCacheSize;
+			return this;
+		}
+		
+		/** Filter hidden, deleted, and earlier versions of objects in the database via an
+		 * aggregation pipeline when listing objects, rather than fetching batches of versions
+		 * and filtering them in memory. Requires MongoDB 3.6+. By default the in memory filter
+		 * is used.
+		 * @param listObjectsAggregation true to filter object listings in the database.
+		 * @return this builder.
+		 */
+		public Builder withListObjectsAggregation(final boolean listObjectsAggregation) {
+			this.listObjectsAggregation = listObjectsAggregation;
+			return this;
+		}
+		
+		/** Look up the object versions that reference a set of versions, as is done for each
+		 * level of a reference path search, from the incoming reference index rather than the
+		 * reference lists in the version documents. The index is maintained whenever versions
+		 * are saved, but versions saved before the index existed must be added via
+		 * {@link MongoWorkspaceDB#indexIncomingReferences(long, int)} before enabling
+		 * lookups from the index. By default the version documents are used.
+		 * @param incomingReferenceIndex true to look up incoming references from the index.
+		 * @return this builder.
+		 */
+		public Builder withIncomingReferenceIndex(final boolean incomingReferenceIndex) {
+			this.incomingReferenceIndex = incomingReferenceIndex;
+			return this;
+		}
+		
+		/** Cache the results of resolving workspace names and IDs in memory, so that most calls
+		 * don't need to look up the workspaces they operate on. Changes to workspace names,
+		 * deletion states, and lock states made via this instance are reflected immediately;
+		 * changes made via other instances are visible once the cache entry expires.
+		 * Pass 0 to disable caching, the default.
+		 * @param workspaceCacheSize the maximum number of workspace identifiers to cache.
+		 * @return this builder.
+		 */
+		public Builder withWorkspaceCacheSize(final int workspaceCacheSize) {
+			if (workspaceCacheSize < 0) {
+				throw new IllegalArgumentException("workspaceCacheSize must be >= 0");
+			}
+			this.workspaceCacheSize = workspaceCacheSize;
+			return this;
+		}
+		
+		/** Set how long resolved workspaces are cached before they are looked up again. Has no
+		 * effect unless the cache is enabled via {@link #withWorkspaceCacheSize(int)}.
+		 * The default is 60 seconds.
+		 * @param workspaceCacheExpirySec the time in seconds after which a cached workspace
+		 * expires.
+		 * @return this builder.
+		 */
+		public Builder withWorkspaceCacheExpiry(final int workspaceCacheExpirySec) {
+			if (workspaceCacheExpirySec < 1) {
+				throw new IllegalArgumentException("workspaceCacheExpirySec must be > 0");
+			}
+			this.workspaceCacheExpirySec = workspaceCacheExpirySec;
+			return this;
+		}
+		
+		/** Cache users' permissions for workspaces in memory, so that repeated calls against the
+		 * same workspaces don't need to look up the permissions. Changes to permissions made via
+		 * this instance are reflected immediately; changes made via other instances are visible
+		 * once the cache entry expires. Only permission lookups for specific workspaces are
+		 * cached. Pass 0 to disable caching, the default.
+		 * @param permissionCacheSize the maximum number of (user, workspace) permissions to
+		 * cache.
+		 * @return this builder.
+		 */
+		public Builder withPermissionCacheSize(final int permissionCacheSize) {
+			if (permissionCacheSize < 0) {
+				throw new IllegalArgumentException("permissionCacheSize must be >= 0");
+			}
+			this.permissionCacheSize = permissionCacheSize;
+			return this;
+		}
+		
+		/** Set how long permissions are cached before they are looked up again. Has no effect
+		 * unless the cache is enabled via {@link #withPermissionCacheSize(int)}.
+		 * The default is 1000 milliseconds.
+		 * @param permissionCacheExpiryMS the time in milliseconds after which cached
+		 * permissions expire.
+		 * @return this builder.
+		 */
+		public Builder withPermissionCacheExpiry(final int permissionCacheExpiryMS) {
+			if (permissionCacheExpiryMS < 1) {
+				throw new IllegalArgumentException("permissionCacheExpiryMS must be > 0");
+			}
+			this.permissionCacheExpiryMS = permissionCacheExpiryMS;
+			return this;
+		}
+		
+		/** Keep the in memory caches coherent with changes made by other workspace servers
+		 * sharing the database. The database registers itself with the monitor and records
+		 * the changes it makes with the monitor. Starting the monitor is the responsibility of
+		 * the caller.
+		 * @param changeMonitor the change monitor, or null to not monitor changes, the default.
+		 * @return this builder.
+		 */
+		public Builder withChangeMonitor(final WorkspaceChangeMonitor changeMonitor) {
+			this.changeMonitor = changeMonitor;
+			return this;
+		}
+		
+		/** Build the workspace database.
+		 * @return the database.
+		 * @throws WorkspaceCommunicationException if the database couldn't be contacted.
+		 * @throws WorkspaceDBInitializationException if the database couldn't be initialized.
+		 * @throws CorruptWorkspaceDBException if the database configuration is corrupt.
+		 */
+		public MongoWorkspaceDB build()
+				throws WorkspaceCommunicationException, WorkspaceDBInitializationException,
+				CorruptWorkspaceDBException {
+			return new MongoWorkspaceDB(this);
+		}
+	}
+	
 	private static class IndexSpecification {
 		public DBObject index;
 		public DBObject options;
@@ -281,6 +662,38 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				getIndexOptions(options));
 	}
 	
+	private static IndexSpecification idxSpec(
+			final String field1, final int ascendingSort1,
+			final String field2, final int ascendingSort2,
+			final String field3, final int ascendingSort3,
+			final String field4, final int ascendingSort4,
+			final String... options) {
+		return new IndexSpecification(
+				new BasicDBObject(field1, ascendingSort1)
+					.append(field2, ascendingSort2)
+					.append(field3, ascendingSort3)
+					.append(field4, ascendingSort4),
+				getIndexOptions(options));
+	}
+	
+	private static IndexSpecification idxSpec(
+			final String field1, final int ascendingSort1,
+			final String field2, final int ascendingSort2,
+			final String field3, final int ascendingSort3,
+			final String field4, final int ascendingSort4,
+			final String field5, final int ascendingSort5,
+			final String field6, final int ascendingSort6,
+			final String... options) {
+		return new IndexSpecification(
+				new BasicDBObject(field1, ascendingSort1)
+					.append(field2, ascendingSort2)
+					.append(field3, ascendingSort3)
+					.append(field4, ascendingSort4)
+					.append(field5, ascendingSort5)
+					.append(field6, ascendingSort6),
+				getIndexOptions(options));
+	}
+	
 	private static DBObject getIndexOptions(final String[] options) {
 		final DBObject opts = new BasicDBObject();
 		for (final String s: options) {
@@ -378,10 +791,22 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	
 	private void updateWorkspaceModifiedDate(final ResolvedWorkspaceID rwsi)
 			throws WorkspaceCommunicationException {
+		updateWorkspaceModifiedDate(rwsi, null);
+	}
+	
+	// maxObjectID is the maximum ID of any new objects, or null if there are none
+	private void updateWorkspaceModifiedDate(
+			final ResolvedWorkspaceID rwsi,
+			final Long maxObjectID)
+			throws WorkspaceCommunicationException {
+		final BasicDBObject update = new BasicDBObject(
+				"$set", new BasicDBObject(Fields.WS_MODDATE, new Date()));
+		if (maxObjectID != null) {
+			update.append("$max", new BasicDBObject(Fields.WS_MAXOBJ, maxObjectID));
+		}
 		try {
 			wsmongo.getCollection(COL_WORKSPACES).update(
-					new BasicDBObject(Fields.WS_ID, rwsi.getID()),
-					new BasicDBObject("$set", new BasicDBObject(Fields.WS_MODDATE, new Date())));
+					new BasicDBObject(Fields.WS_ID, rwsi.getID()), update);
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
@@ -641,6 +1066,19 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			NoSuchObjectException {
 		
 		// looked at using copyObject to do this but was too messy
+		/* Also looked at lazy copy on write clones, where the new workspace records the
+		 * source workspace and max object id and unmodified objects are read from the source.
+		 * Every object query in this class, QueryMethods, and ObjectInfoUtils is built from the
+		 * workspace id, so all of them would need to fall through to the source - including
+		 * the multi workspace list objects query, where paging and sorting would have to merge
+		 * two id spaces - as would the reference searches, which query on reference strings
+		 * containing the new workspace id. Reference counts for objects that aren't
+		 * materialized have nowhere to go. Unless the source is locked, writes to the source
+		 * would also have to materialize objects in every lazy clone to keep the clone
+		 * consistent. Too much surface area for too little gain - object data is stored once
+		 * per checksum and provenance is shared by id already, so a clone only copies the
+		 * object and version documents, which is done in batches below.
+		 */
 		final ResolvedWorkspaceID fromWS = wsid;
 		// resolve the object before making a new workspace in case something
 		// fails
@@ -662,41 +1100,24 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		long maxid = 0;
 		try {
 			final DBCursor wsobjects = query.queryCollectionCursor(
-					COL_WORKSPACE_OBJS, q, FLDS_CLONE_WS, hint, -1);
+					COL_WORKSPACE_OBJS, q, FLDS_CLONE_WS, hint, -1)
+					.sort(new BasicDBObject(Fields.OBJ_ID, 1));
+			// no total is logged, as counting the objects would cost another full query
+			int cloned = 0;
+			final List<DBObject> batch = new ArrayList<>();
 			for (final DBObject o: wsobjects) {
-				final long objid = (Long) o.get(Fields.OBJ_ID);
-				final String name = (String) o.get(Fields.OBJ_NAME);
-				final boolean hidden = (Boolean) o.get(Fields.OBJ_HIDE);
-				final boolean deleted = (Boolean) o.get(Fields.OBJ_DEL);
-				maxid = Math.max(maxid, objid);
-				final ResolvedObjectIDNoVer roi =
-						new ResolvedObjectIDNoVer(fromWS, objid, name, deleted);
-				final List<Map<String, Object>> versions;
-				try {
-					versions = queryAllVersions(
-							new HashSet<ResolvedObjectIDNoVer>(Arrays.asList(roi)),
-							FLDS_VER_COPYOBJ).get(roi);
-				} catch (NoSuchObjectException nsoe) {
-					/* The object was saved to the objects collections and the
-					 * version was incremented at least once. However, no
-					 * versions exist in the version collection. So either a
-					 * race condition or the system died before versions could
-					 * be saved, so skip it. Really need to move to a backend
-					 * with transactions or simplify the schema so it's
-					 * relationless.
-					 */
-					continue;
-				}
-				for (final Map<String, Object> v: versions) {
-					final int ver = (Integer) v.get(Fields.VER_VER);
-					v.remove(Fields.MONGO_ID);
-					v.put(Fields.VER_SAVEDBY, user.getUser());
-					v.put(Fields.VER_RVRT, null);
-					v.put(Fields.VER_COPIED, new Reference(fromWS.getID(), objid, ver).toString());
+				batch.add(o);
+				if (batch.size() >= CLONE_BATCH_SIZE) {
+					maxid = Math.max(maxid, cloneObjects(user, fromWS, toWS, batch));
+					cloned += batch.size();
+					batch.clear();
+					LoggerFactory.getLogger(getClass()).info(String.format(
+							"Cloning workspace %s to %s: %s objects processed",
+							fromWS.getID(), toWS.getID(), cloned));
 				}
-				updateReferenceCountsForVersions(versions);
-				saveWorkspaceObject(toWS, objid, name);
-				saveObjectVersions(user, toWS, objid, versions, hidden);
+			}
+			if (!batch.isEmpty()) {
+				maxid = Math.max(maxid, cloneObjects(user, fromWS, toWS, batch));
 			}
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
@@ -706,7 +1127,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			incrementWorkspaceCounter(toWS, maxid);
 		}
 		final Instant moddate = updateClonedWorkspaceInformation(
-				user, globalRead, toWS.getID(), newname);
+				user, globalRead, toWS.getID(), newname, maxid);
 		return WorkspaceInformation.getBuilder()
 				.withID(wsinfo.getId())
 				.withName(newname)
@@ -720,13 +1141,105 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				.build();
 	}
 
+	private static final int CLONE_BATCH_SIZE = 1000;
+	
+	/* Clones a batch of objects with a constant number of round trips: one query for the
+	 * versions, one bulk write for the reference counts, and one insert each for the
+	 * objects and versions. The new workspace is still in the cloning state, so there can't
+	 * be any name collisions.
+	 * Returns the maximum object id in the batch.
+	 */
+	private long cloneObjects(
+			final WorkspaceUser user,
+			final ResolvedWorkspaceID fromWS,
+			final ResolvedWorkspaceID toWS,
+			final List<DBObject> objects)
+			throws WorkspaceCommunicationException {
+		long maxid = 0;
+		final List<Long> ids = new ArrayList<>();
+		for (final DBObject o: objects) {
+			final long objid = (Long) o.get(Fields.OBJ_ID);
+			maxid = Math.max(maxid, objid);
+			ids.add(objid);
+		}
+		final Map<Long, List<Map<String, Object>>> idToVersions = new HashMap<>();
+		final DBCursor vercur = query.queryCollectionCursor(
+				COL_WORKSPACE_VERS,
+				new BasicDBObject(Fields.VER_WS_ID, fromWS.getID())
+						.append(Fields.VER_ID, new BasicDBObject("$in", ids)),
+				FLDS_VER_COPYOBJ,
+				null,
+				-1)
+				.sort(new BasicDBObject(Fields.VER_ID, 1).append(Fields.VER_VER, 1));
+		for (final DBObject v: vercur) {
+			final Long objid = (Long) v.get(Fields.VER_ID);
+			if (idToVersions.get(objid) == null) {
+				idToVersions.put(objid, new ArrayList<>());
+			}
+			idToVersions.get(objid).add(QueryMethods.dbObjectToMap(v));
+		}
+		final Date saved = new Date();
+		final List<Map<String, Object>> allVersions = new ArrayList<>();
+		final List<DBObject> newObjects = new ArrayList<>();
+		final List<DBObject> newVersions = new ArrayList<>();
+		for (final DBObject o: objects) {
+			final long objid = (Long) o.get(Fields.OBJ_ID);
+			final List<Map<String, Object>> versions = idToVersions.get(objid);
+			if (versions == null) {
+				/* The object was saved to the objects collections and the
+				 * version was incremented at least once. However, no
+				 * versions exist in the version collection. So either a
+				 * race condition or the system died before versions could
+				 * be saved, so skip it. Really need to move to a backend
+				 * with transactions or simplify the schema so it's
+				 * relationless.
+				 */
+				continue;
+			}
+			int newver = 1;
+			for (final Map<String, Object> v: versions) {
+				final int ver = (Integer) v.get(Fields.VER_VER);
+				v.remove(Fields.MONGO_ID);
+				v.put(Fields.VER_SAVEDBY, user.getUser());
+				v.put(Fields.VER_RVRT, null);
+				v.put(Fields.VER_COPIED, new Reference(fromWS.getID(), objid, ver).toString());
+				newVersions.add(toVersionDocument(v, toWS, objid, newver++, saved));
+			}
+			allVersions.addAll(versions);
+			final DBObject dbo = new BasicDBObject();
+			dbo.put(Fields.OBJ_WS_ID, toWS.getID());
+			dbo.put(Fields.OBJ_ID, objid);
+			dbo.put(Fields.OBJ_VCNT, versions.size()); //Integer
+			dbo.put(Fields.OBJ_REFCOUNTS, zeros(versions.size()));
+			dbo.put(Fields.OBJ_NAME, o.get(Fields.OBJ_NAME));
+			dbo.put(Fields.OBJ_LATEST, null);
+			dbo.put(Fields.OBJ_DEL, false);
+			dbo.put(Fields.OBJ_HIDE, o.get(Fields.OBJ_HIDE));
+			dbo.put(Fields.OBJ_MODDATE, saved);
+			newObjects.add(dbo);
+		}
+		if (newObjects.isEmpty()) {
+			return maxid;
+		}
+		updateReferenceCountsForVersions(allVersions);
+		try {
+			wsmongo.getCollection(COL_WORKSPACE_OBJS).insert(newObjects);
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		insertVersions(newVersions);
+		return maxid;
+	}
+
 	// this method expects that the id exists. If it does not it'll throw an
 	// IllegalState exception.
 	private Instant updateClonedWorkspaceInformation(
 			final WorkspaceUser user,
 			final boolean globalRead,
 			final long id,
-			final String newname)
+			final String newname,
+			final long maxObjectID)
 			throws PreExistingWorkspaceException, WorkspaceCommunicationException,
 				CorruptWorkspaceDBException {
 		
@@ -736,6 +1249,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		final DBObject ws = new BasicDBObject();
 		ws.put(Fields.WS_MODDATE, moddate);
 		ws.put(Fields.WS_NAME, newname);
+		// the object counter is the max ID now, but won't be once IDs are allocated in blocks
+		ws.put(Fields.WS_MAXOBJ, maxObjectID);
 		
 		final DBObject update = new BasicDBObject(
 				"$unset", new BasicDBObject(Fields.WS_CLONING, ""));
@@ -781,9 +1296,12 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			wsmongo.getCollection(COL_WORKSPACES).update(
 					new BasicDBObject(Fields.WS_ID, rwsi.getID()),
 					new BasicDBObject("$set", new BasicDBObject(Fields.WS_LOCKED, true)));
+			recordChange();
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateWorkspaceCache(rwsi);
 		}
 		// ws mod date isn't changed, maybe it should be?
 		return Instant.now();
@@ -793,6 +1311,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			Fields.VER_WS_ID, Fields.VER_ID, Fields.VER_VER,
 			Fields.VER_TYPE, Fields.VER_CHKSUM, Fields.VER_SIZE,
 			Fields.VER_PROV, Fields.VER_REF, Fields.VER_PROVREF,
+			Fields.VER_PROV_DATE, Fields.VER_PROV_ACTION_TIMES,
 			Fields.VER_COPIED, Fields.VER_META, Fields.VER_EXT_IDS);
 	
 	@Override
@@ -864,14 +1383,14 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		final ResolvedWorkspaceID toWS = to.getWorkspaceIdentifier();
 		final long objid;
 		if (rto == null) { //need to make a new object
-			final long id = incrementWorkspaceCounter(toWS, 1);
+			final long id = allocateObjectIDs(toWS, 1);
 			objid = saveWorkspaceObject(toWS, id, to.getName()).id;
 		} else {
 			objid = rto.getId();
 		}
 		saveObjectVersions(user, toWS, objid, versions, null);
 		final Map<String, Object> info = versions.get(versions.size() - 1);
-		updateWorkspaceModifiedDate(toWS);
+		updateWorkspaceModifiedDate(toWS, rto == null ? objid : null);
 		final ObjectInformation oi = ObjectInfoUtils.generateObjectInfo(toWS, objid,
 				rto == null ? to.getName() : rto.getName(), info);
 		return new CopyResult(oi, copyAll);
@@ -890,12 +1409,15 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					new BasicDBObject(Fields.WS_ID, rwsi.getID()),
 					new BasicDBObject("$set", new BasicDBObject(Fields.WS_NAME, newname)
 							.append(Fields.WS_MODDATE, Date.from(now))));
+			recordChange();
 		} catch (DuplicateKeyException medk) {
 			throw new IllegalArgumentException(
 					"There is already a workspace named " + newname);
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateWorkspaceCache(rwsi);
 		}
 		return now;
 	}
@@ -919,6 +1441,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 							.append(Fields.OBJ_ID, roi.getId()),
 					new BasicDBObject("$set", new BasicDBObject(Fields.OBJ_NAME, newname)
 							.append(Fields.OBJ_MODDATE, Date.from(time))));
+			recordChange();
 		} catch (DuplicateKeyException medk) {
 			throw new IllegalArgumentException(
 					"There is already an object in the workspace named " +
@@ -1020,8 +1543,29 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		if (wsis.isEmpty()) {
 			return ret;
 		}
-		final Map<WorkspaceIdentifier, Map<String, Object>> res =
-				query.queryWorkspacesByIdentifier(wsis, FLDS_WS_ID_NAME_DEL);
+		final Map<WorkspaceIdentifier, ResolvedWorkspaceID> res = new HashMap<>();
+		final Set<WorkspaceIdentifier> toQuery = new HashSet<>(wsis);
+		final long generation = workspaceCache == null ? 0 : workspaceCache.getGeneration();
+		if (workspaceCache != null) {
+			res.putAll(workspaceCache.getAllPresent(wsis));
+			toQuery.removeAll(res.keySet());
+		}
+		if (!toQuery.isEmpty()) {
+			final Map<WorkspaceIdentifier, Map<String, Object>> qres =
+					query.queryWorkspacesByIdentifier(toQuery, FLDS_WS_ID_NAME_DEL);
+			for (final WorkspaceIdentifier wsi: qres.keySet()) {
+				final ResolvedWorkspaceID r = new ResolvedWorkspaceID(
+						(Long) qres.get(wsi).get(Fields.WS_ID),
+						(String) qres.get(wsi).get(Fields.WS_NAME),
+						(Boolean) qres.get(wsi).get(Fields.WS_LOCKED), 
+						(Boolean) qres.get(wsi).get(Fields.WS_DEL));
+				res.put(wsi, r);
+				// missing workspaces aren't cached since they may be created at any time
+				if (workspaceCache != null) {
+					workspaceCache.put(wsi, r.getID(), r, generation);
+				}
+			}
+		}
 		for (final WorkspaceIdentifier wsi: wsis) {
 			if (!res.containsKey(wsi)) {
 				if (!allowMissing) {
@@ -1030,21 +1574,48 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 							wsi);
 				}
 			} else {
-				if (!allowDeleted && (Boolean) res.get(wsi).get(Fields.WS_DEL)) {
+				if (!allowDeleted && res.get(wsi).isDeleted()) {
 					throw new NoSuchWorkspaceException("Workspace " +
 							wsi.getIdentifierString() + " is deleted", wsi);
 				}
-				final ResolvedWorkspaceID r = new ResolvedWorkspaceID(
-						(Long) res.get(wsi).get(Fields.WS_ID),
-						(String) res.get(wsi).get(Fields.WS_NAME),
-						(Boolean) res.get(wsi).get(Fields.WS_LOCKED), 
-						(Boolean) res.get(wsi).get(Fields.WS_DEL));
-				ret.put(wsi, r);
+				ret.put(wsi, res.get(wsi));
 			}
 		}
 		return ret;
 	}
 	
+	// removes all the cached identifiers, name and ID, for a workspace.
+	private void invalidateWorkspaceCache(final ResolvedWorkspaceID rwsi) {
+		invalidateWorkspaceCache(rwsi.getID());
+	}
+	
+	private void invalidateWorkspaceCache(final long wsid) {
+		if (workspaceCache != null) {
+			workspaceCache.invalidate(wsid);
+		}
+	}
+	
+	// removes the cached permissions for all users for a workspace.
+	private void invalidatePermissionCache(final long wsid) {
+		if (permissionCache != null) {
+			permissionCache.invalidate(wsid);
+		}
+	}
+	
+	/** Get statistics for the permission cache.
+	 * @return the statistics, or null if permissions are not cached.
+	 */
+	public CacheStats getPermissionCacheStats() {
+		return permissionCache == null ? null : permissionCache.stats();
+	}
+	
+	// tells other workspace servers to update their caches. Throws MongoException.
+	private void recordChange() {
+		if (changeMonitor != null) {
+			changeMonitor.recordChange();
+		}
+	}
+	
 	@Override
 	public Map<ResolvedWorkspaceID, Map<User, Permission>> getAllPermissions(
 			final Set<ResolvedWorkspaceID> rwsis)
@@ -1104,6 +1675,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			throw new IllegalArgumentException(
 					"Permission cannot be null or NONE");
 		}
+		if (permissionCache != null && !excludeDeletedWorkspaces &&
+				rwsis != null && !rwsis.isEmpty()) {
+			return getPermissionsCached(
+					user, rwsis, perm, excludeGlobalRead, includeProvidedWorkspaces);
+		}
 		final Map<ResolvedWorkspaceID, Map<User, Permission>> userperms;
 		if (user != null) {
 			userperms = query.queryPermissions(rwsis, new HashSet<User>(Arrays.asList(user)),
@@ -1126,6 +1702,67 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return buildPermissionSet(user, rwsis, userperms, globalperms, includeProvidedWorkspaces);
 	}
 
+	/* Produces the same results as the uncached path, but always fetches the user and global
+	 * permissions together so they can be cached. For a set of workspaces and a user, the
+	 * uncached path fetches the global permission of every workspace regardless of perm and
+	 * excludeGlobalRead, so globally readable workspaces are included with the user permission
+	 * if it meets perm, or NONE otherwise. Callers check the permission level they need.
+	 * Without a user, global permissions are only included for READ when not excluded.
+	 */
+	private PermissionSet getPermissionsCached(
+			final WorkspaceUser user,
+			final Set<ResolvedWorkspaceID> rwsis,
+			final Permission perm,
+			final boolean excludeGlobalRead,
+			final boolean includeProvidedWorkspaces)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		final Map<ResolvedWorkspaceID, CachedPermissions> perms = new HashMap<>();
+		final Set<ResolvedWorkspaceID> missing = new HashSet<>();
+		final long generation = permissionCache.getGeneration();
+		for (final ResolvedWorkspaceID rwsi: rwsis) {
+			final CachedPermissions p = permissionCache.getIfPresent(
+					new PermissionKey(user, rwsi.getID()));
+			if (p == null) {
+				missing.add(rwsi);
+			} else {
+				perms.put(rwsi, p);
+			}
+		}
+		if (!missing.isEmpty()) {
+			final Set<User> users = new HashSet<>(Arrays.asList(ALL_USERS));
+			if (user != null) {
+				users.add(user);
+			}
+			final Map<ResolvedWorkspaceID, Map<User, Permission>> res =
+					query.queryPermissions(missing, users);
+			for (final ResolvedWorkspaceID rwsi: missing) {
+				final Map<User, Permission> wsperms = res.get(rwsi);
+				final CachedPermissions p = new CachedPermissions(
+						user == null ? Permission.NONE :
+							wsperms.getOrDefault(user, Permission.NONE),
+						wsperms.getOrDefault(ALL_USERS, Permission.NONE));
+				permissionCache.put(
+						new PermissionKey(user, rwsi.getID()), rwsi.getID(), p, generation);
+				perms.put(rwsi, p);
+			}
+		}
+		final boolean useGlobal = user != null ||
+				(!excludeGlobalRead && perm.compareTo(Permission.WRITE) < 0);
+		final Builder pset = PermissionSet.getBuilder(user, ALL_USERS);
+		for (final ResolvedWorkspaceID rwsi: rwsis) {
+			final CachedPermissions p = perms.get(rwsi);
+			final Permission userPerm = user != null && p.user.compareTo(perm) >= 0 ?
+					p.user : Permission.NONE;
+			final Permission global = useGlobal ? p.global : Permission.NONE;
+			if (!userPerm.equals(Permission.NONE) || !global.equals(Permission.NONE)) {
+				pset.withWorkspace(rwsi, userPerm, global);
+			} else if (includeProvidedWorkspaces) {
+				pset.withUnreadableWorkspace(rwsi);
+			}
+		}
+		return pset.build();
+	}
+
 	private PermissionSet buildPermissionSet(
 			final WorkspaceUser user,
 			final Set<ResolvedWorkspaceID> rmwsis,
@@ -1187,12 +1824,17 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 		try {
 			wsmongo.getCollection(COL_WORKSPACES).update(query, new BasicDBObject("$set", set));
+			recordChange();
 		} catch (DuplicateKeyException medk) {
 			throw new IllegalArgumentException(
 					"There is already a workspace named " + newname.get());
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			if (newname.isPresent()) {
+				invalidateWorkspaceCache(rwsi);
+			}
 		}
 		final ResolvedWorkspaceID newRwsi = new ResolvedWorkspaceID(
 				rwsi.getID(),
@@ -1272,13 +1914,21 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 						"There was a problem communicating with the database", me);
 			}
 		}
+		try {
+			recordChange();
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		} finally {
+			invalidatePermissionCache(wsid.getID());
+		}
 		// hmm. should the workspace mod date be changed when setting perms? Currently not
 		return Instant.now();
 	}
 	
 	private static final Set<String> FLDS_WS_NO_DESC = 
 			newHashSet(Fields.WS_ID, Fields.WS_NAME, Fields.WS_OWNER,
-					Fields.WS_MODDATE, Fields.WS_NUMOBJ, Fields.WS_DEL,
+					Fields.WS_MODDATE, Fields.WS_NUMOBJ, Fields.WS_MAXOBJ, Fields.WS_DEL,
 					Fields.WS_LOCKED, Fields.WS_META);
 	
 	@Override
@@ -1380,7 +2030,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				.withName((String) wsdata.get(Fields.WS_NAME))
 				.withOwner(new WorkspaceUser((String) wsdata.get(Fields.WS_OWNER)))
 				.withModificationDate(((Date) wsdata.get(Fields.WS_MODDATE)).toInstant())
-				.withMaximumObjectID((Long) wsdata.get(Fields.WS_NUMOBJ))
+				.withMaximumObjectID((Long) (wsdata.get(Fields.WS_MAXOBJ) == null ?
+						wsdata.get(Fields.WS_NUMOBJ) : wsdata.get(Fields.WS_MAXOBJ)))
 				.withUserPermission(perms.getUserPermission(rwsi))
 				.withGlobalRead(perms.isWorldReadable(rwsi))
 				.withLocked((Boolean) wsdata.get(Fields.WS_LOCKED))
@@ -1442,6 +2093,18 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final ResolvedWorkspaceID wsid, final long objectid,
 			final ObjectSavePackage pkg)
 			throws WorkspaceCommunicationException {
+		final Map<String, Object> version = makeVersion(user, pkg);
+		
+		saveObjectVersions(user, wsid, objectid, Arrays.asList(version),
+				pkg.wo.isHidden());
+		
+		return makeObjectInformation(user, wsid, objectid, pkg, version);
+	}
+	
+	// the version is missing the fields set in toVersionDocument()
+	private Map<String, Object> makeVersion(
+			final WorkspaceUser user,
+			final ObjectSavePackage pkg) {
 		final Map<String, Object> version = new HashMap<String, Object>();
 		version.put(Fields.VER_SAVEDBY, user.getUser());
 		version.put(Fields.VER_CHKSUM, pkg.wo.getRep().getMD5().getMD5());
@@ -1450,6 +2113,9 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		version.put(Fields.VER_REF, pkg.refs);
 		version.put(Fields.VER_PROVREF, pkg.provrefs);
 		version.put(Fields.VER_PROV, pkg.provid);
+		version.put(Fields.VER_PROV_DATE, pkg.wo.getProvenance().getDate());
+		version.put(Fields.VER_PROV_ACTION_TIMES, pkg.wo.getProvenance().getActions().stream()
+				.map(a -> a.getTime()).collect(Collectors.toList()));
 		version.put(Fields.VER_TYPE, pkg.wo.getRep().getValidationTypeDefId()
 				.getTypeString());
 		version.put(Fields.VER_SIZE, pkg.wo.getRep().getRelabeledSize());
@@ -1457,10 +2123,16 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		version.put(Fields.VER_COPIED, null);
 		version.put(Fields.VER_EXT_IDS, extractedIDsToStrings(
 				pkg.wo.getExtractedIDs()));
-		
-		saveObjectVersions(user, wsid, objectid, Arrays.asList(version),
-				pkg.wo.isHidden());
-		
+		return version;
+	}
+	
+	// the version must have been passed through toVersionDocument()
+	private ObjectInformation makeObjectInformation(
+			final WorkspaceUser user,
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final ObjectSavePackage pkg,
+			final Map<String, Object> version) {
 		return new ObjectInformation(
 				objectid,
 				pkg.name,
@@ -1503,20 +2175,31 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		 * None of the above addresses the object w/ 0 versions failure. Not sure what to do about that.
 		 * 
 		*/
-		int ver;
-		final List<Integer> zeros = new LinkedList<Integer>();
-		for (int i = 0; i < versions.size(); i++) {
-			zeros.add(0);
-		}
 		final Date saved = new Date();
+		int ver = incrementVersionCount(wsid, objectid, versions.size(), hidden, saved);
+		final List<DBObject> dbo = new LinkedList<DBObject>();
+		for (final Map<String, Object> v: versions) {
+			dbo.add(toVersionDocument(v, wsid, objectid, ver++, saved));
+		}
+		insertVersions(dbo);
+	}
+	
+	// returns the first version number
+	private int incrementVersionCount(
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final int versions,
+			final Boolean hidden,
+			final Date saved)
+			throws WorkspaceCommunicationException {
 		final BasicDBObject set = new BasicDBObject(Fields.OBJ_DEL, false)
 				.append(Fields.OBJ_MODDATE, saved)
 				.append(Fields.OBJ_LATEST, null);
 		final DBObject update = new BasicDBObject(
-				"$inc", new BasicDBObject(Fields.OBJ_VCNT, versions.size()))
+				"$inc", new BasicDBObject(Fields.OBJ_VCNT, versions))
 				.append("$set", set)
 				.append("$push", new BasicDBObject(Fields.OBJ_REFCOUNTS,
-						new BasicDBObject("$each", zeros)));
+						new BasicDBObject("$each", zeros(versions))));
 		if (hidden != null) {
 			set.append(Fields.OBJ_HIDE, hidden);
 		}
@@ -1531,31 +2214,170 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					true,
 					false);
 			
-			ver = (Integer) res.get(Fields.OBJ_VCNT) - versions.size() + 1;
+			return (Integer) res.get(Fields.OBJ_VCNT) - versions + 1;
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+	
+	private List<Integer> zeros(final int count) {
+		final List<Integer> zeros = new LinkedList<Integer>();
+		for (int i = 0; i < count; i++) {
+			zeros.add(0);
+		}
+		return zeros;
+	}
+	
+	// modifies the version map in place
+	private DBObject toVersionDocument(
+			final Map<String, Object> version,
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final int ver,
+			final Date saved) {
+		version.put(Fields.VER_SAVEDATE, saved);
+		version.put(Fields.VER_WS_ID, wsid.getID());
+		version.put(Fields.VER_ID, objectid);
+		version.put(Fields.VER_VER, ver);
+		//TODO look into why saving array of maps via List.ToArray() makes Lazy?Objects return, which screw up everything
+		final DBObject d = new BasicDBObject();
+		for (final Entry<String, Object> e: version.entrySet()) {
+			d.put(e.getKey(), e.getValue());
+		}
+		return d;
+	}
+	
+	/* Flags the last version of each object in the list as the latest version and then
+	 * removes the flag from any earlier versions of the object. The versions must have been
+	 * passed through toVersionDocument().
+	 * If the process fails between the two steps, or saves of the same object race, an earlier
+	 * version may keep the flag, which is harmless since listing objects checks the version
+	 * count.
+	 */
+	private void insertVersions(final List<DBObject> versions)
+			throws WorkspaceCommunicationException {
+		// ws id -> object id -> lowest and highest versions in the list
+		final Map<Long, Map<Long, int[]>> ranges = new HashMap<>();
+		for (final DBObject v: versions) {
+			final long wsid = (Long) v.get(Fields.VER_WS_ID);
+			final long id = (Long) v.get(Fields.VER_ID);
+			final int ver = (Integer) v.get(Fields.VER_VER);
+			if (ranges.get(wsid) == null) {
+				ranges.put(wsid, new HashMap<>());
+			}
+			final int[] r = ranges.get(wsid).get(id);
+			if (r == null) {
+				ranges.get(wsid).put(id, new int[] {ver, ver});
+			} else {
+				r[0] = Math.min(r[0], ver);
+				r[1] = Math.max(r[1], ver);
+			}
+		}
+		final DBCollection col = wsmongo.getCollection(COL_WORKSPACE_VERS);
+		final BulkWriteOperation bulk = col.initializeUnorderedBulkOperation();
+		boolean update = false;
+		for (final DBObject v: versions) {
+			final int[] r = ranges.get((Long) v.get(Fields.VER_WS_ID))
+					.get((Long) v.get(Fields.VER_ID));
+			v.put(Fields.VER_LATEST, (Integer) v.get(Fields.VER_VER) == r[1]);
+		}
+		for (final Entry<Long, Map<Long, int[]>> ws: ranges.entrySet()) {
+			for (final Entry<Long, int[]> obj: ws.getValue().entrySet()) {
+				if (obj.getValue()[0] > 1) { // otherwise there are no earlier versions
+					bulk.find(new BasicDBObject(Fields.VER_WS_ID, ws.getKey())
+							.append(Fields.VER_ID, obj.getKey())
+							.append(Fields.VER_VER,
+									new BasicDBObject("$lt", obj.getValue()[0]))
+							.append(Fields.VER_LATEST, new BasicDBObject("$ne", false)))
+							.update(new BasicDBObject("$set",
+									new BasicDBObject(Fields.VER_LATEST, false)));
+					update = true;
+				}
+			}
+		}
+		try {
+			col.insert(versions);
+			if (update) {
+				bulk.execute();
+			}
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
-		//TODO look into why saving array of maps via List.ToArray() makes Lazy?Objects return, which screw up everything
-		final List<DBObject> dbo = new LinkedList<DBObject>();
-		for (final Map<String, Object> v: versions) {
-			v.put(Fields.VER_SAVEDATE, saved);
-			v.put(Fields.VER_WS_ID, wsid.getID());
-			v.put(Fields.VER_ID, objectid);
-			v.put(Fields.VER_VER, ver++);
-			final DBObject d = new BasicDBObject();
-			for (final Entry<String, Object> e: v.entrySet()) {
-				d.put(e.getKey(), e.getValue());
+		/* the versions are saved at this point, so failing the save would be wrong.
+		 * Instead log the workspaces that need reindexing via indexIncomingReferences().
+		 */
+		try {
+			insertIncomingReferences(versions);
+		} catch (WorkspaceCommunicationException e) {
+			final Set<Long> wsids = new TreeSet<>();
+			for (final DBObject v: versions) {
+				wsids.add((Long) v.get(Fields.VER_WS_ID));
 			}
-			dbo.add(d);
+			LoggerFactory.getLogger(getClass()).error(String.format(
+					"Failed to add references to the incoming reference index. " +
+					"Reindex workspaces %s with indexIncomingReferences", wsids), e);
+		}
+	}
+	
+	/* Adds the references from each version to the incoming reference index. Duplicates are
+	 * ignored, since the index may have been built for the versions concurrently. If this
+	 * fails the versions will be missing from the index until it is rebuilt via
+	 * indexIncomingReferences().
+	 */
+	private long insertIncomingReferences(final List<DBObject> versions)
+			throws WorkspaceCommunicationException {
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_INCOMING_REFS)
+				.initializeUnorderedBulkOperation();
+		long count = 0;
+		for (final DBObject v: versions) {
+			final Set<String> refs = new HashSet<>();
+			// may be lists or sets depending on whether the version was read from the DB
+			@SuppressWarnings("unchecked")
+			final Collection<String> rf = (Collection<String>) v.get(Fields.VER_REF);
+			@SuppressWarnings("unchecked")
+			final Collection<String> prf = (Collection<String>) v.get(Fields.VER_PROVREF);
+			// very old versions may be missing one of the fields
+			if (rf != null) {
+				refs.addAll(rf);
+			}
+			if (prf != null) {
+				refs.addAll(prf);
+			}
+			for (final String ref: refs) {
+				final Reference target = new Reference(ref);
+				bulk.insert(new BasicDBObject(Fields.INREF_TARGET_WS_ID, target.getWorkspaceID())
+						.append(Fields.INREF_TARGET_ID, target.getObjectID())
+						.append(Fields.INREF_TARGET_VER, target.getVersion())
+						.append(Fields.INREF_SOURCE_WS_ID, v.get(Fields.VER_WS_ID))
+						.append(Fields.INREF_SOURCE_ID, v.get(Fields.VER_ID))
+						.append(Fields.INREF_SOURCE_VER, v.get(Fields.VER_VER)));
+				count++;
+			}
+		}
+		if (count < 1) {
+			return count; // executing an empty bulk write is an error
 		}
-
 		try {
-			wsmongo.getCollection(COL_WORKSPACE_VERS).insert(dbo);
+			bulk.execute();
+		} catch (BulkWriteException bwe) {
+			if (bwe.getWriteConcernError() != null) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", bwe);
+			}
+			for (final BulkWriteError err: bwe.getWriteErrors()) {
+				if (!ErrorCategory.fromErrorCode(err.getCode())
+						.equals(ErrorCategory.DUPLICATE_KEY)) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", bwe);
+				}
+			}
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
+		return count;
 	}
 	
 	//save brand new object - create container
@@ -1763,22 +2585,18 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		saveData(rwsi, packages);
 		saveProvenance(packages);
 		updateReferenceCounts(packages);
-		long newid = incrementWorkspaceCounter(rwsi, newobjects);
-		/*  alternate impl: 1) make all save objects 2) increment all version
-		 *  counters 3) batch save versions
-		 *  This probably won't help much. Firstly, saving the same object
-		 *  multiple times (e.g. save over the same object in the same
-		 *  saveObjects call) is going to be a rare op - who wants to do that?
-		 *  Hence batching up the version increments is probably not going to
-		 *  help much.
-		 *  Secondly, the write lock is on a per document basis, so batching
-		 *  writes has no effect on write locking.
-		 *  That means that the gain from batching writes is removal of the 
-		 *  flight time to/from the server between each object. This may
-		 *  be significant for many small objects, but is probably
-		 *  insignificant for a few objects, or many large objects.
-		 *  Summary: probably not worth the trouble and increase in code
-		 *  complexity.
+		long newid = newobjects < 1 ? -1 : allocateObjectIDs(rwsi, newobjects);
+		final Long maxNewID = newobjects < 1 ? null : newid + newobjects - 1;
+		if (batchSaves) {
+			final List<ObjectInformation> ret = saveObjectVersionsBatch(
+					user, rwsi, packages, objIDs, newid);
+			updateWorkspaceModifiedDate(rwsi, maxNewID);
+			return ret;
+		}
+		/*  The gain from batching writes is removal of the flight time to/from the server
+		 *  between each object. This is significant for many small objects, but is
+		 *  insignificant for a few objects, or many large objects. See
+		 *  saveObjectVersionsBatch().
 		 */
 		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
 		final Map<String, Long> seenNames = new HashMap<String, Long>();
@@ -1798,10 +2616,174 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				ret.add(saveObjectVersion(user, rwsi, obj.id, p));
 			}
 		}
-		updateWorkspaceModifiedDate(rwsi);
+		updateWorkspaceModifiedDate(rwsi, maxNewID);
+		return ret;
+	}
+
+	/* 1) make all new object containers in one bulk write 2) increment the version
+	 * counters of preexisting objects 3) batch save versions.
+	 * New containers are created with their version counts already set, so only objects
+	 * that existed prior to the save need their counters incremented. A bulk update can't
+	 * return the incremented counters, so those require a findAndModify per object, but
+	 * saving the same object multiple times in one call only requires one.
+	 * The write lock is on a per document basis, so batching writes has no effect on write
+	 * locking.
+	 */
+	private List<ObjectInformation> saveObjectVersionsBatch(
+			final WorkspaceUser user,
+			final ResolvedWorkspaceID rwsi,
+			final List<ObjectSavePackage> packages,
+			final Map<ObjectIDNoWSNoVer, ResolvedObjectID> objIDs,
+			long newid)
+			throws WorkspaceCommunicationException {
+		final Date saved = new Date();
+		// the object id for each package, in package order
+		final List<Long> pkgIDs = new ArrayList<>();
+		final Map<String, Long> newNames = new LinkedHashMap<>();
+		for (final ObjectSavePackage p: packages) {
+			final ObjectIDNoWSNoVer oi = p.wo.getObjectIdentifier();
+			if (oi.getId().isPresent()) { //confirmed ok id
+				pkgIDs.add(oi.getId().get());
+			} else if (objIDs.get(oi) != null) {//given name translated to id
+				pkgIDs.add(objIDs.get(oi).getId());
+			} else {
+				if (!newNames.containsKey(oi.getName().get())) {
+					newNames.put(oi.getName().get(), newid++);
+				}
+				pkgIDs.add(newNames.get(oi.getName().get()));
+			}
+		}
+		final Set<Long> created = saveWorkspaceObjects(
+				rwsi, packages, pkgIDs, newNames, saved);
+		
+		// group the packages by object in package order, which determines the version order
+		final Map<Long, List<Integer>> idToPkgIndex = new LinkedHashMap<>();
+		for (int i = 0; i < pkgIDs.size(); i++) {
+			if (idToPkgIndex.get(pkgIDs.get(i)) == null) {
+				idToPkgIndex.put(pkgIDs.get(i), new ArrayList<>());
+			}
+			idToPkgIndex.get(pkgIDs.get(i)).add(i);
+		}
+		final Map<Long, Integer> nextVersion = new HashMap<>();
+		for (final Entry<Long, List<Integer>> e: idToPkgIndex.entrySet()) {
+			final List<Integer> indexes = e.getValue();
+			if (created.contains(e.getKey())) {
+				nextVersion.put(e.getKey(), 1);
+			} else {
+				final ObjectSavePackage last = packages.get(indexes.get(indexes.size() - 1));
+				nextVersion.put(e.getKey(), incrementVersionCount(
+						rwsi, e.getKey(), indexes.size(), last.wo.isHidden(), saved));
+			}
+		}
+		final List<Map<String, Object>> versions = new ArrayList<>();
+		final List<DBObject> dbo = new ArrayList<>();
+		for (int i = 0; i < packages.size(); i++) {
+			final long id = pkgIDs.get(i);
+			final int ver = nextVersion.get(id);
+			nextVersion.put(id, ver + 1);
+			final Map<String, Object> v = makeVersion(user, packages.get(i));
+			dbo.add(toVersionDocument(v, rwsi, id, ver, saved));
+			versions.add(v);
+		}
+		insertVersions(dbo);
+		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
+		for (int i = 0; i < packages.size(); i++) {
+			ret.add(makeObjectInformation(
+					user, rwsi, pkgIDs.get(i), packages.get(i), versions.get(i)));
+		}
 		return ret;
 	}
+	
+	/* Creates the new object containers with the version counts and refcounts set for all
+	 * the packages that will be saved in the container.
+	 * Returns the ids of the created containers. If a name was taken by another save
+	 * since the names were resolved, the package ids are updated to point to the object that
+	 * now has the name and the package names are updated.
+	 */
+	private Set<Long> saveWorkspaceObjects(
+			final ResolvedWorkspaceID rwsi,
+			final List<ObjectSavePackage> packages,
+			final List<Long> pkgIDs,
+			final Map<String, Long> newNames,
+			final Date saved)
+			throws WorkspaceCommunicationException {
+		final Set<Long> created = new HashSet<>(newNames.values());
+		if (newNames.isEmpty()) {
+			return created;
+		}
+		final Map<Long, Integer> counts = new HashMap<>();
+		final Map<Long, Boolean> hidden = new HashMap<>();
+		for (int i = 0; i < pkgIDs.size(); i++) {
+			final Long id = pkgIDs.get(i);
+			counts.put(id, counts.containsKey(id) ? counts.get(id) + 1 : 1);
+			// the last save determines whether the object is hidden
+			hidden.put(id, packages.get(i).wo.isHidden());
+		}
+		final List<DBObject> objs = new ArrayList<>();
+		final List<String> names = new ArrayList<>(newNames.keySet());
+		for (final String name: names) {
+			final Long id = newNames.get(name);
+			final DBObject dbo = new BasicDBObject();
+			dbo.put(Fields.OBJ_WS_ID, rwsi.getID());
+			dbo.put(Fields.OBJ_ID, id);
+			dbo.put(Fields.OBJ_VCNT, counts.get(id)); //Integer
+			dbo.put(Fields.OBJ_REFCOUNTS, zeros(counts.get(id)));
+			dbo.put(Fields.OBJ_NAME, name);
+			dbo.put(Fields.OBJ_LATEST, null);
+			dbo.put(Fields.OBJ_DEL, false);
+			dbo.put(Fields.OBJ_HIDE, hidden.get(id));
+			dbo.put(Fields.OBJ_MODDATE, saved);
+			objs.add(dbo);
+		}
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_OBJS)
+				.initializeUnorderedBulkOperation();
+		for (final DBObject dbo: objs) {
+			bulk.insert(dbo);
+		}
+		final List<String> failed = new LinkedList<>();
+		try {
+			bulk.execute();
+		} catch (BulkWriteException bwe) {
+			if (bwe.getWriteConcernError() != null) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", bwe);
+			}
+			for (final BulkWriteError err: bwe.getWriteErrors()) {
+				if (!ErrorCategory.fromErrorCode(err.getCode())
+						.equals(ErrorCategory.DUPLICATE_KEY)) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", bwe);
+				}
+				failed.add(names.get(err.getIndex()));
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		// someone else just this second added the name to an object. Rare.
+		for (final String name: failed) {
+			final long id = newNames.get(name);
+			created.remove(id);
+			final IDName obj = saveWorkspaceObject(rwsi, id, name);
+			for (int i = 0; i < pkgIDs.size(); i++) {
+				if (pkgIDs.get(i) == id) {
+					pkgIDs.set(i, obj.id);
+					packages.get(i).name = obj.name;
+				}
+			}
+		}
+		return created;
+	}
 
+	//returns starting object number
+	private long allocateObjectIDs(final ResolvedWorkspaceID rwsi, final long count)
+			throws WorkspaceCommunicationException {
+		if (idAllocator == null) {
+			return incrementWorkspaceCounter(rwsi, count);
+		}
+		return idAllocator.allocate(rwsi, count);
+	}
+	
 	//returns starting object number
 	private long incrementWorkspaceCounter(final ResolvedWorkspaceID wsidmongo,
 			final long newobjects) throws WorkspaceCommunicationException {
@@ -1827,27 +2809,93 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	}
 	
 	// has a side effect of setting the provid field on each package
+	/* Identical provenance, e.g. from an app run saving many outputs, is stored once, keyed
+	 * by a hash of the document. Versions store their resolved provenance references, the
+	 * provenance date, and the action times separately, so the hash is independent of the
+	 * object and of when the provenance was created.
+	 */
 	private void saveProvenance(final List<ObjectSavePackage> packages)
 			throws WorkspaceCommunicationException {
-		final Map<ObjectSavePackage, DBObject> provmap = new HashMap<>();
+		final Map<String, DBObject> hashToProv = new LinkedHashMap<>();
+		final Map<ObjectSavePackage, String> pkgToHash = new HashMap<>();
+		for (final ObjectSavePackage p: packages) {
+			final String hash = getProvenanceHash(toDocument(p.wo.getProvenance(), false));
+			pkgToHash.put(p, hash);
+			if (!hashToProv.containsKey(hash)) {
+				hashToProv.put(hash, new BasicDBObject(toDocument(p.wo.getProvenance())));
+			}
+		}
+		final Map<String, ObjectId> hashToID = dedupeProvenanceAcrossSaves ?
+				upsertProvenance(hashToProv) : insertProvenance(hashToProv);
 		for (final ObjectSavePackage p: packages) {
-			provmap.put(p, new BasicDBObject(toDocument(p.wo.getProvenance())));
+			p.provid = hashToID.get(pkgToHash.get(p)); // ew, side effect
+		}
+	}
+	
+	private String getProvenanceHash(final Map<String, Object> provenance) {
+		try {
+			return DigestUtils.sha256Hex(SORTED_MAPPER.writeValueAsBytes(provenance));
+		} catch (IOException ioe) {
+			throw new RuntimeException("something's broken", ioe);
+		}
+	}
+	
+	private Map<String, ObjectId> insertProvenance(final Map<String, DBObject> hashToProv)
+			throws WorkspaceCommunicationException {
+		for (final Entry<String, DBObject> e: hashToProv.entrySet()) {
+			e.getValue().put(Fields.PROV_HASH, e.getKey());
 		}
 		try {
-			wsmongo.getCollection(COL_PROVENANCE).insert(new LinkedList<>(provmap.values()));
+			wsmongo.getCollection(COL_PROVENANCE).insert(new LinkedList<>(hashToProv.values()));
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
-		for (final ObjectSavePackage p: packages) {
-			p.provid = (ObjectId) provmap.get(p).get(Fields.MONGO_ID); // ew, side effect
+		final Map<String, ObjectId> ret = new HashMap<>();
+		for (final Entry<String, DBObject> e: hashToProv.entrySet()) {
+			ret.put(e.getKey(), (ObjectId) e.getValue().get(Fields.MONGO_ID));
+		}
+		return ret;
+	}
+	
+	private Map<String, ObjectId> upsertProvenance(final Map<String, DBObject> hashToProv)
+			throws WorkspaceCommunicationException {
+		final DBCollection col = wsmongo.getCollection(COL_PROVENANCE);
+		final BulkWriteOperation bulk = col.initializeUnorderedBulkOperation();
+		for (final Entry<String, DBObject> e: hashToProv.entrySet()) {
+			// the hash is set from the query on insert
+			bulk.find(new BasicDBObject(Fields.PROV_HASH, e.getKey())).upsert()
+					.updateOne(new BasicDBObject("$setOnInsert", e.getValue()));
+		}
+		final Map<String, ObjectId> ret = new HashMap<>();
+		try {
+			bulk.execute();
+			final DBCursor cur = col.find(
+					new BasicDBObject(Fields.PROV_HASH,
+							new BasicDBObject("$in", hashToProv.keySet())),
+					new BasicDBObject(Fields.PROV_HASH, 1));
+			for (final DBObject dbo: cur) {
+				// concurrent upserts may have stored the same provenance twice. Either is fine.
+				ret.put((String) dbo.get(Fields.PROV_HASH), (ObjectId) dbo.get(Fields.MONGO_ID));
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
 		}
+		return ret;
 	}
 
 	private Map<String, Object> toDocument(final Provenance p) {
+		return toDocument(p, true);
+	}
+	
+	// the times are omitted when hashing the provenance
+	private Map<String, Object> toDocument(final Provenance p, final boolean withTimes) {
 		final Map<String, Object> ret = new HashMap<>();
 		ret.put(Fields.PROV_USER, p.getUser().getUser());
-		ret.put(Fields.PROV_DATE, p.getDate());
+		if (withTimes) {
+			ret.put(Fields.PROV_DATE, p.getDate());
+		}
 		ret.put(Fields.PROV_WS_ID, p.getWorkspaceID());
 		final List<Map<String, Object>> actions = new LinkedList<>();
 		ret.put(Fields.PROV_ACTIONS, actions);
@@ -1866,7 +2914,9 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			paret.put(Fields.PROV_ACTION_SCRIPT_VER, pa.getScriptVersion());
 			paret.put(Fields.PROV_ACTION_SERVICE, pa.getServiceName());
 			paret.put(Fields.PROV_ACTION_SERVICE_VER, pa.getServiceVersion());
-			paret.put(Fields.PROV_ACTION_TIME, pa.getTime());
+			if (withTimes) {
+				paret.put(Fields.PROV_ACTION_TIME, pa.getTime());
+			}
 			paret.put(Fields.PROV_ACTION_WS_OBJS, pa.getWorkspaceObjects());
 			
 			final List<Map<String, Object>> extdata = new LinkedList<>();
@@ -1898,56 +2948,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 
-	private static class VerCount {
-		final public int ver;
-		final public int count;
-
-		public VerCount (final int ver, final int count) {
-			this.ver = ver;
-			this.count = count;
-		}
-		
-		@Override
-		public String toString() {
-			return "VerCount [ver=" + ver + ", count=" + count + "]";
-		}
-
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + count;
-			result = prime * result + ver;
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			VerCount other = (VerCount) obj;
-			if (count != other.count)
-				return false;
-			if (ver != other.ver)
-				return false;
-			return true;
-		}
-	}
-	
 	private void updateReferenceCounts(final List<ObjectSavePackage> packages)
 			throws WorkspaceCommunicationException {
 		//TODO GC when garbage collection working much more testing of these methods
 		final Map<Long, Map<Long, Map<Integer, Counter>>> refcounts = 
 				countReferences(packages);
-		/* since the version numbers are probably highly skewed towards 1 and
-		 * the reference counts are also highly skewed towards 1 we can 
-		 * probably minimize the number of updates by running one update
-		 * per version/count combination
-		 */
 		updateReferenceCounts(refcounts);
 	}
 	
@@ -1957,55 +2962,39 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		//TODO GC when garbage collection working much more testing of these methods
 		final Map<Long, Map<Long, Map<Integer, Counter>>> refcounts = 
 				countReferencesForVersions(versions);
-		/* since the version numbers are probably highly skewed towards 1 and
-		 * the reference counts are also highly skewed towards 1 we can 
-		 * probably minimize the number of updates by running one update
-		 * per version/count combination
-		 */
 		updateReferenceCounts(refcounts);
 	}
 
+	/* One update per object, incrementing the counts for all the referenced versions of
+	 * the object at once. Each update targets a single document via the workspace / object id
+	 * index, rather than running a multi-update with an $or query per version/count
+	 * combination, as $or queries are slow. The updates are sent to the server in one unordered
+	 * bulk write.
+	 */
 	private void updateReferenceCounts(
 			final Map<Long, Map<Long, Map<Integer, Counter>>> refcounts)
 			throws WorkspaceCommunicationException {
-		final Map<VerCount, Map<Long, List<Long>>> queries = 
-				new HashMap<VerCount, Map<Long,List<Long>>>();
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_OBJS)
+				.initializeUnorderedBulkOperation();
+		int updates = 0;
 		for (final Long ws: refcounts.keySet()) {
 			for (final Long obj: refcounts.get(ws).keySet()) {
-				for (final Integer ver: refcounts.get(ws).get(obj).keySet()) {
-					final VerCount vc = new VerCount(ver,
-							refcounts.get(ws).get(obj).get(ver).getValue());
-					if (!queries.containsKey(vc)) {
-						queries.put(vc, new HashMap<Long, List<Long>>());
-					}
-					if (!queries.get(vc).containsKey(ws)) {
-						queries.get(vc).put(ws, new LinkedList<Long>());
-					}
-					queries.get(vc).get(ws).add(obj);
+				final DBObject inc = new BasicDBObject();
+				for (final Entry<Integer, Counter> vc:
+						refcounts.get(ws).get(obj).entrySet()) {
+					inc.put(Fields.OBJ_REFCOUNTS + "." + (vc.getKey() - 1),
+							vc.getValue().getValue());
 				}
+				bulk.find(new BasicDBObject(Fields.OBJ_WS_ID, ws).append(Fields.OBJ_ID, obj))
+						.updateOne(new BasicDBObject("$inc", inc));
+				updates++;
 			}
 		}
-		for (final VerCount vc: queries.keySet()) {
-			updateReferenceCounts(vc, queries.get(vc));
-		}
-	}
-
-	private void updateReferenceCounts(final VerCount vc,
-			final Map<Long, List<Long>> wsToObjs)
-			throws WorkspaceCommunicationException {
-		final DBObject update = new BasicDBObject("$inc",
-				new BasicDBObject(Fields.OBJ_REFCOUNTS + "." + (vc.ver - 1),
-						vc.count));
-		final List<DBObject> orquery = new LinkedList<DBObject>();
-		for (final Long ws: wsToObjs.keySet()) {
-			final DBObject query = new BasicDBObject(Fields.OBJ_WS_ID, ws);
-			query.put(Fields.OBJ_ID, new BasicDBObject("$in",
-					wsToObjs.get(ws)));
-			orquery.add(query);
+		if (updates < 1) {
+			return; // executing an empty bulk write is an error
 		}
 		try {
-			wsmongo.getCollection(COL_WORKSPACE_OBJS).update(
-					new BasicDBObject("$or", orquery), update, false, true);
+			bulk.execute();
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
@@ -2106,8 +3095,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			Fields.VER_VER, Fields.VER_META, Fields.VER_TYPE,
 			Fields.VER_SAVEDATE, Fields.VER_SAVEDBY,
 			Fields.VER_CHKSUM, Fields.VER_SIZE, Fields.VER_PROV,
-			Fields.VER_PROVREF, Fields.VER_REF, Fields.VER_EXT_IDS,
-			Fields.VER_COPIED);
+			Fields.VER_PROVREF, Fields.VER_PROV_DATE, Fields.VER_PROV_ACTION_TIMES,
+			Fields.VER_REF, Fields.VER_EXT_IDS, Fields.VER_COPIED);
 	
 	@Override
 	public Map<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>>
@@ -2130,7 +3119,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		if (dataMan != null) {
 			checkTotalFileSize(usedDataAllocation, objs, resobjs, vers);
 		}
-		final Map<ObjectId, Provenance> provs = getProvenance(vers);
+		final Map<ResolvedObjectID, Provenance> provs = getProvenance(vers);
 		final Map<String, ByteArrayFileCache> chksumToData =
 				new HashMap<String, ByteArrayFileCache>();
 		final Map<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>> ret =
@@ -2140,7 +3129,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			if (!vers.containsKey(roi)) {
 				continue; // works if roi is null or vers doesn't have the key
 			}
-			final Provenance prov = provs.get((ObjectId) vers.get(roi).get(Fields.VER_PROV));
+			final Provenance prov = provs.get(roi);
 			final String copyref =
 					(String) vers.get(roi).get(Fields.VER_COPIED);
 			final Reference copied = copyref == null ? null : new Reference(copyref);
@@ -2401,6 +3390,9 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			return new HashMap<>();
 		}
 		//TODO MEM add limit for number of refs returned (probably 50K, but make a method param) & throw exception if more than that returned
+		if (incomingReferenceIndex) {
+			return getObjectIncomingReferencesFromIndex(refs);
+		}
 		final List<String> refStrings = new LinkedList<>();
 		for (final Reference r: refs) {
 			refStrings.add(r.getId());
@@ -2414,12 +3406,180 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return buildReferenceToReferencesMap(refs, vers);
 	}
 	
+	private static final Set<String> FLDS_INREF = newHashSet(
+			Fields.INREF_TARGET_WS_ID, Fields.INREF_TARGET_ID, Fields.INREF_TARGET_VER,
+			Fields.INREF_SOURCE_WS_ID, Fields.INREF_SOURCE_ID, Fields.INREF_SOURCE_VER);
+	
+	/* Only reads the incoming reference index, since the query and projection are covered by
+	 * the index.
+	 */
+	private Map<Reference, ObjectReferenceSet> getObjectIncomingReferencesFromIndex(
+			final Set<Reference> refs)
+			throws WorkspaceCommunicationException {
+		// ws id -> object id -> versions
+		final Map<Long, Map<Long, List<Integer>>> targets = new HashMap<>();
+		final Map<Reference, Set<Reference>> refToRefs = new HashMap<>();
+		for (final Reference r: refs) {
+			refToRefs.put(r, new HashSet<>());
+			if (!targets.containsKey(r.getWorkspaceID())) {
+				targets.put(r.getWorkspaceID(), new HashMap<>());
+			}
+			final Map<Long, List<Integer>> objs = targets.get(r.getWorkspaceID());
+			if (!objs.containsKey(r.getObjectID())) {
+				objs.put(r.getObjectID(), new LinkedList<>());
+			}
+			objs.get(r.getObjectID()).add(r.getVersion());
+		}
+		final List<DBObject> orquery = new LinkedList<>();
+		for (final Entry<Long, Map<Long, List<Integer>>> ws: targets.entrySet()) {
+			for (final Entry<Long, List<Integer>> obj: ws.getValue().entrySet()) {
+				orquery.add(new BasicDBObject(Fields.INREF_TARGET_WS_ID, ws.getKey())
+						.append(Fields.INREF_TARGET_ID, obj.getKey())
+						.append(Fields.INREF_TARGET_VER,
+								new BasicDBObject("$in", obj.getValue())));
+			}
+		}
+		final DBObject q = orquery.size() == 1 ?
+				orquery.get(0) : new BasicDBObject("$or", orquery);
+		for (final Map<String, Object> m: query.queryCollection(COL_INCOMING_REFS, q, FLDS_INREF)) {
+			final Reference target = new Reference(
+					(Long) m.get(Fields.INREF_TARGET_WS_ID),
+					(Long) m.get(Fields.INREF_TARGET_ID),
+					(Integer) m.get(Fields.INREF_TARGET_VER));
+			refToRefs.get(target).add(new Reference(
+					(Long) m.get(Fields.INREF_SOURCE_WS_ID),
+					(Long) m.get(Fields.INREF_SOURCE_ID),
+					(Integer) m.get(Fields.INREF_SOURCE_VER)));
+		}
+		final Map<Reference, ObjectReferenceSet> ret = new HashMap<>();
+		for (final Reference r: refToRefs.keySet()) {
+			ret.put(r, new ObjectReferenceSet(r, refToRefs.get(r), true));
+		}
+		return ret;
+	}
+	
+	private static final Set<String> FLDS_INREF_BUILD = newHashSet(
+			Fields.VER_WS_ID, Fields.VER_ID, Fields.VER_VER, Fields.VER_REF, Fields.VER_PROVREF);
+	private static final int INREF_BUILD_BATCH_SIZE = 1000;
+	
+	/* Versions are added to the index when they're saved, so this is only necessary for
+	 * versions saved before the index existed. Safe to run concurrently with saves. The
+	 * returned count includes references that were already in the index.
+	 */
+	@Override
+	public long indexIncomingReferences(final long startWorkspaceID, final int count)
+			throws WorkspaceCommunicationException {
+		if (startWorkspaceID < 1) {
+			throw new IllegalArgumentException("startWorkspaceID must be > 0");
+		}
+		if (count < 1) {
+			throw new IllegalArgumentException("count must be > 0");
+		}
+		final DBObject q = new BasicDBObject(Fields.VER_WS_ID,
+				new BasicDBObject("$gte", startWorkspaceID)
+						.append("$lt", startWorkspaceID + count));
+		// skip versions without references. The sparse index on refs doesn't help here.
+		q.put("$or", Arrays.asList(
+				new BasicDBObject(Fields.VER_REF + ".0", new BasicDBObject("$exists", true)),
+				new BasicDBObject(Fields.VER_PROVREF + ".0",
+						new BasicDBObject("$exists", true))));
+		long refs = 0;
+		try (final DBCursor cur = query.queryCollectionCursor(
+				COL_WORKSPACE_VERS, q, FLDS_INREF_BUILD, null, -1)) {
+			final List<DBObject> batch = new ArrayList<>();
+			while (cur.hasNext()) {
+				batch.add(cur.next());
+				if (batch.size() >= INREF_BUILD_BATCH_SIZE) {
+					refs += insertIncomingReferences(batch);
+					batch.clear();
+				}
+			}
+			refs += insertIncomingReferences(batch);
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return refs;
+	}
+	
+	private static final Set<String> FLDS_LATEST_BUILD = newHashSet(
+			Fields.OBJ_WS_ID, Fields.OBJ_ID, Fields.OBJ_VCNT);
+	private static final int LATEST_BUILD_BATCH_SIZE = 1000;
+	
+	/* Versions are flagged when they're saved, so this is only necessary for versions saved
+	 * before the flag existed. Only versions without a flag are updated, so saves running
+	 * concurrently clear the flag as usual, whether or not this method has set it.
+	 */
+	@Override
+	public long flagLatestVersions(final long startWorkspaceID, final int count)
+			throws WorkspaceCommunicationException {
+		if (startWorkspaceID < 1) {
+			throw new IllegalArgumentException("startWorkspaceID must be > 0");
+		}
+		if (count < 1) {
+			throw new IllegalArgumentException("count must be > 0");
+		}
+		final DBObject q = new BasicDBObject(Fields.OBJ_WS_ID,
+				new BasicDBObject("$gte", startWorkspaceID)
+						.append("$lt", startWorkspaceID + count));
+		long objects = 0;
+		try (final DBCursor cur = query.queryCollectionCursor(
+				COL_WORKSPACE_OBJS, q, FLDS_LATEST_BUILD, null, -1)) {
+			final List<DBObject> batch = new ArrayList<>();
+			while (cur.hasNext()) {
+				batch.add(cur.next());
+				if (batch.size() >= LATEST_BUILD_BATCH_SIZE) {
+					flagLatestVersions(batch);
+					objects += batch.size();
+					batch.clear();
+				}
+			}
+			flagLatestVersions(batch);
+			objects += batch.size();
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return objects;
+	}
+	
+	private void flagLatestVersions(final List<DBObject> objects) {
+		if (objects.isEmpty()) {
+			return;
+		}
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_VERS)
+				.initializeUnorderedBulkOperation();
+		final DBObject noflag = new BasicDBObject("$exists", false);
+		for (final DBObject o: objects) {
+			final Object ws = o.get(Fields.OBJ_WS_ID);
+			final Object id = o.get(Fields.OBJ_ID);
+			final int numver = (Integer) o.get(Fields.OBJ_VCNT);
+			bulk.find(new BasicDBObject(Fields.VER_WS_ID, ws)
+					.append(Fields.VER_ID, id)
+					.append(Fields.VER_VER, new BasicDBObject("$lt", numver))
+					.append(Fields.VER_LATEST, noflag))
+					.update(new BasicDBObject("$set",
+							new BasicDBObject(Fields.VER_LATEST, false)));
+			bulk.find(new BasicDBObject(Fields.VER_WS_ID, ws)
+					.append(Fields.VER_ID, id)
+					.append(Fields.VER_VER, numver)
+					.append(Fields.VER_LATEST, noflag))
+					.updateOne(new BasicDBObject("$set",
+							new BasicDBObject(Fields.VER_LATEST, true)));
+		}
+		bulk.execute();
+	}
+	
 	private Map<Reference, ObjectReferenceSet> buildReferenceToReferencesMap(
 			final Set<Reference> refs,
 			final List<Map<String, Object>> vers) {
 		final Map<Reference, Set<Reference>> refToRefs = new HashMap<Reference, Set<Reference>>();
+		// most of the references in the versions aren't in the target set, so look up the
+		// strings rather than parsing every reference
+		final Map<String, Reference> strToRef = new HashMap<>();
 		for (final Reference r: refs) {
 			refToRefs.put(r, new HashSet<Reference>());
+			strToRef.put(r.getId(), r);
 		}
 		for (final Map<String, Object> v: vers) {
 			final long ws = (Long) v.get(Fields.VER_WS_ID);
@@ -2437,8 +3597,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			allrefs.addAll(provrefs);
 			provrefs.clear();
 			for (final String ref: allrefs) {
-				final Reference r = new Reference(ref);
-				if (refToRefs.containsKey(r)) {
+				final Reference r = strToRef.get(ref);
+				if (r != null) {
 					refToRefs.get(r).add(thisref);
 				}
 			}
@@ -2553,51 +3713,70 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 	
-	private Map<ObjectId, Provenance> getProvenance(
+	// provenance documents may be shared between versions with different resolved references,
+	// so the provenance is built per version
+	private Map<ResolvedObjectID, Provenance> getProvenance(
 			final Map<ResolvedObjectID, Map<String, Object>> vers)
 			throws WorkspaceCommunicationException {
-		final Map<ObjectId, Map<String, Object>> provIDs = new HashMap<>();
+		final Set<ObjectId> provIDs = new HashSet<>();
 		for (final ResolvedObjectID id: vers.keySet()) {
-			provIDs.put((ObjectId) vers.get(id).get(Fields.VER_PROV), vers.get(id));
+			provIDs.add((ObjectId) vers.get(id).get(Fields.VER_PROV));
 		}
-		final Map<ObjectId, Provenance> ret = new HashMap<>();
-		try {
-			final DBCursor provs = wsmongo.getCollection(COL_PROVENANCE).find(
-					new BasicDBObject(Fields.MONGO_ID,
-							new BasicDBObject("$in", provIDs.keySet())));
-			for (final DBObject dbo: provs) {
-				final ObjectId oid = (ObjectId) dbo.get(Fields.MONGO_ID);
-				// this list is expected to be ordered in the same order as in the incoming
-				// provenance actions
-				@SuppressWarnings("unchecked")
-				final List<String> resolvedRefs = (List<String>) provIDs.get(oid)
-						.get(Fields.VER_PROVREF);
-				ret.put(oid, toProvenance(dbo, resolvedRefs));
+		final Map<ObjectId, DBObject> provs = new HashMap<>();
+		if (provenanceCache != null) {
+			provs.putAll(provenanceCache.getAllPresent(provIDs));
+			provIDs.removeAll(provs.keySet());
+		}
+		if (!provIDs.isEmpty()) {
+			try {
+				final DBCursor cur = wsmongo.getCollection(COL_PROVENANCE).find(
+						new BasicDBObject(Fields.MONGO_ID, new BasicDBObject("$in", provIDs)));
+				for (final DBObject dbo: cur) {
+					final ObjectId oid = (ObjectId) dbo.get(Fields.MONGO_ID);
+					provs.put(oid, dbo);
+					if (provenanceCache != null) {
+						provenanceCache.put(oid, dbo);
+					}
+				}
+			} catch (MongoException me) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", me);
+			}
+		}
+		final Map<ResolvedObjectID, Provenance> ret = new HashMap<>();
+		for (final ResolvedObjectID id: vers.keySet()) {
+			final DBObject p = provs.get((ObjectId) vers.get(id).get(Fields.VER_PROV));
+			if (p != null) {
+				ret.put(id, toProvenance(p, vers.get(id)));
 			}
-		} catch (MongoException me) {
-			throw new WorkspaceCommunicationException(
-					"There was a problem communicating with the database", me);
 		}
 		return ret;
 	}
 	
-	private Provenance toProvenance(
-			final DBObject p,
-			// this list is expected to be ordered in the same order as in the incoming
-			// provenance actions
-			final List<String> resolvedRefs) {
+	private Provenance toProvenance(final DBObject p, final Map<String, Object> version) {
+		// this list is expected to be ordered in the same order as in the incoming
+		// provenance actions
+		@SuppressWarnings("unchecked")
+		final List<String> resolvedRefs = (List<String>) version.get(Fields.VER_PROVREF);
 		// also turns a lazybsonlist into a regularlist
 		final List<String> rrcopy = new LinkedList<>(resolvedRefs);
+		// versions saved prior to 0.12.0 have no times, so use the provenance document times
+		final boolean versionTimes = version.get(Fields.VER_PROV_DATE) != null;
+		final List<Date> actionTimes = toList(version, Fields.VER_PROV_ACTION_TIMES);
+		final Date date = versionTimes ?
+				(Date) version.get(Fields.VER_PROV_DATE) : (Date) p.get(Fields.PROV_DATE);
 		final Provenance ret = new Provenance(
-				new WorkspaceUser((String) p.get(Fields.PROV_USER)),
-				(Date) p.get(Fields.PROV_DATE));
+				new WorkspaceUser((String) p.get(Fields.PROV_USER)), date);
 		// objects saved before version 0.4.1 will have null workspace IDs
 		ret.setWorkspaceID((Long) p.get(Fields.PROV_WS_ID));
 		
 		@SuppressWarnings("unchecked")
 		final List<Map<String, Object>> actions =
 				(List<Map<String, Object>>) p.get(Fields.PROV_ACTIONS);
+		int actionIndex = 0;
 		for (final Map<String, Object> pa: actions) {
+			final Date time = versionTimes ?
+					actionTimes.get(actionIndex++) : (Date) pa.get(Fields.PROV_ACTION_TIME);
 			@SuppressWarnings("unchecked")
 			final List<Map<String, Object>> extdata = 
 					(List<Map<String, Object>>) pa.get(Fields.PROV_ACTION_EXTERNAL_DATA);
@@ -2632,7 +3811,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					.withScriptVersion((String) pa.get(Fields.PROV_ACTION_SCRIPT_VER))
 					.withServiceName((String) pa.get(Fields.PROV_ACTION_SERVICE))
 					.withServiceVersion((String) pa.get(Fields.PROV_ACTION_SERVICE_VER))
-					.withTime((Date) pa.get(Fields.PROV_ACTION_TIME))
+					.withTime(time)
 					.withWorkspaceObjects(wsobjs)
 					.withResolvedObjects(actionRefs)
 					);
@@ -2699,19 +3878,35 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		//this method is a pattern - generalize somehow?
 		final Map<ObjectIDResolvedWS, ResolvedObjectID> oids =
 				resolveObjectIDs(objectIDs, !ignoreErrors, ignoreErrors, !ignoreErrors);
-		//instead of calling verifyVersions() just query the version here
-		final Map<ResolvedObjectID, Map<String, Object>> vers = 
-				queryVersions(new HashSet<ResolvedObjectID>(oids.values()),
-						FLDS_VER_TYPE, ignoreErrors);
+		final Map<Reference, String> types = new HashMap<>();
+		final Set<ResolvedObjectID> missing = new HashSet<>();
+		for (final ResolvedObjectID roi: oids.values()) {
+			final String type = typeCache == null ?
+					null : typeCache.getIfPresent(roi.getReference());
+			if (type == null) {
+				missing.add(roi);
+			} else {
+				types.put(roi.getReference(), type);
+			}
+		}
+		if (!missing.isEmpty()) {
+			//instead of calling verifyVersions() just query the version here
+			final Map<ResolvedObjectID, Map<String, Object>> vers =
+					queryVersions(missing, FLDS_VER_TYPE, ignoreErrors);
+			for (final Entry<ResolvedObjectID, Map<String, Object>> e: vers.entrySet()) {
+				final String type = (String) e.getValue().get(Fields.VER_TYPE);
+				types.put(e.getKey().getReference(), type);
+				if (typeCache != null) {
+					typeCache.put(e.getKey().getReference(), type);
+				}
+			}
+		}
 		final Map<ObjectIDResolvedWS, TypeAndReference> ret = new HashMap<>();
 		for (final ObjectIDResolvedWS o: objectIDs) {
 			final ResolvedObjectID roi = oids.get(o);
-			final Map<String, Object> v = vers.get(roi);
-			if (v != null) {
+			if (roi != null && types.containsKey(roi.getReference())) {
 				ret.put(o, new TypeAndReference(AbsoluteTypeDefId.fromAbsoluteTypeString(
-								(String) v.get(Fields.VER_TYPE)),
-						new Reference(roi.getWorkspaceIdentifier().getID(), roi.getId(),
-								(Integer) v.get(Fields.VER_VER))));
+						types.get(roi.getReference())), roi.getReference()));
 			}
 		}
 		return ret;
@@ -2942,8 +4137,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final Set<String> fields,
 			boolean ignoreMissing)
 			throws WorkspaceCommunicationException, NoSuchObjectException {
-		final Map<ResolvedObjectID, Map<String, Object>> vers = 
-				query.queryVersions(objectIds, fields);
+		final Map<ResolvedObjectID, Map<String, Object>> vers = versionCache == null ?
+				query.queryVersions(objectIds, fields) : queryCachedVersions(objectIds, fields);
 		if (ignoreMissing) {
 			return vers;
 		}
@@ -2965,6 +4160,104 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return vers;
 	}
 	
+	// excludes the latest version flag, which is mutable
+	private static final Set<String> FLDS_VER_ALL = newHashSet(
+			Fields.VER_WS_ID, Fields.VER_ID, Fields.VER_VER, Fields.VER_SAVEDBY,
+			Fields.VER_CHKSUM, Fields.VER_SAVEDATE, Fields.VER_PROV, Fields.VER_REF,
+			Fields.VER_PROVREF, Fields.VER_PROV_DATE, Fields.VER_PROV_ACTION_TIMES,
+			Fields.VER_TYPE, Fields.VER_SIZE, Fields.VER_RVRT,
+			Fields.VER_META, Fields.VER_COPIED, Fields.VER_EXT_IDS);
+	
+	// small, fixed size fields. Requests for only these fields don't fetch entire documents.
+	private static final Set<String> FLDS_VER_SMALL = newHashSet(
+			Fields.VER_WS_ID, Fields.VER_ID, Fields.VER_VER, Fields.VER_SAVEDBY,
+			Fields.VER_CHKSUM, Fields.VER_SAVEDATE, Fields.VER_TYPE, Fields.VER_SIZE);
+	
+	/* Entire version documents are cached so that any set of fields can be served from the
+	 * cache. Callers get a deep copy of the requested fields since they may modify the returned
+	 * maps and their contents. Requests for only small fields, such as existence checks and
+	 * type lookups, are served from the cache when possible but only fetch the requested fields
+	 * for misses, which are not cached.
+	 */
+	private Map<ResolvedObjectID, Map<String, Object>> queryCachedVersions(
+			final Set<ResolvedObjectID> objectIds,
+			final Set<String> fields)
+			throws WorkspaceCommunicationException {
+		final Map<ResolvedObjectID, Map<String, Object>> ret = new HashMap<>();
+		final Set<ResolvedObjectID> missing = new HashSet<>();
+		for (final ResolvedObjectID roi: objectIds) {
+			final Map<String, Object> v = versionCache.getIfPresent(roi.getReference());
+			if (v == null) {
+				missing.add(roi);
+			} else {
+				ret.put(roi, copyFields(v, fields));
+			}
+		}
+		if (missing.isEmpty()) {
+			return ret;
+		}
+		if (FLDS_VER_SMALL.containsAll(fields)) {
+			ret.putAll(query.queryVersions(missing, new HashSet<>(fields)));
+		} else {
+			final Map<ResolvedObjectID, Map<String, Object>> vers = query.queryVersions(
+					missing, new HashSet<>(FLDS_VER_ALL));
+			for (final Entry<ResolvedObjectID, Map<String, Object>> e: vers.entrySet()) {
+				versionCache.put(e.getKey().getReference(), e.getValue());
+				ret.put(e.getKey(), copyFields(e.getValue(), fields));
+			}
+		}
+		return ret;
+	}
+	
+	private Map<String, Object> copyFields(
+			final Map<String, Object> version,
+			final Set<String> fields) {
+		final Map<String, Object> ret = new HashMap<>();
+		// the version and id are always returned by queryVersions
+		ret.put(Fields.VER_ID, version.get(Fields.VER_ID));
+		ret.put(Fields.VER_VER, version.get(Fields.VER_VER));
+		for (final String f: fields) {
+			if (version.containsKey(f)) {
+				ret.put(f, copyValue(version.get(f)));
+			}
+		}
+		return ret;
+	}
+	
+	// the cached documents contain nested lists, maps and dates, all of which are mutable
+	private static Object copyValue(final Object value) {
+		if (value instanceof BasicDBList) {
+			final BasicDBList ret = new BasicDBList();
+			for (final Object o: (BasicDBList) value) {
+				ret.add(copyValue(o));
+			}
+			return ret;
+		} else if (value instanceof DBObject) {
+			final DBObject dbo = (DBObject) value;
+			final BasicDBObject ret = new BasicDBObject();
+			for (final String k: dbo.keySet()) {
+				ret.put(k, copyValue(dbo.get(k)));
+			}
+			return ret;
+		} else if (value instanceof List) {
+			final List<Object> ret = new ArrayList<>();
+			for (final Object o: (List<?>) value) {
+				ret.add(copyValue(o));
+			}
+			return ret;
+		} else if (value instanceof Map) {
+			final Map<Object, Object> ret = new HashMap<>();
+			for (final Entry<?, ?> e: ((Map<?, ?>) value).entrySet()) {
+				ret.put(e.getKey(), copyValue(e.getValue()));
+			}
+			return ret;
+		} else if (value instanceof Date) {
+			return new Date(((Date) value).getTime());
+		}
+		// strings, numbers, booleans and object IDs are immutable
+		return value;
+	}
+	
 	//In rare race conditions an object may exist with a ver count of 1 but
 	//no versions. Really need to move this code to a backend DB with
 	//transactions if we want autoincrementing counters.
@@ -3168,6 +4461,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 							.append(Fields.OBJ_MODDATE, Date.from(time))),
 					false,
 					true);
+			recordChange();
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
@@ -3191,9 +4485,12 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					new BasicDBObject(Fields.WS_ID, rwsi.getID()),
 					new BasicDBObject("$set", new BasicDBObject(Fields.WS_DEL, delete)
 							.append(Fields.WS_MODDATE, Date.from(now))));
+			recordChange();
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateWorkspaceCache(rwsi);
 		}
 		if (!delete) {
 			//undelete object last so we yadda yadda
@@ -3222,6 +4519,44 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 
+	@Override
+	public List<AbsoluteTypeDefId> getMostUsedTypes(final int limit, final int sampleSize)
+			throws WorkspaceCommunicationException {
+		if (limit < 1) {
+			throw new IllegalArgumentException("limit must be > 0");
+		}
+		if (sampleSize < 1) {
+			throw new IllegalArgumentException("sampleSize must be > 0");
+		}
+		/* only group the most recently saved versions so the cost is bounded regardless of
+		 * the size of the collection. The _id index provides the order.
+		 */
+		final List<DBObject> pipeline = Arrays.asList(
+				new BasicDBObject("$sort", new BasicDBObject("_id", -1)),
+				new BasicDBObject("$limit", sampleSize),
+				new BasicDBObject("$group", new BasicDBObject("_id", "$" + Fields.VER_TYPE)
+						.append("count", new BasicDBObject("$sum", 1))),
+				new BasicDBObject("$sort", new BasicDBObject("count", -1)),
+				new BasicDBObject("$limit", limit));
+		final List<AbsoluteTypeDefId> ret = new LinkedList<>();
+		try {
+			final Cursor cur = wsmongo.getCollection(COL_WORKSPACE_VERS).aggregate(
+					pipeline, AggregationOptions.builder().allowDiskUse(true).build());
+			try {
+				while (cur.hasNext()) {
+					ret.add(AbsoluteTypeDefId.fromAbsoluteTypeString(
+							(String) cur.next().get("_id")));
+				}
+			} finally {
+				cur.close();
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return ret;
+	}
+
 	@Override
 	public boolean isAdmin(WorkspaceUser putativeAdmin)
 			throws WorkspaceCommunicationException {
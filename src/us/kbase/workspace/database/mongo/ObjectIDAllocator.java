@@ -0,0 +1,126 @@
+package us.kbase.workspace.database.mongo;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** Allocates object IDs for new objects from blocks of IDs reserved from a workspace's object
+ * counter, so that most saves of new objects don't need to update the workspace document.
+ *
+ * Reserving a block increments the workspace object counter by the block size, and so IDs
+ * allocated by other instances or by code not using the allocator never overlap the block.
+ * IDs in a block that are never allocated, for instance because the server is stopped or the
+ * block is evicted from memory, are simply never used. Since the object counter then no longer
+ * tracks the maximum object ID in use, the maximum ID is recorded separately when objects are
+ * saved or a workspace is cloned - see {@link Fields#WS_MAXOBJ}. A save that is interrupted
+ * after creating objects may leave the recorded maximum ID below the IDs of those objects until
+ * a later save records a higher ID, but the IDs are never allocated again.
+ */
+class ObjectIDAllocator {
+
+	// blocks for workspaces that haven't been used recently are discarded
+	private static final int MAX_WORKSPACES = 10000;
+
+	private final DBCollection workspaces;
+	private final int blockSize;
+	private final LoadingCache<Long, Block> blocks;
+
+	private static class Block {
+		// the next ID to allocate and the last ID in the block. Next > last for an empty block.
+		private long next = 1;
+		private long last = 0;
+	}
+
+	/** Create the allocator.
+	 * @param workspaces the workspaces collection.
+	 * @param blockSize the number of IDs to reserve at once.
+	 */
+	ObjectIDAllocator(final DBCollection workspaces, final int blockSize) {
+		if (workspaces == null) {
+			throw new NullPointerException("workspaces");
+		}
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("blockSize must be > 0");
+		}
+		this.workspaces = workspaces;
+		this.blockSize = blockSize;
+		this.blocks = CacheBuilder.newBuilder().maximumSize(MAX_WORKSPACES)
+				.build(new CacheLoader<Long, Block>() {
+
+					@Override
+					public Block load(final Long wsid) {
+						return new Block();
+					}
+				});
+	}
+
+	/** Get the block size.
+	 * @return the number of IDs that are reserved at once.
+	 */
+	int getBlockSize() {
+		return blockSize;
+	}
+
+	/** Allocate a contiguous range of object IDs.
+	 * @param wsid the workspace in which the IDs will be used.
+	 * @param count the number of IDs to allocate.
+	 * @return the first ID in the range.
+	 * @throws WorkspaceCommunicationException if a communication error occurs.
+	 */
+	long allocate(final ResolvedWorkspaceID wsid, final long count)
+			throws WorkspaceCommunicationException {
+		if (count >= blockSize) {
+			// no point in storing the leftovers, just reserve what's needed
+			return reserve(wsid, count);
+		}
+		final Block b = blocks.getUnchecked(wsid.getID());
+		synchronized (b) {
+			if (b.last - b.next + 1 < count) {
+				// the remainder of the block, if any, is abandoned since the range must be
+				// contiguous
+				b.next = reserve(wsid, blockSize);
+				b.last = b.next + blockSize - 1;
+			}
+			final long first = b.next;
+			b.next += count;
+			return first;
+		}
+	}
+
+	// returns the first ID in the reservation
+	private long reserve(final ResolvedWorkspaceID wsid, final long count)
+			throws WorkspaceCommunicationException {
+		final DBObject query = new BasicDBObject(Fields.WS_ID, wsid.getID());
+		try {
+			// get the document prior to the update so we know the max ID prior to the
+			// reservation
+			final DBObject prior = workspaces.findAndModify(
+					query,
+					new BasicDBObject(Fields.WS_NUMOBJ, 1).append(Fields.WS_MAXOBJ, 1)
+							.append(Fields.MONGO_ID, 0),
+					null,
+					false,
+					new BasicDBObject("$inc", new BasicDBObject(Fields.WS_NUMOBJ, count)),
+					false,
+					false);
+			final long lastid = ((Number) prior.get(Fields.WS_NUMOBJ)).longValue();
+			if (prior.get(Fields.WS_MAXOBJ) == null) {
+				// workspace saved without a reservation so far. The object counter was the
+				// max ID, but is about to be invalidated.
+				workspaces.update(query, new BasicDBObject("$max",
+						new BasicDBObject(Fields.WS_MAXOBJ, lastid)));
+			}
+			return lastid + 1;
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package us.kbase.workspace.database.mongo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,13 +17,16 @@ import us.kbase.workspace.database.GetObjectInformationParameters;
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.PermissionSet;
+import us.kbase.workspace.database.Reference;
 import us.kbase.workspace.database.ResolvedObjectID;
 import us.kbase.workspace.database.ResolvedWorkspaceID;
 import us.kbase.workspace.database.UncheckedUserMetadata;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 
+import com.mongodb.AggregationOptions;
 import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoException;
@@ -39,12 +43,23 @@ public class ObjectInfoUtils {
 	//TODO JAVADOC
 	
 	private final QueryMethods query;
+	private final boolean useAggregation;
 	
 	ObjectInfoUtils(final QueryMethods query) {
+		this(query, false);
+	}
+	
+	/** Create the utilities.
+	 * @param query the query methods to use.
+	 * @param useAggregation true to filter object listings in the database with an aggregation
+	 * pipeline rather than in memory. Requires MongoDB 3.6+.
+	 */
+	ObjectInfoUtils(final QueryMethods query, final boolean useAggregation) {
 		if (query == null) {
 			throw new NullPointerException("query argument may not be null");
 		}
 		this.query = query;
+		this.useAggregation = useAggregation;
 	}
 	
 	private static final Set<String> FLDS_LIST_OBJ_VER = newHashSet(
@@ -75,6 +90,9 @@ public class ObjectInfoUtils {
 		if (pset.isEmpty()) {
 			return new LinkedList<ObjectInformation>();
 		}
+		if (useAggregation) {
+			return filterWithAggregation(params);
+		}
 		final DBObject verq = buildQuery(params);
 		final DBObject projection = buildProjection(params);
 		final DBObject sort = buildSortSpec(params);
@@ -112,6 +130,108 @@ public class ObjectInfoUtils {
 		return ret;
 	}
 
+	// the field in which the object document is stored in the aggregation results
+	private static final String AGG_OBJ = "obj";
+	
+	/* Joins each version to its object and filters out hidden, deleted, and earlier versions
+	 * in the database, so only the versions to be returned leave the database and the limit is
+	 * applied server side. This avoids the round trip per batch of versions in the in memory
+	 * filter, which can be many round trips when few versions match, e.g. with a limit of 1.
+	 * The sort, if any, must directly follow the initial $match so that it's index backed - see
+	 * buildSortSpec(). Hints are not used for the same reasons as in the find based filter.
+	 * Requires MongoDB 3.6+ for $lookup with a pipeline and $expr.
+	 */
+	private List<ObjectInformation> filterWithAggregation(
+			final GetObjectInformationParameters params)
+			throws WorkspaceCommunicationException {
+		final PermissionSet pset = params.getPermissionSet();
+		final Map<Long, ResolvedWorkspaceID> ids = new HashMap<>();
+		final List<Long> writable = new LinkedList<>();
+		for (final ResolvedWorkspaceID rwsi: pset.getWorkspaces()) {
+			ids.put(rwsi.getID(), rwsi);
+			if (pset.hasPermission(rwsi, Permission.WRITE)) {
+				writable.add(rwsi.getID());
+			}
+		}
+		final List<DBObject> pipeline = new LinkedList<>();
+		pipeline.add(new BasicDBObject("$match", buildQuery(params)));
+		final DBObject sort = buildSortSpec(params);
+		if (!sort.keySet().isEmpty()) {
+			pipeline.add(new BasicDBObject("$sort", sort));
+		}
+		final DBObject objproj = new BasicDBObject(Fields.MONGO_ID, 0);
+		for (final String field: FLDS_LIST_OBJ) {
+			objproj.put(field, 1);
+		}
+		final DBObject join = new BasicDBObject("$and", Arrays.asList(
+				new BasicDBObject("$eq", Arrays.asList("$" + Fields.OBJ_WS_ID, "$$ws")),
+				new BasicDBObject("$eq", Arrays.asList("$" + Fields.OBJ_ID, "$$id"))));
+		pipeline.add(new BasicDBObject("$lookup", new BasicDBObject(
+				"from", query.getObjectCollection())
+				.append("let", new BasicDBObject("ws", "$" + Fields.VER_WS_ID)
+						.append("id", "$" + Fields.VER_ID))
+				.append("pipeline", Arrays.asList(
+						new BasicDBObject("$match", new BasicDBObject("$expr", join)),
+						new BasicDBObject("$project", objproj)))
+				.append("as", AGG_OBJ)));
+		// drops versions without an object, which can't occur outside of a corrupt DB
+		pipeline.add(new BasicDBObject("$unwind", "$" + AGG_OBJ));
+		pipeline.add(new BasicDBObject("$match", buildObjectQuery(params, writable)));
+		pipeline.add(new BasicDBObject("$limit", params.getLimit()));
+		final DBObject projection = buildProjection(params);
+		projection.put(AGG_OBJ + "." + Fields.OBJ_NAME, 1);
+		pipeline.add(new BasicDBObject("$project", projection));
+		
+		final List<ObjectInformation> ret = new LinkedList<>();
+		try {
+			final Cursor cur = query.getDatabase().getCollection(query.getVersionCollection())
+					.aggregate(pipeline, AggregationOptions.builder().build());
+			try {
+				while (cur.hasNext()) {
+					final Map<String, Object> v = QueryMethods.dbObjectToMap(cur.next());
+					@SuppressWarnings("unchecked")
+					final Map<String, Object> obj = (Map<String, Object>) v.get(AGG_OBJ);
+					ret.add(generateObjectInfo(ids.get((Long) v.get(Fields.VER_WS_ID)),
+							(Long) v.get(Fields.VER_ID), (String) obj.get(Fields.OBJ_NAME), v));
+				}
+			} finally {
+				cur.close();
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return ret;
+	}
+	
+	// the database equivalent of the filters in generateObjectInfo()
+	private DBObject buildObjectQuery(
+			final GetObjectInformationParameters params,
+			final List<Long> writableWorkspaces) {
+		final String obj = AGG_OBJ + ".";
+		final DBObject q = new BasicDBObject();
+		if (!params.isShowAllVersions()) {
+			q.put("$expr", new BasicDBObject("$eq", Arrays.asList(
+					"$" + obj + Fields.OBJ_VCNT, "$" + Fields.VER_VER)));
+		}
+		if (!params.isShowHidden()) {
+			q.put(obj + Fields.OBJ_HIDE, false);
+		}
+		final DBObject writable = new BasicDBObject(Fields.VER_WS_ID,
+				new BasicDBObject("$in", writableWorkspaces));
+		if (params.isShowOnlyDeleted()) {
+			q.put(obj + Fields.OBJ_DEL, true);
+			if (!params.asAdmin()) {
+				q.putAll(writable);
+			}
+		} else if (!params.isShowDeleted()) {
+			q.put(obj + Fields.OBJ_DEL, false);
+		} else if (!params.asAdmin()) {
+			q.put("$or", Arrays.asList(new BasicDBObject(obj + Fields.OBJ_DEL, false), writable));
+		}
+		return q;
+	}
+
 	private DBCursor buildCursor(
 			final DBObject verq,
 			final DBObject projection,
@@ -169,6 +289,15 @@ public class ObjectInfoUtils {
 		}
 		final DBObject verq = new BasicDBObject();
 		verq.put(Fields.VER_WS_ID, new BasicDBObject("$in", ids));
+		if (!params.isShowAllVersions()) {
+			/* skip versions known to not be the latest. Versions saved prior to 0.12.0 have no
+			 * latest flag until the flagLatestVersions admin command is run, and must be
+			 * checked against the object version count, as must versions flagged as latest.
+			 * Uses $in rather than $ne: false so that mongo can merge sort the results of the
+			 * two equality ranges by object id.
+			 */
+			verq.put(Fields.VER_LATEST, new BasicDBObject("$in", Arrays.asList(null, true)));
+		}
 		if (params.getType() != null) {
 			verq.put(Fields.VER_TYPE, new BasicDBObject(
 					"$regex", "^" + params.getType().getTypePrefix()));
@@ -208,6 +337,18 @@ public class ObjectInfoUtils {
 			}
 			verq.put(Fields.VER_ID, id);
 		}
+		if (params.getStartAfter() != null) {
+			// only allowed with the object ID filters, so must match the sort in buildSortSpec()
+			final Reference r = params.getStartAfter();
+			verq.put("$or", Arrays.asList(
+					new BasicDBObject(Fields.VER_WS_ID,
+							new BasicDBObject("$gt", r.getWorkspaceID())),
+					new BasicDBObject(Fields.VER_WS_ID, r.getWorkspaceID())
+							.append(Fields.VER_ID, new BasicDBObject("$gt", r.getObjectID())),
+					new BasicDBObject(Fields.VER_WS_ID, r.getWorkspaceID())
+							.append(Fields.VER_ID, r.getObjectID())
+							.append(Fields.VER_VER, new BasicDBObject("$lt", r.getVersion()))));
+		}
 		
 		return verq;
 	}
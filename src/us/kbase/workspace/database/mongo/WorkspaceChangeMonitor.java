@@ -0,0 +1,330 @@
+package us.kbase.workspace.database.mongo;
+
+import static us.kbase.workspace.database.mongo.CollectionNames.COL_CHANGE_STAMP;
+import static us.kbase.workspace.database.mongo.CollectionNames.COL_WORKSPACES;
+import static us.kbase.workspace.database.mongo.CollectionNames.COL_WORKSPACE_OBJS;
+import static us.kbase.workspace.database.mongo.CollectionNames.COL_WS_ACLS;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Field;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+
+/** Monitors the workspace database for changes to workspaces, workspace permissions, and object
+ * names and deletion states, and notifies registered listeners so that in memory caches can be
+ * kept coherent between workspace servers sharing the same database.
+ *
+ * If the database is a MongoDB 3.6+ replica set, the workspace, permission, and object
+ * collections are tailed via change streams, and listeners are notified of the IDs of the
+ * changed workspaces. If a change can't be mapped to a workspace, for instance when a
+ * permission is removed, or a change stream fails and changes may have been missed, listeners
+ * are told to invalidate everything.
+ *
+ * Otherwise, the monitor falls back to polling a change stamp that is incremented via
+ * {@link #recordChange()} whenever a workspace server makes a change, and listeners are told to
+ * invalidate everything when the stamp changes. This requires all the workspace servers sharing
+ * the database to run a monitor.
+ */
+public class WorkspaceChangeMonitor {
+
+	// 3.6 is the first version with change streams
+	private static final int CHANGE_STREAM_MIN_WIRE_VERSION = 6;
+
+	private static final DBObject STAMP_QUERY = new BasicDBObject("_id", "stamp");
+	private static final String STAMP_FIELD = "stamp";
+
+	// the workspace fields that are cached or affect permissions
+	private static final Pattern WS_FIELDS = Pattern.compile(String.format(
+			"^(%s|%s|%s|%s|%s)(\\.|$)", Fields.WS_NAME, Fields.WS_DEL, Fields.WS_LOCKED,
+			Fields.WS_OWNER, Fields.WS_META));
+	private static final String UPDATED_FIELDS = "wsUpdatedFields";
+
+	/** The type of a change to the workspace database. */
+	public enum ChangeType {
+		/** A change to the workspace document, such as the name, lock or deletion state. */
+		WORKSPACE,
+		/** A change to the permissions for the workspace. */
+		PERMISSIONS,
+		/** A change to the name or deletion state of an object in the workspace. */
+		OBJECT;
+	}
+
+	/** A listener for changes to the workspace database. */
+	public interface ChangeListener {
+
+		/** Called when a workspace has changed.
+		 * @param type the type of the change.
+		 * @param workspaceID the ID of the changed workspace.
+		 */
+		void changed(ChangeType type, long workspaceID);
+
+		/** Called when any workspace may have changed. */
+		void invalidateAll();
+	}
+
+	private final DB db;
+	private final long pollIntervalMS;
+	private final boolean useChangeStreams;
+	private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+	private final List<Thread> threads = new CopyOnWriteArrayList<>();
+	// the open change stream cursors, closed on stop() to unblock the tailing threads
+	private final Set<MongoCursor<?>> cursors = ConcurrentHashMap.newKeySet();
+	private volatile boolean started = false;
+	private volatile boolean stopped = false;
+
+	/** Create the monitor. The monitor does nothing until {@link #start()} is called.
+	 * @param db the workspace database.
+	 * @param pollIntervalMS the interval between polls of the change stamp when change streams
+	 * are not available, and between attempts to restart a failed change stream.
+	 * @throws MongoException if the database could not be contacted.
+	 */
+	public WorkspaceChangeMonitor(final DB db, final long pollIntervalMS) {
+		if (db == null) {
+			throw new NullPointerException("db");
+		}
+		if (pollIntervalMS < 1) {
+			throw new IllegalArgumentException("pollIntervalMS must be > 0");
+		}
+		this.db = db;
+		this.pollIntervalMS = pollIntervalMS;
+		final CommandResult isMaster = db.command("isMaster");
+		useChangeStreams = db.getMongo() instanceof MongoClient &&
+				isMaster.get("setName") != null &&
+				isMaster.getInt("maxWireVersion", 0) >= CHANGE_STREAM_MIN_WIRE_VERSION;
+	}
+
+	/** Returns true if the monitor tails change streams, or false if it polls the change stamp.
+	 * @return true if change streams are in use.
+	 */
+	public boolean isUsingChangeStreams() {
+		return useChangeStreams;
+	}
+
+	/** Register a listener for changes.
+	 * @param listener the listener.
+	 */
+	public void register(final ChangeListener listener) {
+		if (listener == null) {
+			throw new NullPointerException("listener");
+		}
+		listeners.add(listener);
+	}
+
+	/** Record that a change has been made to a workspace, its permissions, or an object name or
+	 * deletion state. Other monitors will notify their listeners of the change. This method
+	 * does nothing if change streams are in use, since the changes are read from the streams.
+	 * @throws MongoException if the database could not be contacted.
+	 */
+	public void recordChange() {
+		if (!useChangeStreams) {
+			db.getCollection(COL_CHANGE_STAMP).update(STAMP_QUERY,
+					new BasicDBObject("$inc", new BasicDBObject(STAMP_FIELD, 1L)), true, false);
+		}
+	}
+
+	/** Start monitoring the database in background daemon threads.
+	 * @return this monitor.
+	 * @throws MongoException if the database could not be contacted.
+	 */
+	public synchronized WorkspaceChangeMonitor start() {
+		if (started) {
+			throw new IllegalStateException("The monitor is already started");
+		}
+		started = true;
+		if (useChangeStreams) {
+			final MongoDatabase mdb = ((MongoClient) db.getMongo()).getDatabase(db.getName());
+			/* ignore the modification date and object counts changed on every save.
+			 * Metadata is updated by array element, so the updated field names are matched
+			 * by prefix, e.g. meta.0.v.
+			 */
+			startThread("workspaces", () -> tail(mdb, COL_WORKSPACES, ChangeType.WORKSPACE,
+					Fields.WS_ID, Arrays.asList(
+							Aggregates.addFields(new Field<>(UPDATED_FIELDS, new Document(
+									"$objectToArray", "$updateDescription.updatedFields"))),
+							Aggregates.match(Filters.or(
+									Filters.in("operationType", "replace", "delete"),
+									Filters.regex(UPDATED_FIELDS + ".k", WS_FIELDS),
+									Filters.regex("updateDescription.removedFields",
+											WS_FIELDS))),
+							Aggregates.project(Projections.exclude(UPDATED_FIELDS)))));
+			// new permissions are inserted, and removed permissions are deleted
+			startThread("permissions", () -> tail(mdb, COL_WS_ACLS, ChangeType.PERMISSIONS,
+					Fields.ACL_WSID, Arrays.asList(Aggregates.match(Filters.in("operationType",
+							"insert", "update", "replace", "delete")))));
+			// ignore the modification date and other changes made on every save
+			startThread("objects", () -> tail(mdb, COL_WORKSPACE_OBJS, ChangeType.OBJECT,
+					Fields.OBJ_WS_ID, Arrays.asList(Aggregates.match(Filters.or(
+							Filters.in("operationType", "replace", "delete"),
+							Filters.exists("updateDescription.updatedFields." +
+									Fields.OBJ_NAME),
+							Filters.exists("updateDescription.updatedFields." +
+									Fields.OBJ_DEL))))));
+		} else {
+			// get the stamp now so changes made after start() returns are never missed
+			final Long stamp = getStamp();
+			startThread("poller", () -> poll(stamp));
+		}
+		return this;
+	}
+
+	/** Stop monitoring the database. Any open change streams are closed and the background
+	 * threads are interrupted.
+	 */
+	public void stop() {
+		stopped = true;
+		for (final MongoCursor<?> cur: cursors) {
+			closeQuietly(cur);
+		}
+		for (final Thread t: threads) {
+			t.interrupt();
+		}
+	}
+
+	private void closeQuietly(final MongoCursor<?> cur) {
+		try {
+			cur.close();
+		} catch (RuntimeException e) {
+			// the cursor is being abandoned anyway
+		}
+	}
+
+	private void startThread(final String name, final Runnable r) {
+		final Thread t = new Thread(r);
+		t.setDaemon(true);
+		t.setName("workspace-change-monitor-" + name);
+		threads.add(t);
+		t.start();
+	}
+
+	private void tail(
+			final MongoDatabase mdb,
+			final String collection,
+			final ChangeType type,
+			final String wsIDField,
+			final List<Bson> pipeline) {
+		boolean first = true;
+		while (!stopped) {
+			try (final MongoCursor<ChangeStreamDocument<Document>> cur = mdb
+					.getCollection(collection).watch(pipeline)
+					.fullDocument(FullDocument.UPDATE_LOOKUP).iterator()) {
+				cursors.add(cur);
+				try {
+					if (stopped) { // stop() may have missed the cursor
+						return;
+					}
+					if (!first) {
+						// changes may have been missed while the stream was down
+						notifyInvalidateAll();
+					}
+					first = false;
+					while (!stopped && cur.hasNext()) {
+						final Document doc = cur.next().getFullDocument();
+						// deleted documents only have the document ID
+						final Object wsid = doc == null ? null : doc.get(wsIDField);
+						if (wsid instanceof Number) {
+							notifyChanged(type, ((Number) wsid).longValue());
+						} else {
+							notifyInvalidateAll();
+						}
+					}
+				} finally {
+					cursors.remove(cur);
+				}
+			} catch (RuntimeException e) {
+				if (stopped) {
+					return; // stop() closed the cursor
+				}
+				if (!(e instanceof MongoException)) {
+					throw e;
+				}
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Change stream for collection %s failed, restarting", collection), e);
+				first = false;
+				if (!sleep()) {
+					return;
+				}
+			}
+		}
+	}
+
+	private long getStamp() {
+		final DBObject s = db.getCollection(COL_CHANGE_STAMP).findOne(STAMP_QUERY);
+		return s == null ? 0 : ((Number) s.get(STAMP_FIELD)).longValue();
+	}
+
+	private void poll(final Long initialStamp) {
+		Long stamp = initialStamp;
+		while (!stopped) {
+			if (!sleep()) {
+				return;
+			}
+			try {
+				final long newstamp = getStamp();
+				if (stamp != null && stamp != newstamp) {
+					notifyInvalidateAll();
+				}
+				stamp = newstamp;
+			} catch (MongoException me) {
+				LoggerFactory.getLogger(getClass()).error(
+						"Failed to poll the workspace change stamp", me);
+				// changes may be missed while the database is unavailable
+				stamp = null;
+				notifyInvalidateAll();
+			}
+		}
+	}
+
+	// returns false if interrupted
+	private boolean sleep() {
+		try {
+			Thread.sleep(pollIntervalMS);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+	// a failing listener must not stop the other listeners or the monitor thread
+	private void notifyChanged(final ChangeType type, final long wsid) {
+		for (final ChangeListener l: listeners) {
+			try {
+				l.changed(type, wsid);
+			} catch (RuntimeException e) {
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Change listener failed for %s change to workspace %s", type, wsid), e);
+			}
+		}
+	}
+
+	private void notifyInvalidateAll() {
+		for (final ChangeListener l: listeners) {
+			try {
+				l.invalidateAll();
+			} catch (RuntimeException e) {
+				LoggerFactory.getLogger(getClass()).error(
+						"Change listener failed to invalidate all workspaces", e);
+			}
+		}
+	}
+}
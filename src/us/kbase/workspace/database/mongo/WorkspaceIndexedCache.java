@@ -0,0 +1,154 @@
+package us.kbase.workspace.database.mongo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+
+/** A cache where each entry belongs to a workspace, so that all the entries for a workspace can
+ * be invalidated without scanning the cache.
+ *
+ * Values loaded from the database are added with the generation read before the database was
+ * queried. If any invalidation happens in the meantime the value may be stale and is dropped,
+ * so a concurrent load can never put back an entry that an invalidation removed.
+ * @param <K> the type of the cache keys.
+ * @param <V> the type of the cache values.
+ */
+class WorkspaceIndexedCache<K, V> {
+
+	private final Cache<K, Entry<V>> cache;
+	// workspace ID -> keys of the cached entries for that workspace. Guarded by this.
+	private final Map<Long, Set<K>> index = new HashMap<>();
+	// incremented on every invalidation. Guarded by this.
+	private long generation = 0;
+
+	private static class Entry<V> {
+
+		private final long workspaceID;
+		private final V value;
+
+		private Entry(final long workspaceID, final V value) {
+			this.workspaceID = workspaceID;
+			this.value = value;
+		}
+	}
+
+	/** Create the cache.
+	 * @param maximumSize the maximum number of entries in the cache.
+	 * @param expiry the time after which an entry expires.
+	 * @param unit the unit of the expiry time.
+	 */
+	WorkspaceIndexedCache(final int maximumSize, final long expiry, final TimeUnit unit) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximumSize must be > 0");
+		}
+		if (expiry < 1) {
+			throw new IllegalArgumentException("expiry must be > 0");
+		}
+		if (unit == null) {
+			throw new NullPointerException("unit");
+		}
+		final RemovalListener<K, Entry<V>> listener = n -> removeFromIndex(
+				n.getKey(), n.getValue());
+		cache = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expiry, unit)
+				.recordStats().removalListener(listener).build();
+	}
+
+	// removal notifications may arrive after the key has been replaced, so only remove the key
+	// from the index if it is no longer cached for the same workspace.
+	private synchronized void removeFromIndex(final K key, final Entry<V> removed) {
+		if (key == null || removed == null) {
+			return; // collected, can't happen without weak or soft references
+		}
+		final Set<K> keys = index.get(removed.workspaceID);
+		if (keys == null) {
+			return;
+		}
+		final Entry<V> current = cache.asMap().get(key);
+		if (current == null || current.workspaceID != removed.workspaceID) {
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				index.remove(removed.workspaceID);
+			}
+		}
+	}
+
+	/** Get the current generation. Read the generation before querying the database for a
+	 * value and pass it to {@link #put(Object, long, Object, long)}.
+	 * @return the generation.
+	 */
+	synchronized long getGeneration() {
+		return generation;
+	}
+
+	/** Get a value.
+	 * @param key the value's key.
+	 * @return the value, or null if it is not cached.
+	 */
+	V getIfPresent(final K key) {
+		final Entry<V> e = cache.getIfPresent(key);
+		return e == null ? null : e.value;
+	}
+
+	/** Get the cached values for a set of keys.
+	 * @param keys the keys.
+	 * @return the values of the keys that are cached.
+	 */
+	Map<K, V> getAllPresent(final Iterable<? extends K> keys) {
+		final Map<K, V> ret = new HashMap<>();
+		for (final Map.Entry<K, Entry<V>> e: cache.getAllPresent(keys).entrySet()) {
+			ret.put(e.getKey(), e.getValue().value);
+		}
+		return ret;
+	}
+
+	/** Add a value to the cache, unless the cache has been invalidated since the generation
+	 * was read.
+	 * @param key the value's key.
+	 * @param workspaceID the ID of the workspace to which the value belongs.
+	 * @param value the value.
+	 * @param generation the generation read prior to querying the database for the value.
+	 */
+	synchronized void put(
+			final K key,
+			final long workspaceID,
+			final V value,
+			final long generation) {
+		if (generation != this.generation) {
+			return;
+		}
+		cache.put(key, new Entry<>(workspaceID, value));
+		index.computeIfAbsent(workspaceID, k -> new HashSet<>()).add(key);
+	}
+
+	/** Remove all the entries for a workspace.
+	 * @param workspaceID the ID of the workspace.
+	 */
+	synchronized void invalidate(final long workspaceID) {
+		generation++;
+		final Set<K> keys = index.remove(workspaceID);
+		if (keys != null) {
+			cache.invalidateAll(keys);
+		}
+	}
+
+	/** Remove all the entries in the cache. */
+	synchronized void invalidateAll() {
+		generation++;
+		index.clear();
+		cache.invalidateAll();
+	}
+
+	/** Get the cache statistics.
+	 * @return the statistics.
+	 */
+	CacheStats stats() {
+		return cache.stats();
+	}
+}
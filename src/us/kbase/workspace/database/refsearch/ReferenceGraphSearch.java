@@ -1,11 +1,14 @@
 package us.kbase.workspace.database.refsearch;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import us.kbase.workspace.database.Reference;
@@ -13,6 +16,11 @@ import us.kbase.workspace.database.Reference;
 /** Searches a reference graph from a set of target references to find references that meet search
  * termination criteria, and returns the path from each found object to its respective target
  * object.
+ * 
+ * The searches for all the target references proceed together and share the references they
+ * visit, so overlapping searches only fetch each reference once. The path for a target reference
+ * whose search is the only one to reach a termination reference is the shortest path, but if
+ * searches overlap a path may pass through references first reached by another search.
  * @author gaprice@lbl.gov
  *
  */
@@ -20,8 +28,14 @@ public class ReferenceGraphSearch {
 	
 	private final int maximumReferenceSearchCount;
 	private final Map<Reference, List<Reference>> paths = new HashMap<>();
+	private final Set<Reference> failed = new HashSet<>();
 	private final ReferenceGraphTopologyProvider refProvider;
 	private final boolean throwExceptionOnFail;
+	// search state, indexed by the position of the starting reference in roots
+	private List<Reference> roots;
+	private int[] groups;
+	private int[] unresolved; // per group, only valid for the group's representative
+	private boolean[] resolved;
 	
 	/** Construct and perform a search in a reference graph from a set of target
 	 * references to references that meet the search termination criteria as provided by the
@@ -65,6 +79,49 @@ public class ReferenceGraphSearch {
 		searchObjectDAG(startingRefs);
 	}
 	
+	/* A node in the search. Each reference is visited once across all the starting references,
+	 * rather than once per starting reference, and belongs to the search for the starting
+	 * reference that reached it first. The parent is the adjacent node closer to the starting
+	 * reference. If the search for another starting reference reaches an already visited node,
+	 * the node it was expanding is added to the visited node's joins, so that a terminating
+	 * reference found beyond the visited node also yields a path for the other starting
+	 * reference. Once a terminating reference is found beyond a node, next points to the
+	 * adjacent node closer to the terminating reference, or terminal is the terminating
+	 * reference if it is adjacent.
+	 */
+	private static class Node {
+		
+		private final Reference ref;
+		private final Node parent;
+		private final int root;
+		private List<Node> joins = null; // most nodes are never joined
+		private Node next = null;
+		private Reference terminal = null;
+		
+		private Node(final Reference ref, final Node parent, final int root) {
+			this.ref = ref;
+			this.parent = parent;
+			this.root = root;
+		}
+		
+		private boolean hasPath() {
+			return next != null || terminal != null;
+		}
+		
+		private void join(final Node node) {
+			if (joins == null) {
+				joins = new LinkedList<>();
+			}
+			joins.add(node);
+		}
+	}
+	
+	/* Searches for all the starting references at once, one level of the graph per round, with
+	 * one set of visited references and one frontier shared by all the searches, so each
+	 * reference is fetched from the reference provider once regardless of how many searches
+	 * reach it. Searches that join are merged into a group, and nodes are only expanded while
+	 * their group contains a starting reference without a path.
+	 */
 	private void searchObjectDAG(
 			final Set<Reference> startingRefs)
 			throws ReferenceSearchFailedException, ReferenceSearchMaximumSizeExceededException,
@@ -73,38 +130,162 @@ public class ReferenceGraphSearch {
 		if (refCountExceeded(refcount)) {
 			return;
 		}
-		Set<Reference> query = new HashSet<>();
-		final List<ReferenceSearchTree> trees = new LinkedList<>();
-		for (final Reference r: startingRefs) {
-			trees.add(new ReferenceSearchTree(r));
-			query.add(r);
+		roots = new ArrayList<>(startingRefs);
+		groups = new int[roots.size()];
+		unresolved = new int[roots.size()];
+		resolved = new boolean[roots.size()];
+		final Map<Reference, Node> visited = new HashMap<>();
+		List<Node> frontier = new ArrayList<>();
+		for (int i = 0; i < roots.size(); i++) {
+			groups[i] = i;
+			unresolved[i] = 1;
+			final Node n = new Node(roots.get(i), null, i);
+			visited.put(n.ref, n);
+			frontier.add(n);
 		}
-		while (!trees.isEmpty()) {
+		while (!frontier.isEmpty()) {
+			final Set<Reference> query = new HashSet<>();
+			for (final Node n: frontier) {
+				query.add(n.ref);
+			}
 			final Map<Reference, Map<Reference, Boolean>> res =
 					refProvider.getAssociatedReferences(query);
-			query = null;
 			for (final Map<Reference, Boolean> r: res.values()) {
 				refcount += r.size();
 			}
 			if (refCountExceeded(refcount)) {
 				return;
 			}
-			query = new HashSet<>();
-			final Iterator<ReferenceSearchTree> treeiter = trees.iterator();
-			while (treeiter.hasNext()) {
-				final ReferenceSearchTree tree = treeiter.next();
-				query.addAll(tree.updateTree(res));
-				if (tree.isComplete()) {
-					treeiter.remove();
-					if (tree.isPathFound()) {
-						paths.put(tree.getRoot(), tree.getPath());
-					} else if (throwExceptionOnFail) { // otherwise do nothing
-						throw new ReferenceSearchFailedException(tree.getRoot());
+			final List<Node> newFrontier = new ArrayList<>();
+			for (final Node n: frontier) {
+				final Map<Reference, Boolean> adjacent = res.get(n.ref);
+				if (adjacent == null) {
+					continue;
+				}
+				for (final Entry<Reference, Boolean> a: adjacent.entrySet()) {
+					if (!isLive(n)) {
+						break; // the searches were completed while processing this node
+					}
+					final Node seen = visited.get(a.getKey());
+					if (seen != null && seen.hasPath()) {
+						resolvePaths(seen, n);
+					// nodes in completed groups are no longer expanded, so they're replaced
+					} else if (seen != null && isLive(seen)) {
+						/* even within the same search a shorter path exists, but the node
+						 * may be on the only path for a search that joined this one
+						 */
+						if (seen != n) {
+							seen.join(n);
+							union(seen.root, n.root);
+						}
+					} else if (a.getValue()) { // search is done
+						resolvePaths(a.getKey(), n);
+					} else {
+						final Node newnode = new Node(a.getKey(), n, n.root);
+						visited.put(newnode.ref, newnode);
+						newFrontier.add(newnode);
+					}
+				}
+			}
+			frontier = new ArrayList<>();
+			final Set<Integer> liveGroups = new HashSet<>();
+			for (final Node n: newFrontier) {
+				if (isLive(n)) {
+					frontier.add(n);
+					liveGroups.add(find(n.root));
+				}
+			}
+			// searches in groups without any more nodes to expand have failed
+			for (int i = 0; i < roots.size(); i++) {
+				if (!resolved[i] && !liveGroups.contains(find(i))) {
+					if (throwExceptionOnFail) {
+						throw new ReferenceSearchFailedException(roots.get(i));
 					}
+					resolved[i] = true;
+					failed.add(roots.get(i));
+					unresolved[find(i)]--;
+				}
+			}
+		}
+	}
+	
+	/* Walks from the node where a terminating reference was found to the starting reference,
+	 * branching into the searches that joined along the way, and records a path for each
+	 * starting reference reached that doesn't have one yet.
+	 */
+	private void resolvePaths(final Reference terminal, final Node node) {
+		final Set<Reference> seen = new HashSet<>();
+		seen.add(terminal);
+		resolvePaths(Arrays.asList(terminal), node, null, terminal, seen);
+	}
+	
+	// resolves paths for node via a node that already has a path to a terminating reference
+	private void resolvePaths(final Node found, final Node node) {
+		final LinkedList<Reference> prefix = new LinkedList<>();
+		Node n = found;
+		for (; n.next != null; n = n.next) {
+			prefix.addFirst(n.ref);
+		}
+		prefix.addFirst(n.ref);
+		prefix.addFirst(n.terminal);
+		resolvePaths(prefix, node, found, null, new HashSet<>(prefix));
+	}
+	
+	private void resolvePaths(
+			final List<Reference> prefix,
+			final Node start,
+			final Node previous,
+			final Reference terminal,
+			final Set<Reference> seen) {
+		final List<Reference> path = new ArrayList<>(prefix);
+		final List<Node> chain = new ArrayList<>();
+		Node prev = previous;
+		// nodes with paths have already been walked, and seen prevents cycles in the path
+		for (Node n = start; n != null && !n.hasPath() && seen.add(n.ref); n = n.parent) {
+			n.next = prev;
+			n.terminal = prev == null ? terminal : null;
+			path.add(n.ref);
+			chain.add(n);
+			if (n.parent == null && !resolved[n.root]) {
+				paths.put(n.ref, Collections.unmodifiableList(path));
+				resolved[n.root] = true;
+				unresolved[find(n.root)]--;
+			}
+			prev = n;
+		}
+		// walk the joins after the parents so the search's own path is preferred
+		for (int i = 0; i < chain.size(); i++) {
+			if (chain.get(i).joins != null) {
+				for (final Node j: chain.get(i).joins) {
+					resolvePaths(path.subList(0, prefix.size() + i + 1), j, chain.get(i), null,
+							seen);
 				}
 			}
 		}
 	}
+	
+	private boolean isLive(final Node n) {
+		return unresolved[find(n.root)] > 0;
+	}
+	
+	private int find(final int root) {
+		int r = root;
+		while (groups[r] != r) {
+			groups[r] = groups[groups[r]];
+			r = groups[r];
+		}
+		return r;
+	}
+	
+	private void union(final int root1, final int root2) {
+		final int g1 = find(root1);
+		final int g2 = find(root2);
+		if (g1 != g2) {
+			groups[g2] = g1;
+			unresolved[g1] += unresolved[g2];
+			unresolved[g2] = 0;
+		}
+	}
 
 	private boolean refCountExceeded(final int refcount)
 			throws ReferenceSearchMaximumSizeExceededException {
@@ -129,6 +310,16 @@ public class ReferenceGraphSearch {
 		return paths.containsKey(ref);
 	}
 	
+	/** Determine if a search was exhausted without finding a path for a particular source
+	 * reference. Searches that were terminated because the maximum search size was exceeded are
+	 * not considered to have failed, since a path may exist beyond the references searched.
+	 * @param ref the ref to check for failure.
+	 * @return true if the search for the provided ref was exhausted without finding a path.
+	 */
+	public boolean isSearchFailed(final Reference ref) {
+		return failed.contains(ref);
+	}
+	
 	/** Get the path found for a particular source reference.
 	 * @param ref the reference for which the path should be returned.
 	 * @return the path from a search terminating reference to the source reference, inclusive.
@@ -0,0 +1,173 @@
+package us.kbase.workspace.database.refsearch;
+
+import static us.kbase.workspace.database.Util.nonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.WorkspaceUser;
+
+/** A short lived cache of the results of reference path searches, keyed by the user and the
+ * target of the search. An entry is either the path found from a reference that terminated the
+ * search to the target, or a record that the search was exhausted without finding a path.
+ *
+ * The cache makes no attempt to verify its contents. Users of the cache are expected to check
+ * that the head of a cached path still exists and is readable before using the path, and to
+ * remove entries without a path via {@link #invalidateNoPath(Set)} or
+ * {@link #invalidateNoPath()} when users gain permissions. Other changes that could produce a
+ * path, such as saving a new object that references the target, are picked up when the entry
+ * expires.
+ */
+public class ReferencePathCache {
+
+	private static final List<Reference> NO_PATH = Collections.emptyList();
+
+	// the value is NO_PATH if no path was found
+	private final Cache<PathKey, List<Reference>> cache;
+
+	private static class PathKey {
+
+		private final String user; // null for anonymous users
+		private final Reference target;
+
+		private PathKey(final WorkspaceUser user, final Reference target) {
+			this.user = user == null ? null : user.getUser();
+			this.target = target;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((target == null) ? 0 : target.hashCode());
+			result = prime * result + ((user == null) ? 0 : user.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final PathKey other = (PathKey) obj;
+			if (user == null) {
+				if (other.user != null) {
+					return false;
+				}
+			} else if (!user.equals(other.user)) {
+				return false;
+			}
+			return target.equals(other.target);
+		}
+	}
+
+	/** Create the cache.
+	 * @param maximumSize the maximum number of (user, target) entries to cache.
+	 * @param expiryMS the time in milliseconds after which entries expire.
+	 */
+	public ReferencePathCache(final int maximumSize, final int expiryMS) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximumSize must be > 0");
+		}
+		if (expiryMS < 1) {
+			throw new IllegalArgumentException("expiryMS must be > 0");
+		}
+		cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(expiryMS, TimeUnit.MILLISECONDS).recordStats().build();
+	}
+
+	/** Cache a path found by a search.
+	 * @param user the user for whom the search was performed, or null for an anonymous user.
+	 * @param path the path from the reference that terminated the search to the target of the
+	 * search, inclusive.
+	 */
+	public void putPath(final WorkspaceUser user, final List<Reference> path) {
+		nonNull(path, "path");
+		if (path.isEmpty()) {
+			throw new IllegalArgumentException("path cannot be empty");
+		}
+		cache.put(new PathKey(user, path.get(path.size() - 1)),
+				Collections.unmodifiableList(new ArrayList<>(path)));
+	}
+
+	/** Cache that a search was exhausted without finding a path.
+	 * @param user the user for whom the search was performed, or null for an anonymous user.
+	 * @param target the target of the search.
+	 */
+	public void putNoPath(final WorkspaceUser user, final Reference target) {
+		nonNull(target, "target");
+		cache.put(new PathKey(user, target), NO_PATH);
+	}
+
+	/** Get a cached path.
+	 * @param user the user, or null for an anonymous user.
+	 * @param target the target of the path.
+	 * @return the path from the reference that terminated the search to the target, or null if
+	 * no path is cached.
+	 */
+	public List<Reference> getPath(final WorkspaceUser user, final Reference target) {
+		nonNull(target, "target");
+		final List<Reference> path = cache.getIfPresent(new PathKey(user, target));
+		return path == null || path.isEmpty() ? null : path;
+	}
+
+	/** Check whether a search for a user and target was cached as having no path.
+	 * @param user the user, or null for an anonymous user.
+	 * @param target the target of the search.
+	 * @return true if the search is cached as having no path.
+	 */
+	public boolean isNoPath(final WorkspaceUser user, final Reference target) {
+		nonNull(target, "target");
+		final List<Reference> path = cache.getIfPresent(new PathKey(user, target));
+		return path != null && path.isEmpty();
+	}
+
+	/** Remove a cached entry, for instance if the head of a cached path is no longer readable.
+	 * @param user the user, or null for an anonymous user.
+	 * @param target the target of the search.
+	 */
+	public void remove(final WorkspaceUser user, final Reference target) {
+		nonNull(target, "target");
+		cache.invalidate(new PathKey(user, target));
+	}
+
+	/** Remove all the entries without a path for a set of users, for instance when the users
+	 * gain permissions to a workspace.
+	 * @param users the users.
+	 */
+	public void invalidateNoPath(final Set<WorkspaceUser> users) {
+		nonNull(users, "users");
+		final Set<String> names = new HashSet<>();
+		for (final WorkspaceUser u: users) {
+			names.add(u.getUser());
+		}
+		cache.asMap().entrySet().removeIf(e ->
+				e.getValue().isEmpty() && names.contains(e.getKey().user));
+	}
+
+	/** Remove all the entries without a path for all users, for instance when a workspace is
+	 * made globally readable.
+	 */
+	public void invalidateNoPath() {
+		cache.asMap().values().removeIf(p -> p.isEmpty());
+	}
+
+	/** Get statistics for the cache.
+	 * @return the statistics.
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+}
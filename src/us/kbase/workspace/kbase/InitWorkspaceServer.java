@@ -10,12 +10,14 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheStats;
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
@@ -34,6 +36,7 @@ import us.kbase.shock.client.exceptions.ShockHttpException;
 import us.kbase.typedobj.core.LocalTypeProvider;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidationResultCache;
 import us.kbase.typedobj.db.MongoTypeStorage;
 import us.kbase.typedobj.db.TypeDefinitionDB;
 import us.kbase.typedobj.exceptions.TypeStorageException;
@@ -41,7 +44,6 @@ import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
 import us.kbase.workspace.database.Types;
 import us.kbase.workspace.database.Workspace;
-import us.kbase.workspace.database.WorkspaceDatabase;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.WorkspaceDBException;
 import us.kbase.workspace.database.mongo.BlobStore;
@@ -50,7 +52,9 @@ import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
 import us.kbase.workspace.database.mongo.S3BlobStore;
 import us.kbase.workspace.database.mongo.S3ClientWithPresign;
 import us.kbase.workspace.database.mongo.ShockBlobStore;
+import us.kbase.workspace.database.mongo.WorkspaceChangeMonitor;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.refsearch.ReferencePathCache;
 import us.kbase.workspace.kbase.KBaseWorkspaceConfig.ListenerConfig;
 import us.kbase.workspace.kbase.ShockIdHandlerFactory.ShockClientCloner;
 import us.kbase.workspace.kbase.admin.AdministratorHandler;
@@ -73,6 +77,12 @@ public class InitWorkspaceServer {
 	private static final int ADMIN_CACHE_MAX_SIZE = 100; // seems like more than enough admins
 	private static final int ADMIN_CACHE_EXP_TIME_MS = 5 * 60 * 1000; // cache admin role for 5m
 	
+	private static final int TYPE_CACHE_MIN_SIZE = 100;
+	private static final int TYPE_CACHE_WARMUP_THREADS = 4;
+	// how often to poll for changes made by other servers if change streams aren't available
+	private static final long CHANGE_POLL_INTERVAL_MS = 1000;
+	private static final int REFERENCE_PATH_CACHE_EXPIRY_DEFAULT_MS = 10000;
+	
 	private static int maxUniqueIdCountPerCall = 100000;
 
 	private static int instanceCount = 0;
@@ -103,6 +113,9 @@ public class InitWorkspaceServer {
 		private final Types types;
 		private final BasicShockClient linkedShockClient;
 		private final AbstractHandleClient linkedHandleServiceClient;
+		private final TypeCacheWarmer typeCacheWarmer;
+		private final Supplier<CacheStats> permissionCacheStats;
+		private final Supplier<CacheStats> validationCacheStats;
 		
 		public WorkspaceInitResults(
 				final Workspace ws,
@@ -110,7 +123,10 @@ public class InitWorkspaceServer {
 				final WorkspaceAdministration wsadmin,
 				final Types types,
 				final BasicShockClient linkedShockClient,
-				final AbstractHandleClient linkedHandleServiceClient) {
+				final AbstractHandleClient linkedHandleServiceClient,
+				final TypeCacheWarmer typeCacheWarmer,
+				final Supplier<CacheStats> permissionCacheStats,
+				final Supplier<CacheStats> validationCacheStats) {
 			super();
 			this.ws = ws;
 			this.wsmeth = wsmeth;
@@ -118,6 +134,9 @@ public class InitWorkspaceServer {
 			this.types = types;
 			this.linkedShockClient = linkedShockClient;
 			this.linkedHandleServiceClient = linkedHandleServiceClient;
+			this.typeCacheWarmer = typeCacheWarmer;
+			this.permissionCacheStats = permissionCacheStats;
+			this.validationCacheStats = validationCacheStats;
 		}
 
 		public Workspace getWs() {
@@ -143,6 +162,27 @@ public class InitWorkspaceServer {
 		public AbstractHandleClient getLinkedAbstractHandleClient() {
 			return linkedHandleServiceClient;
 		}
+		
+		/** Get the type cache warmer.
+		 * @return the warmer, or null if the type caches are not being warmed.
+		 */
+		public TypeCacheWarmer getTypeCacheWarmer() {
+			return typeCacheWarmer;
+		}
+		
+		/** Get a supplier of the current permission cache statistics.
+		 * @return the supplier, or null if permissions are not cached.
+		 */
+		public Supplier<CacheStats> getPermissionCacheStats() {
+			return permissionCacheStats;
+		}
+		
+		/** Get a supplier of the current schema validation result cache statistics.
+		 * @return the supplier, or null if validation results are not cached.
+		 */
+		public Supplier<CacheStats> getValidationCacheStats() {
+			return validationCacheStats;
+		}
 	}
 	
 	public static void setMaximumUniqueIdCountForTests(final int count) {
@@ -185,9 +225,17 @@ public class InitWorkspaceServer {
 			wsdeps = getDependencies(cfg, tfm, auth);
 			ws = new Workspace(
 					wsdeps.mongoWS,
-					new ResourceUsageConfigurationBuilder().build(),
+					new ResourceUsageConfigurationBuilder()
+							.withParallelSortThreads(cfg.getParallelSortThreads()).build(),
 					wsdeps.validator,
 					wsdeps.listeners);
+			if (cfg.getReferencePathCacheSize() > 0) {
+				ws.setReferencePathCache(new ReferencePathCache(
+						cfg.getReferencePathCacheSize(),
+						cfg.getReferencePathCacheExpiryMS() > 0 ?
+								cfg.getReferencePathCacheExpiryMS() :
+								REFERENCE_PATH_CACHE_EXPIRY_DEFAULT_MS));
+			}
 			ah = getAdminHandler(cfg, ws);
 		} catch (WorkspaceInitException wie) {
 			rep.reportFail(wie.getLocalizedMessage());
@@ -212,8 +260,20 @@ public class InitWorkspaceServer {
 				Runtime.getRuntime().totalMemory(),
 				Runtime.getRuntime().maxMemory());
 		rep.reportInfo(mem);
+		TypeCacheWarmer warmer = null;
+		if (cfg.getTypeCacheWarmupCount() > 0) {
+			// runs in the background so startup isn't delayed
+			warmer = new TypeCacheWarmer(wsdeps.typeDB, wsdeps.mongoWS,
+					cfg.getTypeCacheWarmupCount(), TYPE_CACHE_WARMUP_THREADS).start();
+			rep.reportInfo(String.format("Warming type caches with the %s most used types",
+					cfg.getTypeCacheWarmupCount()));
+		}
+		final MongoWorkspaceDB mongoWS = wsdeps.mongoWS;
+		final ValidationResultCache valcache = wsdeps.validator.getValidationResultCache();
 		return new WorkspaceInitResults(
-				ws, wsmeth, wsadmin, types, wsdeps.shockFac.client, hscNoToken);
+				ws, wsmeth, wsadmin, types, wsdeps.shockFac.client, hscNoToken, warmer,
+				cfg.getPermissionCacheSize() > 0 ? () -> mongoWS.getPermissionCacheStats() : null,
+				valcache == null ? null : () -> valcache.getStats());
 	}
 	
 	private static AdministratorHandler getAdminHandler(
@@ -248,7 +308,7 @@ public class InitWorkspaceServer {
 	private static class WorkspaceDependencies {
 		public TypeDefinitionDB typeDB;
 		public TypedObjectValidator validator;
-		public WorkspaceDatabase mongoWS;
+		public MongoWorkspaceDB mongoWS;
 		public ShockFactoryBits shockFac;
 		public List<WorkspaceEventListener> listeners;
 	}
@@ -269,14 +329,46 @@ public class InitWorkspaceServer {
 		final DB typeDB = buildMongo(cfg, cfg.getTypeDBName()).getDB(cfg.getTypeDBName());
 		
 		try {
-			deps.typeDB = new TypeDefinitionDB(new MongoTypeStorage(typeDB));
+			// make sure the caches can hold the warmed types
+			deps.typeDB = new TypeDefinitionDB(new MongoTypeStorage(typeDB),
+					Math.max(TYPE_CACHE_MIN_SIZE, cfg.getTypeCacheWarmupCount()));
 		} catch (TypeStorageException e) {
 			throw new WorkspaceInitException("Couldn't set up the type database: "
 					+ e.getLocalizedMessage(), e);
 		}
-		deps.validator = new TypedObjectValidator(new LocalTypeProvider(deps.typeDB));
+		deps.validator = new TypedObjectValidator(
+				new LocalTypeProvider(deps.typeDB),
+				cfg.getValidationCacheSize() > 0 ?
+						new ValidationResultCache(cfg.getValidationCacheSize()) : null);
+		final WorkspaceChangeMonitor monitor;
 		try {
-			deps.mongoWS = new MongoWorkspaceDB(db, bs, tfm);
+			monitor = cfg.isMonitorWorkspaceChanges() ?
+					new WorkspaceChangeMonitor(db, CHANGE_POLL_INTERVAL_MS) : null;
+		} catch (MongoException e) {
+			throw new WorkspaceInitException(
+					"Could not start the workspace change monitor: " + e.getMessage(), e);
+		}
+		try {
+			final MongoWorkspaceDB.Builder b = MongoWorkspaceDB.getBuilder(db, bs, tfm)
+					.withBatchSaves(cfg.isBatchSaves())
+					.withObjectIDBlockSize(cfg.getObjectIDBlockSize())
+					.withProvenanceDeduplication(cfg.isDeduplicateProvenance())
+					.withDocumentCacheSize(cfg.getDocumentCacheSize())
+					.withListObjectsAggregation(cfg.isListObjectsAggregation())
+					.withIncomingReferenceIndex(cfg.isIncomingReferenceIndex())
+					.withWorkspaceCacheSize(cfg.getWorkspaceCacheSize())
+					.withPermissionCacheSize(cfg.getPermissionCacheSize())
+					.withChangeMonitor(monitor);
+			if (cfg.getWorkspaceCacheExpirySec() > 0) {
+				b.withWorkspaceCacheExpiry(cfg.getWorkspaceCacheExpirySec());
+			}
+			if (cfg.getPermissionCacheExpiryMS() > 0) {
+				b.withPermissionCacheExpiry(cfg.getPermissionCacheExpiryMS());
+			}
+			deps.mongoWS = b.build();
+			if (monitor != null) {
+				monitor.start();
+			}
 		} catch (WorkspaceDBException wde) {
 			throw new WorkspaceInitException(
 					"Error initializing the workspace database: " +
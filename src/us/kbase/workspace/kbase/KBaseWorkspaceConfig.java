@@ -78,6 +78,24 @@ public class KBaseWorkspaceConfig {
 	//directory for temp files
 	private static final String TEMP_DIR = "temp-dir";
 	
+	// performance tuning
+	private static final String VALIDATION_CACHE_SIZE = "validation-cache-size";
+	private static final String TYPE_CACHE_WARMUP_COUNT = "type-cache-warmup-count";
+	private static final String PARALLEL_SORT_THREADS = "parallel-sort-threads";
+	private static final String BATCH_SAVES = "batch-saves";
+	private static final String OBJECT_ID_BLOCK_SIZE = "object-id-block-size";
+	private static final String DEDUPLICATE_PROVENANCE = "deduplicate-provenance";
+	private static final String DOCUMENT_CACHE_SIZE = "document-cache-size";
+	private static final String LIST_OBJECTS_AGGREGATION = "list-objects-aggregation";
+	private static final String WORKSPACE_CACHE_SIZE = "workspace-cache-size";
+	private static final String WORKSPACE_CACHE_EXPIRY = "workspace-cache-expiry-sec";
+	private static final String MONITOR_WORKSPACE_CHANGES = "monitor-workspace-changes";
+	private static final String PERMISSION_CACHE_SIZE = "permission-cache-size";
+	private static final String PERMISSION_CACHE_EXPIRY = "permission-cache-expiry-ms";
+	private static final String INCOMING_REFERENCE_INDEX = "incoming-reference-index";
+	private static final String REFERENCE_PATH_CACHE_SIZE = "reference-path-cache-size";
+	private static final String REFERENCE_PATH_CACHE_EXPIRY = "reference-path-cache-expiry-ms";
+	
 	// the auth2 urls are checked when getting the url
 	private static final List<String> REQUIRED_PARAMS = Arrays.asList(
 			HOST, DB, TYPE_DB, TEMP_DIR, BACKEND_TYPE);
@@ -115,6 +133,22 @@ public class KBaseWorkspaceConfig {
 	private final List<String> infoMessages;
 	private final String paramReport;
 	private final List<ListenerConfig> listenerConfigs;
+	private final int validationCacheSize;
+	private final int typeCacheWarmupCount;
+	private final int parallelSortThreads;
+	private final boolean batchSaves;
+	private final int objectIDBlockSize;
+	private final boolean deduplicateProvenance;
+	private final int documentCacheSize;
+	private final boolean listObjectsAggregation;
+	private final int workspaceCacheSize;
+	private final int workspaceCacheExpirySec;
+	private final boolean monitorWorkspaceChanges;
+	private final int permissionCacheSize;
+	private final int permissionCacheExpiryMS;
+	private final boolean incomingReferenceIndex;
+	private final int referencePathCacheSize;
+	private final int referencePathCacheExpiryMS;
 	
 	public static class ListenerConfig {
 		
@@ -280,6 +314,24 @@ public class KBaseWorkspaceConfig {
 		}
 		
 		listenerConfigs = getListenerConfigs(config, paramErrors);
+		validationCacheSize = getNonNegativeInt(config, VALIDATION_CACHE_SIZE, paramErrors);
+		typeCacheWarmupCount = getNonNegativeInt(config, TYPE_CACHE_WARMUP_COUNT, paramErrors);
+		parallelSortThreads = getNonNegativeInt(config, PARALLEL_SORT_THREADS, paramErrors);
+		batchSaves = getBoolean(config, BATCH_SAVES, paramErrors);
+		objectIDBlockSize = getNonNegativeInt(config, OBJECT_ID_BLOCK_SIZE, paramErrors);
+		deduplicateProvenance = getBoolean(config, DEDUPLICATE_PROVENANCE, paramErrors);
+		documentCacheSize = getNonNegativeInt(config, DOCUMENT_CACHE_SIZE, paramErrors);
+		listObjectsAggregation = getBoolean(config, LIST_OBJECTS_AGGREGATION, paramErrors);
+		workspaceCacheSize = getNonNegativeInt(config, WORKSPACE_CACHE_SIZE, paramErrors);
+		workspaceCacheExpirySec = getNonNegativeInt(config, WORKSPACE_CACHE_EXPIRY, paramErrors);
+		monitorWorkspaceChanges = getBoolean(config, MONITOR_WORKSPACE_CHANGES, paramErrors);
+		permissionCacheSize = getNonNegativeInt(config, PERMISSION_CACHE_SIZE, paramErrors);
+		permissionCacheExpiryMS = getNonNegativeInt(config, PERMISSION_CACHE_EXPIRY, paramErrors);
+		incomingReferenceIndex = getBoolean(config, INCOMING_REFERENCE_INDEX, paramErrors);
+		referencePathCacheSize = getNonNegativeInt(
+				config, REFERENCE_PATH_CACHE_SIZE, paramErrors);
+		referencePathCacheExpiryMS = getNonNegativeInt(
+				config, REFERENCE_PATH_CACHE_EXPIRY, paramErrors);
 		errors = Collections.unmodifiableList(paramErrors);
 		infoMessages = Collections.unmodifiableList(infoMsgs);
 		paramReport = generateParamReport(config);
@@ -346,6 +398,46 @@ public class KBaseWorkspaceConfig {
 		return ret;
 	}
 
+	// returns 0 if the parameter is missing
+	private static int getNonNegativeInt(
+			final Map<String, String> config,
+			final String configKey,
+			final List<String> errors) {
+		final String intStr = config.get(configKey);
+		if (nullOrEmpty(intStr)) {
+			return 0;
+		}
+		try {
+			final int i = Integer.parseInt(intStr.trim());
+			if (i < 0) {
+				errors.add(String.format("Parameter %s must be >= 0: %s",
+						configKey, intStr.trim()));
+				return 0;
+			}
+			return i;
+		} catch (NumberFormatException e) {
+			errors.add(String.format("Parameter %s must be an integer: %s",
+					configKey, intStr.trim()));
+			return 0;
+		}
+	}
+	
+	// returns false if the parameter is missing
+	private static boolean getBoolean(
+			final Map<String, String> config,
+			final String configKey,
+			final List<String> errors) {
+		final String boolStr = nullIfEmpty(config.get(configKey));
+		if (boolStr == null || boolStr.equalsIgnoreCase("false")) {
+			return false;
+		}
+		if (boolStr.equalsIgnoreCase("true")) {
+			return true;
+		}
+		errors.add(String.format("Parameter %s must be true or false: %s", configKey, boolStr));
+		return false;
+	}
+	
 	private static String nullIfEmpty(final String s) {
 		if (nullOrEmpty(s)) {
 			return null;
@@ -378,6 +470,54 @@ public class KBaseWorkspaceConfig {
 				params += s + "=" + cfg.get(s).trim() + "\n";
 			}
 		}
+		if (validationCacheSize > 0) {
+			params += VALIDATION_CACHE_SIZE + "=" + validationCacheSize + "\n";
+		}
+		if (typeCacheWarmupCount > 0) {
+			params += TYPE_CACHE_WARMUP_COUNT + "=" + typeCacheWarmupCount + "\n";
+		}
+		if (parallelSortThreads > 0) {
+			params += PARALLEL_SORT_THREADS + "=" + parallelSortThreads + "\n";
+		}
+		if (batchSaves) {
+			params += BATCH_SAVES + "=true\n";
+		}
+		if (objectIDBlockSize > 0) {
+			params += OBJECT_ID_BLOCK_SIZE + "=" + objectIDBlockSize + "\n";
+		}
+		if (deduplicateProvenance) {
+			params += DEDUPLICATE_PROVENANCE + "=true\n";
+		}
+		if (documentCacheSize > 0) {
+			params += DOCUMENT_CACHE_SIZE + "=" + documentCacheSize + "\n";
+		}
+		if (listObjectsAggregation) {
+			params += LIST_OBJECTS_AGGREGATION + "=true\n";
+		}
+		if (workspaceCacheSize > 0) {
+			params += WORKSPACE_CACHE_SIZE + "=" + workspaceCacheSize + "\n";
+		}
+		if (workspaceCacheExpirySec > 0) {
+			params += WORKSPACE_CACHE_EXPIRY + "=" + workspaceCacheExpirySec + "\n";
+		}
+		if (monitorWorkspaceChanges) {
+			params += MONITOR_WORKSPACE_CHANGES + "=true\n";
+		}
+		if (permissionCacheSize > 0) {
+			params += PERMISSION_CACHE_SIZE + "=" + permissionCacheSize + "\n";
+		}
+		if (permissionCacheExpiryMS > 0) {
+			params += PERMISSION_CACHE_EXPIRY + "=" + permissionCacheExpiryMS + "\n";
+		}
+		if (incomingReferenceIndex) {
+			params += INCOMING_REFERENCE_INDEX + "=true\n";
+		}
+		if (referencePathCacheSize > 0) {
+			params += REFERENCE_PATH_CACHE_SIZE + "=" + referencePathCacheSize + "\n";
+		}
+		if (referencePathCacheExpiryMS > 0) {
+			params += REFERENCE_PATH_CACHE_EXPIRY + "=" + referencePathCacheExpiryMS + "\n";
+		}
 		if (mongoPassword != null) {
 			params += MONGO_PWD + "=[redacted for your safety and comfort]\n";
 		}
@@ -517,6 +657,123 @@ public class KBaseWorkspaceConfig {
 		return listenerConfigs;
 	}
 
+	/** Get the maximum size of the validation result cache.
+	 * @return the maximum size, or 0 if the cache is disabled.
+	 */
+	public int getValidationCacheSize() {
+		return validationCacheSize;
+	}
+
+	/** Get the number of most frequently used types to load into the type caches at startup.
+	 * @return the number of types, or 0 if the caches should not be warmed.
+	 */
+	public int getTypeCacheWarmupCount() {
+		return typeCacheWarmupCount;
+	}
+
+	/** Get the number of threads to use when sorting large objects that are stored on disk
+	 * during a save.
+	 * @return the number of threads, or 0 if objects should be sorted in a single thread.
+	 */
+	public int getParallelSortThreads() {
+		return parallelSortThreads;
+	}
+
+	/** Get whether object containers and versions should be saved in batches.
+	 * @return true if saves should be batched.
+	 */
+	public boolean isBatchSaves() {
+		return batchSaves;
+	}
+
+	/** Get the number of object IDs to reserve at once for each workspace.
+	 * @return the object ID block size, or 0 if object IDs are not reserved in blocks.
+	 */
+	public int getObjectIDBlockSize() {
+		return objectIDBlockSize;
+	}
+
+	/** Get whether identical provenance should be stored once across all saves.
+	 * @return true if provenance should be deduplicated across saves.
+	 */
+	public boolean isDeduplicateProvenance() {
+		return deduplicateProvenance;
+	}
+
+	/** Get the maximum number of object version and provenance documents to cache in memory.
+	 * @return the document cache size, or 0 if documents are not cached.
+	 */
+	public int getDocumentCacheSize() {
+		return documentCacheSize;
+	}
+
+	/** Get whether object listings should be filtered in the database with an aggregation
+	 * pipeline.
+	 * @return true if object listings should be filtered in the database.
+	 */
+	public boolean isListObjectsAggregation() {
+		return listObjectsAggregation;
+	}
+
+	/** Get the maximum number of resolved workspace names and IDs to cache in memory.
+	 * @return the workspace cache size, or 0 if resolved workspaces are not cached.
+	 */
+	public int getWorkspaceCacheSize() {
+		return workspaceCacheSize;
+	}
+
+	/** Get the time after which cached resolved workspaces expire.
+	 * @return the expiry time in seconds, or 0 to use the default.
+	 */
+	public int getWorkspaceCacheExpirySec() {
+		return workspaceCacheExpirySec;
+	}
+
+	/** Get whether changes made by other workspace servers sharing the database should be
+	 * monitored to keep the in memory caches coherent.
+	 * @return true if changes should be monitored.
+	 */
+	public boolean isMonitorWorkspaceChanges() {
+		return monitorWorkspaceChanges;
+	}
+
+	/** Get the maximum number of users' permissions for workspaces to cache in memory.
+	 * @return the permission cache size, or 0 if permissions are not cached.
+	 */
+	public int getPermissionCacheSize() {
+		return permissionCacheSize;
+	}
+
+	/** Get the time after which cached permissions expire.
+	 * @return the expiry time in milliseconds, or 0 to use the default.
+	 */
+	public int getPermissionCacheExpiryMS() {
+		return permissionCacheExpiryMS;
+	}
+
+	/** Get whether the incoming references to objects should be looked up from the incoming
+	 * reference index rather than the object version documents.
+	 * @return true if incoming references should be looked up from the index.
+	 */
+	public boolean isIncomingReferenceIndex() {
+		return incomingReferenceIndex;
+	}
+
+	/** Get the maximum number of (user, object) reference path search results to cache in
+	 * memory.
+	 * @return the reference path cache size, or 0 if search results are not cached.
+	 */
+	public int getReferencePathCacheSize() {
+		return referencePathCacheSize;
+	}
+
+	/** Get the time after which cached reference path search results expire.
+	 * @return the expiry time in milliseconds, or 0 to use the default.
+	 */
+	public int getReferencePathCacheExpiryMS() {
+		return referencePathCacheExpiryMS;
+	}
+
 	public List<String> getErrors() {
 		return errors;
 	}
@@ -0,0 +1,191 @@
+package us.kbase.workspace.kbase;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.db.TypeDefinitionDB;
+import us.kbase.workspace.database.WorkspaceDatabase;
+
+/** Loads the schemas for the most frequently used types into the type database caches in
+ * the background, so that the first saves after server startup don't pay for cold caches.
+ *
+ * For each of the most used types, as determined by the number of object versions of the type
+ * among the most recently saved {@link #SAMPLE_SIZE} versions, the schema for the absolute type
+ * is loaded, and the type name is resolved to the latest released version of the type and that
+ * schema loaded as well.
+ */
+public class TypeCacheWarmer {
+
+	/** The state of the warm up. */
+	public static enum State {
+		/** The warm up has not been started. */
+		NOT_STARTED,
+		/** The warm up is in progress. */
+		RUNNING,
+		/** The warm up is complete. Some types may have failed to load. */
+		COMPLETE,
+		/** The warm up failed, likely because the list of types could not be retrieved. */
+		FAILED;
+	}
+
+	/** The number of the most recently saved object versions examined to find the most used
+	 * types.
+	 */
+	public static final int SAMPLE_SIZE = 100000;
+
+	private final TypeDefinitionDB typeDB;
+	private final WorkspaceDatabase wsdb;
+	private final int typeCount;
+	private final int threads;
+
+	private volatile State state = State.NOT_STARTED;
+	private volatile int total = 0;
+	private final AtomicInteger loaded = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/** Create the cache warmer.
+	 * @param typeDB the type database to warm.
+	 * @param wsdb the workspace database from which to determine the most frequently used types.
+	 * @param typeCount the maximum number of types to load.
+	 * @param threads the number of threads to use to load types.
+	 */
+	public TypeCacheWarmer(
+			final TypeDefinitionDB typeDB,
+			final WorkspaceDatabase wsdb,
+			final int typeCount,
+			final int threads) {
+		if (typeDB == null) {
+			throw new NullPointerException("typeDB");
+		}
+		if (wsdb == null) {
+			throw new NullPointerException("wsdb");
+		}
+		if (typeCount < 1) {
+			throw new IllegalArgumentException("typeCount must be > 0");
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be > 0");
+		}
+		this.typeDB = typeDB;
+		this.wsdb = wsdb;
+		this.typeCount = typeCount;
+		this.threads = threads;
+	}
+
+	/** Start the warm up in a background daemon thread. Returns immediately.
+	 * @return this cache warmer.
+	 */
+	public synchronized TypeCacheWarmer start() {
+		if (state != State.NOT_STARTED) {
+			throw new IllegalStateException("The warm up has already been started");
+		}
+		state = State.RUNNING;
+		final Thread t = DAEMON_FACTORY.newThread(new Runnable() {
+
+			@Override
+			public void run() {
+				warm();
+			}
+		});
+		t.start();
+		return this;
+	}
+
+	private static final ThreadFactory DAEMON_FACTORY = new ThreadFactory() {
+
+		private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread t = defaultFactory.newThread(r);
+			t.setDaemon(true);
+			t.setName("type-cache-warmer-" + t.getName());
+			return t;
+		}
+	};
+
+	private void warm() {
+		final List<AbsoluteTypeDefId> types;
+		try {
+			types = wsdb.getMostUsedTypes(typeCount, SAMPLE_SIZE);
+		} catch (Exception e) {
+			LoggerFactory.getLogger(getClass()).error(
+					"Failed to retrieve the types for the type cache warm up", e);
+			state = State.FAILED;
+			return;
+		}
+		total = types.size();
+		final ExecutorService exe = Executors.newFixedThreadPool(threads, DAEMON_FACTORY);
+		for (final AbsoluteTypeDefId type: types) {
+			exe.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					warm(type);
+				}
+			});
+		}
+		exe.shutdown();
+		try {
+			while (!exe.awaitTermination(1, TimeUnit.MINUTES)) {
+				// wait
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			state = State.FAILED;
+			return;
+		}
+		state = State.COMPLETE;
+	}
+
+	private void warm(final AbsoluteTypeDefId type) {
+		try {
+			typeDB.getJsonSchemaDocument(type);
+			typeDB.getJsonSchemaDocument(typeDB.resolveTypeDefId(new TypeDefId(type.getType())));
+			loaded.incrementAndGet();
+		} catch (Exception e) {
+			// types may have been deleted or the module unsupported, so just keep going
+			LoggerFactory.getLogger(getClass()).warn(String.format(
+					"Failed to load type %s during the type cache warm up: %s",
+					type.getTypeString(), e.getMessage()));
+			failed.incrementAndGet();
+		}
+	}
+
+	/** Get the state of the warm up.
+	 * @return the state.
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/** Get the total number of types that will be loaded. This value is 0 until the list of
+	 * types has been retrieved.
+	 * @return the total number of types.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/** Get the number of types that have been loaded.
+	 * @return the number of loaded types.
+	 */
+	public int getLoaded() {
+		return loaded.get();
+	}
+
+	/** Get the number of types that failed to load.
+	 * @return the number of failed types.
+	 */
+	public int getFailed() {
+		return failed.get();
+	}
+}
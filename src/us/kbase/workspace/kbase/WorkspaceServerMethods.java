@@ -67,6 +67,7 @@ import us.kbase.workspace.database.ObjectIdentifier;
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.Reference;
 import us.kbase.workspace.database.Types;
 import us.kbase.workspace.database.User;
 import us.kbase.workspace.database.UserWorkspaceIDs;
@@ -595,7 +596,9 @@ public class WorkspaceServerMethods {
 			.withShowAllVersions(longToBoolean(params.getShowAllVersions()))
 			.withIncludeMetaData(longToBoolean(params.getIncludeMetadata()))
 			.withExcludeGlobal(longToBoolean(params.getExcludeGlobal()))
-			.withLimit(longToInt(params.getLimit(), "Limit", -1));
+			.withLimit(longToInt(params.getLimit(), "Limit", -1))
+			.withStartAfter(params.getStartafter() == null ? null :
+				new Reference(params.getStartafter()));
 		
 		return objInfoToTuple(ws.listObjects(lop), false);
 	}
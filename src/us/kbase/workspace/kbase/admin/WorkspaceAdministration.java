@@ -24,6 +24,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 
 import us.kbase.auth.AuthException;
 import us.kbase.auth.AuthToken;
@@ -98,6 +99,8 @@ public class WorkspaceAdministration {
 	private static final String CREATE_WORKSPACE = "createWorkspace";
 	private static final String DELETE_WS = "deleteWorkspace";
 	private static final String UNDELETE_WS = "undeleteWorkspace";
+	private static final String INDEX_INCOMING_REFS = "indexIncomingReferences";
+	private static final String FLAG_LATEST_VERSIONS = "flagLatestVersions";
 
 	private final static ObjectMapper MAPPER = new ObjectMapper()
 			.registerModule(new JacksonTupleModule());
@@ -388,6 +391,30 @@ public class WorkspaceAdministration {
 			getLogger().info(LIST_WORKSPACE_OWNERS);
 			return usersToStrings(ws.getAllWorkspaceOwners());
 		}
+		if (INDEX_INCOMING_REFS.equals(fn)) {
+			requireWrite(role);
+			final WorkspaceRangeParams params = getParams(
+					cmd, WorkspaceRangeParams.class);
+			if (params.start == null || params.count == null) {
+				throw new NullPointerException("start and count are required");
+			}
+			final long refs = ws.indexIncomingReferences(params.start, params.count);
+			getLogger().info(INDEX_INCOMING_REFS + " " + params.start + " " + params.count +
+					" " + refs);
+			return ImmutableMap.of("references", refs, "next", params.start + params.count);
+		}
+		if (FLAG_LATEST_VERSIONS.equals(fn)) {
+			requireWrite(role);
+			final WorkspaceRangeParams params = getParams(
+					cmd, WorkspaceRangeParams.class);
+			if (params.start == null || params.count == null) {
+				throw new NullPointerException("start and count are required");
+			}
+			final long objs = ws.flagLatestVersions(params.start, params.count);
+			getLogger().info(FLAG_LATEST_VERSIONS + " " + params.start + " " + params.count +
+					" " + objs);
+			return ImmutableMap.of("objects", objs, "next", params.start + params.count);
+		}
 		if (GRANT_MODULE_OWNERSHIP.equals(fn)) {
 			requireWrite(role);
 			final GrantModuleOwnershipParams params = getParams(cmd,
@@ -448,6 +475,14 @@ public class WorkspaceAdministration {
 		public SetWorkspaceOwnerParams() {}; //for jackson
 	}
 	
+	private static class WorkspaceRangeParams {
+		public Long start;
+		public Integer count;
+		
+		@SuppressWarnings("unused")
+		public WorkspaceRangeParams() {}; //for jackson
+	}
+	
 	private <T> T getParams(final AdminCommand input, final Class<T> clazz)
 			throws IOException {
 		final UObject p = input.getParams();
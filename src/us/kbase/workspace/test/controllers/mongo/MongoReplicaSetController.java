@@ -0,0 +1,82 @@
+package us.kbase.workspace.test.controllers.mongo;
+
+import static us.kbase.common.test.controllers.ControllerCommon.checkExe;
+import static us.kbase.common.test.controllers.ControllerCommon.findFreePort;
+import static us.kbase.common.test.controllers.ControllerCommon.makeTempDirs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoClient;
+
+/** Q&D Utility to run a single member MongoDB replica set for the purposes of testing from
+ * Java. Needed for features that are only available on replica sets, like change streams.
+ */
+public class MongoReplicaSetController {
+
+	private static final String REPLICA_SET = "rs0";
+
+	private final Path tempDir;
+
+	private final Process mongo;
+	private final int port;
+
+	public MongoReplicaSetController(
+			final String mongoExe,
+			final Path rootTempDir)
+			throws Exception {
+		tempDir = makeTempDirs(rootTempDir, "MongoReplicaSetController-",
+				Arrays.asList("data"));
+		port = findFreePort();
+
+		checkExe(mongoExe, "mongod server");
+
+		final ProcessBuilder servpb = new ProcessBuilder(
+				mongoExe,
+				"--port", "" + port,
+				"--dbpath", tempDir.resolve("data").toString(),
+				"--replSet", REPLICA_SET)
+				.redirectErrorStream(true)
+				.redirectOutput(tempDir.resolve("mongo.log").toFile());
+		mongo = servpb.start();
+		final MongoClient mc = new MongoClient("localhost:" + port);
+		try {
+			// server selection waits for the server to start
+			mc.getDB("admin").command(new BasicDBObject("replSetInitiate",
+					new BasicDBObject("_id", REPLICA_SET).append("members", Arrays.asList(
+							new BasicDBObject("_id", 0).append("host", "localhost:" + port)))))
+					.throwOnError();
+			for (int i = 0; !mc.getDB("admin").command("isMaster").getBoolean("ismaster"); i++) {
+				if (i > 300) {
+					throw new IllegalStateException(
+							"Timed out waiting for the replica set to elect a primary");
+				}
+				Thread.sleep(100);
+			}
+		} finally {
+			mc.close();
+		}
+	}
+
+	public int getServerPort() {
+		return port;
+	}
+
+	public Path getTempDir() {
+		return tempDir;
+	}
+
+	public void destroy(boolean deleteTempFiles) throws IOException {
+		if (mongo != null) {
+			mongo.destroy();
+		}
+		if (tempDir != null && deleteTempFiles) {
+			FileUtils.deleteDirectory(tempDir.toFile());
+		}
+	}
+
+}
@@ -1092,7 +1092,7 @@ public class MongoInternalsTest {
 			int ver = (Integer) m.get("ver");
 			assertThat("copy pointer ok", (String) m.get("copied"), is(cpexpec.get(ver)));
 			assertThat("revert pointer ok", (Integer) m.get("revert"), is(revexpec.get(ver)));
-			
+			assertThat("latest flag ok", (Boolean) m.get("latest"), is(ver == 4));
 		}
 		
 		long wsid2 = ws.cloneWorkspace(userfoo, copyrev, wsprefix + "2",
@@ -1124,6 +1124,7 @@ public class MongoInternalsTest {
 			int ver = (Integer) m.get("ver");
 			assertThat("copy pointer ok", (String) m.get("copied"), is(cpexpec2.get(ver)));
 			assertThat("revert pointer ok", (Integer) m.get("revert"), is(revexpec2.get(ver)));
+			assertThat("latest flag ok", (Boolean) m.get("latest"), is(ver == 4));
 		}
 	}
 
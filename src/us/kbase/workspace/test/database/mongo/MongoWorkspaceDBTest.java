@@ -3,15 +3,22 @@ package us.kbase.workspace.test.database.mongo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static us.kbase.common.test.TestCommon.set;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import org.bson.types.ObjectId;
 import org.junit.AfterClass;
@@ -19,6 +26,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
@@ -38,16 +46,30 @@ import us.kbase.typedobj.core.TypeDefName;
 import us.kbase.typedobj.core.ValidatedTypedObject;
 import us.kbase.workspace.database.ObjectIDNoWSNoVer;
 import us.kbase.workspace.database.ObjectIDResolvedWS;
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.ObjectReferenceSet;
+import us.kbase.workspace.database.Permission;
+import us.kbase.workspace.database.PermissionSet;
 import us.kbase.workspace.database.Provenance;
 import us.kbase.workspace.database.Provenance.ProvenanceAction;
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.ResolvedSaveObject;
 import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.TypeAndReference;
+import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.WorkspaceInformation;
 import us.kbase.workspace.database.WorkspaceObjectData;
 import us.kbase.workspace.database.WorkspaceSaveObject;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.WorkspaceUserMetadata;
+import us.kbase.workspace.database.exceptions.DeletedObjectException;
+import us.kbase.workspace.database.exceptions.NoSuchWorkspaceException;
 import us.kbase.workspace.database.mongo.BlobStore;
 import us.kbase.workspace.database.mongo.Fields;
 import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
+import us.kbase.workspace.database.mongo.WorkspaceChangeMonitor;
+import us.kbase.workspace.database.mongo.WorkspaceChangeMonitor.ChangeType;
+import us.kbase.workspace.test.controllers.mongo.MongoReplicaSetController;
 
 //TODO TEST start moving a bunch of the tests from Workspace test to here, and use mocks in workspace test.
 
@@ -210,4 +232,1409 @@ public class MongoWorkspaceDBTest {
 		assertThat("incorrect data", wod.getSerializedData(), nullValue());
 		assertThat("incorrect ext ids", wod.getExtractedIds(), is(Collections.emptyMap()));
 	}
+	
+	private ResolvedSaveObject saveObject(
+			final ObjectIDNoWSNoVer id,
+			final ValidatedTypedObject vto,
+			final boolean hidden) {
+		return saveObject(id, vto, hidden, set());
+	}
+	
+	private ResolvedSaveObject saveObject(
+			final ObjectIDNoWSNoVer id,
+			final ValidatedTypedObject vto,
+			final boolean hidden,
+			final Set<Reference> refs) {
+		final Provenance p = new Provenance(new WorkspaceUser("u"), new Date(10000));
+		p.setWorkspaceID(1L);
+		return new WorkspaceSaveObject(
+				id,
+				new UObject(ImmutableMap.of("foo", "bar")),
+				new TypeDefId("Mod.Type", "5.1"),
+				null,
+				p,
+				hidden)
+				.resolve(
+						vto,
+						refs,
+						Collections.emptyList(),
+						Collections.emptyMap());
+	}
+	
+	private void assertObjectInfo(
+			final ObjectInformation oi,
+			final long id,
+			final String name,
+			final int version) {
+		assertThat("incorrect id", oi.getObjectId(), is(id));
+		assertThat("incorrect name", oi.getObjectName(), is(name));
+		assertThat("incorrect version", oi.getVersion(), is(version));
+	}
+	
+	private void assertObjectDoc(
+			final long id,
+			final int versions,
+			final boolean hidden) {
+		final DBObject obj = MONGO_DB.getCollection("workspaceObjects").findOne(
+				new BasicDBObject(Fields.OBJ_WS_ID, 1L).append(Fields.OBJ_ID, id));
+		assertThat("incorrect version count", obj.get(Fields.OBJ_VCNT), is(versions));
+		assertThat("incorrect refcounts", ((List<?>) obj.get(Fields.OBJ_REFCOUNTS)).size(),
+				is(versions));
+		assertThat("incorrect hidden", obj.get(Fields.OBJ_HIDE), is(hidden));
+		assertThat("incorrect deleted", obj.get(Fields.OBJ_DEL), is(false));
+	}
+	
+	@Test
+	public void saveObjectsBatch() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withBatchSaves(true).build();
+		
+		db.createWorkspace(new WorkspaceUser("u"), "ws", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(22L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		final List<ObjectInformation> first = db.saveObjects(new WorkspaceUser("u"), wsid,
+				Arrays.asList(saveObject(new ObjectIDNoWSNoVer("existing"), vto, false)));
+		assertThat("incorrect info count", first.size(), is(1));
+		assertObjectInfo(first.get(0), 1, "existing", 1);
+		
+		final List<ObjectInformation> res = db.saveObjects(new WorkspaceUser("u"), wsid,
+				Arrays.asList(
+						saveObject(new ObjectIDNoWSNoVer("a"), vto, false),
+						saveObject(new ObjectIDNoWSNoVer("b"), vto, true),
+						saveObject(new ObjectIDNoWSNoVer("a"), vto, false),
+						saveObject(new ObjectIDNoWSNoVer("existing"), vto, false),
+						saveObject(new ObjectIDNoWSNoVer(1), vto, true)));
+		
+		assertThat("incorrect info count", res.size(), is(5));
+		assertObjectInfo(res.get(0), 2, "a", 1);
+		assertObjectInfo(res.get(1), 3, "b", 1);
+		assertObjectInfo(res.get(2), 2, "a", 2);
+		assertObjectInfo(res.get(3), 1, "existing", 2);
+		assertObjectInfo(res.get(4), 1, "existing", 3);
+		
+		assertObjectDoc(1, 3, true);
+		assertObjectDoc(2, 2, false);
+		assertObjectDoc(3, 1, true);
+		assertThat("incorrect version count",
+				MONGO_DB.getCollection("workspaceObjVersions").count(), is(6L));
+		assertThat("incorrect latest versions", MONGO_DB.getCollection("workspaceObjVersions")
+				.count(new BasicDBObject(Fields.VER_LATEST, true)), is(3L));
+		assertThat("incorrect earlier versions", MONGO_DB.getCollection("workspaceObjVersions")
+				.count(new BasicDBObject(Fields.VER_LATEST, false)), is(3L));
+	}
+	
+	private ValidatedTypedObject mockValidatedObject() throws Exception {
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(22L);
+		return vto;
+	}
+	
+	private List<Long> saveNewObjects(
+			final MongoWorkspaceDB db,
+			final ValidatedTypedObject vto,
+			final String... names)
+			throws Exception {
+		return saveNewObjects(db, new ResolvedWorkspaceID(1, "ws", false, false), vto, names);
+	}
+	
+	private List<Long> saveNewObjects(
+			final MongoWorkspaceDB db,
+			final ResolvedWorkspaceID wsid,
+			final ValidatedTypedObject vto,
+			final String... names)
+			throws Exception {
+		final List<ResolvedSaveObject> objs = new ArrayList<>();
+		for (final String name: names) {
+			objs.add(saveObject(new ObjectIDNoWSNoVer(name), vto, false));
+		}
+		final List<Long> ids = new ArrayList<>();
+		for (final ObjectInformation oi: db.saveObjects(new WorkspaceUser("u"), wsid, objs)) {
+			ids.add(oi.getObjectId());
+		}
+		return ids;
+	}
+	
+	private void assertObjectCounters(final long numObj, final Long maxObj) {
+		assertObjectCounters(1, numObj, maxObj);
+	}
+	
+	private void assertObjectCounters(final long wsid, final long numObj, final Long maxObj) {
+		final DBObject ws = MONGO_DB.getCollection("workspaces").findOne(
+				new BasicDBObject(Fields.WS_ID, wsid));
+		assertThat("incorrect num obj", ws.get(Fields.WS_NUMOBJ), is(numObj));
+		assertThat("incorrect max obj", ws.get(Fields.WS_MAXOBJ), is(maxObj));
+	}
+	
+	@Test
+	public void saveObjectsWithIDBlocks() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db1 = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withObjectIDBlockSize(10).build();
+		final MongoWorkspaceDB db2 = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withObjectIDBlockSize(10).withBatchSaves(true).build();
+		final MongoWorkspaceDB noblocks = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		
+		db1.createWorkspace(new WorkspaceUser("u"), "ws", false, null,
+				new WorkspaceUserMetadata());
+		
+		assertThat("incorrect ids", saveNewObjects(noblocks, vto, "a"), is(Arrays.asList(1L)));
+		assertObjectCounters(1, 1L);
+		MONGO_DB.getCollection("workspaces").update(new BasicDBObject(Fields.WS_ID, 1L),
+				new BasicDBObject("$unset", new BasicDBObject(Fields.WS_MAXOBJ, "")));
+		
+		// a workspace without a max ID gets one when the first block is reserved
+		assertThat("incorrect ids", saveNewObjects(db1, vto, "b"), is(Arrays.asList(2L)));
+		assertObjectCounters(11, 2L);
+		
+		assertThat("incorrect ids", saveNewObjects(db2, vto, "c", "d"),
+				is(Arrays.asList(12L, 13L)));
+		assertObjectCounters(21, 13L);
+		
+		assertThat("incorrect ids", saveNewObjects(db1, vto, "e", "f"),
+				is(Arrays.asList(3L, 4L)));
+		assertObjectCounters(21, 13L);
+		
+		// saves that don't use blocks never overlap the blocks
+		assertThat("incorrect ids", saveNewObjects(noblocks, vto, "g"), is(Arrays.asList(22L)));
+		assertObjectCounters(22, 22L);
+		
+		// saves at least as large as the block size bypass the block
+		final String[] names = new String[10];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "big" + i;
+		}
+		final List<Long> expected = new ArrayList<>();
+		for (long i = 23; i < 33; i++) {
+			expected.add(i);
+		}
+		assertThat("incorrect ids", saveNewObjects(db1, vto, names), is(expected));
+		assertObjectCounters(32, 32L);
+		
+		// not enough IDs left in the block, so the remainder is abandoned
+		final String[] names2 = new String[8];
+		for (int i = 0; i < names2.length; i++) {
+			names2[i] = "med" + i;
+		}
+		final List<Long> expected2 = new ArrayList<>();
+		for (long i = 33; i < 41; i++) {
+			expected2.add(i);
+		}
+		assertThat("incorrect ids", saveNewObjects(db1, vto, names2), is(expected2));
+		assertObjectCounters(42, 40L);
+		
+		// saving existing objects doesn't change the counters
+		assertThat("incorrect ids", saveNewObjects(db1, vto, "a", "c"),
+				is(Arrays.asList(1L, 12L)));
+		assertObjectCounters(42, 40L);
+	}
+	
+	@Test
+	public void allocateIDBlocksAfterInterruptedSaveAndClone() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db1 = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withObjectIDBlockSize(10).build();
+		final MongoWorkspaceDB db2 = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withObjectIDBlockSize(10).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db1.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		
+		assertThat("incorrect ids", saveNewObjects(db1, vto, "a", "b"),
+				is(Arrays.asList(1L, 2L)));
+		assertObjectCounters(10, 2L);
+		
+		// simulate a save that stopped before recording the max ID
+		assertThat("incorrect ids", saveNewObjects(db1, vto, "c"), is(Arrays.asList(3L)));
+		MONGO_DB.getCollection("workspaces").update(new BasicDBObject(Fields.WS_ID, 1L),
+				new BasicDBObject("$set", new BasicDBObject(Fields.WS_MAXOBJ, 2L)));
+		assertObjectCounters(10, 2L);
+		
+		// the IDs used by the interrupted save are never allocated again
+		assertThat("incorrect ids", saveNewObjects(db1, vto, "d"), is(Arrays.asList(4L)));
+		assertObjectCounters(10, 4L);
+		assertThat("incorrect ids", saveNewObjects(db2, vto, "e"), is(Arrays.asList(11L)));
+		assertObjectCounters(20, 11L);
+		
+		// the clone records its max ID, which is the object counter until a block is reserved
+		final WorkspaceInformation wi = db1.cloneWorkspace(
+				u, wsid, "ws2", false, null, new WorkspaceUserMetadata(), set());
+		assertThat("incorrect max id", wi.getMaximumObjectID(), is(11L));
+		assertObjectCounters(2, 11, 11L);
+		
+		final ResolvedWorkspaceID clone = new ResolvedWorkspaceID(2, "ws2", false, false);
+		assertThat("incorrect ids", saveNewObjects(db1, clone, vto, "f", "g"),
+				is(Arrays.asList(12L, 13L)));
+		assertObjectCounters(2, 21, 13L);
+		assertThat("incorrect ids", saveNewObjects(db2, clone, vto, "h"),
+				is(Arrays.asList(22L)));
+		assertObjectCounters(2, 31, 22L);
+		assertThat("incorrect max id", db1.getWorkspaceInformation(u, clone)
+				.getMaximumObjectID(), is(22L));
+		
+		// the source workspace is unaffected
+		assertObjectCounters(20, 11L);
+	}
+	
+	@Test
+	public void cloneWorkspaceInBatches() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withBatchSaves(true).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		
+		// more objects than fit in one batch
+		final String[] names = new String[1005];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "obj" + (i + 1);
+		}
+		saveNewObjects(db, vto, names);
+		db.saveObjects(u, wsid, Arrays.asList(saveObject(
+				new ObjectIDNoWSNoVer(1001), vto, false, set(new Reference(1, 1, 1)))));
+		
+		final WorkspaceInformation wi = db.cloneWorkspace(
+				u, wsid, "ws2", false, null, new WorkspaceUserMetadata(), set());
+		assertThat("incorrect id", wi.getId(), is(2L));
+		assertThat("incorrect max id", wi.getMaximumObjectID(), is(1005L));
+		
+		assertThat("incorrect object count", MONGO_DB.getCollection("workspaceObjects")
+				.count(new BasicDBObject(Fields.OBJ_WS_ID, 2L)), is(1005L));
+		assertThat("incorrect version count", MONGO_DB.getCollection("workspaceObjVersions")
+				.count(new BasicDBObject(Fields.VER_WS_ID, 2L)), is(1006L));
+		
+		final DBObject obj = MONGO_DB.getCollection("workspaceObjects").findOne(
+				new BasicDBObject(Fields.OBJ_WS_ID, 2L).append(Fields.OBJ_ID, 1001L));
+		assertThat("incorrect name", obj.get(Fields.OBJ_NAME), is("obj1001"));
+		assertThat("incorrect version count", obj.get(Fields.OBJ_VCNT), is(2));
+		assertThat("incorrect refcounts", obj.get(Fields.OBJ_REFCOUNTS),
+				is(Arrays.asList(0, 0)));
+		
+		final DBObject ver = MONGO_DB.getCollection("workspaceObjVersions").findOne(
+				new BasicDBObject(Fields.VER_WS_ID, 2L).append(Fields.VER_ID, 1001L)
+						.append(Fields.VER_VER, 2));
+		assertThat("incorrect copied", ver.get(Fields.VER_COPIED), is("1/1001/2"));
+		assertThat("incorrect refs", ver.get(Fields.VER_REF), is(Arrays.asList("1/1/1")));
+		
+		// referenced by the original and the clone
+		final DBObject refd = MONGO_DB.getCollection("workspaceObjects").findOne(
+				new BasicDBObject(Fields.OBJ_WS_ID, 1L).append(Fields.OBJ_ID, 1L));
+		assertThat("incorrect refcounts", refd.get(Fields.OBJ_REFCOUNTS),
+				is(Arrays.asList(2)));
+	}
+	
+	// builds the provenance as the server does, stamped with the current time
+	private Provenance makeProvenance() {
+		final Provenance p = new Provenance(new WorkspaceUser("u"));
+		p.setWorkspaceID(1L);
+		p.addAction(new ProvenanceAction().withCaller("call").withTime(new Date())
+				.withWorkspaceObjects(Arrays.asList("ws/input")));
+		return p;
+	}
+	
+	private ResolvedSaveObject saveObjectWithProvRef(
+			final ObjectIDNoWSNoVer id,
+			final ValidatedTypedObject vto,
+			final Reference provref) {
+		return saveObjectWithProvRef(id, vto, provref, makeProvenance());
+	}
+	
+	private ResolvedSaveObject saveObjectWithProvRef(
+			final ObjectIDNoWSNoVer id,
+			final ValidatedTypedObject vto,
+			final Reference provref,
+			final Provenance p) {
+		return new WorkspaceSaveObject(
+				id,
+				new UObject(ImmutableMap.of("foo", "bar")),
+				new TypeDefId("Mod.Type", "5.1"),
+				null,
+				p,
+				false)
+				.resolve(
+						vto,
+						set(),
+						Arrays.asList(provref),
+						Collections.emptyMap());
+	}
+	
+	private Provenance getProvenance(
+			final MongoWorkspaceDB db,
+			final ResolvedWorkspaceID wsid,
+			final long id,
+			final int version)
+			throws Exception {
+		final ObjectIDResolvedWS o = new ObjectIDResolvedWS(wsid, id, version);
+		return db.getObjects(ImmutableMap.of(o, set()), null, 0, true, false, true)
+				.get(o).get(SubsetSelection.EMPTY).getProvenance();
+	}
+	
+	private List<String> getProvenanceRefs(
+			final MongoWorkspaceDB db,
+			final ResolvedWorkspaceID wsid,
+			final long id,
+			final int version)
+			throws Exception {
+		return getProvenance(db, wsid, id, version).getActions().get(0).getResolvedObjects();
+	}
+	
+	private void assertProvenanceTimes(
+			final MongoWorkspaceDB db,
+			final ResolvedWorkspaceID wsid,
+			final long id,
+			final int version,
+			final Provenance expected)
+			throws Exception {
+		final Provenance got = getProvenance(db, wsid, id, version);
+		assertThat("incorrect date", got.getDate(), is(expected.getDate()));
+		assertThat("incorrect time", got.getActions().get(0).getTime(),
+				is(expected.getActions().get(0).getTime()));
+	}
+	
+	@Test
+	public void saveProvenanceDeduplicated() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		final MongoWorkspaceDB dedupe = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withProvenanceDeduplication(true).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		
+		/* the server creates provenance per object, stamped with the current time, and
+		 * clients typically stamp each action with the current time. Ensure the times differ.
+		 */
+		final List<Provenance> provs = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			if (i > 0) {
+				Thread.sleep(5);
+			}
+			provs.add(makeProvenance());
+		}
+		assertThat("dates are the same",
+				provs.get(0).getDate().equals(provs.get(1).getDate()), is(false));
+		
+		// identical provenance within a save is stored once
+		db.saveObjects(u, wsid, Arrays.asList(
+				saveObjectWithProvRef(new ObjectIDNoWSNoVer("a"), vto, new Reference(2, 1, 1),
+						provs.get(0)),
+				saveObjectWithProvRef(new ObjectIDNoWSNoVer("b"), vto, new Reference(2, 1, 2),
+						provs.get(1))));
+		assertThat("incorrect prov count",
+				MONGO_DB.getCollection("provenance").count(), is(1L));
+		
+		// but not across saves by default
+		db.saveObjects(u, wsid, Arrays.asList(
+				saveObjectWithProvRef(new ObjectIDNoWSNoVer("a"), vto, new Reference(2, 1, 3),
+						provs.get(2))));
+		assertThat("incorrect prov count",
+				MONGO_DB.getCollection("provenance").count(), is(2L));
+		
+		dedupe.saveObjects(u, wsid, Arrays.asList(
+				saveObjectWithProvRef(new ObjectIDNoWSNoVer("c"), vto, new Reference(2, 1, 4),
+						provs.get(3))));
+		assertThat("incorrect prov count",
+				MONGO_DB.getCollection("provenance").count(), is(2L));
+		
+		// versions sharing a provenance document keep their own times
+		assertProvenanceTimes(db, wsid, 1, 1, provs.get(0));
+		assertProvenanceTimes(db, wsid, 2, 1, provs.get(1));
+		assertProvenanceTimes(db, wsid, 1, 2, provs.get(2));
+		assertProvenanceTimes(db, wsid, 3, 1, provs.get(3));
+		
+		// versions sharing a provenance document keep their own resolved references
+		assertThat("incorrect refs", getProvenanceRefs(db, wsid, 1, 1),
+				is(Arrays.asList("2/1/1")));
+		assertThat("incorrect refs", getProvenanceRefs(db, wsid, 2, 1),
+				is(Arrays.asList("2/1/2")));
+		assertThat("incorrect refs", getProvenanceRefs(db, wsid, 1, 2),
+				is(Arrays.asList("2/1/3")));
+		assertThat("incorrect refs", getProvenanceRefs(db, wsid, 3, 1),
+				is(Arrays.asList("2/1/4")));
+	}
+	
+	private Map<Reference, Set<Reference>> getIncomingReferences(
+			final MongoWorkspaceDB db,
+			final Reference... refs)
+			throws Exception {
+		final Map<Reference, Set<Reference>> ret = new HashMap<>();
+		for (final Entry<Reference, ObjectReferenceSet> e:
+				db.getObjectIncomingReferences(set(refs)).entrySet()) {
+			assertThat("incorrect ref", e.getValue().getObjectReference(), is(e.getKey()));
+			ret.put(e.getKey(), e.getValue().getReferenceSet());
+		}
+		return ret;
+	}
+	
+	@Test
+	public void getObjectIncomingReferencesFromIndex() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		final MongoWorkspaceDB index = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withIncomingReferenceIndex(true).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		
+		saveNewObjects(db, vto, "target");
+		saveNewObjects(db, vto, "target");
+		db.saveObjects(u, wsid, Arrays.asList(
+				saveObject(new ObjectIDNoWSNoVer("a"), vto, false,
+						set(new Reference(1, 1, 1), new Reference(1, 1, 2))),
+				saveObjectWithProvRef(new ObjectIDNoWSNoVer("b"), vto, new Reference(1, 1, 1))));
+		
+		final Map<Reference, Set<Reference>> expected = ImmutableMap.of(
+				new Reference(1, 1, 1), set(new Reference(1, 2, 1), new Reference(1, 3, 1)),
+				new Reference(1, 1, 2), set(new Reference(1, 2, 1)),
+				new Reference(1, 2, 1), set());
+		final Reference[] targets = new Reference[] {
+				new Reference(1, 1, 1), new Reference(1, 1, 2), new Reference(1, 2, 1)};
+		
+		// the index is always maintained on save
+		assertThat("incorrect index size",
+				MONGO_DB.getCollection("incomingRefs").count(), is(3L));
+		assertThat("incorrect refs", getIncomingReferences(db, targets), is(expected));
+		assertThat("incorrect refs", getIncomingReferences(index, targets), is(expected));
+		assertThat("incorrect refs", getIncomingReferences(index, new Reference(1, 1, 2)),
+				is(ImmutableMap.of(new Reference(1, 1, 2), set(new Reference(1, 2, 1)))));
+		
+		// references saved before the index existed are missing until indexed
+		MONGO_DB.getCollection("incomingRefs").remove(new BasicDBObject());
+		assertThat("incorrect refs", getIncomingReferences(index, targets), is(ImmutableMap.of(
+				new Reference(1, 1, 1), set(),
+				new Reference(1, 1, 2), set(),
+				new Reference(1, 2, 1), set())));
+		
+		assertThat("incorrect indexed count", index.indexIncomingReferences(2, 5), is(0L));
+		assertThat("incorrect indexed count", index.indexIncomingReferences(1, 1), is(3L));
+		assertThat("incorrect refs", getIncomingReferences(index, targets), is(expected));
+		
+		// indexing again is harmless
+		assertThat("incorrect indexed count", index.indexIncomingReferences(1, 1), is(3L));
+		assertThat("incorrect index size",
+				MONGO_DB.getCollection("incomingRefs").count(), is(3L));
+		assertThat("incorrect refs", getIncomingReferences(index, targets), is(expected));
+	}
+	
+	@Test
+	public void saveObjectsWithIncomingReferenceIndexFailure() throws Exception {
+		final String[] ver = MONGO_DB.command("buildInfo").getString("version").split("\\.");
+		assumeTrue("MongoDB 3.2+ is required for document validation",
+				Integer.parseInt(ver[0]) > 3 ||
+				(Integer.parseInt(ver[0]) == 3 && Integer.parseInt(ver[1]) >= 2));
+		
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		saveNewObjects(db, vto, "target");
+		
+		// reject all writes to the index
+		MONGO_DB.command(new BasicDBObject("collMod", "incomingRefs")
+				.append("validator", new BasicDBObject(Fields.INREF_TARGET_WS_ID,
+						new BasicDBObject("$type", "string"))))
+				.throwOnError();
+		try {
+			// the versions are saved, so the save succeeds and the index needs rebuilding
+			final List<ObjectInformation> saved = db.saveObjects(u, wsid, Arrays.asList(
+					saveObject(new ObjectIDNoWSNoVer("a"), vto, false,
+							set(new Reference(1, 1, 1)))));
+			assertThat("incorrect id", saved.get(0).getObjectId(), is(2L));
+			assertThat("incorrect index size",
+					MONGO_DB.getCollection("incomingRefs").count(), is(0L));
+			assertThat("incorrect refs", getIncomingReferences(db, new Reference(1, 1, 1)),
+					is(ImmutableMap.of(new Reference(1, 1, 1), set(new Reference(1, 2, 1)))));
+		} finally {
+			MONGO_DB.command(new BasicDBObject("collMod", "incomingRefs")
+					.append("validator", new BasicDBObject()))
+					.throwOnError();
+		}
+		assertThat("incorrect indexed count", db.indexIncomingReferences(1, 1), is(1L));
+		assertThat("incorrect index size",
+				MONGO_DB.getCollection("incomingRefs").count(), is(1L));
+	}
+	
+	@Test
+	public void indexIncomingReferencesFail() throws Exception {
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(
+				MONGO_DB, mock(BlobStore.class), mock(TempFilesManager.class));
+		
+		failIndexIncomingReferences(db, 0, 1,
+				new IllegalArgumentException("startWorkspaceID must be > 0"));
+		failIndexIncomingReferences(db, 1, 0,
+				new IllegalArgumentException("count must be > 0"));
+	}
+	
+	private void failIndexIncomingReferences(
+			final MongoWorkspaceDB db,
+			final long start,
+			final int count,
+			final Exception expected) {
+		try {
+			db.indexIncomingReferences(start, count);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
+	@Test
+	public void flagLatestVersions() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		db.createWorkspace(new WorkspaceUser("u"), "ws", false, null,
+				new WorkspaceUserMetadata());
+		saveNewObjects(db, vto, "a");
+		saveNewObjects(db, vto, "a");
+		saveNewObjects(db, vto, "a");
+		saveNewObjects(db, vto, "b");
+		
+		final Map<Reference, Boolean> expected = ImmutableMap.of(
+				new Reference(1, 1, 1), false,
+				new Reference(1, 1, 2), false,
+				new Reference(1, 1, 3), true,
+				new Reference(1, 2, 1), true);
+		assertThat("incorrect flags", getLatestFlags(), is(expected));
+		
+		// versions saved before the flag existed have no flag until flagged
+		MONGO_DB.getCollection("workspaceObjVersions").update(
+				new BasicDBObject(),
+				new BasicDBObject("$unset", new BasicDBObject(Fields.VER_LATEST, "")),
+				false,
+				true);
+		final Map<Reference, Boolean> noflags = new HashMap<>();
+		for (final Reference r: expected.keySet()) {
+			noflags.put(r, null);
+		}
+		assertThat("incorrect flags", getLatestFlags(), is(noflags));
+		
+		assertThat("incorrect flagged count", db.flagLatestVersions(2, 5), is(0L));
+		assertThat("incorrect flags", getLatestFlags(), is(noflags));
+		assertThat("incorrect flagged count", db.flagLatestVersions(1, 1), is(2L));
+		assertThat("incorrect flags", getLatestFlags(), is(expected));
+		
+		// flagging again is harmless
+		assertThat("incorrect flagged count", db.flagLatestVersions(1, 1), is(2L));
+		assertThat("incorrect flags", getLatestFlags(), is(expected));
+		
+		// flags set by later saves are kept
+		saveNewObjects(db, vto, "b");
+		assertThat("incorrect flagged count", db.flagLatestVersions(1, 1), is(2L));
+		assertThat("incorrect flags", getLatestFlags(), is(ImmutableMap.of(
+				new Reference(1, 1, 1), false,
+				new Reference(1, 1, 2), false,
+				new Reference(1, 1, 3), true,
+				new Reference(1, 2, 1), false,
+				new Reference(1, 2, 2), true)));
+	}
+	
+	private Map<Reference, Boolean> getLatestFlags() {
+		final Map<Reference, Boolean> ret = new HashMap<>();
+		for (final DBObject v: MONGO_DB.getCollection("workspaceObjVersions").find()) {
+			ret.put(new Reference((Long) v.get(Fields.VER_WS_ID), (Long) v.get(Fields.VER_ID),
+					(Integer) v.get(Fields.VER_VER)), (Boolean) v.get(Fields.VER_LATEST));
+		}
+		return ret;
+	}
+	
+	@Test
+	public void flagLatestVersionsFail() throws Exception {
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(
+				MONGO_DB, mock(BlobStore.class), mock(TempFilesManager.class));
+		
+		failFlagLatestVersions(db, 0, 1,
+				new IllegalArgumentException("startWorkspaceID must be > 0"));
+		failFlagLatestVersions(db, 1, 0,
+				new IllegalArgumentException("count must be > 0"));
+	}
+	
+	private void failFlagLatestVersions(
+			final MongoWorkspaceDB db,
+			final long start,
+			final int count,
+			final Exception expected) {
+		try {
+			db.flagLatestVersions(start, count);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
+	@Test
+	public void getObjectsCached() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withDocumentCacheSize(100).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		db.saveObjects(u, wsid, Arrays.asList(saveObjectWithProvRef(
+				new ObjectIDNoWSNoVer("a"), vto, new Reference(2, 1, 1))));
+		
+		final ObjectIDResolvedWS o = new ObjectIDResolvedWS(wsid, 1, 1);
+		assertThat("incorrect refs", getProvenanceRefs(db, wsid, 1, 1),
+				is(Arrays.asList("2/1/1")));
+		
+		// changes to the immutable documents are not seen, proving the cache is in use
+		MONGO_DB.getCollection("workspaceObjVersions").update(
+				new BasicDBObject(),
+				new BasicDBObject("$set", new BasicDBObject(Fields.VER_PROVREF,
+						Arrays.asList("3/1/1"))
+						.append(Fields.VER_TYPE, "Mod.Other-1.0")));
+		MONGO_DB.getCollection("provenance").update(
+				new BasicDBObject(),
+				new BasicDBObject("$set", new BasicDBObject(Fields.PROV_USER, "v")));
+		
+		final Provenance p = db.getObjects(ImmutableMap.of(o, set()), null, 0, true, false, true)
+				.get(o).get(SubsetSelection.EMPTY).getProvenance();
+		assertThat("incorrect user", p.getUser(), is(new WorkspaceUser("u")));
+		assertThat("incorrect refs", p.getActions().get(0).getResolvedObjects(),
+				is(Arrays.asList("2/1/1")));
+		
+		// but mutable object state is
+		db.renameObject(o, "b");
+		final ObjectInformation oi = db.getObjectInformation(set(o), false, true, false, true)
+				.get(o);
+		assertObjectInfo(oi, 1, "b", 1);
+		assertThat("incorrect type", oi.getTypeString(), is("Mod.Type-5.1"));
+		
+		// and a database without the cache sees the changes
+		final MongoWorkspaceDB nocache = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		assertThat("incorrect refs", getProvenanceRefs(nocache, wsid, 1, 1),
+				is(Arrays.asList("3/1/1")));
+	}
+	
+	@Test
+	public void getObjectExistsDoesNotFillCache() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withDocumentCacheSize(100).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		db.saveObjects(u, wsid, Arrays.asList(saveObjectWithProvRef(
+				new ObjectIDNoWSNoVer("a"), vto, new Reference(2, 1, 1))));
+		
+		final ObjectIDResolvedWS o = new ObjectIDResolvedWS(wsid, 1, 1);
+		final ObjectIDResolvedWS missing = new ObjectIDResolvedWS(wsid, 1, 2);
+		assertThat("incorrect exists", db.getObjectExists(set(o, missing)),
+				is(ImmutableMap.of(o, true, missing, false)));
+		
+		// the existence check only fetched the version IDs, so the full document isn't cached
+		MONGO_DB.getCollection("workspaceObjVersions").update(
+				new BasicDBObject(),
+				new BasicDBObject("$set", new BasicDBObject(Fields.VER_PROVREF,
+						Arrays.asList("3/1/1"))));
+		assertThat("incorrect refs", getProvenanceRefs(db, wsid, 1, 1),
+				is(Arrays.asList("3/1/1")));
+		
+		// but once cached, existence checks are served from the cache
+		MONGO_DB.getCollection("workspaceObjVersions").remove(new BasicDBObject());
+		assertThat("incorrect exists", db.getObjectExists(set(o)),
+				is(ImmutableMap.of(o, true)));
+	}
+	
+	@Test
+	public void getSmallVersionFieldsDoesNotFillCache() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withDocumentCacheSize(100).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		db.saveObjects(u, wsid, Arrays.asList(saveObjectWithProvRef(
+				new ObjectIDNoWSNoVer("a"), vto, new Reference(2, 1, 1))));
+		
+		// object information only needs small fields, so the full document isn't fetched
+		final ObjectIDResolvedWS o = new ObjectIDResolvedWS(wsid, 1, 1);
+		assertObjectInfo(db.getObjectInformation(set(o), false, true, false, true).get(o),
+				1, "a", 1);
+		MONGO_DB.getCollection("workspaceObjVersions").update(
+				new BasicDBObject(),
+				new BasicDBObject("$set", new BasicDBObject(Fields.VER_PROVREF,
+						Arrays.asList("3/1/1"))));
+		assertThat("incorrect refs", getProvenanceRefs(db, wsid, 1, 1),
+				is(Arrays.asList("3/1/1")));
+		
+		// but once cached, small fields are served from the cache
+		MONGO_DB.getCollection("workspaceObjVersions").update(
+				new BasicDBObject(),
+				new BasicDBObject("$set", new BasicDBObject(Fields.VER_SIZE, 1000L)));
+		assertThat("incorrect size", db.getObjectInformation(set(o), false, true, false, true)
+				.get(o).getSize(), is(22L));
+	}
+	
+	@Test
+	public void getObjectsCachedReturnsCopies() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withDocumentCacheSize(100).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		db.saveObjects(u, wsid, Arrays.asList(saveObject(
+				new ObjectIDNoWSNoVer("a"), vto, false, set(new Reference(2, 1, 1)))));
+		
+		final ObjectIDResolvedWS o = new ObjectIDResolvedWS(wsid, 1, 1);
+		final List<String> refs = db.getObjects(
+				ImmutableMap.of(o, set()), null, 0, true, false, true)
+				.get(o).get(SubsetSelection.EMPTY).getReferences();
+		assertThat("incorrect refs", refs, is(Arrays.asList("2/1/1")));
+		
+		// modifying the returned data doesn't modify the cached document
+		refs.clear();
+		assertThat("incorrect refs", db.getObjects(
+				ImmutableMap.of(o, set()), null, 0, true, false, true)
+				.get(o).get(SubsetSelection.EMPTY).getReferences(),
+				is(Arrays.asList("2/1/1")));
+	}
+	
+	@Test
+	public void getObjectTypeCached() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mockValidatedObject();
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withDocumentCacheSize(100).build();
+		db.createWorkspace(new WorkspaceUser("u"), "ws", false, null,
+				new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		saveNewObjects(db, vto, "a");
+		saveNewObjects(db, vto, "a");
+		
+		final ObjectIDResolvedWS latest = new ObjectIDResolvedWS(wsid, "a");
+		final ObjectIDResolvedWS v1 = new ObjectIDResolvedWS(wsid, 1, 1);
+		Map<ObjectIDResolvedWS, TypeAndReference> types = db.getObjectType(set(latest, v1), false);
+		assertTypeAndReference(types.get(v1), "Mod.Type-5.1", new Reference(1, 1, 1));
+		assertTypeAndReference(types.get(latest), "Mod.Type-5.1", new Reference(1, 1, 2));
+		
+		// with the version documents gone, a repeated lookup can only be served from the cache
+		MONGO_DB.getCollection("workspaceObjVersions").remove(new BasicDBObject());
+		types = db.getObjectType(set(latest, v1), false);
+		assertTypeAndReference(types.get(v1), "Mod.Type-5.1", new Reference(1, 1, 1));
+		assertTypeAndReference(types.get(latest), "Mod.Type-5.1", new Reference(1, 1, 2));
+		
+		// new versions are seen
+		saveNewObjects(db, vto, "a");
+		assertTypeAndReference(db.getObjectType(set(latest), false).get(latest),
+				"Mod.Type-5.1", new Reference(1, 1, 3));
+		
+		// the deletion state is not cached
+		db.setObjectsDeleted(set(latest), true);
+		try {
+			db.getObjectType(set(v1), false);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new DeletedObjectException(
+					"Object 1 (name a) in workspace 1 (name ws) has been deleted", v1));
+		}
+	}
+	
+	private void assertTypeAndReference(
+			final TypeAndReference got,
+			final String expectedType,
+			final Reference expectedRef) {
+		assertThat("incorrect type", got.getType(),
+				is(AbsoluteTypeDefId.fromAbsoluteTypeString(expectedType)));
+		assertThat("incorrect ref", got.getReference(), is(expectedRef));
+	}
+	
+	@Test
+	public void resolveWorkspacesCached() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withWorkspaceCacheSize(100).build();
+		final WorkspaceUser u = new WorkspaceUser("u");
+		final WorkspaceIdentifier name = new WorkspaceIdentifier("ws");
+		final WorkspaceIdentifier id = new WorkspaceIdentifier(1);
+		
+		// missing workspaces aren't cached
+		failResolveWorkspace(db, name, new NoSuchWorkspaceException(
+				"No workspace with name ws exists", name));
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID rwsi = new ResolvedWorkspaceID(1, "ws", false, false);
+		assertThat("incorrect resolve", db.resolveWorkspace(name), is(rwsi));
+		assertThat("incorrect resolve", db.resolveWorkspace(id), is(rwsi));
+		
+		// changes made outside this instance are not seen, proving the cache is in use
+		MONGO_DB.getCollection("workspaces").update(
+				new BasicDBObject(),
+				new BasicDBObject("$set", new BasicDBObject(Fields.WS_NAME, "ws2")));
+		assertThat("incorrect resolve", db.resolveWorkspace(name), is(rwsi));
+		assertThat("incorrect resolve", db.resolveWorkspace(id), is(rwsi));
+		assertThat("incorrect resolve",
+				new MongoWorkspaceDB(MONGO_DB, bs, tfm).resolveWorkspace(id),
+				is(new ResolvedWorkspaceID(1, "ws2", false, false)));
+		
+		// but changes made via this instance are
+		db.renameWorkspace(rwsi, "ws3");
+		final ResolvedWorkspaceID renamed = new ResolvedWorkspaceID(1, "ws3", false, false);
+		failResolveWorkspace(db, name, new NoSuchWorkspaceException(
+				"No workspace with name ws exists", name));
+		assertThat("incorrect resolve", db.resolveWorkspace(id), is(renamed));
+		assertThat("incorrect resolve", db.resolveWorkspace(new WorkspaceIdentifier("ws3")),
+				is(renamed));
+		
+		db.lockWorkspace(renamed);
+		assertThat("incorrect resolve", db.resolveWorkspace(id),
+				is(new ResolvedWorkspaceID(1, "ws3", true, false)));
+		
+		db.setWorkspaceDeleted(renamed, true);
+		failResolveWorkspace(db, id, new NoSuchWorkspaceException(
+				"Workspace 1 is deleted", id));
+		assertThat("incorrect resolve", db.resolveWorkspace(id, true),
+				is(new ResolvedWorkspaceID(1, "ws3", true, true)));
+	}
+	
+	@Test
+	public void cacheInvalidationOnlyRemovesChangedWorkspace() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withWorkspaceCacheSize(100)
+				.withPermissionCacheSize(100).withPermissionCacheExpiry(60000).build();
+		final WorkspaceUser u1 = new WorkspaceUser("u1");
+		final WorkspaceUser u2 = new WorkspaceUser("u2");
+		db.createWorkspace(u1, "ws1", false, null, new WorkspaceUserMetadata());
+		db.createWorkspace(u1, "ws2", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(1, "ws1", false, false);
+		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(2, "ws2", false, false);
+		final WorkspaceIdentifier id2 = new WorkspaceIdentifier(2);
+		assertThat("incorrect resolve", db.resolveWorkspace(new WorkspaceIdentifier(1)),
+				is(rwsi1));
+		assertThat("incorrect resolve", db.resolveWorkspace(id2), is(rwsi2));
+		assertThat("incorrect perms", db.getPermissions(u2, set(rwsi1, rwsi2)).isEmpty(),
+				is(true));
+		
+		// change workspace 2 outside this instance
+		MONGO_DB.getCollection("workspaces").update(
+				new BasicDBObject(Fields.WS_ID, 2L),
+				new BasicDBObject("$set", new BasicDBObject(Fields.WS_NAME, "ws3")));
+		MONGO_DB.getCollection("workspaceACLs").insert(new BasicDBObject(Fields.ACL_WSID, 2L)
+				.append(Fields.ACL_USER, "u2").append(Fields.ACL_PERM, 10));
+		
+		// changing workspace 1 via this instance leaves the cached entries for workspace 2
+		db.renameWorkspace(rwsi1, "ws4");
+		db.setPermissions(rwsi1, Arrays.asList(u2), Permission.READ);
+		assertThat("incorrect resolve", db.resolveWorkspace(new WorkspaceIdentifier(1)),
+				is(new ResolvedWorkspaceID(1, "ws4", false, false)));
+		assertThat("incorrect resolve", db.resolveWorkspace(id2), is(rwsi2));
+		final PermissionSet perms = db.getPermissions(u2, set(rwsi1, rwsi2));
+		assertThat("incorrect workspaces", perms.getWorkspaces(), is(set(rwsi1)));
+		assertThat("incorrect perm", perms.getUserPermission(rwsi1), is(Permission.READ));
+	}
+	
+	@Test
+	public void resolveWorkspacesCachedWithPolledChanges() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		
+		// the test database is not a replica set, so the monitors poll the change stamp
+		final WorkspaceChangeMonitor mon1 = new WorkspaceChangeMonitor(MONGO_DB, 50);
+		final WorkspaceChangeMonitor mon2 = new WorkspaceChangeMonitor(MONGO_DB, 50);
+		assertThat("incorrect streams", mon1.isUsingChangeStreams(), is(false));
+		final MongoWorkspaceDB db1 = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withWorkspaceCacheSize(100).withChangeMonitor(mon1).build();
+		final MongoWorkspaceDB db2 = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withWorkspaceCacheSize(100).withChangeMonitor(mon2).build();
+		mon1.start();
+		mon2.start();
+		try {
+			final WorkspaceIdentifier id = new WorkspaceIdentifier(1);
+			db1.createWorkspace(new WorkspaceUser("u"), "ws", false, null,
+					new WorkspaceUserMetadata());
+			final ResolvedWorkspaceID rwsi = new ResolvedWorkspaceID(1, "ws", false, false);
+			assertThat("incorrect resolve", db1.resolveWorkspace(id), is(rwsi));
+			assertThat("incorrect resolve", db2.resolveWorkspace(id), is(rwsi));
+			
+			db1.renameWorkspace(rwsi, "ws2");
+			Thread.sleep(200);
+			assertThat("incorrect resolve", db2.resolveWorkspace(id),
+					is(new ResolvedWorkspaceID(1, "ws2", false, false)));
+			
+			db1.setWorkspaceDeleted(new ResolvedWorkspaceID(1, "ws2", false, false), true);
+			Thread.sleep(200);
+			failResolveWorkspace(db2, id, new NoSuchWorkspaceException(
+					"Workspace 1 is deleted", id));
+		} finally {
+			mon1.stop();
+			mon2.stop();
+		}
+	}
+	
+	@Test
+	public void workspaceChangeStreamIgnoresSaves() throws Exception {
+		/* the test database is not a replica set, so start a replica set to get change
+		 * streams, which require MongoDB 3.6+
+		 */
+		final String[] ver = MONGO_DB.command("buildInfo").getString("version").split("\\.");
+		assumeTrue("MongoDB 3.6+ is required for change streams",
+				Integer.parseInt(ver[0]) > 3 ||
+				(Integer.parseInt(ver[0]) == 3 && Integer.parseInt(ver[1]) >= 6));
+		
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final MongoReplicaSetController rs = new MongoReplicaSetController(
+				TestCommon.getMongoExe(), Paths.get(TestCommon.getTempDir()));
+		final MongoClient mc = new MongoClient("localhost:" + rs.getServerPort());
+		final WorkspaceChangeMonitor mon = new WorkspaceChangeMonitor(
+				mc.getDB("test_" + getClass().getSimpleName()), 50);
+		final List<String> changes = Collections.synchronizedList(new ArrayList<>());
+		// a failing listener doesn't affect the other listeners
+		mon.register(new FailingChangeListener());
+		mon.register(new WorkspaceChangeMonitor.ChangeListener() {
+			
+			@Override
+			public void changed(final ChangeType type, final long workspaceID) {
+				if (type.equals(ChangeType.WORKSPACE)) {
+					changes.add("ws " + workspaceID);
+				}
+			}
+			
+			@Override
+			public void invalidateAll() {
+				changes.add("all");
+			}
+		});
+		try {
+			assertThat("incorrect streams", mon.isUsingChangeStreams(), is(true));
+			final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(
+					mc.getDB("test_" + getClass().getSimpleName()), bs, tfm)
+					.withChangeMonitor(mon).build();
+			db.createWorkspace(new WorkspaceUser("u"), "ws", false, null,
+					new WorkspaceUserMetadata());
+			final ResolvedWorkspaceID rwsi = new ResolvedWorkspaceID(1, "ws", false, false);
+			mon.start();
+			
+			// the streams open in the background, so retry until a change is seen
+			for (int i = 0; changes.isEmpty(); i++) {
+				if (i > 100) {
+					fail("change stream didn't see a metadata change");
+				}
+				db.setWorkspaceMeta(rwsi, new WorkspaceUserMetadata(ImmutableMap.of("a", "b")));
+				Thread.sleep(100);
+			}
+			changes.clear();
+			
+			// changes are seen in order, so a save that triggers a change would be seen first
+			saveNewObjects(db, mockValidatedObject(), "obj1", "obj2");
+			db.setWorkspaceMeta(rwsi, new WorkspaceUserMetadata(ImmutableMap.of("a", "c")));
+			waitForChanges(changes, 1);
+			assertThat("incorrect changes", changes, is(Arrays.asList("ws 1")));
+			
+			db.removeWorkspaceMetaKey(rwsi, "a");
+			db.setWorkspaceDescription(rwsi, "desc");
+			db.lockWorkspace(rwsi);
+			waitForChanges(changes, 3);
+			assertThat("incorrect changes", changes, is(Arrays.asList("ws 1", "ws 1", "ws 1")));
+			
+			// stopping closes the streams
+			mon.stop();
+			changes.clear();
+			db.setWorkspaceDescription(rwsi, "desc2");
+			waitForChanges(changes, 1);
+			assertThat("incorrect changes", changes, is(Collections.emptyList()));
+		} finally {
+			mon.stop();
+			mc.close();
+			rs.destroy(TestCommon.getDeleteTempFiles());
+		}
+	}
+	
+	private static class FailingChangeListener implements WorkspaceChangeMonitor.ChangeListener {
+		
+		@Override
+		public void changed(final ChangeType type, final long workspaceID) {
+			throw new IllegalStateException("changed");
+		}
+		
+		@Override
+		public void invalidateAll() {
+			throw new IllegalStateException("invalidateAll");
+		}
+	}
+	
+	@Test
+	public void changeMonitorListenerFailureAndStop() throws Exception {
+		// the test database is not a replica set, so the monitor polls the change stamp
+		final WorkspaceChangeMonitor mon = new WorkspaceChangeMonitor(MONGO_DB, 50);
+		final List<String> changes = Collections.synchronizedList(new ArrayList<>());
+		mon.register(new FailingChangeListener());
+		mon.register(new WorkspaceChangeMonitor.ChangeListener() {
+			
+			@Override
+			public void changed(final ChangeType type, final long workspaceID) {
+				changes.add("ws " + workspaceID);
+			}
+			
+			@Override
+			public void invalidateAll() {
+				changes.add("all");
+			}
+		});
+		mon.start();
+		try {
+			mon.recordChange();
+			waitForChanges(changes, 1);
+			assertThat("incorrect changes", changes, is(Arrays.asList("all")));
+			
+			// the monitor keeps running after a listener fails
+			mon.recordChange();
+			waitForChanges(changes, 2);
+			assertThat("incorrect changes", changes, is(Arrays.asList("all", "all")));
+		} finally {
+			mon.stop();
+		}
+		Thread.sleep(200);
+		mon.recordChange();
+		waitForChanges(changes, 3);
+		assertThat("incorrect changes", changes, is(Arrays.asList("all", "all")));
+	}
+	
+	private void waitForChanges(final List<String> changes, final int count)
+			throws InterruptedException {
+		for (int i = 0; changes.size() < count && i < 100; i++) {
+			Thread.sleep(100);
+		}
+		// allow time for any unexpected changes to arrive
+		Thread.sleep(200);
+	}
+	
+	@Test
+	public void getPermissionsCached() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		
+		final MongoWorkspaceDB db = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withPermissionCacheSize(100).withPermissionCacheExpiry(60000).build();
+		final WorkspaceUser u1 = new WorkspaceUser("u1");
+		final WorkspaceUser u2 = new WorkspaceUser("u2");
+		db.createWorkspace(u1, "ws", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID rwsi = new ResolvedWorkspaceID(1, "ws", false, false);
+		
+		assertPermissions(db.getPermissions(u1, set(rwsi)), rwsi, Permission.OWNER, false);
+		assertThat("incorrect perms", db.getPermissions(u2, set(rwsi)).isEmpty(), is(true));
+		final PermissionSet unreadable = db.getPermissions(
+				u2, set(rwsi), Permission.READ, false, false, true);
+		assertPermissions(unreadable, rwsi, Permission.NONE, false);
+		
+		// changes made outside this instance are not seen, proving the cache is in use
+		MONGO_DB.getCollection("workspaceACLs").insert(new BasicDBObject(Fields.ACL_WSID, 1L)
+				.append(Fields.ACL_USER, "u2").append(Fields.ACL_PERM, 10));
+		assertThat("incorrect perms", db.getPermissions(u2, set(rwsi)).isEmpty(), is(true));
+		assertThat("incorrect hits", db.getPermissionCacheStats().hitCount(), is(2L));
+		assertThat("incorrect misses", db.getPermissionCacheStats().missCount(), is(2L));
+		
+		// but changes made via this instance are
+		db.setPermissions(rwsi, Arrays.asList(u2), Permission.WRITE);
+		assertPermissions(db.getPermissions(u2, set(rwsi)), rwsi, Permission.WRITE, false);
+		assertPermissions(db.getPermissions(u2, set(rwsi), Permission.WRITE, false, false, false),
+				rwsi, Permission.WRITE, false);
+		
+		// global permissions for an anonymous user and a user without explicit permissions
+		assertThat("incorrect perms", db.getPermissions(null, set(rwsi)).isEmpty(), is(true));
+		db.setGlobalPermission(rwsi, Permission.READ);
+		final WorkspaceUser u3 = new WorkspaceUser("u3");
+		assertPermissions(db.getPermissions(null, set(rwsi)), rwsi, Permission.NONE, true);
+		assertPermissions(db.getPermissions(u3, set(rwsi)), rwsi, Permission.NONE, true);
+		assertPermissions(db.getPermissions(u1, set(rwsi)), rwsi, Permission.OWNER, true);
+		// as with the uncached path, global read is still reported for provided workspaces
+		// when excluded or when write permission is required
+		assertPermissions(db.getPermissions(u3, set(rwsi), Permission.READ, true, false, false),
+				rwsi, Permission.NONE, true);
+		final PermissionSet write = db.getPermissions(
+				u3, set(rwsi), Permission.WRITE, false, false, false);
+		assertPermissions(write, rwsi, Permission.NONE, true);
+		assertThat("incorrect write perm", write.hasPermission(rwsi, Permission.WRITE),
+				is(false));
+		assertThat("incorrect perms", db.getPermissions(
+				null, set(rwsi), Permission.READ, true, false, false).isEmpty(), is(true));
+		assertThat("incorrect perms", db.getPermissions(
+				null, set(rwsi), Permission.WRITE, false, false, false).isEmpty(), is(true));
+		
+		db.setWorkspaceOwner(rwsi, u1, u3, Optional.absent());
+		assertPermissions(db.getPermissions(u1, set(rwsi)), rwsi, Permission.ADMIN, true);
+		assertPermissions(db.getPermissions(u3, set(rwsi)), rwsi, Permission.OWNER, true);
+	}
+	
+	@Test
+	public void getPermissionsCachedMatchesUncached() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		
+		final MongoWorkspaceDB cached = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm)
+				.withPermissionCacheSize(100).withPermissionCacheExpiry(60000).build();
+		final MongoWorkspaceDB uncached = MongoWorkspaceDB.getBuilder(MONGO_DB, bs, tfm).build();
+		final WorkspaceUser u1 = new WorkspaceUser("u1");
+		final WorkspaceUser u2 = new WorkspaceUser("u2");
+		final WorkspaceUser u3 = new WorkspaceUser("u3");
+		cached.createWorkspace(u1, "ws1", false, null, new WorkspaceUserMetadata());
+		cached.createWorkspace(u1, "ws2", true, null, new WorkspaceUserMetadata());
+		cached.createWorkspace(u2, "ws3", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(1, "ws1", false, false);
+		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(2, "ws2", false, false);
+		final ResolvedWorkspaceID rwsi3 = new ResolvedWorkspaceID(3, "ws3", false, false);
+		cached.setPermissions(rwsi1, Arrays.asList(u2), Permission.WRITE);
+		cached.setPermissions(rwsi2, Arrays.asList(u3), Permission.READ);
+		cached.setGlobalPermission(rwsi1, Permission.READ);
+		final Set<ResolvedWorkspaceID> rwsis = set(rwsi1, rwsi2, rwsi3);
+		
+		for (final WorkspaceUser user: Arrays.asList(null, u1, u2, u3)) {
+			for (final Permission perm: Arrays.asList(
+					Permission.READ, Permission.WRITE, Permission.ADMIN, Permission.OWNER)) {
+				for (final boolean excludeGlobalRead: Arrays.asList(false, true)) {
+					for (final boolean includeProvided: Arrays.asList(false, true)) {
+						// run twice so the second cached call is served from the cache
+						for (int i = 0; i < 2; i++) {
+							assertPermissionsEqual(
+									cached.getPermissions(user, rwsis, perm,
+											excludeGlobalRead, false, includeProvided),
+									uncached.getPermissions(user, rwsis, perm,
+											excludeGlobalRead, false, includeProvided),
+									String.format("%s %s %s %s", user, perm,
+											excludeGlobalRead, includeProvided));
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	private void assertPermissionsEqual(
+			final PermissionSet got,
+			final PermissionSet expected,
+			final String context) {
+		assertThat("incorrect workspaces " + context, got.getWorkspaces(),
+				is(expected.getWorkspaces()));
+		for (final ResolvedWorkspaceID rwsi: expected.getWorkspaces()) {
+			assertThat("incorrect perm " + context, got.getUserPermission(rwsi),
+					is(expected.getUserPermission(rwsi)));
+			assertThat("incorrect world readable " + context, got.isWorldReadable(rwsi),
+					is(expected.isWorldReadable(rwsi)));
+		}
+	}
+	
+	private void assertPermissions(
+			final PermissionSet perms,
+			final ResolvedWorkspaceID rwsi,
+			final Permission expected,
+			final boolean worldReadable) {
+		assertThat("incorrect workspaces", perms.getWorkspaces(), is(set(rwsi)));
+		assertThat("incorrect perm", perms.getUserPermission(rwsi), is(expected));
+		assertThat("incorrect world readable", perms.isWorldReadable(rwsi), is(worldReadable));
+	}
+	
+	@Test
+	public void changeMonitorFail() throws Exception {
+		try {
+			new WorkspaceChangeMonitor(null, 1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("db"));
+		}
+		try {
+			new WorkspaceChangeMonitor(MONGO_DB, 0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("pollIntervalMS must be > 0"));
+		}
+		final WorkspaceChangeMonitor mon = new WorkspaceChangeMonitor(MONGO_DB, 50).start();
+		try {
+			mon.start();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalStateException("The monitor is already started"));
+		} finally {
+			mon.stop();
+		}
+		try {
+			mon.register(null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("listener"));
+		}
+	}
+	
+	private void failResolveWorkspace(
+			final MongoWorkspaceDB db,
+			final WorkspaceIdentifier wsi,
+			final Exception expected) {
+		try {
+			db.resolveWorkspace(wsi);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
+	@Test
+	public void builderFail() throws Exception {
+		final DB db = MONGO_DB;
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final Exception npe = new NullPointerException("No arguments can be null");
+		failGetBuilder(null, bs, tfm, npe);
+		failGetBuilder(db, null, tfm, npe);
+		failGetBuilder(db, bs, null, npe);
+		
+		try {
+			MongoWorkspaceDB.getBuilder(db, bs, tfm).withObjectIDBlockSize(-1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("objectIDBlockSize must be >= 0"));
+		}
+		
+		try {
+			MongoWorkspaceDB.getBuilder(db, bs, tfm).withDocumentCacheSize(-1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("documentCacheSize must be >= 0"));
+		}
+		
+		try {
+			MongoWorkspaceDB.getBuilder(db, bs, tfm).withWorkspaceCacheSize(-1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("workspaceCacheSize must be >= 0"));
+		}
+		
+		try {
+			MongoWorkspaceDB.getBuilder(db, bs, tfm).withPermissionCacheSize(-1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("permissionCacheSize must be >= 0"));
+		}
+		
+		try {
+			MongoWorkspaceDB.getBuilder(db, bs, tfm).withPermissionCacheExpiry(0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("permissionCacheExpiryMS must be > 0"));
+		}
+		
+		try {
+			MongoWorkspaceDB.getBuilder(db, bs, tfm).withWorkspaceCacheExpiry(0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("workspaceCacheExpirySec must be > 0"));
+		}
+	}
+	
+	private void failGetBuilder(
+			final DB db,
+			final BlobStore bs,
+			final TempFilesManager tfm,
+			final Exception expected) {
+		try {
+			MongoWorkspaceDB.getBuilder(db, bs, tfm);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
+	@Test
+	public void getMostUsedTypes() throws Exception {
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(
+				MONGO_DB, mock(BlobStore.class), mock(TempFilesManager.class));
+		
+		int id = 1;
+		for (final String type: Arrays.asList("Mod.T-1.0", "Mod.T-2.0", "Mod.T-2.0",
+				"Mod.T-2.0", "Mod2.U-1.1", "Mod2.U-1.1")) {
+			MONGO_DB.getCollection("workspaceObjVersions").insert(new BasicDBObject(
+					Fields.VER_WS_ID, 1L)
+					.append(Fields.VER_ID, (long) id++)
+					.append(Fields.VER_VER, 1)
+					.append(Fields.VER_TYPE, type));
+		}
+		
+		assertThat("incorrect types", db.getMostUsedTypes(2, 10), is(Arrays.asList(
+				new AbsoluteTypeDefId(new TypeDefName("Mod.T"), 2, 0),
+				new AbsoluteTypeDefId(new TypeDefName("Mod2.U"), 1, 1))));
+		assertThat("incorrect types", db.getMostUsedTypes(5, 10), is(Arrays.asList(
+				new AbsoluteTypeDefId(new TypeDefName("Mod.T"), 2, 0),
+				new AbsoluteTypeDefId(new TypeDefName("Mod2.U"), 1, 1),
+				new AbsoluteTypeDefId(new TypeDefName("Mod.T"), 1, 0))));
+		// only the last 3 versions saved are counted
+		assertThat("incorrect types", db.getMostUsedTypes(5, 3), is(Arrays.asList(
+				new AbsoluteTypeDefId(new TypeDefName("Mod2.U"), 1, 1),
+				new AbsoluteTypeDefId(new TypeDefName("Mod.T"), 2, 0))));
+		
+		failGetMostUsedTypes(db, 0, 1, new IllegalArgumentException("limit must be > 0"));
+		failGetMostUsedTypes(db, 1, 0, new IllegalArgumentException("sampleSize must be > 0"));
+	}
+	
+	private void failGetMostUsedTypes(
+			final MongoWorkspaceDB db,
+			final int limit,
+			final int sampleSize,
+			final Exception expected) {
+		try {
+			db.getMostUsedTypes(limit, sampleSize);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
 }
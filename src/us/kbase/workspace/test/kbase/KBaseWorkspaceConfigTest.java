@@ -937,4 +937,199 @@ public class KBaseWorkspaceConfigTest {
 		assertThat("incorrect has err", kwc.hasErrors(), is(true));
 		assertThat("incorrect ignore hs", kwc.ignoreHandleService(), is(true));
 	}
+	
+	private MapBuilder<String, String> getMinimalConfig() {
+		return MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "true");
+	}
+	
+	private static final String MINIMAL_PARAM_REPORT =
+			"mongodb-host=somehost\n" +
+			"mongodb-database=somedb\n" +
+			"mongodb-type-database=typedb\n" +
+			"auth-service-url=" + AUTH_LEGACY_URL + "\n" +
+			"auth2-service-url=" + CI_SERV + "auth\n" +
+			"backend-type=GridFS\n";
+	
+	@Test
+	public void configPerformanceDefaults() throws Exception {
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(getMinimalConfig().build());
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(MT));
+		assertThat("incorrect param report", kwc.getParamReport(), is(MINIMAL_PARAM_REPORT));
+		assertThat("incorrect validation cache", kwc.getValidationCacheSize(), is(0));
+		assertThat("incorrect warmup", kwc.getTypeCacheWarmupCount(), is(0));
+		assertThat("incorrect sort threads", kwc.getParallelSortThreads(), is(0));
+		assertThat("incorrect batch saves", kwc.isBatchSaves(), is(false));
+		assertThat("incorrect id block size", kwc.getObjectIDBlockSize(), is(0));
+		assertThat("incorrect prov dedupe", kwc.isDeduplicateProvenance(), is(false));
+		assertThat("incorrect doc cache", kwc.getDocumentCacheSize(), is(0));
+		assertThat("incorrect list agg", kwc.isListObjectsAggregation(), is(false));
+		assertThat("incorrect ws cache", kwc.getWorkspaceCacheSize(), is(0));
+		assertThat("incorrect ws cache expiry", kwc.getWorkspaceCacheExpirySec(), is(0));
+		assertThat("incorrect monitor", kwc.isMonitorWorkspaceChanges(), is(false));
+		assertThat("incorrect perm cache", kwc.getPermissionCacheSize(), is(0));
+		assertThat("incorrect perm cache expiry", kwc.getPermissionCacheExpiryMS(), is(0));
+		assertThat("incorrect inc ref index", kwc.isIncomingReferenceIndex(), is(false));
+		assertThat("incorrect path cache", kwc.getReferencePathCacheSize(), is(0));
+		assertThat("incorrect path cache expiry", kwc.getReferencePathCacheExpiryMS(), is(0));
+	}
+	
+	@Test
+	public void configPerformance() throws Exception {
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(getMinimalConfig()
+				.with("validation-cache-size", "   10000   ")
+				.with("type-cache-warmup-count", "   200   ")
+				.with("parallel-sort-threads", "   8   ")
+				.with("batch-saves", "   TRUE   ")
+				.with("object-id-block-size", "   1000   ")
+				.with("deduplicate-provenance", "   true   ")
+				.with("document-cache-size", "   50000   ")
+				.with("list-objects-aggregation", "   true   ")
+				.with("workspace-cache-size", "   20000   ")
+				.with("workspace-cache-expiry-sec", "   30   ")
+				.with("monitor-workspace-changes", "   true   ")
+				.with("permission-cache-size", "   5000   ")
+				.with("permission-cache-expiry-ms", "   500   ")
+				.with("incoming-reference-index", "   true   ")
+				.with("reference-path-cache-size", "   3000   ")
+				.with("reference-path-cache-expiry-ms", "   20000   ")
+				.build());
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(MT));
+		assertThat("incorrect param report", kwc.getParamReport(), is(MINIMAL_PARAM_REPORT +
+				"validation-cache-size=10000\n" +
+				"type-cache-warmup-count=200\n" +
+				"parallel-sort-threads=8\n" +
+				"batch-saves=true\n" +
+				"object-id-block-size=1000\n" +
+				"deduplicate-provenance=true\n" +
+				"document-cache-size=50000\n" +
+				"list-objects-aggregation=true\n" +
+				"workspace-cache-size=20000\n" +
+				"workspace-cache-expiry-sec=30\n" +
+				"monitor-workspace-changes=true\n" +
+				"permission-cache-size=5000\n" +
+				"permission-cache-expiry-ms=500\n" +
+				"incoming-reference-index=true\n" +
+				"reference-path-cache-size=3000\n" +
+				"reference-path-cache-expiry-ms=20000\n"));
+		assertThat("incorrect validation cache", kwc.getValidationCacheSize(), is(10000));
+		assertThat("incorrect warmup", kwc.getTypeCacheWarmupCount(), is(200));
+		assertThat("incorrect sort threads", kwc.getParallelSortThreads(), is(8));
+		assertThat("incorrect batch saves", kwc.isBatchSaves(), is(true));
+		assertThat("incorrect id block size", kwc.getObjectIDBlockSize(), is(1000));
+		assertThat("incorrect prov dedupe", kwc.isDeduplicateProvenance(), is(true));
+		assertThat("incorrect doc cache", kwc.getDocumentCacheSize(), is(50000));
+		assertThat("incorrect list agg", kwc.isListObjectsAggregation(), is(true));
+		assertThat("incorrect ws cache", kwc.getWorkspaceCacheSize(), is(20000));
+		assertThat("incorrect ws cache expiry", kwc.getWorkspaceCacheExpirySec(), is(30));
+		assertThat("incorrect monitor", kwc.isMonitorWorkspaceChanges(), is(true));
+		assertThat("incorrect perm cache", kwc.getPermissionCacheSize(), is(5000));
+		assertThat("incorrect perm cache expiry", kwc.getPermissionCacheExpiryMS(), is(500));
+		assertThat("incorrect inc ref index", kwc.isIncomingReferenceIndex(), is(true));
+		assertThat("incorrect path cache", kwc.getReferencePathCacheSize(), is(3000));
+		assertThat("incorrect path cache expiry", kwc.getReferencePathCacheExpiryMS(), is(20000));
+	}
+	
+	@Test
+	public void configFailPerformance() throws Exception {
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(getMinimalConfig()
+				.with("validation-cache-size", "  -1  ")
+				.with("type-cache-warmup-count", "  -1  ")
+				.with("parallel-sort-threads", "  -1  ")
+				.with("batch-saves", "  yes  ")
+				.with("object-id-block-size", "  -1  ")
+				.with("deduplicate-provenance", "  1  ")
+				.with("document-cache-size", "  -1  ")
+				.with("list-objects-aggregation", "  on  ")
+				.with("workspace-cache-size", "  -1  ")
+				.with("workspace-cache-expiry-sec", "  -1  ")
+				.with("monitor-workspace-changes", "  yep  ")
+				.with("permission-cache-size", "  -1  ")
+				.with("permission-cache-expiry-ms", "  -1  ")
+				.with("incoming-reference-index", "  y  ")
+				.with("reference-path-cache-size", "  -1  ")
+				.with("reference-path-cache-expiry-ms", "  -1  ")
+				.build());
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter validation-cache-size must be >= 0: -1",
+				"Parameter type-cache-warmup-count must be >= 0: -1",
+				"Parameter parallel-sort-threads must be >= 0: -1",
+				"Parameter batch-saves must be true or false: yes",
+				"Parameter object-id-block-size must be >= 0: -1",
+				"Parameter deduplicate-provenance must be true or false: 1",
+				"Parameter document-cache-size must be >= 0: -1",
+				"Parameter list-objects-aggregation must be true or false: on",
+				"Parameter workspace-cache-size must be >= 0: -1",
+				"Parameter workspace-cache-expiry-sec must be >= 0: -1",
+				"Parameter monitor-workspace-changes must be true or false: yep",
+				"Parameter permission-cache-size must be >= 0: -1",
+				"Parameter permission-cache-expiry-ms must be >= 0: -1",
+				"Parameter incoming-reference-index must be true or false: y",
+				"Parameter reference-path-cache-size must be >= 0: -1",
+				"Parameter reference-path-cache-expiry-ms must be >= 0: -1")));
+		assertThat("incorrect validation cache", kwc.getValidationCacheSize(), is(0));
+		assertThat("incorrect warmup", kwc.getTypeCacheWarmupCount(), is(0));
+		assertThat("incorrect sort threads", kwc.getParallelSortThreads(), is(0));
+		assertThat("incorrect batch saves", kwc.isBatchSaves(), is(false));
+		assertThat("incorrect id block size", kwc.getObjectIDBlockSize(), is(0));
+		assertThat("incorrect prov dedupe", kwc.isDeduplicateProvenance(), is(false));
+		assertThat("incorrect doc cache", kwc.getDocumentCacheSize(), is(0));
+		assertThat("incorrect list agg", kwc.isListObjectsAggregation(), is(false));
+		assertThat("incorrect ws cache", kwc.getWorkspaceCacheSize(), is(0));
+		assertThat("incorrect ws cache expiry", kwc.getWorkspaceCacheExpirySec(), is(0));
+		assertThat("incorrect monitor", kwc.isMonitorWorkspaceChanges(), is(false));
+		assertThat("incorrect perm cache", kwc.getPermissionCacheSize(), is(0));
+		assertThat("incorrect perm cache expiry", kwc.getPermissionCacheExpiryMS(), is(0));
+		assertThat("incorrect inc ref index", kwc.isIncomingReferenceIndex(), is(false));
+		assertThat("incorrect path cache", kwc.getReferencePathCacheSize(), is(0));
+		assertThat("incorrect path cache expiry", kwc.getReferencePathCacheExpiryMS(), is(0));
+		
+		final KBaseWorkspaceConfig kwc2 = new KBaseWorkspaceConfig(getMinimalConfig()
+				.with("validation-cache-size", "  lots  ")
+				.with("type-cache-warmup-count", "  many  ")
+				.with("parallel-sort-threads", "  some  ")
+				.with("object-id-block-size", "  big  ")
+				.with("document-cache-size", "  huge  ")
+				.with("workspace-cache-size", "  vast  ")
+				.with("workspace-cache-expiry-sec", "  soon  ")
+				.with("permission-cache-size", "  plenty  ")
+				.with("permission-cache-expiry-ms", "  later  ")
+				.with("reference-path-cache-size", "  loads  ")
+				.with("reference-path-cache-expiry-ms", "  eventually  ")
+				.build());
+		
+		assertThat("incorrect errors", kwc2.getErrors(), is(Arrays.asList(
+				"Parameter validation-cache-size must be an integer: lots",
+				"Parameter type-cache-warmup-count must be an integer: many",
+				"Parameter parallel-sort-threads must be an integer: some",
+				"Parameter object-id-block-size must be an integer: big",
+				"Parameter document-cache-size must be an integer: huge",
+				"Parameter workspace-cache-size must be an integer: vast",
+				"Parameter workspace-cache-expiry-sec must be an integer: soon",
+				"Parameter permission-cache-size must be an integer: plenty",
+				"Parameter permission-cache-expiry-ms must be an integer: later",
+				"Parameter reference-path-cache-size must be an integer: loads",
+				"Parameter reference-path-cache-expiry-ms must be an integer: eventually")));
+		assertThat("incorrect validation cache", kwc2.getValidationCacheSize(), is(0));
+		assertThat("incorrect warmup", kwc2.getTypeCacheWarmupCount(), is(0));
+		assertThat("incorrect sort threads", kwc2.getParallelSortThreads(), is(0));
+		assertThat("incorrect id block size", kwc2.getObjectIDBlockSize(), is(0));
+		assertThat("incorrect doc cache", kwc2.getDocumentCacheSize(), is(0));
+		assertThat("incorrect ws cache", kwc2.getWorkspaceCacheSize(), is(0));
+		assertThat("incorrect ws cache expiry", kwc2.getWorkspaceCacheExpirySec(), is(0));
+		assertThat("incorrect perm cache", kwc2.getPermissionCacheSize(), is(0));
+		assertThat("incorrect perm cache expiry", kwc2.getPermissionCacheExpiryMS(), is(0));
+		assertThat("incorrect path cache", kwc2.getReferencePathCacheSize(), is(0));
+		assertThat("incorrect path cache expiry", kwc2.getReferencePathCacheExpiryMS(), is(0));
+	}
 }
@@ -0,0 +1,119 @@
+package us.kbase.workspace.test.kbase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.db.TypeDefinitionDB;
+import us.kbase.typedobj.exceptions.NoSuchModuleException;
+import us.kbase.workspace.database.WorkspaceDatabase;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+import us.kbase.workspace.kbase.TypeCacheWarmer;
+import us.kbase.workspace.kbase.TypeCacheWarmer.State;
+
+public class TypeCacheWarmerTest {
+
+	private static final AbsoluteTypeDefId T1 = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 1, 0);
+	private static final AbsoluteTypeDefId T1_LATEST = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 2, 1);
+	private static final AbsoluteTypeDefId T2 = new AbsoluteTypeDefId(
+			new TypeDefName("Mod2.Type"), 3, 0);
+
+	private void waitForCompletion(final TypeCacheWarmer w) throws Exception {
+		final long start = System.currentTimeMillis();
+		while (w.getState().equals(State.RUNNING)) {
+			if (System.currentTimeMillis() - start > 10000) {
+				fail("warm up took too long");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void warm() throws Exception {
+		final TypeDefinitionDB typeDB = mock(TypeDefinitionDB.class);
+		final WorkspaceDatabase wsdb = mock(WorkspaceDatabase.class);
+
+		when(wsdb.getMostUsedTypes(10, 100000)).thenReturn(Arrays.asList(T1, T2));
+		when(typeDB.resolveTypeDefId(new TypeDefId(new TypeDefName("Mod.Type"))))
+				.thenReturn(T1_LATEST);
+		when(typeDB.resolveTypeDefId(new TypeDefId(new TypeDefName("Mod2.Type"))))
+				.thenThrow(new NoSuchModuleException("Module Mod2 is no longer supported"));
+
+		final TypeCacheWarmer w = new TypeCacheWarmer(typeDB, wsdb, 10, 2);
+		assertThat("incorrect state", w.getState(), is(State.NOT_STARTED));
+		assertThat("incorrect total", w.getTotal(), is(0));
+
+		assertThat("incorrect start", w.start(), is(w));
+		waitForCompletion(w);
+
+		assertThat("incorrect state", w.getState(), is(State.COMPLETE));
+		assertThat("incorrect total", w.getTotal(), is(2));
+		assertThat("incorrect loaded", w.getLoaded(), is(1));
+		assertThat("incorrect failed", w.getFailed(), is(1));
+
+		verify(typeDB).getJsonSchemaDocument(T1);
+		verify(typeDB).getJsonSchemaDocument(T1_LATEST);
+		verify(typeDB).getJsonSchemaDocument(T2);
+
+		try {
+			w.start();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalStateException(
+					"The warm up has already been started"));
+		}
+	}
+
+	@Test
+	public void warmFailGetTypes() throws Exception {
+		final TypeDefinitionDB typeDB = mock(TypeDefinitionDB.class);
+		final WorkspaceDatabase wsdb = mock(WorkspaceDatabase.class);
+
+		when(wsdb.getMostUsedTypes(5, 100000)).thenThrow(new WorkspaceCommunicationException("oops"));
+
+		final TypeCacheWarmer w = new TypeCacheWarmer(typeDB, wsdb, 5, 1).start();
+		waitForCompletion(w);
+
+		assertThat("incorrect state", w.getState(), is(State.FAILED));
+		assertThat("incorrect total", w.getTotal(), is(0));
+		assertThat("incorrect loaded", w.getLoaded(), is(0));
+		assertThat("incorrect failed", w.getFailed(), is(0));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		final TypeDefinitionDB t = mock(TypeDefinitionDB.class);
+		final WorkspaceDatabase w = mock(WorkspaceDatabase.class);
+		failConstruct(null, w, 1, 1, new NullPointerException("typeDB"));
+		failConstruct(t, null, 1, 1, new NullPointerException("wsdb"));
+		failConstruct(t, w, 0, 1, new IllegalArgumentException("typeCount must be > 0"));
+		failConstruct(t, w, 1, 0, new IllegalArgumentException("threads must be > 0"));
+	}
+
+	private void failConstruct(
+			final TypeDefinitionDB typeDB,
+			final WorkspaceDatabase wsdb,
+			final int typeCount,
+			final int threads,
+			final Exception expected) {
+		try {
+			new TypeCacheWarmer(typeDB, wsdb, typeCount, threads);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package us.kbase.workspace.test.workspace;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -36,6 +37,7 @@ import us.kbase.workspace.database.WorkspaceIdentifier;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.InaccessibleObjectException;
 import us.kbase.workspace.database.exceptions.NoSuchObjectException;
+import us.kbase.workspace.database.refsearch.ReferencePathCache;
 
 public class ObjectResolverTest {
 
@@ -198,14 +200,14 @@ public class ObjectResolverTest {
 				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
 				.build());
 		when(wsdb.getObjectOutgoingReferences(
-				set(path1resws, path2resws, pathendresws), false, true, false)).thenReturn(
+				set(path1resws, path2resws), false, true, false)).thenReturn(
 				ImmutableMap.of(
 						path1resws, new ObjectReferenceSet(path1ref,
 								set(path2ref, new Reference("62/2/13")), false),
 						path2resws, new ObjectReferenceSet(path2ref,
-								set(pathendref, new Reference("42/2/13")), false),
-						pathendresws, new ObjectReferenceSet(pathendref,
-								set(new Reference("62/2/13")), false)));
+								set(pathendref, new Reference("42/2/13")), false)));
+		when(wsdb.getObjectReference(set(pathendresws))).thenReturn(
+				ImmutableMap.of(pathendresws, pathendref));
 		
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user)
 				.withObject(objpath).resolve();
@@ -223,6 +225,93 @@ public class ObjectResolverTest {
 				headref, path1ref, path2ref, pathendref)));
 	}
 
+	@Test
+	public void resolvePathObjectsSharedEntries() throws Exception {
+		final WorkspaceDatabase wsdb = mock(WorkspaceDatabase.class);
+		
+		final WorkspaceUser user = new WorkspaceUser("userfoo");
+		final WorkspaceIdentifier wsi1 = new WorkspaceIdentifier("wsfoo1");
+		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
+		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
+		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
+		final ObjectIdentifier head = new ObjectIdentifier(wsi1, "objfoo");
+		final ObjectIdentifier path1 = new ObjectIdentifier(wsi1, "objfoo2");
+		final ObjectIdentifier path2 = new ObjectIdentifier(wsi2, "objfoo");
+		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
+		final ObjectIdentifier other = new ObjectIdentifier(wsi2, "objfoo3");
+		// path2 is inside one path and at the end of another
+		final ObjectIDWithRefPath objpath1 = new ObjectIDWithRefPath(head, Arrays.asList(
+				path1, path2));
+		final ObjectIDWithRefPath objpath2 = new ObjectIDWithRefPath(head, Arrays.asList(
+				path1, path2, pathend));
+		final ObjectIDWithRefPath objpath3 = new ObjectIDWithRefPath(head, Arrays.asList(
+				path1, other));
+		
+		final ObjectIDResolvedWS headresws = new ObjectIDResolvedWS(rwsi1, "objfoo");
+		final ObjectIDResolvedWS path1resws = new ObjectIDResolvedWS(rwsi1, "objfoo2");
+		final ObjectIDResolvedWS path2resws = new ObjectIDResolvedWS(rwsi2, "objfoo");
+		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
+		final ObjectIDResolvedWS otherresws = new ObjectIDResolvedWS(rwsi2, "objfoo3");
+		final Reference headref = new Reference("3/6/3");
+		final Reference path1ref = new Reference("3/5/1");
+		final Reference path2ref = new Reference("4/8/5");
+		final Reference pathendref = new Reference("4/1/1");
+		final Reference otherref = new Reference("4/2/1");
+		
+		when(wsdb.resolveWorkspaces(set(wsi1), false)).thenReturn(ImmutableMap.of(wsi1, rwsi1));
+		when(wsdb.getPermissions(user, set(rwsi1))).thenReturn(
+				PermissionSet.getBuilder(user, new AllUsers('*'))
+				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
+				.build());
+		when(wsdb.getObjectOutgoingReferences(set(headresws), false, false, false)).thenReturn(
+				ImmutableMap.of(headresws, new ObjectReferenceSet(headref,
+						set(path1ref), false)));
+		when(wsdb.resolveWorkspaces(set(wsi1, wsi2), true)).thenReturn(ImmutableMap.of(
+				wsi1, rwsi1, wsi2, rwsi2));
+		when(wsdb.getPermissions(user, set(rwsi1, rwsi2))).thenReturn(
+				PermissionSet.getBuilder(user, new AllUsers('*'))
+				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
+				.build());
+		when(wsdb.getObjectOutgoingReferences(
+				set(path1resws, path2resws), false, true, false)).thenReturn(
+				ImmutableMap.of(
+						path1resws, new ObjectReferenceSet(path1ref, set(path2ref), false),
+						path2resws, new ObjectReferenceSet(path2ref, set(pathendref), false)));
+		when(wsdb.getObjectReference(set(pathendresws, otherresws))).thenReturn(
+				ImmutableMap.of(pathendresws, pathendref, otherresws, otherref));
+		
+		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user)
+				.withObject(objpath1).withObject(objpath2).withObject(objpath3)
+				.withIgnoreInaccessible(true).resolve();
+		
+		assertThat("incorrect object resolution", or.getObjectResolution(objpath1),
+				is(ObjectResolution.PATH));
+		assertThat("incorrect object resolution", or.getObjectResolution(objpath2),
+				is(ObjectResolution.PATH));
+		assertThat("incorrect object resolution", or.getObjectResolution(objpath3),
+				is(ObjectResolution.INACCESSIBLE));
+		assertThat("incorrect resolved object", or.getResolvedObject(objpath1),
+				is(new ObjectIDResolvedWS(rwsi2, 8, 5)));
+		assertThat("incorrect resolved object", or.getResolvedObject(objpath2),
+				is(new ObjectIDResolvedWS(rwsi2, 1, 1)));
+		assertThat("incorrect ref path", or.getReferencePath(objpath1), is(Arrays.asList(
+				headref, path1ref, path2ref)));
+		assertThat("incorrect ref path", or.getReferencePath(objpath2), is(Arrays.asList(
+				headref, path1ref, path2ref, pathendref)));
+		assertNoReferencePath(or, objpath3);
+		
+		// one query for the references inside the paths and one for the ends of the paths
+		assertThat("incorrect outgoing reference queries",
+				countInvocations(wsdb, "getObjectOutgoingReferences",
+						Arrays.asList(set(path1resws, path2resws), false, true, false)), is(1));
+		assertThat("incorrect reference queries",
+				countInvocations(wsdb, "getObjectReference",
+						Arrays.asList(set(pathendresws, otherresws))), is(1));
+		assertThat("incorrect outgoing reference queries",
+				mockingDetails(wsdb).getInvocations().stream().filter(i -> i.getMethod()
+						.getName().equals("getObjectOutgoingReferences")).count(), is(2L));
+	}
+
 	@Test
 	public void resolvePathObjectFailUnreadable() throws Exception {
 		final WorkspaceDatabase wsdb = mock(WorkspaceDatabase.class);
@@ -402,14 +491,14 @@ public class ObjectResolverTest {
 				PermissionSet.getBuilder(user, new AllUsers('*'))
 				.build());
 		when(wsdb.getObjectOutgoingReferences(
-				set(path1resws, path2resws, pathendresws), false, true, false)).thenReturn(
+				set(path1resws, path2resws), false, true, false)).thenReturn(
 				ImmutableMap.of(
 						path1resws, new ObjectReferenceSet(path1ref,
 								set(path2ref, new Reference("62/2/13")), false),
 						path2resws, new ObjectReferenceSet(path2ref,
-								set(pathendref, new Reference("42/2/13")), false),
-						pathendresws, new ObjectReferenceSet(pathendref,
-								set(new Reference("62/2/13")), false)));
+								set(pathendref, new Reference("42/2/13")), false)));
+		when(wsdb.getObjectReference(set(pathendresws))).thenReturn(
+				ImmutableMap.of(pathendresws, pathendref));
 		
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user)
 				.withObject(objpath).withAsAdmin(true).resolve();
@@ -515,10 +604,8 @@ public class ObjectResolverTest {
 		final Reference pathendref = new Reference("4/1/1");
 		final ObjectIDResolvedWS pathendresfinal = new ObjectIDResolvedWS(rwsi2, 1, 1);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -551,7 +638,6 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
@@ -559,10 +645,8 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -593,7 +677,6 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
@@ -601,10 +684,8 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -647,10 +728,8 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -689,10 +768,8 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -737,9 +814,6 @@ public class ObjectResolverTest {
 		final Reference pathendref = new Reference("4/1/1");
 		final ObjectIDResolvedWS pathendresfinal = new ObjectIDResolvedWS(rwsi2, 1, 1);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -778,10 +852,6 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -821,10 +891,6 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -877,7 +943,11 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(3)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(3), rwsi1));
+		when(wsdb.getPermissions(user, set(rwsi1))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
 				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
 				.build());
@@ -921,6 +991,14 @@ public class ObjectResolverTest {
 		assertThat("incorrect pathless resolved objects", or.getResolvedObjects(false), is(set()));
 		assertThat("incorrec ref path", or.getReferencePath(objpath), is(Arrays.asList(
 				headref, path1ref, path2ref, pathendref)));
+		
+		// readability is only checked for workspaces encountered in the search, once each
+		assertMethodInvoked(wsdb, "resolveWorkspaces",
+				Arrays.asList(set(new WorkspaceIdentifier(64)), true));
+		assertMethodInvoked(wsdb, "resolveWorkspaces",
+				Arrays.asList(set(new WorkspaceIdentifier(67)), true));
+		assertMethodNotInvoked(wsdb, "getPermissions",
+				Arrays.asList(user, Permission.READ, false));
 	}
 
 	@Test
@@ -932,10 +1010,6 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
-
 		final Builder or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath);
 		
 		final InaccessibleObjectException e = (InaccessibleObjectException) failResolve(
@@ -954,10 +1028,6 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
-
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
 				.withIgnoreInaccessible(true).resolve();
 		
@@ -979,7 +1049,6 @@ public class ObjectResolverTest {
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
-		final ResolvedWorkspaceID rwsireadable = new ResolvedWorkspaceID(5, "wsfoo3", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
@@ -993,10 +1062,8 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsireadable, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1039,7 +1106,6 @@ public class ObjectResolverTest {
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
-		final ResolvedWorkspaceID rwsireadable = new ResolvedWorkspaceID(5, "wsfoo3", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
@@ -1053,10 +1119,8 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsireadable, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1118,7 +1182,11 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(3)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(3), rwsi1));
+		when(wsdb.getPermissions(user, set(rwsi1))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
 				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
 				.build());
@@ -1181,7 +1249,11 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(3)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(3), rwsi1));
+		when(wsdb.getPermissions(user, set(rwsi1))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
 				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
 				.build());
@@ -1234,17 +1306,12 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1269,17 +1336,12 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1309,14 +1371,9 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final Builder or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath);
@@ -1337,14 +1394,9 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
@@ -1386,9 +1438,6 @@ public class ObjectResolverTest {
 		final Reference garbageref3 = new Reference("67/13/1");
 		
 		//set up
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1460,9 +1509,6 @@ public class ObjectResolverTest {
 		final Reference garbageref3 = new Reference("67/13/1");
 		
 		//set up
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1531,9 +1577,6 @@ public class ObjectResolverTest {
 		final Reference garbageref3 = new Reference("67/13/1");
 		
 		//set up
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1591,17 +1634,12 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1627,17 +1665,12 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1667,14 +1700,9 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
@@ -1700,14 +1728,9 @@ public class ObjectResolverTest {
 		
 		final WorkspaceUser user = new WorkspaceUser("userfoo");
 		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
-		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final Builder or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
@@ -1739,10 +1762,8 @@ public class ObjectResolverTest {
 		final Reference topref = new Reference("3/27/1");
 		final ObjectIDResolvedWS objres = new ObjectIDResolvedWS(rwsi, 24, 1);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(3)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(3), rwsi));
 		when(wsdb.resolveWorkspaces(set(wsi), true)).thenReturn(ImmutableMap.of(wsi, rwsi));
 		when(wsdb.getPermissions(user, set(rwsi))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1771,6 +1792,157 @@ public class ObjectResolverTest {
 				topref, ref)));
 	}
 	
+	@Test
+	public void searchCachedPath() throws Exception {
+		final WorkspaceDatabase wsdb = mock(WorkspaceDatabase.class);
+		final WorkspaceUser user = new WorkspaceUser("userfoo");
+		final ReferencePathCache cache = new ReferencePathCache(100, 60000);
+		final ObjectIDWithRefPath objpath = mockCachedSearch(wsdb, user, true);
+		final Reference headref = new Reference("3/6/3");
+		final Reference pathendref = new Reference("4/1/1");
+		
+		for (int i = 0; i < 2; i++) {
+			final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
+					.withReferencePathCache(cache).resolve();
+			
+			assertThat("incorrect object resolution", or.getObjectResolution(objpath),
+					is(ObjectResolution.PATH));
+			assertThat("incorrect resolved object", or.getResolvedObject(objpath),
+					is(new ObjectIDResolvedWS(
+							new ResolvedWorkspaceID(4, "wsfoo2", false, false), 1, 1)));
+			assertThat("incorrect ref path", or.getReferencePath(objpath),
+					is(Arrays.asList(headref, pathendref)));
+		}
+		assertThat("incorrect cached path", cache.getPath(user, pathendref),
+				is(Arrays.asList(headref, pathendref)));
+		// the second resolution uses the cached path rather than searching
+		assertThat("incorrect search count",
+				countInvocations(wsdb, "getObjectIncomingReferences",
+						Arrays.asList(set(pathendref))), is(1));
+	}
+	
+	@Test
+	public void searchCachedPathHeadDeleted() throws Exception {
+		final WorkspaceDatabase wsdb = mock(WorkspaceDatabase.class);
+		final WorkspaceUser user = new WorkspaceUser("userfoo");
+		final ReferencePathCache cache = new ReferencePathCache(100, 60000);
+		final ObjectIDWithRefPath objpath = mockCachedSearch(wsdb, user, true);
+		final Reference headref = new Reference("3/6/3");
+		final Reference pathendref = new Reference("4/1/1");
+		
+		ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
+				.withReferencePathCache(cache).resolve();
+		
+		when(wsdb.getObjectExistsRef(set(headref))).thenReturn(ImmutableMap.of(headref, false));
+		
+		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
+				.withReferencePathCache(cache).withIgnoreInaccessible(true).resolve();
+		
+		assertThat("incorrect object resolution", or.getObjectResolution(objpath),
+				is(ObjectResolution.INACCESSIBLE));
+		assertNoReferencePath(or, objpath);
+		assertThat("incorrect cached path", cache.getPath(user, pathendref), is(nullValue()));
+		assertThat("incorrect cached no path", cache.isNoPath(user, pathendref), is(true));
+		assertThat("incorrect search count",
+				countInvocations(wsdb, "getObjectIncomingReferences",
+						Arrays.asList(set(pathendref))), is(2));
+	}
+	
+	@Test
+	public void searchCachedNoPath() throws Exception {
+		final WorkspaceDatabase wsdb = mock(WorkspaceDatabase.class);
+		final WorkspaceUser user = new WorkspaceUser("userfoo");
+		final ReferencePathCache cache = new ReferencePathCache(100, 60000);
+		final ObjectIDWithRefPath objpath = mockCachedSearch(wsdb, user, false);
+		final Reference headref = new Reference("3/6/3");
+		final Reference pathendref = new Reference("4/1/1");
+		final InaccessibleObjectException expected = new InaccessibleObjectException(
+				"The latest version of object objfoo2 in workspace wsfoo2 is not accessible " +
+				"to user userfoo", objpath);
+		
+		for (int i = 0; i < 2; i++) {
+			final InaccessibleObjectException e = (InaccessibleObjectException) failResolve(
+					ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
+							.withReferencePathCache(cache),
+					expected);
+			assertThat("incorrect inaccessible object", e.getInaccessibleObject(), is(objpath));
+		}
+		assertThat("incorrect cached no path", cache.isNoPath(user, pathendref), is(true));
+		assertThat("incorrect search count",
+				countInvocations(wsdb, "getObjectIncomingReferences",
+						Arrays.asList(set(pathendref))), is(1));
+		
+		// the user gains access to the workspace containing the head of the path
+		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
+		when(wsdb.getPermissions(user, set(rwsi1))).thenReturn(
+				PermissionSet.getBuilder(user, new AllUsers('*'))
+				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
+				.build());
+		cache.invalidateNoPath(set(user));
+		
+		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
+				.withReferencePathCache(cache).resolve();
+		
+		assertThat("incorrect object resolution", or.getObjectResolution(objpath),
+				is(ObjectResolution.PATH));
+		assertThat("incorrect ref path", or.getReferencePath(objpath),
+				is(Arrays.asList(headref, pathendref)));
+		assertThat("incorrect search count",
+				countInvocations(wsdb, "getObjectIncomingReferences",
+						Arrays.asList(set(pathendref))), is(2));
+	}
+	
+	// mocks a search from 4/1/1 in an unreadable workspace to 3/6/3 in workspace 3
+	private ObjectIDWithRefPath mockCachedSearch(
+			final WorkspaceDatabase wsdb,
+			final WorkspaceUser user,
+			final boolean headReadable)
+			throws Exception {
+		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("wsfoo2");
+		final ResolvedWorkspaceID rwsi1 = new ResolvedWorkspaceID(3, "wsfoo", false, false);
+		final ResolvedWorkspaceID rwsi2 = new ResolvedWorkspaceID(4, "wsfoo2", false, false);
+		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
+		final Reference headref = new Reference("3/6/3");
+		final Reference pathendref = new Reference("4/1/1");
+		
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(4)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(4), rwsi2));
+		when(wsdb.resolveWorkspaces(set(new WorkspaceIdentifier(3)), true)).thenReturn(
+				ImmutableMap.of(new WorkspaceIdentifier(3), rwsi1));
+		final PermissionSet.Builder perms = PermissionSet.getBuilder(user, new AllUsers('*'));
+		if (headReadable) {
+			perms.withWorkspace(rwsi1, Permission.READ, Permission.NONE);
+		}
+		when(wsdb.getPermissions(user, set(rwsi1))).thenReturn(perms.build());
+		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
+		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
+				PermissionSet.getBuilder(user, new AllUsers('*'))
+				.build());
+		when(wsdb.getObjectReference(set(pathendresws))).thenReturn(ImmutableMap.of(
+				pathendresws, pathendref));
+		when(wsdb.getObjectExistsRef(set(pathendref))).thenReturn(
+				ImmutableMap.of(pathendref, true));
+		when(wsdb.getObjectIncomingReferences(set(pathendref))).thenReturn(ImmutableMap.of(
+				pathendref, new ObjectReferenceSet(pathendref, set(headref), true)));
+		when(wsdb.getObjectExistsRef(set(headref))).thenReturn(
+				ImmutableMap.of(headref, true));
+		return new ObjectIDWithRefPath(new ObjectIdentifier(wsi2, "objfoo2"));
+	}
+	
+	private int countInvocations(
+			final WorkspaceDatabase wsdb,
+			final String methodname,
+			final List<?> args) {
+		int count = 0;
+		for (final Invocation inv: mockingDetails(wsdb).getInvocations()) {
+			if (inv.getMethod().getName().equals(methodname) &&
+					Arrays.equals(inv.getArguments(), args.toArray())) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
 	private void assertMethodInvoked(
 			final WorkspaceDatabase wsdb,
 			final String methodname,
@@ -1785,6 +1957,19 @@ public class ObjectResolverTest {
 				"invocation of method %s with arguments %s not found", methodname, args));
 	}
 	
+	private void assertMethodNotInvoked(
+			final WorkspaceDatabase wsdb,
+			final String methodname,
+			final List<?> args) {
+		try {
+			assertMethodInvoked(wsdb, methodname, args);
+		} catch (TestException e) {
+			return;
+		}
+		throw new TestException(String.format(
+				"unexpected invocation of method %s with arguments %s", methodname, args));
+	}
+	
 	private Exception failResolve(final Builder or, final Exception e) {
 		try {
 			or.resolve();
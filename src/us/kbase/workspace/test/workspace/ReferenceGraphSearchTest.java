@@ -4,6 +4,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,6 +29,7 @@ public class ReferenceGraphSearchTest {
 			ReferenceGraphTopologyProvider {
 
 		private final List<Map<Reference, Map<Reference, Boolean>>> responses;
+		private final List<Set<Reference>> queries = new LinkedList<>();
 		private int responseCount = 0;
 
 		public TestReferenceGraphTopologyProvider(
@@ -39,6 +41,7 @@ public class ReferenceGraphSearchTest {
 		public Map<Reference, Map<Reference, Boolean>> getAssociatedReferences(
 				final Set<Reference> sourceRefs)
 				throws ReferenceProviderException {
+			queries.add(sourceRefs);
 			final Map<Reference, Map<Reference, Boolean>> resp = responses.get(responseCount);
 			responseCount++;
 			return resp;
@@ -95,6 +98,7 @@ public class ReferenceGraphSearchTest {
 				new TestReferenceGraphTopologyProvider(responses), 5, false);
 		
 		assertThat("impossible path found", graph.isPathFound(root), is(false));
+		assertThat("incorrect search failed", graph.isSearchFailed(root), is(true));
 		try {
 			graph.getPath(root);
 			fail("Got bad path");
@@ -102,4 +106,77 @@ public class ReferenceGraphSearchTest {
 			assertThat("incorrect exception message", e.getMessage(), is("No path for ref 1/1/1"));
 		}
 	}
+	
+	@Test
+	public void maximumSearchSizeExceeded() throws Exception {
+		final Reference root = new Reference(1, 1, 1);
+		final List<Map<Reference, Map<Reference, Boolean>>> responses = new LinkedList<>();
+		responses.add(new HashMap<Reference, Map<Reference, Boolean>>());
+		responses.get(0).put(root, adjacent(new Reference(2, 1, 1), false));
+		final ReferenceGraphSearch graph = new ReferenceGraphSearch(Sets.newHashSet(root),
+				new TestReferenceGraphTopologyProvider(responses), 1, false);
+		
+		// a path may exist beyond the references searched, so the search hasn't failed
+		assertThat("impossible path found", graph.isPathFound(root), is(false));
+		assertThat("incorrect search failed", graph.isSearchFailed(root), is(false));
+	}
+	
+	private Map<Reference, Boolean> adjacent(final Reference ref, final boolean terminal) {
+		final Map<Reference, Boolean> ret = new HashMap<>();
+		ret.put(ref, terminal);
+		return ret;
+	}
+	
+	@Test
+	public void overlappingSearches() throws Exception {
+		final Reference root1 = new Reference(1, 1, 1);
+		final Reference root2 = new Reference(1, 2, 1);
+		final Reference shared = new Reference(2, 1, 1);
+		final Reference term = new Reference(3, 1, 1);
+		final List<Map<Reference, Map<Reference, Boolean>>> responses = new LinkedList<>();
+		responses.add(new HashMap<Reference, Map<Reference, Boolean>>());
+		responses.get(0).put(root1, adjacent(shared, false));
+		responses.get(0).put(root2, adjacent(shared, false));
+		responses.add(new HashMap<Reference, Map<Reference, Boolean>>());
+		responses.get(1).put(shared, adjacent(term, true));
+		final TestReferenceGraphTopologyProvider provider =
+				new TestReferenceGraphTopologyProvider(responses);
+		final ReferenceGraphSearch graph = new ReferenceGraphSearch(
+				Sets.newHashSet(root1, root2), provider, 5, true);
+		
+		// the shared reference is only fetched once
+		assertThat("incorrect queries", provider.queries, is(Arrays.asList(
+				Sets.newHashSet(root1, root2), Sets.newHashSet(shared))));
+		assertThat("incorrect path", graph.getPath(root1),
+				is(Arrays.asList(term, shared, root1)));
+		assertThat("incorrect path", graph.getPath(root2),
+				is(Arrays.asList(term, shared, root2)));
+		assertThat("incorrect search failed", graph.isSearchFailed(root1), is(false));
+	}
+	
+	@Test
+	public void searchJoinsCompletedSearch() throws Exception {
+		final Reference root1 = new Reference(1, 1, 1);
+		final Reference root2 = new Reference(1, 2, 1);
+		final Reference ref1 = new Reference(2, 1, 1);
+		final Reference ref2 = new Reference(2, 2, 1);
+		final Reference term = new Reference(3, 1, 1);
+		final List<Map<Reference, Map<Reference, Boolean>>> responses = new LinkedList<>();
+		responses.add(new HashMap<Reference, Map<Reference, Boolean>>());
+		responses.get(0).put(root1, adjacent(ref1, false));
+		responses.get(0).put(root2, adjacent(ref2, false));
+		responses.add(new HashMap<Reference, Map<Reference, Boolean>>());
+		responses.get(1).put(ref1, adjacent(term, true));
+		responses.get(1).put(ref2, adjacent(ref1, false));
+		final TestReferenceGraphTopologyProvider provider =
+				new TestReferenceGraphTopologyProvider(responses);
+		final ReferenceGraphSearch graph = new ReferenceGraphSearch(
+				Sets.newHashSet(root1, root2), provider, 6, true);
+		
+		assertThat("incorrect query count", provider.queries.size(), is(2));
+		assertThat("incorrect path", graph.getPath(root1),
+				is(Arrays.asList(term, ref1, root1)));
+		assertThat("incorrect path", graph.getPath(root2),
+				is(Arrays.asList(term, ref1, ref2, root2)));
+	}
 }
@@ -0,0 +1,151 @@
+package us.kbase.workspace.test.workspace;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static us.kbase.common.test.TestCommon.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.refsearch.ReferencePathCache;
+
+public class ReferencePathCacheTest {
+
+	private static final WorkspaceUser U1 = new WorkspaceUser("u1");
+	private static final WorkspaceUser U2 = new WorkspaceUser("u2");
+	private static final Reference HEAD = new Reference(1, 1, 1);
+	private static final Reference MID = new Reference(2, 1, 1);
+	private static final Reference TARGET = new Reference(3, 1, 1);
+	private static final Reference TARGET2 = new Reference(3, 2, 1);
+
+	@Test
+	public void putAndGet() throws Exception {
+		final ReferencePathCache c = new ReferencePathCache(10, 60000);
+		final List<Reference> path = new ArrayList<>(Arrays.asList(HEAD, MID, TARGET));
+		c.putPath(U1, path);
+		c.putNoPath(U1, TARGET2);
+		c.putNoPath(null, TARGET);
+		path.clear(); // check the path was copied
+
+		assertThat("incorrect path", c.getPath(U1, TARGET), is(Arrays.asList(HEAD, MID, TARGET)));
+		assertThat("incorrect no path", c.isNoPath(U1, TARGET), is(false));
+		assertThat("incorrect path", c.getPath(U1, TARGET2), is(nullValue()));
+		assertThat("incorrect no path", c.isNoPath(U1, TARGET2), is(true));
+		assertThat("incorrect path", c.getPath(null, TARGET), is(nullValue()));
+		assertThat("incorrect no path", c.isNoPath(null, TARGET), is(true));
+		assertThat("incorrect path", c.getPath(U2, TARGET), is(nullValue()));
+		assertThat("incorrect no path", c.isNoPath(U2, TARGET), is(false));
+		assertThat("incorrect hits", c.getStats().hitCount(), is(6L));
+
+		try {
+			c.getPath(U1, TARGET).add(HEAD);
+			fail("expected exception");
+		} catch (UnsupportedOperationException e) {
+			// pass
+		}
+	}
+
+	@Test
+	public void remove() throws Exception {
+		final ReferencePathCache c = new ReferencePathCache(10, 60000);
+		c.putPath(U1, Arrays.asList(HEAD, TARGET));
+		c.putPath(U2, Arrays.asList(HEAD, TARGET));
+
+		c.remove(U1, TARGET);
+
+		assertThat("incorrect path", c.getPath(U1, TARGET), is(nullValue()));
+		assertThat("incorrect path", c.getPath(U2, TARGET), is(Arrays.asList(HEAD, TARGET)));
+	}
+
+	@Test
+	public void invalidateNoPathForUsers() throws Exception {
+		final ReferencePathCache c = new ReferencePathCache(10, 60000);
+		c.putPath(U1, Arrays.asList(HEAD, TARGET));
+		c.putNoPath(U1, TARGET2);
+		c.putNoPath(U2, TARGET2);
+		c.putNoPath(null, TARGET2);
+
+		c.invalidateNoPath(set(U1));
+
+		assertThat("incorrect path", c.getPath(U1, TARGET), is(Arrays.asList(HEAD, TARGET)));
+		assertThat("incorrect no path", c.isNoPath(U1, TARGET2), is(false));
+		assertThat("incorrect no path", c.isNoPath(U2, TARGET2), is(true));
+		assertThat("incorrect no path", c.isNoPath(null, TARGET2), is(true));
+	}
+
+	@Test
+	public void invalidateNoPath() throws Exception {
+		final ReferencePathCache c = new ReferencePathCache(10, 60000);
+		c.putPath(U1, Arrays.asList(HEAD, TARGET));
+		c.putNoPath(U1, TARGET2);
+		c.putNoPath(null, TARGET2);
+
+		c.invalidateNoPath();
+
+		assertThat("incorrect path", c.getPath(U1, TARGET), is(Arrays.asList(HEAD, TARGET)));
+		assertThat("incorrect no path", c.isNoPath(U1, TARGET2), is(false));
+		assertThat("incorrect no path", c.isNoPath(null, TARGET2), is(false));
+	}
+
+	@Test
+	public void expire() throws Exception {
+		final ReferencePathCache c = new ReferencePathCache(10, 50);
+		c.putPath(U1, Arrays.asList(HEAD, TARGET));
+		c.putNoPath(U1, TARGET2);
+
+		Thread.sleep(100);
+
+		assertThat("incorrect path", c.getPath(U1, TARGET), is(nullValue()));
+		assertThat("incorrect no path", c.isNoPath(U1, TARGET2), is(false));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0, 1, new IllegalArgumentException("maximumSize must be > 0"));
+		failConstruct(1, 0, new IllegalArgumentException("expiryMS must be > 0"));
+	}
+
+	private void failConstruct(final int size, final int expiry, final Exception expected) {
+		try {
+			new ReferencePathCache(size, expiry);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void putFail() throws Exception {
+		final ReferencePathCache c = new ReferencePathCache(10, 60000);
+		failPutPath(c, null, new NullPointerException("path"));
+		failPutPath(c, Collections.emptyList(),
+				new IllegalArgumentException("path cannot be empty"));
+		try {
+			c.putNoPath(U1, null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("target"));
+		}
+	}
+
+	private void failPutPath(
+			final ReferencePathCache c,
+			final List<Reference> path,
+			final Exception expected) {
+		try {
+			c.putPath(U1, path);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -28,6 +28,20 @@ public class ReferenceTest {
 		assertThat("to str incorrect", r.toString(), is("4/5/6"));
 	}
 	
+	@Test
+	public void mongoRefNonCanonicalAndMax() throws Exception {
+		Reference r = new Reference("01/002/03");
+		assertThat("ws id incorrect", r.getWorkspaceID(), is(1L));
+		assertThat("obj id incorrect", r.getObjectID(), is(2L));
+		assertThat("ver incorrect", r.getVersion(), is(3));
+		assertThat("str id incorrect", r.getId(), is("1/2/3"));
+		
+		r = new Reference("9223372036854775807/9223372036854775807/2147483647");
+		assertThat("ws id incorrect", r.getWorkspaceID(), is(Long.MAX_VALUE));
+		assertThat("obj id incorrect", r.getObjectID(), is(Long.MAX_VALUE));
+		assertThat("ver incorrect", r.getVersion(), is(Integer.MAX_VALUE));
+	}
+	
 	@Test
 	public void failRefStringConst() throws Exception {
 		failMakeRef(null, "reference cannot be null or the empty string");
@@ -39,6 +53,8 @@ public class ReferenceTest {
 		failMakeRef("1/foo/2", "ref 1/foo/2 is not an absolute reference");
 		failMakeRef("1/1/foo", "Unable to parse version portion of object reference 1/1/foo to an integer");
 		failMakeRef("1/2/3/4", "Illegal number of separators / in object reference 1/2/3/4");
+		failMakeRef("1/2/2147483648", "Unable to parse version portion of object reference " +
+				"1/2/2147483648 to an integer");
 	}
 	
 	@Test
@@ -8,6 +8,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
 import java.io.StringReader;
@@ -28,6 +29,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
@@ -6907,6 +6909,207 @@ public class WorkspaceTest extends WorkspaceTester {
 		}
 	}
 
+	@Test
+	public void listObjectsStartAfter() throws Exception {
+		/* test paging through list objects results by passing the last object of the previous
+		 * page as the start after reference.
+		 */
+		WorkspaceUser user = new WorkspaceUser("u");
+		WorkspaceIdentifier wsi1 = new WorkspaceIdentifier("startafter1");
+		final long wsid1 = ws.createWorkspace(user, wsi1.getName(), false, null, null).getId();
+		WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("startafter2");
+		final long wsid2 = ws.createWorkspace(user, wsi2.getName(), false, null, null).getId();
+		final Provenance p = new Provenance(user);
+		final Map<String, String> meta = ImmutableMap.of("foo", "bar");
+
+		// 2 objects with 2 versions in each workspace
+		for (final WorkspaceIdentifier wsi: Arrays.asList(wsi1, wsi2)) {
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "o1", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "o2", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "o1", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "o2", p);
+		}
+
+		final List<WorkspaceIdentifier> wsis = Arrays.asList(wsi1, wsi2);
+
+		// latest versions only
+		assertStartAfter(new ListObjectsParameters(user, wsis).withLimit(3), null,
+				ref(wsid1, 1, 2), ref(wsid1, 2, 2), ref(wsid2, 1, 2));
+		assertStartAfter(new ListObjectsParameters(user, wsis).withLimit(3), ref(wsid1, 2, 2),
+				ref(wsid2, 1, 2), ref(wsid2, 2, 2));
+		assertStartAfter(new ListObjectsParameters(user, wsis).withLimit(3), ref(wsid2, 2, 2));
+		// start after a reference that is not in the listing
+		assertStartAfter(new ListObjectsParameters(user, wsis), ref(wsid1, 1, 1),
+				ref(wsid1, 2, 2), ref(wsid2, 1, 2), ref(wsid2, 2, 2));
+		assertStartAfter(new ListObjectsParameters(user, wsis), ref(wsid1, 100, 1),
+				ref(wsid2, 1, 2), ref(wsid2, 2, 2));
+
+		// all versions
+		assertStartAfter(new ListObjectsParameters(user, wsis).withShowAllVersions(true)
+				.withLimit(3), ref(wsid1, 1, 2),
+				ref(wsid1, 1, 1), ref(wsid1, 2, 2), ref(wsid1, 2, 1));
+		assertStartAfter(new ListObjectsParameters(user, wsis).withShowAllVersions(true)
+				.withLimit(3), ref(wsid1, 2, 1),
+				ref(wsid2, 1, 2), ref(wsid2, 1, 1), ref(wsid2, 2, 2));
+		assertStartAfter(new ListObjectsParameters(user, wsis).withShowAllVersions(true)
+				.withLimit(3), ref(wsid2, 2, 2),
+				ref(wsid2, 2, 1));
+
+		// with object ID filters
+		assertStartAfter(new ListObjectsParameters(user, wsis).withMinObjectID(2L)
+				.withShowAllVersions(true), ref(wsid1, 2, 2),
+				ref(wsid1, 2, 1), ref(wsid2, 2, 2), ref(wsid2, 2, 1));
+
+		// incompatible filters
+		final Reference r = ref(wsid1, 1, 1);
+		failListObjectsStartAfter(new ListObjectsParameters(user, SAFE_TYPE1).withStartAfter(r));
+		failListObjectsStartAfter(new ListObjectsParameters(user, wsis)
+				.withSavers(Arrays.asList(user)).withStartAfter(r));
+		failListObjectsStartAfter(new ListObjectsParameters(user, wsis)
+				.withMetadata(new WorkspaceUserMetadata(meta)).withStartAfter(r));
+		failListObjectsStartAfter(new ListObjectsParameters(user, wsis)
+				.withAfter(new Date(0)).withStartAfter(r));
+		failListObjectsStartAfter(new ListObjectsParameters(user, wsis)
+				.withBefore(new Date()).withStartAfter(r));
+	}
+
+	@Test
+	public void listObjectsWithAggregation() throws Exception {
+		/* test that filtering object listings with an aggregation pipeline returns the same
+		 * results as filtering in memory. The pipeline's $lookup needs MongoDB 3.6+.
+		 */
+		final int[] mongoVer = getMongoDBVersion();
+		assumeTrue("MongoDB 3.6+ is required for the list objects aggregation pipeline",
+				mongoVer[0] > 3 || (mongoVer[0] == 3 && mongoVer[1] >= 6));
+		
+		final WorkspaceUser user = new WorkspaceUser("listAggUser");
+		final WorkspaceUser user2 = new WorkspaceUser("listAggUser2");
+		final WorkspaceIdentifier wsi1 = new WorkspaceIdentifier("listAgg1");
+		final WorkspaceIdentifier wsi2 = new WorkspaceIdentifier("listAgg2");
+		final WorkspaceIdentifier readable = new WorkspaceIdentifier("listAggRead");
+		final WorkspaceIdentifier wsdel = new WorkspaceIdentifier("listAggDel");
+		ws.createWorkspace(user, wsi1.getName(), false, null, null);
+		ws.createWorkspace(user, wsi2.getName(), false, null, null);
+		ws.createWorkspace(user2, readable.getName(), false, null, null);
+		ws.setPermissions(user2, readable, Arrays.asList(user), Permission.READ);
+		ws.createWorkspace(user, wsdel.getName(), false, null, null);
+		final Provenance p = new Provenance(user);
+		final Map<String, String> meta = ImmutableMap.of("foo", "bar");
+		
+		for (final WorkspaceIdentifier wsi: Arrays.asList(wsi1, wsi2, wsdel)) {
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "std", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "versions", p);
+			saveObject(user, wsi, MT_MAP, MT_MAP, SAFE_TYPE1_10, "versions", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1_20, "versions", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "hidden", p, true);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "hidden", p, true);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "deleted", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE1, "deleted", p);
+			saveObject(user, wsi, meta, MT_MAP, SAFE_TYPE2, "hiddendeleted", p, true);
+			ws.setObjectsDeleted(user, Arrays.asList(
+					new ObjectIdentifier(wsi, "deleted"),
+					new ObjectIdentifier(wsi, "hiddendeleted")),
+					true);
+		}
+		saveObject(user2, readable, meta, MT_MAP, SAFE_TYPE1, "read", p);
+		saveObject(user2, readable, meta, MT_MAP, SAFE_TYPE1, "readdeleted", p);
+		ws.setObjectsDeleted(user2, Arrays.asList(new ObjectIdentifier(readable, "readdeleted")),
+				true);
+		ws.setWorkspaceDeleted(user, wsdel, true);
+		
+		final long wsid1 = ws.getWorkspaceInformation(user, wsi1).getId();
+		// the deleted workspace can't be listed explicitly, but is seen in the type listings
+		final List<WorkspaceIdentifier> wsis = Arrays.asList(wsi1, wsi2, readable);
+		
+		for (final boolean hidden: Arrays.asList(false, true)) {
+			for (final boolean deleted: Arrays.asList(false, true)) {
+				for (final boolean onlyDeleted: Arrays.asList(false, true)) {
+					for (final boolean allVers: Arrays.asList(false, true)) {
+						assertAggregationCorrect(() -> new ListObjectsParameters(user, wsis)
+								.withShowHidden(hidden)
+								.withShowDeleted(deleted)
+								.withShowOnlyDeleted(onlyDeleted)
+								.withShowAllVersions(allVers)
+								.withIncludeMetaData(true));
+						// version filters
+						assertAggregationCorrect(() -> new ListObjectsParameters(user, wsis)
+								.withShowHidden(hidden)
+								.withShowDeleted(deleted)
+								.withShowOnlyDeleted(onlyDeleted)
+								.withShowAllVersions(allVers)
+								.withMetadata(new WorkspaceUserMetadata(meta))
+								.withSavers(Arrays.asList(user2)));
+						assertAggregationCorrect(() -> new ListObjectsParameters(
+								user, wsis, SAFE_TYPE1)
+								.withShowHidden(hidden)
+								.withShowDeleted(deleted)
+								.withShowOnlyDeleted(onlyDeleted)
+								.withShowAllVersions(allVers)
+								.withMetadata(new WorkspaceUserMetadata(meta)));
+						assertAggregationCorrect(() -> new ListObjectsParameters(user, wsis)
+								.withShowHidden(hidden)
+								.withShowDeleted(deleted)
+								.withShowOnlyDeleted(onlyDeleted)
+								.withShowAllVersions(allVers)
+								.withMinObjectID(2L)
+								.withMaxObjectID(4L)
+								.withLimit(3));
+						assertAggregationCorrect(() -> new ListObjectsParameters(user, wsis)
+								.withShowHidden(hidden)
+								.withShowDeleted(deleted)
+								.withShowOnlyDeleted(onlyDeleted)
+								.withShowAllVersions(allVers)
+								.withStartAfter(ref(wsid1, 2, 2))
+								.withLimit(4));
+					}
+				}
+			}
+		}
+		// type and permission based listings across all workspaces
+		assertAggregationCorrect(() -> new ListObjectsParameters(user, SAFE_TYPE1)
+				.withShowHidden(true).withShowDeleted(true).withShowAllVersions(true));
+		assertAggregationCorrect(() -> new ListObjectsParameters(user, SAFE_TYPE1)
+				.withShowOnlyDeleted(true));
+		assertAggregationCorrect(() -> new ListObjectsParameters(user, SAFE_TYPE1)
+				.withMinimumPermission(Permission.WRITE).withShowDeleted(true));
+	}
+	
+	private void assertAggregationCorrect(
+			final Supplier<ListObjectsParameters> params)
+			throws Exception {
+		// the parameters are mutable, so build a fresh copy for each listing
+		final List<ObjectInformation> expected = ws.listObjects(params.get());
+		assertThat("incorrect aggregation listing", aggregationWS.listObjects(params.get()),
+				is(expected));
+	}
+
+	private Reference ref(final long wsid, final long objid, final int ver) {
+		return new Reference(wsid, objid, ver);
+	}
+
+	private void assertStartAfter(
+			final ListObjectsParameters params,
+			final Reference startAfter,
+			final Reference... expected)
+			throws Exception {
+		final List<Reference> got = new LinkedList<>();
+		for (final ObjectInformation oi: ws.listObjects(params.withStartAfter(startAfter))) {
+			got.add(ref(oi.getWorkspaceId(), oi.getObjectId(), oi.getVersion()));
+		}
+		assertThat("incorrect objects", got, is(Arrays.asList(expected)));
+	}
+
+	private void failListObjectsStartAfter(final ListObjectsParameters params) {
+		try {
+			ws.listObjects(params);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"The startafter parameter cannot be used with the type, savedby, meta, " +
+					"after, or before filters"));
+		}
+	}
+
 	@Test
 	public void getObjectSubdata() throws Exception {
 		/* note most tests are performed at the same time as getObjects, so
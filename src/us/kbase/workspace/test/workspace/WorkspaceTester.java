@@ -233,6 +233,10 @@ public class WorkspaceTester {
 	
 	private static final Map<String, WSandTypes> CONFIGS = new HashMap<String, WSandTypes>();
 	protected final Workspace ws;
+	/** A workspace over the same data as {@link #ws} that lists objects with an aggregation
+	 * pipeline.
+	 */
+	protected final Workspace aggregationWS;
 	protected final Types types;
 	
 	public WorkspaceTester(
@@ -277,15 +281,32 @@ public class WorkspaceTester {
 			}
 		}
 		ws = CONFIGS.get(config).ws;
+		aggregationWS = CONFIGS.get(config).aggregationWS;
 		types = CONFIGS.get(config).types;
 	}
 	
+	/** Get the version of the test MongoDB instance.
+	 * @return the major and minor version, e.g. [3, 6].
+	 */
+	protected static int[] getMongoDBVersion() {
+		final MongoClient mc = new MongoClient("localhost:" + mongo.getServerPort());
+		try {
+			final String[] version = mc.getDB(DB_WS_NAME).command("buildInfo")
+					.getString("version").split("\\.");
+			return new int[] {Integer.parseInt(version[0]), Integer.parseInt(version[1])};
+		} finally {
+			mc.close();
+		}
+	}
+	
 	private static class WSandTypes {
 		public Workspace ws;
+		public Workspace aggregationWS;
 		public Types types;
-		public WSandTypes(Workspace ws, Types types) {
+		public WSandTypes(Workspace ws, Workspace aggregationWS, Types types) {
 			super();
 			this.ws = ws;
+			this.aggregationWS = aggregationWS;
 			this.types = types;
 		}
 	}
@@ -363,6 +384,9 @@ public class WorkspaceTester {
 		final MongoWorkspaceDB mwdb = new MongoWorkspaceDB(db, bs, tfm);
 		final Workspace work = new Workspace(
 				mwdb, new ResourceUsageConfigurationBuilder().build(), val);
+		final Workspace aggwork = new Workspace(
+				MongoWorkspaceDB.getBuilder(db, bs, tfm).withListObjectsAggregation(true).build(),
+				new ResourceUsageConfigurationBuilder().build(), val);
 		final Types t = new Types(typeDefDB);
 		if (maxMemoryUsePerCall != null) {
 			final ResourceUsageConfigurationBuilder build =
@@ -371,7 +395,7 @@ public class WorkspaceTester {
 					.withMaxReturnedDataMemoryUsage(maxMemoryUsePerCall).build());
 		}
 		installSpecs(t);
-		return new WSandTypes(work, t);
+		return new WSandTypes(work, aggwork, t);
 	}
 		
 	private void installSpecs(Types t) throws Exception {
@@ -1365,6 +1365,12 @@ module Workspace {
 			parameter only has an effect when filtering by types alone.
 		int limit - limit the output to X objects. Default and maximum value
 			is 10000. Limit values < 1 are treated as 10000, the default.
+		obj_ref startafter - the reference, in the form X/Y/Z, of the last object
+			in the previous page of results. The listing resumes directly after
+			this object, so paging through the objects with limit and startafter
+			reads each object once. Results are ordered by workspace ID, object ID,
+			and then descending version. Cannot be used with the type, savedby,
+			meta, after, or before filters.
 		
 	*/
 	typedef structure {
@@ -1387,6 +1393,7 @@ module Workspace {
 		boolean includeMetadata;
 		boolean excludeGlobal;
 		int limit;
+		obj_ref startafter;
 	} ListObjectsParams;
 	
 	/*